@@ -262,7 +262,10 @@ public class StationMeta implements Serializable {
   public List<Channel> getChannelArray(String bands, boolean ignoreTriggered,
       boolean ignoreDerived) {
     // converting to treeset in order to get sorted iteration
-    TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+    TreeSet<ChannelKey> keys;
+    synchronized (channels) {
+      keys = new TreeSet<>(channels.keySet());
+    }
 
     ArrayList<Channel> channelArrayList = new ArrayList<>();
 
@@ -374,7 +377,10 @@ public class StationMeta implements Serializable {
    */
   public List<Channel> getContinuousChannels() {
     // once again, convert for iteration in sort order
-    TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+    TreeSet<ChannelKey> keys;
+    synchronized (channels) {
+      keys = new TreeSet<>(channels.keySet());
+    }
 
     ArrayList<Channel> channelArrayList = new ArrayList<>();
 
@@ -399,7 +405,10 @@ public class StationMeta implements Serializable {
    */
   public List<Channel> getRotatableChannels() {
     // once again treeset conversion to get sorted order of channels
-    TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+    TreeSet<ChannelKey> keys;
+    synchronized (channels) {
+      keys = new TreeSet<>(channels.keySet());
+    }
 
     ArrayList<Channel> channelArrayList = new ArrayList<>();
 
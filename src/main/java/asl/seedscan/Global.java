@@ -6,7 +6,6 @@ import asl.seedscan.config.DatabaseT;
 import asl.seedscan.config.MetricT;
 import asl.seedscan.metrics.MetricException;
 import asl.seedscan.metrics.MetricWrapper;
-import asl.util.LockFile;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URL;
@@ -33,11 +32,6 @@ public abstract class Global {
    **/
   private static ConfigT CONFIG;
 
-  /**
-   * Object that prevents two Seedscan processes from running at the same time
-   **/
-  public static LockFile lock;
-
   /**
    * An unmodifiable list of Metrics from the config file.
    */
@@ -52,7 +46,70 @@ public abstract class Global {
   protected static String dataDir;
   protected static String eventsDir;
   protected static String qualityflags;
-  protected static String lockfile;
+  /**
+   * Heap in bytes that station scans may be admitted against, null uses the default.
+   */
+  protected static Long heapBudget;
+  /**
+   * Days each station scan loads ahead in the background, null uses the default.
+   */
+  protected static Integer prefetchDays;
+  /**
+   * Bytes of unreferenced decoded days kept for reuse, null uses the default.
+   */
+  protected static Long dayCacheSize;
+  /**
+   * Scan the days of a station scan concurrently instead of one after another.
+   */
+  protected static boolean parallelDays = false;
+  /**
+   * Seed files read at once by every SeedSplitter, null uses the default.
+   */
+  protected static Integer readerThreads;
+  /**
+   * Read seed files on virtual threads where the JDK supports them.
+   */
+  protected static boolean virtualThreads = false;
+  /**
+   * Read seed files through memory maps instead of streams.
+   */
+  protected static boolean mappedReads = false;
+  /**
+   * Decoders the records of a station day are split between by channel, null uses the default.
+   */
+  protected static Integer decoderShards;
+  /**
+   * Only decode the channels read by the configured metrics.
+   */
+  protected static boolean selectiveDecoding = true;
+  /**
+   * Keep decoded samples in compressed blocks.
+   */
+  protected static boolean compressedSamples = false;
+  /**
+   * Directory decoded station days are cached in on disk, null disables the disk cache.
+   */
+  protected static String diskCacheDir;
+  /**
+   * Bytes the disk cache may use, null uses the default.
+   */
+  protected static Long diskCacheSize;
+  /**
+   * Hold the samples of decoded station days off the heap.
+   */
+  protected static boolean offHeapSamples = false;
+  /**
+   * Directory off heap samples are memory mapped from, null holds them in direct buffers.
+   */
+  protected static String offHeapDir;
+  /**
+   * Bytes of sample blocks kept for reuse, null uses the default.
+   */
+  protected static Long blockPoolSize;
+  /**
+   * Rates in Hz decimated copies of each channel are made at, empty makes none.
+   */
+  protected static double[] decimatedRates = new double[0];
 
 
   /**
@@ -116,8 +173,6 @@ public abstract class Global {
     datalessFile = CONFIG.getDatalessFile();
     database = CONFIG.getDatabase();
 
-    lockfile = CONFIG.getLockfile();
-
     qualityflags = CONFIG.getQualityflags();
 
     plotsDir = CONFIG.getPlotsDir();
@@ -125,6 +180,67 @@ public abstract class Global {
     dataDir = CONFIG.getPath();
 
     eventsDir = CONFIG.getEventsDir();
+
+    // Configured in megabytes
+    if (CONFIG.getHeapBudget() != null) {
+      heapBudget = CONFIG.getHeapBudget() * 1024L * 1024L;
+    }
+
+    prefetchDays = CONFIG.getPrefetchDays();
+
+    parallelDays = Boolean.TRUE.equals(CONFIG.isParallelDays());
+
+    readerThreads = CONFIG.getReaderThreads();
+
+    virtualThreads = Boolean.TRUE.equals(CONFIG.isVirtualThreads());
+
+    mappedReads = Boolean.TRUE.equals(CONFIG.isMappedReads());
+
+    decoderShards = CONFIG.getDecoderShards();
+
+    // Enabled unless turned off
+    selectiveDecoding = !Boolean.FALSE.equals(CONFIG.isSelectiveDecoding());
+
+    compressedSamples = Boolean.TRUE.equals(CONFIG.isCompressedSamples());
+
+    // Configured in megabytes
+    if (CONFIG.getDayCache() != null) {
+      dayCacheSize = CONFIG.getDayCache() * 1024L * 1024L;
+    }
+
+    diskCacheDir = CONFIG.getDiskCacheDir();
+
+    // Configured in megabytes
+    if (CONFIG.getDiskCacheSize() != null) {
+      diskCacheSize = CONFIG.getDiskCacheSize() * 1024L * 1024L;
+    }
+
+    offHeapSamples = Boolean.TRUE.equals(CONFIG.isOffHeapSamples());
+
+    offHeapDir = CONFIG.getOffHeapDir();
+
+    // Configured in megabytes
+    if (CONFIG.getBlockPool() != null) {
+      blockPoolSize = CONFIG.getBlockPool() * 1024L * 1024L;
+    }
+
+    List<Double> rates = new ArrayList<>();
+    if (CONFIG.getDecimatedRates() != null) {
+      for (String rate : CONFIG.getDecimatedRates().split(",")) {
+        double value;
+        try {
+          value = Double.parseDouble(rate.trim());
+        } catch (NumberFormatException e) {
+          value = 0;
+        }
+        if (value > 0) {
+          rates.add(value);
+        } else {
+          logger.warn("Ignoring decimated rate [{}], it is not a positive number", rate);
+        }
+      }
+    }
+    decimatedRates = rates.stream().mapToDouble(Double::doubleValue).toArray();
   }
 
   public static List<String> getNetworkRestrictions() {
@@ -168,7 +284,161 @@ public abstract class Global {
     return qualityflags;
   }
 
-  public static String getLockfile() {
-    return lockfile;
+  /**
+   * Get the heap budget that station scans are admitted against. Defaults to three quarters of the
+   * maximum heap when not configured.
+   *
+   * @return budget in bytes
+   */
+  public static long getHeapBudget() {
+    if (heapBudget == null) {
+      return Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+    return heapBudget;
+  }
+
+  /**
+   * Get the size of the decoded station day cache. Only days no scan is using count against it.
+   * Defaults to an eighth of the maximum heap when not configured.
+   *
+   * @return size in bytes, 0 keeps only days in use
+   */
+  public static long getDayCacheSize() {
+    if (dayCacheSize == null) {
+      return Runtime.getRuntime().maxMemory() / 8;
+    }
+    return dayCacheSize;
+  }
+
+  /**
+   * @return true if decoded samples are kept in compressed blocks
+   */
+  public static boolean getCompressedSamples() {
+    return compressedSamples;
+  }
+
+  /**
+   * @return directory of the disk cache of decoded station days, null if it is disabled
+   */
+  public static String getDiskCacheDir() {
+    return diskCacheDir;
+  }
+
+  /**
+   * Get the size of the disk cache of decoded station days. Defaults to 10 GB when not
+   * configured.
+   *
+   * @return size in bytes
+   */
+  public static long getDiskCacheSize() {
+    if (diskCacheSize == null) {
+      return 10240L * 1024L * 1024L;
+    }
+    return diskCacheSize;
+  }
+
+  /**
+   * @return true if the samples of decoded station days are held off the heap
+   */
+  public static boolean getOffHeapSamples() {
+    return offHeapSamples;
+  }
+
+  /**
+   * @return directory off heap samples are memory mapped from, null if they are held in direct
+   * buffers
+   */
+  public static String getOffHeapDir() {
+    return offHeapDir;
+  }
+
+  /**
+   * Get the size of the pool of sample blocks shared by every scan. Defaults to a 32nd of the
+   * maximum heap when not configured.
+   *
+   * @return size in bytes
+   */
+  public static long getBlockPoolSize() {
+    if (blockPoolSize == null) {
+      return Runtime.getRuntime().maxMemory() / 32;
+    }
+    return blockPoolSize;
+  }
+
+  /**
+   * Get the rates decimated copies of each channel are made at when a day is loaded, for metrics
+   * that only need long periods, see {@link asl.seedscan.metrics.Metric#getMinimumSampleRate()}.
+   *
+   * @return rates in Hz, empty if no copies are made
+   */
+  public static double[] getDecimatedRates() {
+    return decimatedRates.clone();
+  }
+
+  /**
+   * @return true if the days of a station scan are scanned concurrently
+   */
+  public static boolean getParallelDays() {
+    return parallelDays;
+  }
+
+  /**
+   * Get the number of seed files that may be read at once. Every scanning and prefetching thread
+   * may be splitting a day, so this defaults to twice the number of processors.
+   *
+   * @return number of files, at least 1
+   */
+  public static int getReaderThreads() {
+    if (readerThreads == null) {
+      return Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    }
+    return Math.max(1, readerThreads);
+  }
+
+  /**
+   * @return true if seed files should be read on virtual threads when available
+   */
+  public static boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * @return true if seed files are read through memory maps
+   */
+  public static boolean getMappedReads() {
+    return mappedReads;
+  }
+
+  /**
+   * Get the number of decoders the records of a station day are split between by channel. Defaults
+   * to 1, decoding every channel on the splitting thread.
+   *
+   * @return number of decoders, at least 1
+   */
+  public static int getDecoderShards() {
+    if (decoderShards == null) {
+      return 1;
+    }
+    return Math.max(1, decoderShards);
+  }
+
+  /**
+   * @return true if only the channels read by the configured metrics are decoded
+   */
+  public static boolean getSelectiveDecoding() {
+    return selectiveDecoding;
+  }
+
+  /**
+   * Get the number of days a station scan loads ahead of the day it is computing, between 0 and 2.
+   * Defaults to 1 when not configured.
+   *
+   * @return days to prefetch, 0 disables prefetching
+   */
+  public static int getPrefetchDays() {
+    if (prefetchDays == null) {
+      return 1;
+    }
+    return Math.max(0, Math.min(2, prefetchDays));
   }
 }
@@ -4,7 +4,6 @@ import asl.metadata.MetaGenerator;
 import asl.seedscan.database.MetricDatabase;
 import asl.seedscan.metrics.MetricException;
 import asl.seedscan.scanner.ScanManager;
-import asl.util.LockFile;
 import asl.util.Logging;
 import java.io.File;
 import java.io.FileFilter;
@@ -44,7 +43,6 @@ public class SeedScan {
     ScanManager scanManager;
     MetaGenerator metaGenerator;
     MetricDatabase database = null;
-    LockFile lock = null;
 
     try {
       Global.loadConfig("config.xml");
@@ -104,15 +102,11 @@ public class SeedScan {
         }
       }
 
-      lock = new LockFile(Global.getLockfile());
-      if (!lock.acquire()) {
-        throw new IOException("Unable to acquire lock.");
-      }
-
       metaGenerator = new MetaGenerator(Global.getDatalessDir(), Global.getDatalessFile(),
           Global.getNetworkRestrictions());
       database = new MetricDatabase(Global.getDatabase());
       scanManager = new ScanManager(database, metaGenerator);
+      database.listenForScans(scanManager::notifyScansAvailable);
 
       logger.info("Handing control to ScanManager");
       // Blocking call to begin scanning.
@@ -134,13 +128,7 @@ public class SeedScan {
       logger.error("Unable to communicate with Database");
       logger.error(Logging.prettyExceptionWithCause(e));
     } finally {
-      logger.info("Release seedscan lock and quit metaServer");
-      try {
-        if (lock != null) {
-          lock.release();
-        }
-      } catch (IOException ignored) {
-      }
+      logger.info("Release scan leases and quit metaServer");
       if (database != null) {
         database.close();
       }
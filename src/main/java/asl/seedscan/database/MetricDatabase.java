@@ -6,6 +6,7 @@ import asl.seedscan.config.DatabaseT;
 import asl.seedscan.metrics.MetricResult;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 import java.beans.PropertyVetoException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -13,7 +14,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,9 +55,40 @@ public class MetricDatabase {
    */
   private String username;
 
-  // lock object used to synchronize scans so taken-but-unpopulated scans aren't marked as finished
-  // both the finishScan and takeNextScan methods are synchronized on this object
-  private final Object lockObject = new Object();
+  /**
+   * The password, kept for the scan listener's dedicated connection.
+   */
+  private String password;
+
+  /**
+   * Listens for newly inserted scans. Null until {@link #listenForScans(Runnable)} is called.
+   */
+  private ScanListener scanListener;
+
+  /**
+   * Default time a taken scan remains leased without a heartbeat. Other workers may take the scan
+   * once it has expired.
+   */
+  static final int LEASE_SECONDS = 300;
+
+  /**
+   * Identifies this instance as the owner of its leased scans. Unique per instance, so several
+   * instances may share the database, whether on one host or many.
+   */
+  private String workerID;
+
+  private int leaseSeconds;
+
+  /**
+   * Scans taken by this instance that are still running. Only these leases are renewed, a scan
+   * dropped without being finished or released expires and is taken again.
+   */
+  private final Set<UUID> runningScans = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Renews this worker's leases while it is connected.
+   */
+  private ScheduledExecutorService heartbeat;
 
   /**
    * Used for testing purposes only. Where java requires call to super() in mock Class.
@@ -76,8 +115,26 @@ public class MetricDatabase {
    * @throws SQLException if the database is unable to be communicated with.
    */
   MetricDatabase(String URI, String username, String password) throws SQLException {
+    this(URI, username, password, createWorkerID(), LEASE_SECONDS);
+  }
+
+  /**
+   * Instantiates a new metric database.
+   *
+   * @param URI          the location of the database
+   * @param username     the username
+   * @param password     the password
+   * @param workerID     the owner recorded on scans taken by this instance
+   * @param leaseSeconds how long taken scans are leased between heartbeats
+   * @throws SQLException if the database is unable to be communicated with.
+   */
+  MetricDatabase(String URI, String username, String password, String workerID,
+      int leaseSeconds) throws SQLException {
     this.URI = URI;
     this.username = username;
+    this.password = password;
+    this.workerID = workerID;
+    this.leaseSeconds = leaseSeconds;
     logger.info("MetricDatabase Constructor(): Attempting to connect to the database");
 
     logger.info("Connection String = \"{}\", User = \"{}\"", this.URI, this.username);
@@ -99,19 +156,84 @@ public class MetricDatabase {
       dataSource.close(); // so we need to make sure it is closed
       dataSource = null;
     }
-    // Reset any orphaned scans immediately after connection.
-    // This also serves as a check if we have write access to the database.
-    resetStationScans();
+    logger.info("Leasing scans as worker [{}] for [{}] seconds", workerID, leaseSeconds);
+    // Scans orphaned by a dead instance are taken again once their leases expire.
+    // This first renewal also serves as a check if we have write access to the database.
+    renewLeases();
+    startHeartbeat();
+  }
+
+  /**
+   * @return an ID unique to this instance, prefixed by the process and host for readability
+   */
+  static String createWorkerID() {
+    String process = ManagementFactory.getRuntimeMXBean().getName();
+    return process + "/" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  /**
+   * Renew leases at a quarter of the lease time, so a few missed heartbeats don't lose them.
+   */
+  private void startHeartbeat() {
+    heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LeaseHeartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1000L * leaseSeconds / 4, 1);
+    heartbeat.scheduleAtFixedRate(() -> {
+      try {
+        renewLeases();
+      } catch (SQLException e) {
+        logger.error("Unable to renew scan leases:", e);
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop renewing leases. Used for testing, this simulates the instance dying.
+   */
+  void stopHeartbeat() {
+    if (heartbeat != null) {
+      heartbeat.shutdownNow();
+      heartbeat = null;
+    }
+  }
+
+  String getWorkerID() {
+    return workerID;
   }
 
   /**
    * Closes the connection pool and sets dataSource to null.
    */
   public void close() {
+    if (scanListener != null) {
+      scanListener.stop();
+      scanListener = null;
+    }
+    stopHeartbeat();
+    releaseLeases();
     dataSource.close();
     dataSource = null;
   }
 
+  /**
+   * Start listening for scans inserted into tblscan. The callback is run on the listener's thread
+   * each time new scans are committed, so it should return quickly.
+   * <p>
+   * Notifications are best effort, callers should continue to poll as a fallback.
+   *
+   * @param onScansAvailable called when new scans may be available
+   */
+  public synchronized void listenForScans(Runnable onScansAvailable) {
+    if (scanListener != null) {
+      scanListener.stop();
+    }
+    scanListener = new ScanListener(URI, username, password, onScansAvailable);
+    scanListener.start();
+  }
+
   /**
    * Mark a scan as finished. The database handles further work, such as completing parent scans and
    * collapsing finished scans.
@@ -119,33 +241,42 @@ public class MetricDatabase {
    * @param pkScanID The UUID of the finished station scan.
    */
   public void finishScan(UUID pkScanID) {
-    // lock prevents this from running if we are taking a scan or enumerating its child scans
-    // otherwise a taken scan whose children are not in the DB yet could get removed by this
-    synchronized (lockObject) {
-      try {
-        try (Connection connection = dataSource
-            .getConnection(); CallableStatement callStatement = connection
-            .prepareCall("SELECT * from fnfinishscan(?)")) {
-          callStatement.setObject(1, pkScanID);
-          callStatement.executeQuery();
+    // fnfinishscan only completes parents that already have children, so a taken scan whose
+    // children are not in the DB yet cannot be removed by this.
+    try {
+      try (Connection connection = dataSource
+          .getConnection(); CallableStatement callStatement = connection
+          .prepareCall("SELECT * from fnfinishscan(?)")) {
+        callStatement.setObject(1, pkScanID);
+        callStatement.executeQuery();
 
-        }
-      } catch (SQLException e) {
-        logger.error("SQLException:", e);
       }
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    } finally {
+      runningScans.remove(pkScanID);
     }
   }
 
   /**
-   * Return the lock object. Used to synchronize taking and adding child scans to the database,
-   * which happens together in the run method of RetrieveScan. These operations need to be locked
-   * together in order to prevent scans being marked as finished when the scan is taken and the
-   * child scans have not yet been populated.
+   * Return a scan that failed to the queue, releasing its lease. It is taken again from the next
+   * day, so a scan that always fails does not loop.
    *
-   * @return Lock Object, object solely used to control synchronization of scan data.
+   * @param pkScanID The UUID of the failed scan.
    */
-  public Object getLockObject() {
-    return lockObject;
+  public void releaseScan(UUID pkScanID) {
+    runningScans.remove(pkScanID);
+    try {
+      try (Connection connection = dataSource
+          .getConnection(); CallableStatement callStatement = connection
+          .prepareCall("SELECT fnreleasescan(?, ?)")) {
+        callStatement.setObject(1, pkScanID);
+        callStatement.setString(2, workerID);
+        callStatement.executeQuery();
+      }
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    }
   }
 
   /**
@@ -252,56 +383,60 @@ public class MetricDatabase {
     return digest;
   }
 
-  public void insertChildScan(UUID parentID, String network, String station, String location,
-      String channel,
-      String metric, LocalDate startDate, LocalDate endDate, int priority, boolean deleteExisting) {
-    Connection connection = null;
-    PreparedStatement statement = null;
+  /**
+   * Insert all child scans of a parent in a single statement. Each child only differs from its
+   * parent by network, station and date range, the remaining filters are taken from the parent.
+   * <p>
+   * A parent with no children is marked as finished. If the children cannot be inserted the
+   * parent is released, so it is split again later.
+   *
+   * @param parent   the scan being split
+   * @param children the child scans, their IDs are ignored and assigned by the database
+   */
+  public void insertChildScans(DatabaseScan parent, List<DatabaseScan> children) {
+    String[] networks = new String[children.size()];
+    String[] stations = new String[children.size()];
+    LocalDate[] startDates = new LocalDate[children.size()];
+    LocalDate[] endDates = new LocalDate[children.size()];
+    for (int i = 0; i < children.size(); i++) {
+      DatabaseScan child = children.get(i);
+      networks[i] = child.network;
+      stations[i] = child.station;
+      startDates[i] = child.startDate;
+      endDates[i] = child.endDate;
+    }
+
     try {
-      try {
+      try (Connection connection = dataSource
+          .getConnection(); CallableStatement callStatement = connection
+          .prepareCall("SELECT fninsertchildscans(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
         //@formatter:off
-        connection = dataSource.getConnection();
-        //We will let the db set the timestamp.
-        statement = connection.prepareStatement(
-            "INSERT INTO tblscan("
-                + "fkparentscan, "
-                + "networkfilter, "
-                + "stationfilter, "
-                + "locationfilter, "
-                + "channelfilter, "
-                + "metricfilter, "
-                + "startdate, "
-                + "enddate, "
-                + "priority, "
-                + "deleteexisting)"
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
         int i = 1;
-        statement.setObject(i++, parentID);
-        statement.setString(i++, network);
-        statement.setString(i++, station);
-        statement.setString(i++, location);
-        statement.setString(i++, channel);
-        statement.setString(i++, metric);
-        statement.setObject(i++, startDate);
-        statement.setObject(i++, endDate);
-        statement.setInt(i++, priority);
-        statement.setBoolean(i++, deleteExisting);
+        callStatement.setObject(i++, parent.scanID);
+        callStatement.setArray(i++, connection.createArrayOf("text", networks));
+        callStatement.setArray(i++, connection.createArrayOf("text", stations));
+        callStatement.setArray(i++, connection.createArrayOf("date", startDates));
+        callStatement.setArray(i++, connection.createArrayOf("date", endDates));
+        callStatement.setString(i++, parent.location);
+        callStatement.setString(i++, parent.channel);
+        callStatement.setString(i++, parent.metricName);
+        callStatement.setInt(i++, parent.priority);
+        callStatement.setBoolean(i++, parent.deleteExisting);
         //@formatter:on
 
-        if (statement.executeUpdate() != 1) {
-          throw new SQLException("Failed to insert following scan into database:");
-        }
-      } finally {
-        if (statement != null) {
-          statement.close();
-        }
-        if (connection != null) {
-          connection.close();
+        try (ResultSet rs = callStatement.executeQuery()) {
+          if (!rs.next() || rs.getInt(1) != children.size()) {
+            throw new SQLException("Failed to insert child scans into database");
+          }
         }
       }
+      // The parent's lease was cleared with its children inserted
+      runningScans.remove(parent.scanID);
     } catch (SQLException e) {
-      this.insertScanMessage(parentID, network, station, location, channel, metric,
-          "Unable to add child scan");
+      logger.error("SQLException:", e);
+      this.insertScanMessage(parent.scanID, parent.network, parent.station, parent.location,
+          parent.channel, parent.metricName, "Unable to add child scans");
+      releaseScan(parent.scanID);
     }
   }
 
@@ -441,66 +576,92 @@ public class MetricDatabase {
   }
 
   /**
-   * Reset any existing station scans that are taken. This prevents orphaned scans, if seedscan dies
-   * while running a scan.
+   * Extend the leases of the scans this worker is still running.
    *
    * @throws SQLException for any exception from the JDBC driver
    */
-  private void resetStationScans() throws SQLException {
+  void renewLeases() throws SQLException {
     try (Connection connection = dataSource
-        .getConnection(); PreparedStatement statement = connection.prepareStatement(
-        "UPDATE tblscan "
-            + "SET taken=FALSE "
-            + "WHERE "
-            + "finished = FALSE "
-            + "AND taken = TRUE "
-            + "AND pkscanid NOT IN ( "
-            + "SELECT DISTINCT fkparentscan FROM tblscan WHERE fkparentscan IS NOT NULL "
-            + ")")) {
-      //@formatter:off
-      //@formatter:on
-      int orphanCount = statement.executeUpdate();
-      logger.info("Reset {} orphaned scans", orphanCount);
+        .getConnection(); CallableStatement callStatement = connection
+        .prepareCall("SELECT fnrenewleases(?, ?, ?)")) {
+      callStatement.setString(1, workerID);
+      callStatement.setInt(2, leaseSeconds);
+      callStatement.setArray(3, connection.createArrayOf("uuid", runningScans.toArray()));
+      try (ResultSet rs = callStatement.executeQuery()) {
+        if (rs.next()) {
+          logger.debug("Renewed {} scan leases", rs.getInt(1));
+        }
+      }
     }
   }
 
   /**
-   * Gets the next priority scan from the database. The database handles its copy of the queue.
-   * Priority in the database queue may not exactly match priority in Seedscan.
-   *
-   * @return A Scan object to be added to the Priority Queue or null if empty
+   * Return every unfinished scan this worker has taken to the queue, so other workers need not wait
+   * for the leases to expire.
    */
-  public DatabaseScan takeNextScan() {
+  private void releaseLeases() {
     try {
       try (Connection connection = dataSource
           .getConnection(); CallableStatement callStatement = connection
-          .prepareCall("SELECT * from fntakenextscan()"); ResultSet rs = callStatement
-          .executeQuery()) {
+          .prepareCall("SELECT fnreleaseleases(?)")) {
+        callStatement.setString(1, workerID);
+        try (ResultSet rs = callStatement.executeQuery()) {
+          if (rs.next()) {
+            logger.info("Released {} unfinished scans", rs.getInt(1));
+          }
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    }
+  }
 
-        //If we have a scan return it
-        if (rs.next()) {
-          //@formatter:off
-          return new DatabaseScan(
-              (UUID) rs.getObject("pkscanid"),
-              (UUID) rs.getObject("fkparentscan"),
-              rs.getString("metricfilter"),
-              rs.getString("networkfilter"),
-              rs.getString("stationfilter"),
-              rs.getString("locationfilter"),
-              rs.getString("channelfilter"),
-              rs.getObject("startdate", LocalDate.class),
-              rs.getObject("enddate", LocalDate.class),
-              rs.getInt("priority"),
-              rs.getBoolean("deleteexisting"));
-          //@formatter:on
-        } else {
-          return null;
+  /**
+   * Take up to count of the highest priority scans from the database. Scans being taken by other
+   * connections are skipped, so concurrent callers never wait on each other or receive the same
+   * scan. Priority in the database queue may not exactly match priority in Seedscan.
+   * <p>
+   * Taken scans are leased to this worker and renewed by its heartbeat until finished, split or
+   * released. Scans whose lease has expired are taken again.
+   *
+   * @param count maximum number of scans to take
+   * @return the taken scans, empty if none are available
+   */
+  public List<DatabaseScan> takeNextScans(int count) {
+    List<DatabaseScan> scans = new ArrayList<>();
+    try {
+      try (Connection connection = dataSource
+          .getConnection(); CallableStatement callStatement = connection
+          .prepareCall("SELECT * from fntakenextscans(?, ?, ?)")) {
+        callStatement.setInt(1, count);
+        callStatement.setString(2, workerID);
+        callStatement.setInt(3, leaseSeconds);
+        try (ResultSet rs = callStatement.executeQuery()) {
+          while (rs.next()) {
+            //@formatter:off
+            scans.add(new DatabaseScan(
+                (UUID) rs.getObject("pkscanid"),
+                (UUID) rs.getObject("fkparentscan"),
+                rs.getString("metricfilter"),
+                rs.getString("networkfilter"),
+                rs.getString("stationfilter"),
+                rs.getString("locationfilter"),
+                rs.getString("channelfilter"),
+                rs.getObject("startdate", LocalDate.class),
+                rs.getObject("enddate", LocalDate.class),
+                rs.getInt("priority"),
+                rs.getBoolean("deleteexisting")));
+            //@formatter:on
+          }
         }
       }
     } catch (SQLException e) {
       logger.error("SQLException:", e);
     }
-    return null;
+    for (DatabaseScan scan : scans) {
+      runningScans.add(scan.scanID);
+    }
+    return scans;
   }
 
 }
@@ -0,0 +1,167 @@
+package asl.seedscan.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for notifications sent by the tblscan insert trigger on its own connection, outside of
+ * the connection pool. Each notification runs the supplied callback, which should be cheap, such
+ * as waking the ScanManager.
+ * <p>
+ * If the connection is lost the listener reconnects after a delay. Polling by the ScanManager still
+ * picks up new scans while the listener is down.
+ */
+class ScanListener implements Runnable {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.ScanListener.class);
+
+  /**
+   * Channel notified by trgnotifyscan, see db.changelog-1.6.0.xml
+   */
+  static final String CHANNEL = "tblscan_insert";
+
+  /**
+   * Maximum time to block waiting for notifications before checking if we have been stopped.
+   */
+  private static final int WAIT_MILLIS = 10000;
+
+  /**
+   * Delay before reconnecting after the connection fails.
+   */
+  private long reconnectMillis = 30000;
+
+  private final String URI;
+  private final String username;
+  private final String password;
+  private final Runnable onNotify;
+
+  private volatile boolean running = false;
+  private Thread thread;
+  private Connection connection;
+  private boolean connected = false;
+
+  /**
+   * @param URI      the location of the database
+   * @param username the username
+   * @param password the password
+   * @param onNotify called whenever scans have been added
+   */
+  ScanListener(String URI, String username, String password, Runnable onNotify) {
+    this.URI = URI;
+    this.username = username;
+    this.password = password;
+    this.onNotify = onNotify;
+  }
+
+  /**
+   * Start listening on a daemon thread.
+   */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    thread = new Thread(this, "ScanListener");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop listening and close the connection.
+   */
+  synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Used for testing
+   *
+   * @param time milliseconds
+   */
+  void setReconnectTime(long time) {
+    reconnectMillis = time;
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        if (!connected) {
+          connection = connect();
+          connected = true;
+          logger.info("Listening for new scans on channel [{}]", CHANNEL);
+        }
+        if (awaitNotification(WAIT_MILLIS)) {
+          onNotify.run();
+        }
+      } catch (SQLException e) {
+        if (!running) {
+          break;
+        }
+        logger.error("Scan listener lost its connection, retrying in {} seconds",
+            reconnectMillis / 1000, e);
+        closeConnection();
+        try {
+          Thread.sleep(reconnectMillis);
+        } catch (InterruptedException ignored) {
+          // Either stopped or woken early, loop condition decides.
+        }
+      }
+    }
+    closeConnection();
+  }
+
+  /**
+   * Open the dedicated connection and subscribe to the scan channel.
+   *
+   * @return the listening connection
+   * @throws SQLException if the database could not be reached
+   */
+  Connection connect() throws SQLException {
+    Connection listenConnection = DriverManager.getConnection(URI, username, password);
+    try (Statement statement = listenConnection.createStatement()) {
+      statement.execute("LISTEN " + CHANNEL);
+    }
+    return listenConnection;
+  }
+
+  /**
+   * Block until notifications arrive or the timeout expires.
+   *
+   * @param timeoutMillis maximum time to wait
+   * @return true if at least one notification was received
+   * @throws SQLException if the connection failed
+   */
+  boolean awaitNotification(int timeoutMillis) throws SQLException {
+    PGNotification[] notifications = connection.unwrap(PGConnection.class)
+        .getNotifications(timeoutMillis);
+    return notifications != null && notifications.length > 0;
+  }
+
+  private void closeConnection() {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        logger.debug("Unable to close scan listener connection", e);
+      }
+      connection = null;
+    }
+    connected = false;
+  }
+}
@@ -1,6 +1,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import asl.plotmaker.PlotMaker2;
 import asl.plotmaker.PlotMakerException;
 import asl.plotmaker.Trace;
@@ -29,6 +30,11 @@ public class ALNMDeviationMetric extends PowerBandMetric {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.metrics.ALNMDeviationMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "LN,HN";
+
   /*
    * (non-Javadoc)
    *
@@ -39,6 +45,11 @@ public class ALNMDeviationMetric extends PowerBandMetric {
     return 1;
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), true, true);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -88,7 +99,7 @@ public class ALNMDeviationMetric extends PowerBandMetric {
     try {
       bands = get("channel-restriction");
       if (bands == null) {
-        bands = "LN,HN";
+        bands = DEFAULT_BANDS;
       }
     } catch (NoSuchFieldException e) {
       logger.error("station=[{}] day=[{}]: Failed to load a noise model file", station, day);
@@ -2,6 +2,7 @@ package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedsplitter.DataSet;
 import java.math.BigDecimal;
 import java.math.MathContext;
@@ -33,6 +34,16 @@ public class AvailabilityMetric extends Metric {
     return "AvailabilityMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getContinuousChannels();
+  }
+
+  @Override
+  public boolean readsHeadersOnly() {
+    return true;
+  }
+
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
@@ -2,9 +2,12 @@ package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
 import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
 import java.nio.ByteBuffer;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,11 +29,28 @@ public class DeadChannelMetric extends PowerBandMetric {
     return 1;
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray("LH", false, true);
+  }
+
   @Override
   public String getBaseName() {
     return "DeadChannelMetric";
   }
 
+  /**
+   * DeadChannelMetric reads the NLNMDeviationMetric result over the same period.
+   */
+  @Override
+  public Set<String> getDependencies() {
+    return Collections.singleton(getNLNMName());
+  }
+
+  private String getNLNMName() {
+    return "NLNMDeviationMetric:" + getName().split("[:]")[1];
+  }
+
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
@@ -1,6 +1,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedsplitter.DataSet;
 import asl.util.Time;
 import java.nio.ByteBuffer;
@@ -23,6 +24,16 @@ public class GapCountMetric extends Metric {
     return "GapCountMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getContinuousChannels();
+  }
+
+  @Override
+  public boolean readsHeadersOnly() {
+    return true;
+  }
+
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
@@ -1,6 +1,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import asl.timeseries.CrossPower;
 import asl.util.Logging;
 import java.nio.ByteBuffer;
@@ -19,6 +20,11 @@ public class InfrasoundMetric extends Metric {
   private static final Logger logger =
       LoggerFactory.getLogger(asl.seedscan.metrics.InfrasoundMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "BD,HD";
+
   public InfrasoundMetric() {
     super();
     addArgument("channel-restriction");
@@ -34,6 +40,11 @@ public class InfrasoundMetric extends Metric {
     return "InfrasoundMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), false, true);
+  }
+
   @Override
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", this.getStation(),
@@ -50,7 +61,7 @@ public class InfrasoundMetric extends Metric {
     }
 
     if (bands == null) {
-      bands = "BD,HD";
+      bands = DEFAULT_BANDS;
     }
 
     // Get all VM? channels in metadata to use for loop
@@ -4,7 +4,9 @@ import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.PolynomialStage;
 import asl.metadata.meta_new.ResponseStage;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SampleCursor;
 import asl.util.Logging;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
@@ -28,6 +30,11 @@ public class MassPositionMetric extends Metric {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.metrics.MassPositionMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "VM";
+
   MassPositionMetric() {
     super();
     addArgument("channel-restriction");
@@ -92,9 +99,9 @@ public class MassPositionMetric extends Metric {
     int ndata = 0;
 
     for (DataSet dataset : datasets) {
-      int[] intArray = dataset.getSeries();
-      for (int i : intArray) {
-        massPosition += Math.pow((a0 + i * a1), 2);
+      SampleCursor cursor = dataset.cursor();
+      while (cursor.hasNext()) {
+        massPosition += Math.pow((a0 + cursor.next() * a1), 2);
       }
       ndata += dataset.getLength();
     } // end for each dataset
@@ -115,6 +122,11 @@ public class MassPositionMetric extends Metric {
     return "MassPositionMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), false, true);
+  }
+
   /**
    * @see asl.seedscan.metrics.Metric#getVersion()
    */
@@ -142,7 +154,7 @@ public class MassPositionMetric extends Metric {
     }
 
     if (bands == null) {
-      bands = "VM";
+      bands = DEFAULT_BANDS;
     }
 
     // Get all VM? channels in metadata to use for loop
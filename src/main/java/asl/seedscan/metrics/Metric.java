@@ -2,15 +2,22 @@ package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
 import asl.metadata.EpochData;
-import asl.metadata.meta_new.ChannelMetaException;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.database.MetricValueIdentifier;
 import asl.seedscan.event.EventCMT;
 import asl.timeseries.CrossPower;
 import asl.timeseries.CrossPowerKey;
 import edu.sc.seis.seisFile.sac.SacTimeSeries;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,9 +40,10 @@ public abstract class Metric {
   private final Hashtable<String, String> arguments;
 
   /**
-   * The cross power map.
+   * The cross power map. This may be shared between metrics running concurrently on the same
+   * station-day, each cross power is computed by the first metric to request it.
    */
-  private Hashtable<CrossPowerKey, CrossPower> crossPowerMap;
+  private ConcurrentHashMap<CrossPowerKey, CompletableFuture<CrossPower>> crossPowerMap;
 
   /**
    * Determines if metric will be forced to recompute and update the database.
@@ -87,7 +95,7 @@ public abstract class Metric {
    */
   public Metric() {
     arguments = new Hashtable<>();
-    crossPowerMap = new Hashtable<>();
+    crossPowerMap = new ConcurrentHashMap<>();
 
     // MTH: 03-18-13: Added to allow these optional arguments to each
     // cfg:metric in config.xml
@@ -140,6 +148,68 @@ public abstract class Metric {
    */
   public abstract String getLongDescription();
 
+  /**
+   * Names of other metrics whose results for the same day are read by this metric. Metrics listed
+   * here are completed before this metric is processed when both are scanned together.
+   *
+   * @return set of metric names as returned by {@link #getName()}, empty by default
+   */
+  public Set<String> getDependencies() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Channels of a station whose data this metric reads. When a day is loaded only the channels
+   * read by at least one configured metric are decoded.
+   * <p>
+   * Only the given metadata and the metric's arguments may be used, the metric has no data yet.
+   *
+   * @param stationMeta metadata of the station day being loaded
+   * @return the channels, or null if the metric may read any channel, the default
+   */
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return null;
+  }
+
+  /**
+   * The lowest sample rate this metric's cross powers may be computed at. When decimated copies of
+   * the day's channels are configured, {@link #getCrossPower(Channel, Channel)} uses the lowest
+   * rate copy at or above it.
+   *
+   * @return rate in Hz, infinite by default so the full rate is always used
+   */
+  public double getMinimumSampleRate() {
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Whether this metric reads only what record headers give: the start, rate and length of each
+   * DataSet and the timing quality. When every configured metric does, days are loaded without
+   * decoding samples, see {@link asl.seedsplitter.DataSet#isDecoded()}.
+   *
+   * @return true if the metric never reads samples, false by default
+   */
+  public boolean readsHeadersOnly() {
+    return false;
+  }
+
+  /**
+   * Get the bands set by the channel-restriction argument, for metrics that accept it.
+   *
+   * @param defaultBands bands used when the argument is not set
+   * @return comma separated band codes
+   */
+  protected String getChannelRestriction(String defaultBands) {
+    try {
+      String bands = get("channel-restriction");
+      if (bands != null) {
+        return bands;
+      }
+    } catch (NoSuchFieldException ignored) {
+    }
+    return defaultBands;
+  }
+
   /**
    * Creates the identifier.
    *
@@ -170,7 +240,7 @@ public abstract class Metric {
    *
    * @return the cross power map
    */
-  public Hashtable<CrossPowerKey, CrossPower> getCrossPowerMap() {
+  public ConcurrentHashMap<CrossPowerKey, CompletableFuture<CrossPower>> getCrossPowerMap() {
     return crossPowerMap;
   }
 
@@ -180,12 +250,13 @@ public abstract class Metric {
    * @param crossPowerMap the cross power map
    */
   public void setCrossPowerMap(
-      Hashtable<CrossPowerKey, CrossPower> crossPowerMap) {
+      ConcurrentHashMap<CrossPowerKey, CompletableFuture<CrossPower>> crossPowerMap) {
     this.crossPowerMap = crossPowerMap;
   }
 
   /**
-   * Gets the cross power.
+   * Gets the cross power. Each pair of channels is computed only once per map, other metrics
+   * requesting the same pair wait for the first computation to finish.
    *
    * @param channelA first channel
    * @param channelB second channel
@@ -193,20 +264,52 @@ public abstract class Metric {
    * @throws MetricException when CrossPower cannot be created.
    */
   protected CrossPower getCrossPower(Channel channelA, Channel channelB) throws MetricException {
-    CrossPowerKey key = new CrossPowerKey(channelA, channelB);
-    CrossPower crossPower = null;
-
-    if (crossPowerMap.containsKey(key)) {
-      crossPower = crossPowerMap.get(key);
-    } else {
-      try {
-        crossPower = new CrossPower(channelA, channelB, metricData);
-        crossPowerMap.put(key, crossPower);
-      } catch (MetricPSDException | ChannelMetaException e) {
-        throw new MetricException("Unable to create CrossPower", e);
+    // Computed from decimated copies of the channels when this metric does not need the full rate
+    double rate = metricData.getDecimatedRate(channelA, channelB, getMinimumSampleRate());
+    CrossPowerKey key = new CrossPowerKey(channelA, channelB, rate);
+    try {
+      return computeShared(crossPowerMap, key,
+          () -> new CrossPower(channelA, channelB, metricData, rate)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
       }
+      throw new MetricException("Unable to create CrossPower", e.getCause());
+    }
+  }
+
+  /**
+   * Get a value shared between the metrics of a station-day, computing it on this thread if no
+   * other metric has started to. The computation runs outside the map, so other keys are not held
+   * up. A failed computation is removed from the map, so the next request tries again.
+   *
+   * @param map         values shared between metrics
+   * @param key         the value's key
+   * @param computation computes the value
+   * @param <K>         the key type
+   * @param <V>         the value type
+   * @return the value, completed unless another thread is still computing it
+   */
+  static <K, V> CompletableFuture<V> computeShared(ConcurrentMap<K, CompletableFuture<V>> map,
+      K key, Callable<V> computation) {
+    CompletableFuture<V> future = map.get(key);
+    if (future != null) {
+      return future;
+    }
+    CompletableFuture<V> created = new CompletableFuture<>();
+    future = map.putIfAbsent(key, created);
+    if (future != null) {
+      return future;
+    }
+    try {
+      created.complete(computation.call());
+    } catch (Throwable e) {
+      map.remove(key, created);
+      created.completeExceptionally(e);
     }
-    return crossPower;
+    return created;
   }
 
   /**
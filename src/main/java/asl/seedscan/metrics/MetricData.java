@@ -4,7 +4,6 @@ import static asl.utils.FFTResult.cosineTaper;
 import static asl.utils.FFTResult.singleSidedFFT;
 import static asl.utils.NumericUtils.demeanInPlace;
 import static asl.utils.NumericUtils.detrend;
-import static asl.utils.timeseries.TimeSeriesUtils.concatAll;
 
 import asl.metadata.Channel;
 import asl.metadata.ChannelArray;
@@ -18,10 +17,12 @@ import asl.security.MemberDigest;
 import asl.seedscan.database.MetricDatabase;
 import asl.seedscan.database.MetricValueIdentifier;
 import asl.seedsplitter.BlockLocator;
+import asl.seedsplitter.ChannelId;
 import asl.seedsplitter.ContiguousBlock;
 import asl.seedsplitter.DataSet;
 import asl.seedsplitter.IllegalSampleRateException;
 import asl.seedsplitter.SequenceRangeException;
+import asl.timeseries.DecimatedDataSet;
 import asl.timeseries.PreprocessingUtils;
 import asl.timeseries.TimeseriesException;
 import asl.util.Logging;
@@ -33,11 +34,12 @@ import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.DoubleStream;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.math3.complex.Complex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +81,20 @@ public class MetricData implements Serializable {
    */
   private StationMeta metadata;
 
+  /**
+   * Indexes of the keys of data, qualityData and randomCal, built when first needed. Each is only
+   * read or replaced while holding its table's lock.
+   */
+  private transient KeyIndex dataIndex;
+  private transient KeyIndex qualityIndex;
+  private transient KeyIndex calIndex;
+
+  /**
+   * Decimated copies of data by rate, keyed as data is. Shared with other scans of the day and
+   * never modified.
+   */
+  private transient Map<Double, Hashtable<String, ArrayList<DataSet>>> decimatedData;
+
   /**
    * The metric reader.
    */
@@ -93,6 +109,12 @@ public class MetricData implements Serializable {
     this.metricReader = metricReader;
   }
 
+  /**
+   * Results of metrics already computed for this day that have not yet been written to the
+   * database. Keyed by metric name.
+   */
+  private transient volatile Map<String, MetricResult> dayResults;
+
   /**
    * The next metric data.
    */
@@ -132,6 +154,83 @@ public class MetricData implements Serializable {
     this.previousMetricData = null;
   }
 
+  /**
+   * Called once by {@link #release()}, such as to release shared decoded data back to a cache.
+   */
+  private transient Runnable releaseAction;
+
+  /**
+   * Set the action to run when this day's data is no longer needed.
+   *
+   * @param releaseAction run at most once
+   */
+  public synchronized void setReleaseAction(Runnable releaseAction) {
+    this.releaseAction = releaseAction;
+  }
+
+  /**
+   * Signal that this day's data is no longer needed by its owner. Further calls do nothing.
+   */
+  public synchronized void release() {
+    if (releaseAction != null) {
+      Runnable action = releaseAction;
+      releaseAction = null;
+      action.run();
+    }
+  }
+
+  /**
+   * Set the decimated copies of this day's channels, see {@link asl.timeseries.Decimator}.
+   *
+   * @param decimatedData the copies by rate, then by the same keys as the data
+   */
+  public void setDecimatedData(Map<Double, Hashtable<String, ArrayList<DataSet>>> decimatedData) {
+    this.decimatedData = decimatedData;
+  }
+
+  /**
+   * Find the lowest decimated rate, at or above a minimum, that both channels have copies at.
+   *
+   * @param channelX    the first channel
+   * @param channelY    the second channel, may be the same as channelX
+   * @param minimumRate the lowest rate in Hz the caller can use
+   * @return the rate in Hz, or 0 if the channels must be read at their full rate
+   */
+  public double getDecimatedRate(Channel channelX, Channel channelY, double minimumRate) {
+    if (decimatedData == null || decimatedData.isEmpty()) {
+      return 0;
+    }
+    List<Double> rates = new ArrayList<>(decimatedData.keySet());
+    rates.sort(null);
+    for (double rate : rates) {
+      if (rate >= minimumRate && getChannelData(channelX, rate) != null
+          && getChannelData(channelY, rate) != null) {
+        return rate;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Make a metric result available to other metrics processing this day before it is inserted into
+   * the database.
+   *
+   * @param result the computed metric result
+   */
+  public synchronized void addDayResult(MetricResult result) {
+    if (dayResults == null) {
+      dayResults = new ConcurrentHashMap<>();
+    }
+    dayResults.put(result.getMetricName(), result);
+  }
+
+  /**
+   * Forget metric results added with {@link #addDayResult(MetricResult)}.
+   */
+  public synchronized void clearDayResults() {
+    dayResults = null;
+  }
+
   /**
    * Instantiates a new metric data.
    *
@@ -244,14 +343,7 @@ public class MetricData implements Serializable {
     if (data == null) {
       return false;
     }
-    String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return true;
-      }
-    }
-    return false;
+    return findDataKey(location, name) != null;
   }
 
   /**
@@ -265,14 +357,30 @@ public class MetricData implements Serializable {
     if (data == null) {
       return false;
     }
-    String locationName = "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return true;
+    // Rotated channels may be added by another metric while we look
+    synchronized (data) {
+      if (dataIndex == null) {
+        dataIndex = new KeyIndex(data.keySet());
       }
+      return dataIndex.hasChannel(name);
+    }
+  }
+
+  /**
+   * Find the key of a channel in data.
+   *
+   * @param location the location
+   * @param name     the name
+   * @return the key, or null if there is no data for the channel
+   */
+  private String findDataKey(String location, String name) {
+    // Rotated channels may be added by another metric while we look
+    synchronized (data) {
+      if (dataIndex == null) {
+        dataIndex = new KeyIndex(data.keySet());
+      }
+      return dataIndex.find(location, name);
     }
-    return false;
   }
 
   /**
@@ -285,6 +393,17 @@ public class MetricData implements Serializable {
    * @return Double = metric value for given channel, station and date
    */
   Double getMetricValue(LocalDate date, String metricName, Station station, Channel channel) {
+    // Results computed earlier in this scan have not been written to the database yet
+    Map<String, MetricResult> results = dayResults;
+    if (results != null) {
+      MetricResult result = results.get(metricName);
+      if (result != null && result.getDate().equals(date) && result.getStation().equals(station)) {
+        Double value = result.getResult(MetricResult.createResultId(channel));
+        if (value != null) {
+          return value;
+        }
+      }
+    }
     // Retrieve metric value from Database
     if (metricReader.isConnected()) {
       return metricReader.getMetricValue(date, metricName, station, channel);
@@ -302,15 +421,8 @@ public class MetricData implements Serializable {
    * @return {@code ArrayList<DataSet>} = All DataSets for a given channel (e.g., "00-BHZ")
    */
   private ArrayList<DataSet> getChannelData(String location, String name) {
-    String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) {
-      // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return data.get(key);
-      }
-    }
-    return null;
+    String key = findDataKey(location, name);
+    return key == null ? null : data.get(key);
   }
 
   /**
@@ -323,6 +435,28 @@ public class MetricData implements Serializable {
     return getChannelData(channel.getLocation(), channel.getChannel());
   }
 
+  /**
+   * Gets the channel data decimated to a rate.
+   *
+   * @param channel the channel
+   * @param rate    a rate from {@link #getDecimatedRate(Channel, Channel, double)}, 0 for the full
+   *                rate
+   * @return the channel data, or null if there is no copy of the channel at the rate
+   */
+  public ArrayList<DataSet> getChannelData(Channel channel, double rate) {
+    if (rate <= 0) {
+      return getChannelData(channel);
+    }
+    Hashtable<String, ArrayList<DataSet>> copies =
+        (decimatedData == null) ? null : decimatedData.get(rate);
+    if (copies == null) {
+      return null;
+    }
+    // Copies are keyed as the data is, rotated channels have none
+    String key = findDataKey(channel.getLocation(), channel.getChannel());
+    return key == null ? null : copies.get(key);
+  }
+
   /**
    * Note we don't rely on the metadata to contain any info about calibration channels. We simply
    * look for the presence of random calibration blockettes (320's) for the IU stations, or miniseed
@@ -365,14 +499,14 @@ public class MetricData implements Serializable {
       return null; // randomCal was never created --> Probably not a
     }
     // calibration day
-    String locationName = location + "-" + name;
-    Set<String> keys = randomCal.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return randomCal.get(key);
+    String key;
+    synchronized (randomCal) {
+      if (calIndex == null) {
+        calIndex = new KeyIndex(randomCal.keySet());
       }
+      key = calIndex.find(location, name);
     }
-    return null;
+    return key == null ? null : randomCal.get(key);
   }
 
   /**
@@ -393,19 +527,19 @@ public class MetricData implements Serializable {
    * @return the channel timing quality data
    */
   private ArrayList<Integer> getChannelTimingQualityData(String location, String name) {
-    String locationName = location + "-" + name;
     // there's a null check in the calling class but we still need to make sure the keySet
     // actually instantiated or else we'll break before that exception can be handled
     if (qualityData == null) {
       return null;
     }
-    Set<String> keys = qualityData.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return qualityData.get(key);
+    String key;
+    synchronized (qualityData) {
+      if (qualityIndex == null) {
+        qualityIndex = new KeyIndex(qualityData.keySet());
       }
+      key = qualityIndex.find(location, name);
     }
-    return null;
+    return key == null ? null : qualityData.get(key);
   }
 
   /**
@@ -616,8 +750,7 @@ public class MetricData implements Serializable {
     if (wholeData != null) {
       //Yes, return trimmed values or null if error occurs
       try {
-        return Arrays.stream(wholeData.getSeries(windowStartEpoch, windowEndEpoch))
-            .asDoubleStream().toArray();
+        return wholeData.cursor(windowStartEpoch, windowEndEpoch).toDoubleArray();
       } catch (SequenceRangeException e) {
         logger.warn("Sequence Exception caught reading data for channel=[{}] date=[{}] "
                 + "window (in epoch millis): {} msto {} ms", channel, metadata.getDate(),
@@ -735,10 +868,11 @@ public class MetricData implements Serializable {
           windowStartEpoch, windowEndEpoch);
       return null;
     }
-    DoubleStream results = Arrays.stream(todaysResults);
+    double[] prevResults = new double[0];
+    double[] nextResults = new double[0];
 
     if (getPreviousDay) {
-      double[] prevResults =
+      prevResults =
           this.previousMetricData.getWindowedDataMicroSeconds(channel, prevDayStart, prevDayEnd);
       if (prevResults == null) {
         logger.warn("Could not get data for previous day for channel=[{}] date=[{}] window "
@@ -746,11 +880,10 @@ public class MetricData implements Serializable {
             windowStartEpoch, windowEndEpoch);
         return null;
       }
-      results = DoubleStream.concat(Arrays.stream(prevResults), results);
     }
 
     if (getNextDay) {
-      double[] nextResults =
+      nextResults =
           this.nextMetricData.getWindowedDataMicroSeconds(channel, nextDayStart, nextDayEnd);
       if (nextResults == null) {
         logger.warn("Could not get data for next day for channel=[{}] date=[{}] window "
@@ -758,66 +891,92 @@ public class MetricData implements Serializable {
             windowStartEpoch, windowEndEpoch);
         return null;
       }
-      results = DoubleStream.concat(results, Arrays.stream(nextResults));
     }
 
-    return results.toArray();
+    double[] results = new double[prevResults.length + todaysResults.length + nextResults.length];
+    System.arraycopy(prevResults, 0, results, 0, prevResults.length);
+    System.arraycopy(todaysResults, 0, results, prevResults.length, todaysResults.length);
+    System.arraycopy(nextResults, 0, results, prevResults.length + todaysResults.length,
+        nextResults.length);
+    return results;
+  }
+
+  /**
+   * Return a full day (86400 sec) of data assembled from a channel's DataSets, with any gaps
+   * zero-padded. The data points are converted straight into the day's array.
+   *
+   * @param channel the channel
+   * @return the padded day data
+   */
+  double[] getPaddedDayData(Channel channel) {
+    return getPaddedDayData(channel, 0);
   }
 
   /**
-   * Return segments representing contiguous regions of a full day (86400 sec) of data assembled
-   * from a channel's DataSets, with any gaps zero-padded.
+   * Return a full day of data assembled from a channel's DataSets decimated to a rate, with any
+   * gaps zero-padded. Decimated data points are returned in counts, not at their stored scale.
    *
    * @param channel the channel
+   * @param rate    a rate from {@link #getDecimatedRate(Channel, Channel, double)}, 0 for the full
+   *                rate
    * @return the padded day data
    */
-  double[][] getPaddedDayData(Channel channel) {
+  double[] getPaddedDayData(Channel channel, double rate) {
     if (!hasChannelData(channel)) {
       logger.warn(String
           .format("== getPaddedDayData(): We have NO data for channel=[%s] date=[%s]\n", channel,
               metadata.getDate()));
       return null;
     }
-    List<DataSet> datasets = getChannelData(channel);
+    List<DataSet> datasets = getChannelData(channel, rate);
+    if (datasets == null) {
+      logger.warn("== getPaddedDayData(): No copy of channel=[{}] date=[{}] at [{}] Hz", channel,
+          metadata.getDate(), rate);
+      return null;
+    }
 
     /*epoch microsecs since 1970*/
     long dayStartTime = Time.calculateEpochMicroSeconds(metadata.getTimestamp());
     long interval = datasets.get(0).getInterval(); // sample dt in microsecs
 
     int nPointsPerDay = (int) (86400000000L / interval);
-    List<double[]> segments = new ArrayList<>();
 
+    // first count the points, zero padding over any gap between one dataset and the next
     long lastEndTime = dayStartTime;
-    int totalPointCount = 0; // easy way to keep track of the number of points added to the list
-    // append each dataset to the new data as necessary,
+    int totalPointCount = 0;
     for (DataSet dataset : datasets) {
-      long startTime = dataset.getStartTime(); // microsecs since 1970 Jan. 1
-      long endTime = dataset.getEndTime();
-      // first, add zero padding over any gap between previous dataset and this current one
-      int npad = (int) ((startTime - lastEndTime) / interval) - 1;
+      int npad = (int) ((dataset.getStartTime() - lastEndTime) / interval) - 1;
       if (npad > 0) {
         totalPointCount += npad;
-        segments.add(new double[npad]);
       }
-      // now convert the series to doubles and add it to the list of data
-      int[] series = dataset.getSeries();
-      double[] seriesAsDoubles = new double[series.length];
-      for (int j = 0; j < series.length; ++j) {
-        seriesAsDoubles[j] = series[j];
-      }
-      segments.add(seriesAsDoubles);
-      totalPointCount += series.length;
-      // now the current time will be used to account for gap between this and next dataset start
-      lastEndTime = endTime;
+      totalPointCount += dataset.getLength();
+      lastEndTime = dataset.getEndTime();
     }
 
     // in event the last segment doesn't reach the end of the day length, pad out until data does
-    if (totalPointCount < nPointsPerDay) {
-      double[] lastGapFiller = new double[nPointsPerDay - totalPointCount];
-      segments.add(lastGapFiller);
+    double[] day = new double[Math.max(totalPointCount, nPointsPerDay)];
+
+    // then convert each dataset into its place, the padding is already zero
+    lastEndTime = dayStartTime;
+    int position = 0;
+    for (DataSet dataset : datasets) {
+      int npad = (int) ((dataset.getStartTime() - lastEndTime) / interval) - 1;
+      if (npad > 0) {
+        position += npad;
+      }
+      int read = dataset.cursor().read(day, position, dataset.getLength());
+      // Decimated copies are stored scaled
+      int scale = DecimatedDataSet.getScale(dataset);
+      if (scale != 1) {
+        for (int i = position; i < position + read; i++) {
+          day[i] /= scale;
+        }
+      }
+      position += read;
+      lastEndTime = dataset.getEndTime();
     }
 
-    return segments.toArray(new double[][]{});
+    return day;
   }
 
   /**
@@ -828,17 +987,25 @@ public class MetricData implements Serializable {
    * @return the padded day data with linear trend removed
    */
   public double[] getDetrendedPaddedDayData(Channel channel) {
-    if (!hasChannelData(channel)) {
-      logger.warn(String
-          .format("== getPaddedDayData(): We have NO data for channel=[%s] date=[%s]\n", channel,
-              metadata.getDate()));
+    return getDetrendedPaddedDayData(channel, 0);
+  }
+
+  /**
+   * Return a linear-detrended full day of data assembled from a channel's DataSets decimated to a
+   * rate. Zero pad any gaps between DataSets.
+   *
+   * @param channel the channel
+   * @param rate    a rate from {@link #getDecimatedRate(Channel, Channel, double)}, 0 for the full
+   *                rate
+   * @return the padded day data with linear trend removed
+   */
+  public double[] getDetrendedPaddedDayData(Channel channel, double rate) {
+    double[] day = getPaddedDayData(channel, rate);
+    if (day == null) {
       return null;
     }
-    double[][] segments = getPaddedDayData(channel);
-
-    // now concatenate the segments and detrend the whole thing
-    double[] toDetrend = concatAll(segments);
-    return detrend(toDetrend);
+    // detrend the whole day
+    return detrend(day);
   }
 
   /**
@@ -955,11 +1122,13 @@ public class MetricData implements Serializable {
       String eastString = location + "-" + channelPrefix + "ED"; // e.g.,
       // "10-BHED"
 
-      Set<String> keys = data.keySet();
-      for (String key : keys) {
-        if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
-          northKey = key.replaceAll(lookupString, northString);
-          eastKey = key.replaceAll(lookupString, eastString);
+      synchronized (data) {
+        Set<String> keys = data.keySet();
+        for (String key : keys) {
+          if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
+            northKey = key.replaceAll(lookupString, northString);
+            eastKey = key.replaceAll(lookupString, eastString);
+          }
         }
       }
 
@@ -985,7 +1154,10 @@ public class MetricData implements Serializable {
 
       ArrayList<DataSet> dataList = new ArrayList<>();
       dataList.add(northDataSet);
-      data.put(northKey, dataList);
+      synchronized (data) {
+        data.put(northKey, dataList);
+        dataIndex = null;
+      }
 
       DataSet eastDataSet = new DataSet();
       eastDataSet.setNetwork(network);
@@ -1003,7 +1175,10 @@ public class MetricData implements Serializable {
 
       dataList = new ArrayList<>();
       dataList.add(eastDataSet);
-      data.put(eastKey, dataList);
+      synchronized (data) {
+        data.put(eastKey, dataList);
+        dataIndex = null;
+      }
     } catch (TimeseriesException | ChannelException | IllegalSampleRateException e) {
       throw new MetricException("Data rotation failed", e);
     }
@@ -1060,14 +1235,13 @@ public class MetricData implements Serializable {
     }
 
     double[][] channels = {null, null};
-    int[] channel;
 
     for (int i = 0; i < 2; i++) {
       for (DataSet set : dataLists.get(i)) {
         if (set.containsRange(largestBlock.getStartTime(), largestBlock.getEndTime())) {
           try {
-            channel = set.getSeries(largestBlock.getStartTime(), largestBlock.getEndTime());
-            channels[i] = intArrayToDoubleArray(channel);
+            channels[i] = set.cursor(largestBlock.getStartTime(), largestBlock.getEndTime())
+                .toDoubleArray();
           } catch (SequenceRangeException e) {
             logger.error("SequenceRangeException:", e);
           } catch (IndexOutOfBoundsException e) {
@@ -1094,21 +1268,6 @@ public class MetricData implements Serializable {
 
   }
 
-  /**
-   * Converts an array of type int into an array of type double.
-   *
-   * @param source The array of int values to be converted.
-   * @return An array of double values.
-   */
-  private static double[] intArrayToDoubleArray(int[] source) {
-    double[] dest = new double[source.length];
-    int length = source.length;
-    for (int i = 0; i < length; i++) {
-      dest[i] = source[i];
-    }
-    return dest;
-  }
-
   /**
    * Determine if the current digest computed for a channel or channelArray has changed from the
    * value stored in the database.
@@ -1319,4 +1478,65 @@ public class MetricData implements Serializable {
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * The keys of a table of channel data, found by location and channel through their
+   * {@link ChannelId}s instead of by searching every key. Keys that are not in the form of a
+   * ChannelId are still searched.
+   */
+  private static final class KeyIndex {
+
+    /**
+     * The first channel of each location-channel, such as "00-BHZ".
+     */
+    private final Map<String, ChannelId> channels = new HashMap<>();
+
+    private final List<String> others = new ArrayList<>();
+
+    private KeyIndex(Set<String> keys) {
+      for (String key : keys) {
+        ChannelId channelId = ChannelId.parse(key);
+        if (channelId == null) {
+          others.add(key);
+        } else {
+          channels.putIfAbsent(channelId.getLocation() + "-" + channelId.getChannel(), channelId);
+        }
+      }
+    }
+
+    /**
+     * @return the key of the channel, or null if there is none
+     */
+    private String find(String location, String name) {
+      String locationName = location + "-" + name;
+      ChannelId channelId = channels.get(locationName);
+      if (channelId != null) {
+        return channelId.toString();
+      }
+      for (String key : others) {
+        if (key.contains(locationName)) {
+          return key;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return true if there is a key for the channel at any location
+     */
+    private boolean hasChannel(String name) {
+      for (ChannelId channelId : channels.values()) {
+        if (channelId.getChannel().equals(name)) {
+          return true;
+        }
+      }
+      String channelName = "-" + name;
+      for (String key : others) {
+        if (key.contains(channelName)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -18,7 +18,10 @@
  */
 package asl.seedscan.metrics;
 
+import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import java.util.Enumeration;
+import java.util.List;
 
 public class MetricWrapper {
 
@@ -40,6 +43,23 @@ public class MetricWrapper {
     return arguments.get(name);
   }
 
+  /**
+   * @param stationMeta metadata of the station day being loaded
+   * @return channels the configured metric reads, or null for any channel
+   * @see Metric#getDataChannels(StationMeta)
+   */
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return arguments.getDataChannels(stationMeta);
+  }
+
+  /**
+   * @return true if the configured metric never reads samples
+   * @see Metric#readsHeadersOnly()
+   */
+  public boolean readsHeadersOnly() {
+    return arguments.readsHeadersOnly();
+  }
+
   public Metric getNewInstance() throws InstantiationException,
       IllegalAccessException, NoSuchFieldException {
 
@@ -1,6 +1,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import java.nio.ByteBuffer;
 import java.util.List;
 import org.slf4j.Logger;
@@ -21,6 +22,16 @@ public class MinimumTimingMetric extends Metric {
     return "MinimumTimingMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getContinuousChannels();
+  }
+
+  @Override
+  public boolean readsHeadersOnly() {
+    return true;
+  }
+
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
@@ -1,6 +1,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import asl.plotmaker.PlotMaker2;
 import asl.plotmaker.PlotMakerException;
 import asl.plotmaker.Trace;
@@ -29,6 +30,11 @@ public class NLNMDeviationMetric extends PowerBandMetric {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.metrics.NLNMDeviationMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "LH,BH,HH";
+
   /*
    * (non-Javadoc)
    *
@@ -39,6 +45,11 @@ public class NLNMDeviationMetric extends PowerBandMetric {
     return 1;
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), true, true);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -89,7 +100,7 @@ public class NLNMDeviationMetric extends PowerBandMetric {
       bands = get("channel-restriction");
 
       if (bands == null) {
-        bands = "LH,BH,HH";
+        bands = DEFAULT_BANDS;
       }
 
     } catch (NoSuchFieldException e) {
@@ -45,6 +45,20 @@ public abstract class PowerBandMetric extends Metric {
 
   protected abstract String getBaseName();
 
+  /**
+   * Decimated copies resolve periods down to about three times their sample interval, so a rate of
+   * four over the band's shortest period is enough. Plots show every period, so need the full
+   * rate.
+   */
+  @Override
+  public double getMinimumSampleRate() {
+    PowerBand band = getPowerBand();
+    if (getMakePlots() || band == null || band.getLow() <= 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return 4.0 / band.getLow();
+  }
+
   public final String getName() {
     PowerBand band = getPowerBand();
     // This gives a runtime error: I think it will left-justify by default
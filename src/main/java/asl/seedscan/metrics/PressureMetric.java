@@ -4,7 +4,9 @@ import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.PolynomialStage;
 import asl.metadata.meta_new.ResponseStage;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SampleCursor;
 import asl.util.Logging;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
@@ -30,6 +32,11 @@ public class PressureMetric extends Metric {
   private static final Logger logger =
       LoggerFactory.getLogger(asl.seedscan.metrics.PressureMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "LD";
+
   public PressureMetric() {
     super();
     addArgument("channel-restriction");
@@ -45,6 +52,11 @@ public class PressureMetric extends Metric {
     return "PressureMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), false, true);
+  }
+
   @Override
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", this.getStation(),
@@ -61,7 +73,7 @@ public class PressureMetric extends Metric {
     }
 
     if (bands == null) {
-      bands = "LD";
+      bands = DEFAULT_BANDS;
     }
 
     // Get all VM? channels in metadata to use for loop
@@ -154,8 +166,9 @@ public class PressureMetric extends Metric {
     int pointCount = 0;
 
     for (DataSet dataset : datasets) {
-      int[] intArray = dataset.getSeries();
-      for (int dataPoint : intArray) {
+      SampleCursor cursor = dataset.cursor();
+      while (cursor.hasNext()) {
+        int dataPoint = cursor.next();
         double polynomialAccumulator = 0.; // a0 + a1 * x + a2 * x^2, etc.
         // we expect there to be only a0 and a1 but won't enforce this as a constraint
         for (int k = 0; k < coefficients.length; ++k) {
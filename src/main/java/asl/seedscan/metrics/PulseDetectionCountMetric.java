@@ -1,11 +1,10 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
-import asl.metadata.ChannelKey;
 import asl.metadata.meta_new.ChannelMetaException;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData.PulseDetectionPoint;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +38,11 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
 
   private static final Logger logger = LoggerFactory.getLogger(PulseDetectionCountMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "LH,LN";
+
   private double coefficientThreshold = 0.7;
   private double amplitudeThreshold = 10;
 
@@ -59,6 +63,11 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
     return "PulseDetectionCountMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), true, true);
+  }
+
   @Override
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
@@ -69,7 +78,7 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
     } catch (NoSuchFieldException ignored) {
     }
     if (preSplitBands == null) {
-      preSplitBands = "LH,LN";
+      preSplitBands = DEFAULT_BANDS;
       logger.info("No band restriction set, using: {}", preSplitBands);
     }
 
@@ -89,14 +98,8 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
     } catch (NoSuchFieldException | NumberFormatException ignored) {
     }
 
-    if (pulseDetectionResultMap == null) {
-      pulseDetectionResultMap = new HashMap<>();
-    }
-
     // iterate over channels but ignore triggered and derived channels
     for (Channel channel : stationMeta.getChannelArray(preSplitBands, true, true)) {
-      ChannelKey key = new ChannelKey(channel);
-
       ByteBuffer digest = metricData.valueDigestChanged(channel, createIdentifier(channel),
           getForceUpdate());
       if (digest == null) {
@@ -106,16 +109,14 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
       }
 
       // only calculate a new result if the map is currently unpopulated
-      if (!pulseDetectionResultMap.containsKey(key)) {
-        try {
-          pulseDetectionResultMap.put(key, calculatePulseResults(channel));
-        } catch (ChannelMetaException e) {
-          logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
-          continue;
-        }
+      PulseDetectionData result;
+      try {
+        result = getPulseResults(channel);
+      } catch (ChannelMetaException e) {
+        logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
+        continue;
       }
 
-      PulseDetectionData result = pulseDetectionResultMap.get(key);
       logger.info("Number of non-contiguous potentially valid points: {}",
           result.correlationsWithAmplitude.size());
       int count = 0;
@@ -22,8 +22,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.math3.complex.Complex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,9 +62,10 @@ public abstract class PulseDetectionMetric extends Metric {
 
   /**
    * Map from ChannelKeys to the pulse detection data, a list of lists of paired correlations with
-   * their associated amplitudes.
+   * their associated amplitudes. Each channel is computed by the first metric to request it.
    */
-  protected Map<ChannelKey, PulseDetectionData> pulseDetectionResultMap;
+  protected ConcurrentMap<ChannelKey, CompletableFuture<PulseDetectionData>>
+      pulseDetectionResultMap;
 
   /**
    * Method to pass the pulse detection data from one implementing metric to another
@@ -69,7 +73,7 @@ public abstract class PulseDetectionMetric extends Metric {
    * @return Pulse Detection Data, a list of lists of amplitude-correlation pairs, see {@link
    * PulseDetectionData}
    */
-  public Map<ChannelKey, PulseDetectionData> getPulseDetectionData() {
+  public ConcurrentMap<ChannelKey, CompletableFuture<PulseDetectionData>> getPulseDetectionData() {
     return pulseDetectionResultMap;
   }
 
@@ -80,10 +84,36 @@ public abstract class PulseDetectionMetric extends Metric {
    *
    * @param cached Map of ChannelKeys to PulseDetectionData, see {@link PulseDetectionData}
    */
-  public void setPulseDetectionData(Map<ChannelKey, PulseDetectionData> cached) {
+  public void setPulseDetectionData(
+      ConcurrentMap<ChannelKey, CompletableFuture<PulseDetectionData>> cached) {
     pulseDetectionResultMap = cached;
   }
 
+  /**
+   * Get the pulse detection data for a channel, calculating it only if it is not already in the
+   * map. Metrics sharing the map will not calculate the same channel twice.
+   *
+   * @param channel Channel to get the pulse detection data for
+   * @return List of lists of amplitude-correlation pairs {@link PulseDetectionData}
+   * @throws ChannelMetaException if the channel's metadata could not be read
+   */
+  PulseDetectionData getPulseResults(Channel channel) throws ChannelMetaException {
+    if (pulseDetectionResultMap == null) {
+      pulseDetectionResultMap = new ConcurrentHashMap<>();
+    }
+    try {
+      return computeShared(pulseDetectionResultMap, new ChannelKey(channel),
+          () -> calculatePulseResults(channel)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof ChannelMetaException) {
+        throw (ChannelMetaException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
   /**
    * Calculate the pulse detection metric for a given channel according to the procedure stated in
    * the prior documentation.
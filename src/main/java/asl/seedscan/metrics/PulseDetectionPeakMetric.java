@@ -1,11 +1,10 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
-import asl.metadata.ChannelKey;
 import asl.metadata.meta_new.ChannelMetaException;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData.PulseDetectionPoint;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +24,11 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
 
   private static final Logger logger = LoggerFactory.getLogger(PulseDetectionPeakMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "LH,LN";
+
   /**
    * Conversion factor to return values of amplitude
    */
@@ -50,6 +54,11 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
     return "PulseDetectionPeakMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), true, true);
+  }
+
   @Override
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
@@ -60,14 +69,10 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
     } catch (NoSuchFieldException ignored) {
     }
     if (preSplitBands == null) {
-      preSplitBands = "LH,LN";
+      preSplitBands = DEFAULT_BANDS;
       logger.info("No band restriction set, using: {}", preSplitBands);
     }
 
-    if (pulseDetectionResultMap == null) {
-      pulseDetectionResultMap = new HashMap<>();
-    }
-
     try {
       coefficientThreshold = Double.parseDouble(get("coefficient-threshold"));
     } catch (NoSuchFieldException | NumberFormatException | NullPointerException ignored) {
@@ -81,8 +86,6 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
     // iterate over channels but ignore triggered and derived channels
     for (Channel channel : stationMeta.getChannelArray(preSplitBands,
         true, true)) {
-      ChannelKey key = new ChannelKey(channel);
-
       ByteBuffer digest = metricData.valueDigestChanged(channel, createIdentifier(channel),
           getForceUpdate());
       if (digest == null) {
@@ -92,18 +95,15 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
       }
 
       // only calculate a new result if the map is currently unpopulated
-      if (!pulseDetectionResultMap.containsKey(key)) {
-        try {
-          PulseDetectionData result = calculatePulseResults(channel);
-          pulseDetectionResultMap.put(key, result);
-        } catch (ChannelMetaException e) {
-          logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
-          continue;
-        }
+      PulseDetectionData result;
+      try {
+        result = getPulseResults(channel);
+      } catch (ChannelMetaException e) {
+        logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
+        continue;
       }
 
       double maxPeak = 0;
-      PulseDetectionData result = pulseDetectionResultMap.get(key);
       List<List<PulseDetectionPoint>> allData = result.correlationsWithAmplitude;
       for (List<PulseDetectionPoint> points : allData) {
         for (PulseDetectionPoint point : points) {
@@ -2,6 +2,7 @@ package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
 import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
 import asl.plotmaker.PlotMaker2;
 import asl.plotmaker.PlotMakerException;
 import asl.plotmaker.Trace;
@@ -32,6 +33,11 @@ public class StationDeviationMetric extends PowerBandMetric {
     return 2;
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getContinuousChannels();
+  }
+
   @Override
   public String getBaseName() {
     return "StationDeviationMetric";
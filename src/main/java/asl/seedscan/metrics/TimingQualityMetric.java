@@ -19,6 +19,7 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
 import java.nio.ByteBuffer;
 import java.util.List;
 import org.slf4j.Logger;
@@ -39,6 +40,16 @@ public class TimingQualityMetric extends Metric {
     return "TimingQualityMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getContinuousChannels();
+  }
+
+  @Override
+  public boolean readsHeadersOnly() {
+    return true;
+  }
+
   public void process() {
     logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
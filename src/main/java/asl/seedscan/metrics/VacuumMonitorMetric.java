@@ -3,7 +3,9 @@ package asl.seedscan.metrics;
 import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.ResponseStage;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SampleCursor;
 import asl.util.Logging;
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -26,6 +28,11 @@ public class VacuumMonitorMetric extends Metric {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.metrics.VacuumMonitorMetric.class);
 
+  /**
+   * Bands used when the channel-restriction argument is not set.
+   */
+  private static final String DEFAULT_BANDS = "VY";
+
   VacuumMonitorMetric() {
     super();
     addArgument("channel-restriction");
@@ -64,9 +71,9 @@ public class VacuumMonitorMetric extends Metric {
     int totalDataPoints = 0;
 
     for (DataSet dataset : datasets) {
-      int[] timeSeries = dataset.getSeries();
-      for (int value : timeSeries) {
-        totalPressure += value / totalGain;
+      SampleCursor cursor = dataset.cursor();
+      while (cursor.hasNext()) {
+        totalPressure += cursor.next() / totalGain;
       }
       totalDataPoints += dataset.getLength();
     }
@@ -82,6 +89,11 @@ public class VacuumMonitorMetric extends Metric {
     return "VacuumMonitorMetric";
   }
 
+  @Override
+  public List<Channel> getDataChannels(StationMeta stationMeta) {
+    return stationMeta.getChannelArray(getChannelRestriction(DEFAULT_BANDS), false, true);
+  }
+
   /**
    * @see asl.seedscan.metrics.Metric#getVersion()
    */
@@ -105,7 +117,7 @@ public class VacuumMonitorMetric extends Metric {
     }
 
     if (bands == null) {
-      bands = "VY";
+      bands = DEFAULT_BANDS;
     }
 
     // Get all VY? channels in metadata to use for loop
@@ -1,23 +1,30 @@
 package asl.seedscan.scanner;
 
+import asl.metadata.Channel;
 import asl.metadata.Station;
+import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.ArchivePath;
 import asl.seedscan.Global;
 import asl.seedscan.metrics.MetricData;
+import asl.seedscan.metrics.MetricWrapper;
+import asl.seedsplitter.ChannelFilter;
 import asl.seedsplitter.DataSet;
 import asl.seedsplitter.SeedSplitter;
+import asl.timeseries.Decimator;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
@@ -29,72 +36,31 @@ public abstract class DataLoader {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.scanner.DataLoader.class);
 
-  // Class to assign seedplitter object and seedsplitter table
-  private static class SplitterObject {
-
-    private final SeedSplitter splitter;
-    private final Hashtable<String, ArrayList<DataSet>> table;
-
-    private SplitterObject(SeedSplitter splitter, Hashtable<String, ArrayList<DataSet>> table) {
-      this.splitter = splitter;
-      this.table = table;
-    }
-  }
-
-  // Class to run Future task (seedplitter.doInBackground())
-  private static class Task implements Callable<Hashtable<String, ArrayList<DataSet>>> {
-
-    private final SeedSplitter splitter;
-
-    private Task(SeedSplitter splitter) {
-      this.splitter = splitter;
-    }
-
-    public Hashtable<String, ArrayList<DataSet>> call() throws Exception {
-      Hashtable<String, ArrayList<DataSet>> table = null;
-      table = splitter.doInBackground();
-      return table;
-    }
-  }
+  private static final long SECONDS_PER_DAY = 86400;
 
   /**
-   * SeedSplitter function: processing times greater than 3 min. will move to the next day
+   * Most samples a Steim2 compressed 4 byte word can contain.
    */
-  private static SplitterObject executeSplitter(File[] files, int timeout, LocalDate timestamp)
-      throws TimeoutException, ExecutionException, InterruptedException {
-    Hashtable<String, ArrayList<DataSet>> table = null;
-    SeedSplitter splitter = new SeedSplitter(files);
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Hashtable<String, ArrayList<DataSet>>> future = executor.submit(new Task(splitter));
-
-    try {
-      table = future.get(timeout, TimeUnit.SECONDS);
-    } catch (TimeoutException | ExecutionException | InterruptedException e) {
-      future.cancel(true);
-      throw e;
-    }
-    executor.shutdown();
-    executor.awaitTermination(300, TimeUnit.SECONDS);
+  private static final long MAX_SAMPLES_PER_WORD = 7;
 
-    return new SplitterObject(splitter, table);
-  }
+  /**
+   * Rough number of double copies of a day's samples metrics hold while processing.
+   */
+  private static final long WORKING_COPIES = 4;
 
+  /**
+   * Rough bytes a decoded sample takes in compressed blocks.
+   */
+  private static final long COMPRESSED_SAMPLE_BYTES = 2;
 
   /**
-   * Return a MetricData object for the station + timestamp
+   * Find the non-empty seed files for a station day.
    *
    * @param date    The date to load
    * @param station Station to load
-   * @param manager ScanManager that contains metadata and database for the MetricData
-   * @return complete MetricData object for station day.
+   * @return the day's seed files or null if there are none.
    */
-  public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager) {
-
-    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
-    if (stationMeta == null) {
-      return null;
-    }
-
+  private static File[] getDayFiles(LocalDate date, Station station) {
     ArchivePath pathEngine = new ArchivePath(date.atStartOfDay(), station);
     String path = pathEngine.makePath(Global.getDataDir());
     File dir = new File(path);
@@ -134,14 +100,255 @@ public abstract class DataLoader {
       return null;
     }
 
-    logger.info(dir.getPath() + " contains " + files.length + " files.");
+    return files;
+  }
 
-    // execute SeedSplitter process (180 sec timer will be issued)
+  /**
+   * Estimate the heap a StationScan needs for a day. The scan holds the decoded samples of its day
+   * and the following day, and its metrics make several double precision working copies of a day.
+   * <p>
+   * The number of samples is taken from the sample rates of the station's channels, capped by the
+   * most samples the day's files could hold. Steim2 packs at most 7 samples in a 4 byte word.
+   *
+   * @param date    The date to be scanned
+   * @param station Station to be scanned
+   * @param manager ScanManager that contains the metadata
+   * @return estimated bytes, 0 if there is no metadata for the day.
+   */
+  public static long estimateFootprint(LocalDate date, Station station, ScanManager manager) {
+    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+    if (stationMeta == null) {
+      return 0;
+    }
+    if (readsHeadersOnly(Global.getMetrics())) {
+      // No samples are decoded or held
+      return 0;
+    }
+
+    long footprint = 0;
+    for (LocalDate day : new LocalDate[]{date, date.plusDays(1)}) {
+      long samples = estimateSamples(day, station, stationMeta);
+      footprint += samples * heldSampleBytes();
+      if (day.equals(date)) {
+        footprint += samples * Double.BYTES * WORKING_COPIES;
+      }
+    }
+    return footprint;
+  }
+
+  /**
+   * Estimate the heap a day loaded ahead of its scan holds while it waits to be taken, its decoded
+   * samples.
+   *
+   * @param date    The date to be loaded
+   * @param station Station to be loaded
+   * @param manager ScanManager that contains the metadata
+   * @return estimated bytes, 0 if there is no metadata for the day.
+   */
+  public static long estimatePrefetchFootprint(LocalDate date, Station station,
+      ScanManager manager) {
+    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+    if (stationMeta == null || readsHeadersOnly(Global.getMetrics())) {
+      return 0;
+    }
+    return estimateSamples(date, station, stationMeta) * heldSampleBytes();
+  }
+
+  /**
+   * @return samples of a day given by its channels' rates, capped by what its files could hold
+   */
+  private static long estimateSamples(LocalDate day, Station station, StationMeta stationMeta) {
+    double ratesSum = 0;
+    for (ChannelMeta channelMeta : stationMeta.getChannelHashTable().values()) {
+      ratesSum += channelMeta.getSampleRate();
+    }
+    long metadataSamples = (long) (ratesSum * SECONDS_PER_DAY);
+
+    long fileBytes = 0;
+    File[] files = getDayFiles(day, station);
+    if (files != null) {
+      for (File file : files) {
+        fileBytes += file.length();
+      }
+    }
+    return Math.min(metadataSamples, fileBytes / 4 * MAX_SAMPLES_PER_WORD);
+  }
+
+  /**
+   * @return heap bytes a decoded sample takes, ints unless compressed and none when off heap
+   */
+  private static long heldSampleBytes() {
+    if (Global.getOffHeapSamples()) {
+      return 0;
+    }
+    return Global.getCompressedSamples() ? COMPRESSED_SAMPLE_BYTES : Integer.BYTES;
+  }
+
+  /**
+   * Return a MetricData object for the station + timestamp
+   *
+   * @param date    The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains metadata and database for the MetricData
+   * @return complete MetricData object for station day.
+   */
+  public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager) {
+
+    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+    if (stationMeta == null) {
+      return null;
+    }
+
+    File[] files = getDayFiles(date, station);
+    if (files == null) {
+      return null;
+    }
+
+    ChannelFilter filter = getChannelFilter(stationMeta, Global.getMetrics());
+    boolean decode = !readsHeadersOnly(Global.getMetrics());
+    DayVariant variant = new DayVariant(filter, decode);
+    long fingerprint = DayCache.fingerprint(files);
+
+    DayCache cache = manager.getDayCache();
+    DiskCache diskCache = manager.getDiskCache();
+    DayCache.Key key = new DayCache.Key(station, date, variant, fingerprint);
+    DayCache.DecodedDay day = cache.acquire(key, () -> {
+      if (diskCache != null) {
+        DayCache.DecodedDay cached = diskCache.read(station, date, variant, files);
+        if (cached != null) {
+          return moveOffHeap(decimate(cached));
+        }
+      }
+      DayCache.DecodedDay decoded = decodeDay(files, filter, decode, date, station);
+      if (decoded != null && diskCache != null) {
+        diskCache.write(station, date, variant, fingerprint, files, decoded);
+      }
+      // Copies are made from the assembled channels, and are not cached on disk
+      return moveOffHeap(decimate(decoded));
+    });
+    if (day == null) {
+      return null;
+    }
+
+    // The table is copied since MetricData adds rotated channels to it.
+    MetricData metricData = new MetricData(manager.database, new Hashtable<>(day.getTable()),
+        day.getQualityTable(), stationMeta, day.getCalibrationTable());
+    metricData.setDecimatedData(day.getDecimated());
+    metricData.setReleaseAction(() -> cache.release(day));
+    return metricData;
+  }
+
+  /**
+   * Make the decimated copies of a day's channels at the configured rates.
+   *
+   * @param day the decoded day, or null
+   * @return the day
+   */
+  private static DayCache.DecodedDay decimate(DayCache.DecodedDay day) {
+    double[] rates = Global.getDecimatedRates();
+    if (day == null || day.getTable() == null || rates.length == 0) {
+      return day;
+    }
+    long start = System.nanoTime();
+    day.setDecimated(Decimator.decimate(day.getTable(), rates));
+    logger.debug("Decimated to {} Hz in [{} ms]", Arrays.toString(rates),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return day;
+  }
+
+  /**
+   * Move the samples of a day off the heap if configured to. Samples that can not be moved stay on
+   * the heap.
+   *
+   * @param day the decoded day, or null
+   * @return the day
+   */
+  private static DayCache.DecodedDay moveOffHeap(DayCache.DecodedDay day) {
+    if (day == null || !Global.getOffHeapSamples()) {
+      return day;
+    }
+    Path directory = (Global.getOffHeapDir() == null) ? null : Paths.get(Global.getOffHeapDir());
+    try {
+      day.moveOffHeap(directory);
+    } catch (IOException | RuntimeException | OutOfMemoryError e) {
+      // Direct buffers are limited by -XX:MaxDirectMemorySize rather than the heap
+      logger.warn("Unable to move samples off the heap, keeping them on it", e);
+    }
+    return day;
+  }
+
+  /**
+   * Find the channels of a station day that the configured metrics read.
+   *
+   * @param stationMeta metadata of the station day
+   * @param metrics     the configured metrics
+   * @return filter for the channels, or null if every channel must be decoded.
+   */
+  static ChannelFilter getChannelFilter(StationMeta stationMeta, List<MetricWrapper> metrics) {
+    if (!Global.getSelectiveDecoding() || metrics == null || metrics.isEmpty()) {
+      return null;
+    }
+    Set<String> channels = new TreeSet<>();
+    for (MetricWrapper metric : metrics) {
+      List<Channel> metricChannels = metric.getDataChannels(stationMeta);
+      if (metricChannels == null) {
+        // The metric may read any channel
+        return null;
+      }
+      for (Channel channel : metricChannels) {
+        channels.add(channel.toString());
+      }
+    }
+    return new ChannelFilter(channels);
+  }
+
+  /**
+   * Find whether the configured metrics only read record headers, so days can be loaded without
+   * decoding samples.
+   *
+   * @param metrics the configured metrics
+   * @return true if there are metrics and none of them reads samples
+   */
+  static boolean readsHeadersOnly(List<MetricWrapper> metrics) {
+    if (metrics == null || metrics.isEmpty()) {
+      return false;
+    }
+    for (MetricWrapper metric : metrics) {
+      if (!metric.readsHeadersOnly()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Split a station day's files into its channels' data.
+   *
+   * @param files   The day's seed files
+   * @param filter  Channels to decode, null for every channel
+   * @param decode  False to read record headers alone
+   * @param date    The date being loaded
+   * @param station Station being loaded
+   * @return the decoded day or null if the files could not be split.
+   */
+  private static DayCache.DecodedDay decodeDay(File[] files, ChannelFilter filter,
+      boolean decode, LocalDate date, Station station) {
+    logger.info(files[0].getParent() + " contains " + files.length + " files.");
+    if (!decode) {
+      logger.info("Every metric reads record headers alone, samples are not decoded");
+    }
+
+    // Runs on this thread, the files are read on the shared SplitterExecutor.
     try {
-      int timeout = 180;
-      SplitterObject splitObj = executeSplitter(files, timeout, date);
-      SeedSplitter splitter = splitObj.splitter;
-      Hashtable<String, ArrayList<DataSet>> table = splitObj.table;
+      SeedSplitter splitter = new SeedSplitter(files, filter, decode);
+      Hashtable<String, ArrayList<DataSet>> table = splitter.doInBackground();
+      if (splitter.getSkippedRecords() > 0) {
+        logger.info("Skipped [{}] records, [{} KB], of channels no metric reads for [{}]:[{}],"
+                + " saving about [{} ms] of decoding", splitter.getSkippedRecords(),
+            splitter.getSkippedBytes() / 1024, station,
+            date.format(DateTimeFormatter.ISO_ORDINAL_DATE),
+            TimeUnit.NANOSECONDS.toMillis(splitter.getEstimatedSavedNanos()));
+      }
 
       Hashtable<String, ArrayList<Integer>> qualityTable = null;
       qualityTable = splitter.getQualityTable();
@@ -149,18 +356,19 @@ public abstract class DataLoader {
       Hashtable<String, ArrayList<Blockette320>> calibrationTable = null;
       calibrationTable = splitter.getCalTable();
 
-      return new MetricData(manager.database, table, qualityTable, stationMeta, calibrationTable);
+      return new DayCache.DecodedDay(table, qualityTable, calibrationTable);
+    } catch (RuntimeException e) {
+      logger.error("== Exception splitting files: Skipping to next day for [{}]:[{}]\n", station,
+          date.format(DateTimeFormatter.ISO_ORDINAL_DATE), e);
+      return null;
     } catch (TimeoutException e) {
       logger.error("== TimeoutException: Skipping to next day for [{}]:[{}]\n", station,
           date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
       return null;
-    } catch (ExecutionException e) {
-      logger.error("== ExecutionException: Skipping to next day for [{}]:[{}]\n", station,
-          date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
-      return null;
     } catch (InterruptedException e) {
       logger.error("== InterruptedException: Skipping to next day for [{}]:[{}]\n", station,
           date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+      Thread.currentThread().interrupt();
       return null;
     }
   }
@@ -0,0 +1,295 @@
+package asl.seedscan.scanner;
+
+import asl.metadata.Station;
+import asl.seedscan.metrics.MetricData;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads upcoming station days in the background so their files are read and decoded while the
+ * current day's metrics are computing. Prefetched data is handed to whichever worker takes the day,
+ * or loaded on the calling thread if it was never prefetched.
+ * <p>
+ * Prefetches are keyed by database scan, so two scans of the same station never share MetricData.
+ * The number of days loaded ahead is bounded, requests beyond the bound are dropped and the day is
+ * loaded when it is taken.
+ */
+public class DataPrefetcher {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.DataPrefetcher.class);
+
+  /**
+   * Loads a station day, returning null if there is no data.
+   */
+  @FunctionalInterface
+  public interface DayLoader {
+
+    MetricData load(LocalDate date, Station station);
+  }
+
+  /**
+   * Charges days loaded ahead against the heap budget. The worker that takes a day is already
+   * admitted with it counted, so the reservation only covers the time the day waits.
+   */
+  public interface Reservations {
+
+    /**
+     * @return bytes reserved for the day, or a negative number if there is no room to load it ahead
+     */
+    long reserve(LocalDate date, Station station);
+
+    void release(long bytes);
+  }
+
+  /**
+   * Reserves nothing, for when there is no heap budget to charge.
+   */
+  private static final Reservations UNBOUNDED = new Reservations() {
+    @Override
+    public long reserve(LocalDate date, Station station) {
+      return 0;
+    }
+
+    @Override
+    public void release(long bytes) {
+    }
+  };
+
+  /**
+   * A day being loaded in the background.
+   */
+  private static final class Prefetch {
+
+    private final CompletableFuture<MetricData> future;
+
+    /**
+     * Bytes reserved for the day, released once by {@link #unreserve(Reservations)}.
+     */
+    private long reserved;
+
+    /**
+     * Set once the day will never be taken, so the load is skipped if it has not started.
+     */
+    private volatile boolean discarded = false;
+
+    private Prefetch(DayLoader loader, LocalDate date, Station station, ExecutorService executor,
+        long reserved) {
+      this.reserved = reserved;
+      future = CompletableFuture
+          .supplyAsync(() -> discarded ? null : loader.load(date, station), executor);
+    }
+
+    /**
+     * Release the day's data and its reservation whenever it finishes loading.
+     */
+    private void discard(Reservations reservations) {
+      discarded = true;
+      future.whenComplete((data, e) -> {
+        if (data != null) {
+          data.release();
+        }
+        unreserve(reservations);
+      });
+    }
+
+    private synchronized void unreserve(Reservations reservations) {
+      if (reserved > 0) {
+        reservations.release(reserved);
+      }
+      reserved = 0;
+    }
+  }
+
+  private final DayLoader loader;
+
+  private final Reservations reservations;
+
+  private final int maxPending;
+
+  private final ExecutorService executor;
+
+  /**
+   * Days submitted for loading and not yet taken, by database scan.
+   */
+  private final Map<UUID, Map<LocalDate, Prefetch>> pending = new HashMap<>();
+
+  private int pendingCount = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long refused = 0;
+
+  /**
+   * @param loader     loads a single station day
+   * @param threads    number of days loaded at once
+   * @param maxPending most days that may be loaded ahead and not yet taken
+   */
+  public DataPrefetcher(DayLoader loader, int threads, int maxPending) {
+    this(loader, UNBOUNDED, threads, maxPending);
+  }
+
+  /**
+   * @param loader       loads a single station day
+   * @param reservations charges days loaded ahead against the heap budget
+   * @param threads      number of days loaded at once
+   * @param maxPending   most days that may be loaded ahead and not yet taken
+   */
+  public DataPrefetcher(DayLoader loader, Reservations reservations, int threads,
+      int maxPending) {
+    this.loader = loader;
+    this.reservations = reservations;
+    this.maxPending = maxPending;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "DataPrefetcher-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Start loading a day in the background unless it is already loading, the lookahead bound has
+   * been reached or there is no room in the heap budget for it.
+   *
+   * @param scanID  the database scan the day belongs to
+   * @param date    the day to load
+   * @param station the station to load
+   */
+  public synchronized void prefetch(UUID scanID, LocalDate date, Station station) {
+    Map<LocalDate, Prefetch> days = pending.computeIfAbsent(scanID, k -> new HashMap<>());
+    if (days.containsKey(date)) {
+      return;
+    }
+    if (pendingCount >= maxPending) {
+      logger.debug("Prefetch limit reached, not prefetching Station={} Day={}", station, date);
+      if (days.isEmpty()) {
+        pending.remove(scanID);
+      }
+      return;
+    }
+    long reserved = reservations.reserve(date, station);
+    if (reserved < 0) {
+      logger.debug("No room in the heap budget, not prefetching Station={} Day={}", station, date);
+      refused++;
+      if (days.isEmpty()) {
+        pending.remove(scanID);
+      }
+      return;
+    }
+    days.put(date, new Prefetch(loader, date, station, executor, reserved));
+    pendingCount++;
+  }
+
+  /**
+   * Take a day's data, waiting for it if it is still being prefetched, or loading it on this thread
+   * if it was not prefetched.
+   *
+   * @param scanID  the database scan the day belongs to
+   * @param date    the day to load
+   * @param station the station to load
+   * @return the day's data or null if there is none
+   */
+  public MetricData take(UUID scanID, LocalDate date, Station station) {
+    Prefetch prefetch;
+    synchronized (this) {
+      prefetch = remove(scanID, date);
+      if (prefetch == null) {
+        misses++;
+      } else {
+        hits++;
+      }
+    }
+
+    if (prefetch != null) {
+      try {
+        MetricData data = prefetch.future.get();
+        // The taking worker was admitted with this day counted
+        prefetch.unreserve(reservations);
+        return data;
+      } catch (InterruptedException e) {
+        prefetch.discard(reservations);
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        prefetch.unreserve(reservations);
+        logger.error("Prefetch failed for Station={} Day={}, loading again", station, date,
+            e.getCause());
+      }
+    }
+    return loader.load(date, station);
+  }
+
+  /**
+   * Drop every prefetched day of a scan that will not continue, such as after an error.
+   *
+   * @param scanID the database scan
+   */
+  public synchronized void discard(UUID scanID) {
+    Map<LocalDate, Prefetch> days = pending.remove(scanID);
+    if (days != null) {
+      for (Prefetch prefetch : days.values()) {
+        prefetch.discard(reservations);
+      }
+      pendingCount -= days.size();
+    }
+  }
+
+  private Prefetch remove(UUID scanID, LocalDate date) {
+    Map<LocalDate, Prefetch> days = pending.get(scanID);
+    if (days == null) {
+      return null;
+    }
+    Prefetch prefetch = days.remove(date);
+    if (prefetch != null) {
+      pendingCount--;
+    }
+    if (days.isEmpty()) {
+      pending.remove(scanID);
+    }
+    return prefetch;
+  }
+
+  /**
+   * @return number of days loaded ahead and not yet taken
+   */
+  public synchronized int getPendingCount() {
+    return pendingCount;
+  }
+
+  /**
+   * @return number of days taken that had been prefetched
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of days taken that had to be loaded on the calling thread
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return number of days not prefetched because there was no room in the heap budget
+   */
+  public synchronized long getRefused() {
+    return refused;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,380 @@
+package asl.seedscan.scanner;
+
+import asl.metadata.Station;
+import asl.seedsplitter.DataSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import seed.Blockette320;
+
+/**
+ * Process wide cache of decoded station days. Scans that need the same day, whether as the day
+ * being scanned, its neighbours or from an overlapping scan, share one decoded copy.
+ * <p>
+ * Days are reference counted. A day is only evicted once nothing references it, least recently
+ * used first, when the unreferenced days no longer fit in the cache's size. Days are keyed by the
+ * fingerprint of their files, so a day whose files change is decoded again.
+ */
+public class DayCache {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.DayCache.class);
+
+  /**
+   * Identifies a station day and the version of its files.
+   */
+  public static final class Key {
+
+    private final String network;
+    private final String station;
+    private final LocalDate date;
+    private final DayVariant variant;
+    private final long fingerprint;
+
+    /**
+     * @param station     the station
+     * @param date        the day
+     * @param variant     how the day is loaded
+     * @param fingerprint {@link #fingerprint(File[])} of the day's files
+     */
+    public Key(Station station, LocalDate date, DayVariant variant, long fingerprint) {
+      this.network = station.getNetwork();
+      this.station = station.getStation();
+      this.date = date;
+      this.variant = variant;
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return fingerprint == key.fingerprint && Objects.equals(network, key.network)
+          && Objects.equals(station, key.station) && Objects.equals(date, key.date)
+          && Objects.equals(variant, key.variant);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(network, station, date, variant, fingerprint);
+    }
+
+    @Override
+    public String toString() {
+      return network + "_" + station + " " + date;
+    }
+  }
+
+  /**
+   * The decoded contents of a station day's files. Shared between scans and must not be modified.
+   */
+  public static final class DecodedDay {
+
+    private final Hashtable<String, ArrayList<DataSet>> table;
+    private final Hashtable<String, ArrayList<Integer>> qualityTable;
+    private final Hashtable<String, ArrayList<Blockette320>> calibrationTable;
+    private long bytes;
+    private Key key;
+
+    /**
+     * Decimated copies of table by rate, see {@link asl.timeseries.Decimator}.
+     */
+    private Map<Double, Hashtable<String, ArrayList<DataSet>>> decimated = Collections.emptyMap();
+
+    public DecodedDay(Hashtable<String, ArrayList<DataSet>> table,
+        Hashtable<String, ArrayList<Integer>> qualityTable,
+        Hashtable<String, ArrayList<Blockette320>> calibrationTable) {
+      this.table = table;
+      this.qualityTable = qualityTable;
+      this.calibrationTable = calibrationTable;
+
+      long bytes = 0;
+      if (table != null) {
+        for (ArrayList<DataSet> dataSets : table.values()) {
+          for (DataSet dataSet : dataSets) {
+            if (dataSet.isDecoded()) {
+              bytes += dataSet.getStorageBytes();
+            }
+          }
+        }
+      }
+      this.bytes = bytes;
+    }
+
+    public Hashtable<String, ArrayList<DataSet>> getTable() {
+      return table;
+    }
+
+    public Hashtable<String, ArrayList<Integer>> getQualityTable() {
+      return qualityTable;
+    }
+
+    public Hashtable<String, ArrayList<Blockette320>> getCalibrationTable() {
+      return calibrationTable;
+    }
+
+    /**
+     * Set the decimated copies of the day's channels, before the day is shared. They are counted
+     * in the day's bytes.
+     *
+     * @param decimated the copies by rate, then by the same keys as the table
+     */
+    public void setDecimated(Map<Double, Hashtable<String, ArrayList<DataSet>>> decimated) {
+      this.decimated = Collections.unmodifiableMap(decimated);
+      for (Hashtable<String, ArrayList<DataSet>> copies : decimated.values()) {
+        for (ArrayList<DataSet> dataSets : copies.values()) {
+          for (DataSet dataSet : dataSets) {
+            bytes += dataSet.getStorageBytes();
+          }
+        }
+      }
+    }
+
+    /**
+     * @return decimated copies of the table by rate, empty if none were made
+     */
+    public Map<Double, Hashtable<String, ArrayList<DataSet>>> getDecimated() {
+      return decimated;
+    }
+
+    /**
+     * @return estimated bytes held by the decoded samples
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return the DataSets of the table and of its decimated copies
+     */
+    private List<DataSet> getDataSets() {
+      List<DataSet> all = new ArrayList<>();
+      if (table != null) {
+        table.values().forEach(all::addAll);
+      }
+      for (Hashtable<String, ArrayList<DataSet>> copies : decimated.values()) {
+        copies.values().forEach(all::addAll);
+      }
+      return all;
+    }
+
+    /**
+     * Move the decoded samples off the heap, before the day is shared.
+     *
+     * @param directory directory to memory map them from, null for direct buffers
+     * @throws IOException if a scratch file can not be created or mapped
+     */
+    public void moveOffHeap(Path directory) throws IOException {
+      for (DataSet dataSet : getDataSets()) {
+        dataSet.moveOffHeap(directory);
+      }
+    }
+
+    /**
+     * Free the decoded samples, at once if they are off the heap. Called once the day is evicted
+     * and nothing references it.
+     */
+    void release() {
+      for (DataSet dataSet : getDataSets()) {
+        dataSet.release();
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final CompletableFuture<DecodedDay> loading = new CompletableFuture<>();
+    private DecodedDay day;
+    private int references = 0;
+  }
+
+  private final long maxBytes;
+
+  /**
+   * Entries in least recently used order.
+   */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long bytesHeld = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long evictions = 0;
+
+  /**
+   * @param maxBytes bytes of unreferenced days that may be kept for reuse
+   */
+  public DayCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    logger.info("Station day cache size = [{} MB]", maxBytes >> 20);
+  }
+
+  /**
+   * Fingerprint a day's files by name, size and modification time.
+   *
+   * @param files the day's files
+   * @return a fingerprint that changes if any file is added, removed or modified
+   */
+  public static long fingerprint(File[] files) {
+    File[] sorted = files.clone();
+    Arrays.sort(sorted, Comparator.comparing(File::getName));
+    long fingerprint = 1;
+    for (File file : sorted) {
+      fingerprint = 31 * fingerprint + file.getName().hashCode();
+      fingerprint = 31 * fingerprint + file.length();
+      fingerprint = 31 * fingerprint + file.lastModified();
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Get a decoded day, decoding it if it is not cached. If another thread is already decoding the
+   * day this waits for it instead of decoding it again. Every day returned must be passed to
+   * {@link #release(DecodedDay)} once it is no longer used.
+   *
+   * @param key     the station day
+   * @param decoder decodes the day, returning null if it could not be decoded
+   * @return the decoded day or null if the decoder failed
+   */
+  public DecodedDay acquire(Key key, Supplier<DecodedDay> decoder) {
+    Entry entry;
+    boolean decodeHere = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        entries.put(key, entry);
+        decodeHere = true;
+        misses++;
+      } else {
+        hits++;
+      }
+      entry.references++;
+    }
+
+    if (!decodeHere) {
+      return entry.loading.join();
+    }
+
+    DecodedDay day = null;
+    try {
+      day = decoder.get();
+    } finally {
+      synchronized (this) {
+        if (day == null) {
+          // Failures are not cached, the next request tries again.
+          entries.remove(key);
+        } else {
+          day.key = key;
+          entry.day = day;
+          bytesHeld += day.bytes;
+          evict();
+        }
+      }
+      entry.loading.complete(day);
+    }
+    return day;
+  }
+
+  /**
+   * Release a day returned by {@link #acquire(Key, Supplier)}. It may be evicted once nothing else
+   * references it.
+   *
+   * @param day the decoded day
+   */
+  public synchronized void release(DecodedDay day) {
+    Entry entry = entries.get(day.key);
+    if (entry == null || entry.day != day || entry.references == 0) {
+      return;
+    }
+    entry.references--;
+    if (entry.references == 0) {
+      evict();
+    }
+  }
+
+  /**
+   * Evict unreferenced days, least recently used first, until the cache fits. Referenced days are
+   * in use so evicting them would free nothing.
+   */
+  private void evict() {
+    long limit = maxBytes + referencedBytes();
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (bytesHeld > limit && iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (entry.references == 0 && entry.day != null) {
+        iterator.remove();
+        bytesHeld -= entry.day.bytes;
+        evictions++;
+        // No scan references the day, so its off heap samples can be freed now
+        entry.day.release();
+      }
+    }
+  }
+
+  private long referencedBytes() {
+    long bytes = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.references > 0 && entry.day != null) {
+        bytes += entry.day.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return estimated bytes of every decoded day the cache holds, referenced or not
+   */
+  public synchronized long getBytesHeld() {
+    return bytesHeld;
+  }
+
+  /**
+   * @return fraction of requests served without decoding, 0 if there have been none
+   */
+  public synchronized double getHitRate() {
+    long requests = hits + misses;
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return number of days held
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+}
@@ -0,0 +1,470 @@
+package asl.seedscan.scanner;
+
+import asl.seedscan.Global;
+import asl.seedscan.scanner.DayCache.DecodedDay;
+import asl.seedsplitter.DataSet;
+import asl.seedsplitter.IllegalSampleRateException;
+import asl.seedsplitter.SampleCursor;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import seed.Blockette320;
+
+/**
+ * The on disk form of a decoded station day, as kept by the {@link DiskCache}.
+ * <p>
+ * A header names the seed files the day was decoded from with their sizes, modification times and
+ * CRC32 digests, and the variant of the day, the full set of channels decoded and whether samples
+ * were, which tells days decoded for different channels or from record headers alone apart. Each channel's contiguous segments follow column by column:
+ * the start times, sample rates, lengths and decoded flags of every segment, then one column with
+ * the samples of them all. Samples are stored as zig-zag encoded variable length differences, so
+ * the small steps between neighbouring samples of seismic data take one or two bytes. The quality
+ * and calibration tables come next and a CRC32 of everything before it ends the file.
+ */
+final class DayFile {
+
+  /**
+   * "SSDC", SeedScan Day Cache.
+   */
+  private static final int MAGIC = 0x53534443;
+
+  private static final int VERSION = 2;
+
+  /**
+   * Samples decoded or encoded at a time.
+   */
+  private static final int CHUNK = 4096;
+
+  /**
+   * A seed file a day was decoded from.
+   */
+  static final class Source {
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final long digest;
+
+    Source(String path, long size, long lastModified, long digest) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    /**
+     * Describe a seed file, reading it to compute its digest.
+     *
+     * @param file the seed file
+     * @return the file's path, size, modification time and digest
+     * @throws IOException if the file can not be read
+     */
+    static Source of(File file) throws IOException {
+      long size = file.length();
+      long lastModified = file.lastModified();
+      return new Source(file.getAbsolutePath(), size, lastModified, digest(file));
+    }
+
+    /**
+     * @param file a seed file
+     * @return CRC32 of the file's contents
+     * @throws IOException if the file can not be read
+     */
+    static long digest(File file) throws IOException {
+      CRC32 crc = new CRC32();
+      byte[] buffer = new byte[65536];
+      try (InputStream in = new FileInputStream(file)) {
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          crc.update(buffer, 0, read);
+        }
+      }
+      return crc.getValue();
+    }
+
+    /**
+     * Compare a seed file to this source by name, size and modification time. The digest is not
+     * computed, see {@link DiskCacheVerifier} for that.
+     *
+     * @param file a seed file
+     * @return true if the file looks unchanged
+     */
+    boolean matches(File file) {
+      return new File(path).getName().equals(file.getName()) && size == file.length()
+          && lastModified == file.lastModified();
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    long getDigest() {
+      return digest;
+    }
+  }
+
+  private final DayVariant variant;
+  private final List<Source> sources;
+  private final DecodedDay day;
+
+  private DayFile(DayVariant variant, List<Source> sources, DecodedDay day) {
+    this.variant = variant;
+    this.sources = sources;
+    this.day = day;
+  }
+
+  DayVariant getVariant() {
+    return variant;
+  }
+
+  /**
+   * @return the seed files the day was decoded from, sorted by name
+   */
+  List<Source> getSources() {
+    return sources;
+  }
+
+  /**
+   * @return the decoded day, null if only the header was read
+   */
+  DecodedDay getDay() {
+    return day;
+  }
+
+  /**
+   * Check whether the day was decoded from these files, comparing their names, sizes and
+   * modification times.
+   *
+   * @param files the day's current seed files, sorted by name
+   * @return true if every file matches a source and there are no others
+   */
+  boolean matches(File[] files) {
+    if (files.length != sources.size()) {
+      return false;
+    }
+    for (int i = 0; i < files.length; i++) {
+      if (!sources.get(i).matches(files[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write a decoded day.
+   *
+   * @param path    file to write
+   * @param variant variant of the day
+   * @param sources the seed files the day was decoded from, sorted by name
+   * @param day     the decoded day
+   * @throws IOException if the file can not be written
+   */
+  static void write(Path path, DayVariant variant, List<Source> sources, DecodedDay day)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), 65536), crc))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      variant.write(out);
+      out.writeInt(sources.size());
+      for (Source source : sources) {
+        writeString(out, source.path);
+        out.writeLong(source.size);
+        out.writeLong(source.lastModified);
+        out.writeLong(source.digest);
+      }
+
+      writeChannels(out, day.getTable());
+
+      Hashtable<String, ArrayList<Integer>> qualityTable = day.getQualityTable();
+      out.writeInt(qualityTable == null ? -1 : qualityTable.size());
+      if (qualityTable != null) {
+        for (Map.Entry<String, ArrayList<Integer>> entry : qualityTable.entrySet()) {
+          writeString(out, entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (Integer quality : entry.getValue()) {
+            out.writeInt(quality);
+          }
+        }
+      }
+
+      Hashtable<String, ArrayList<Blockette320>> calibrationTable = day.getCalibrationTable();
+      out.writeInt(calibrationTable == null ? -1 : calibrationTable.size());
+      if (calibrationTable != null) {
+        for (Map.Entry<String, ArrayList<Blockette320>> entry : calibrationTable.entrySet()) {
+          writeString(out, entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (Blockette320 blockette : entry.getValue()) {
+            byte[] bytes = blockette.getBytes();
+            out.writeShort(bytes.length);
+            out.write(bytes);
+          }
+        }
+      }
+
+      // Not part of the checksum it records
+      out.writeLong(crc.getValue());
+    }
+  }
+
+  private static void writeChannels(DataOutputStream out,
+      Hashtable<String, ArrayList<DataSet>> table) throws IOException {
+    out.writeInt(table.size());
+    byte[] buffer = new byte[CHUNK * 5];
+    for (Map.Entry<String, ArrayList<DataSet>> entry : table.entrySet()) {
+      List<DataSet> dataSets = entry.getValue();
+      writeString(out, entry.getKey());
+      // The segments of a channel share its codes
+      DataSet first = dataSets.isEmpty() ? new DataSet() : dataSets.get(0);
+      writeString(out, first.getNetwork());
+      writeString(out, first.getStation());
+      writeString(out, first.getLocation());
+      writeString(out, first.getChannel());
+
+      out.writeInt(dataSets.size());
+      for (DataSet dataSet : dataSets) {
+        out.writeLong(dataSet.getStartTime());
+      }
+      for (DataSet dataSet : dataSets) {
+        out.writeDouble(dataSet.getSampleRate());
+      }
+      for (DataSet dataSet : dataSets) {
+        out.writeInt(dataSet.getLength());
+      }
+      for (DataSet dataSet : dataSets) {
+        out.writeBoolean(dataSet.isDecoded());
+      }
+
+      for (DataSet dataSet : dataSets) {
+        if (!dataSet.isDecoded() || dataSet.getLength() == 0) {
+          continue;
+        }
+        SampleCursor cursor = dataSet.cursor();
+        int previous = 0;
+        int length = 0;
+        while (cursor.hasNext()) {
+          int sample = cursor.next();
+          int difference = sample - previous;
+          previous = sample;
+          int zigzag = (difference << 1) ^ (difference >> 31);
+          while ((zigzag & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+          }
+          buffer[length++] = (byte) zigzag;
+          if (length > buffer.length - 5) {
+            out.write(buffer, 0, length);
+            length = 0;
+          }
+        }
+        out.write(buffer, 0, length);
+      }
+    }
+  }
+
+  private static void writeString(OutputStream out, String string) throws IOException {
+    byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+    out.write(bytes.length >>> 8);
+    out.write(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a file written by {@link #write(Path, DayVariant, List, DecodedDay)}.
+   *
+   * @param bytes    contents of the file
+   * @param contents false to read the header alone
+   * @return the file's header and, if requested, the decoded day
+   * @throws IOException if the file is not a day file, or its checksum does not match when the
+   *                     contents are read
+   */
+  static DayFile read(byte[] bytes, boolean contents) throws IOException {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a day file");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported day file version " + version);
+      }
+      DayVariant variant = DayVariant.read(buffer);
+      int sourceCount = count(buffer);
+      List<Source> sources = new ArrayList<>(sourceCount);
+      for (int i = 0; i < sourceCount; i++) {
+        sources.add(new Source(readString(buffer), buffer.getLong(), buffer.getLong(),
+            buffer.getLong()));
+      }
+      if (!contents) {
+        return new DayFile(variant, Collections.unmodifiableList(sources), null);
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length - Long.BYTES);
+      if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES)
+          .getLong()) {
+        throw new IOException("Day file checksum does not match");
+      }
+
+      Hashtable<String, ArrayList<DataSet>> table = readChannels(buffer);
+
+      Hashtable<String, ArrayList<Integer>> qualityTable = null;
+      int qualityCount = buffer.getInt();
+      if (qualityCount >= 0) {
+        qualityTable = new Hashtable<>();
+        for (int i = 0; i < qualityCount; i++) {
+          String key = readString(buffer);
+          int size = count(buffer);
+          ArrayList<Integer> qualities = new ArrayList<>(size);
+          for (int j = 0; j < size; j++) {
+            qualities.add(buffer.getInt());
+          }
+          qualityTable.put(key, qualities);
+        }
+      }
+
+      Hashtable<String, ArrayList<Blockette320>> calibrationTable = null;
+      int calibrationCount = buffer.getInt();
+      if (calibrationCount >= 0) {
+        calibrationTable = new Hashtable<>();
+        for (int i = 0; i < calibrationCount; i++) {
+          String key = readString(buffer);
+          int size = count(buffer);
+          ArrayList<Blockette320> blockettes = new ArrayList<>(size);
+          for (int j = 0; j < size; j++) {
+            byte[] blockette = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(blockette);
+            blockettes.add(new Blockette320(blockette));
+          }
+          calibrationTable.put(key, blockettes);
+        }
+      }
+
+      if (buffer.remaining() != Long.BYTES) {
+        throw new IOException("Day file has trailing bytes");
+      }
+      return new DayFile(variant, Collections.unmodifiableList(sources),
+          new DecodedDay(table, qualityTable, calibrationTable));
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Day file is truncated or corrupt", e);
+    }
+  }
+
+  private static Hashtable<String, ArrayList<DataSet>> readChannels(ByteBuffer buffer)
+      throws IOException {
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    int channelCount = count(buffer);
+    int[] chunk = new int[CHUNK];
+    for (int c = 0; c < channelCount; c++) {
+      String key = readString(buffer);
+      String network = readString(buffer);
+      String station = readString(buffer);
+      String location = readString(buffer);
+      String channel = readString(buffer);
+
+      int size = count(buffer);
+      ArrayList<DataSet> dataSets = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        DataSet dataSet = new DataSet();
+        dataSet.setNetwork(network);
+        dataSet.setStation(station);
+        dataSet.setLocation(location);
+        dataSet.setChannel(channel);
+        dataSet.setStartTime(buffer.getLong());
+        dataSet.setCompressed(Global.getCompressedSamples());
+        dataSets.add(dataSet);
+      }
+      for (DataSet dataSet : dataSets) {
+        try {
+          dataSet.setSampleRate(buffer.getDouble());
+        } catch (IllegalSampleRateException e) {
+          throw new IOException("Day file holds an illegal sample rate", e);
+        }
+      }
+      int[] lengths = new int[size];
+      for (int i = 0; i < size; i++) {
+        lengths[i] = buffer.getInt();
+        if (lengths[i] < 0) {
+          throw new IOException("Day file holds a negative length");
+        }
+      }
+      boolean[] decoded = new boolean[size];
+      for (int i = 0; i < size; i++) {
+        decoded[i] = buffer.get() != 0;
+      }
+
+      for (int i = 0; i < size; i++) {
+        DataSet dataSet = dataSets.get(i);
+        if (!decoded[i]) {
+          dataSet.extendUndecoded(lengths[i]);
+          continue;
+        }
+        int previous = 0;
+        int remaining = lengths[i];
+        while (remaining > 0) {
+          int count = Math.min(CHUNK, remaining);
+          for (int j = 0; j < count; j++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+              b = buffer.get();
+              zigzag |= (b & 0x7F) << shift;
+              shift += 7;
+            } while (b < 0 && shift < 35);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            chunk[j] = previous;
+          }
+          dataSet.extend(chunk, 0, count);
+          remaining -= count;
+        }
+      }
+      table.put(key, dataSets);
+    }
+    return table;
+  }
+
+  private static int count(ByteBuffer buffer) throws IOException {
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IOException("Day file holds an impossible count " + count);
+    }
+    return count;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getShort() & 0xFFFF;
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+        StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return string;
+  }
+}
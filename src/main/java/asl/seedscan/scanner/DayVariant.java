@@ -0,0 +1,125 @@
+package asl.seedscan.scanner;
+
+import asl.seedsplitter.ChannelFilter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * How a station day is loaded, which channels are decoded and whether their samples are. Days
+ * loaded differently are cached apart, and are told apart by comparing the whole channel set
+ * rather than a hash of it.
+ */
+public final class DayVariant {
+
+  private final ChannelFilter filter;
+  private final boolean decode;
+
+  /**
+   * @param filter channels decoded, null for every channel
+   * @param decode false if only record headers are read
+   */
+  public DayVariant(ChannelFilter filter, boolean decode) {
+    this.filter = filter;
+    this.decode = decode;
+  }
+
+  /**
+   * @return channels decoded, null for every channel
+   */
+  public ChannelFilter getFilter() {
+    return filter;
+  }
+
+  /**
+   * @return false if only record headers are read
+   */
+  public boolean isDecode() {
+    return decode;
+  }
+
+  /**
+   * A hash of the variant that is the same in every process, used to name files. Different
+   * variants may share it, the full variant is kept in the file and checked when it is read.
+   *
+   * @return 64 bit FNV-1a hash of the variant
+   */
+  long getId() {
+    long hash = 0xcbf29ce484222325L;
+    hash = (hash ^ (decode ? 1 : 0)) * 0x100000001b3L;
+    long[] codes = (filter == null) ? null : filter.getCodes();
+    hash = (hash ^ (codes == null ? -1 : codes.length)) * 0x100000001b3L;
+    if (codes != null) {
+      for (long code : codes) {
+        hash = (hash ^ code) * 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Write the variant, see {@link #read(ByteBuffer)}.
+   *
+   * @param out the stream
+   * @throws IOException if it can not be written
+   */
+  void write(DataOutputStream out) throws IOException {
+    out.writeBoolean(decode);
+    if (filter == null) {
+      out.writeInt(-1);
+      return;
+    }
+    long[] codes = filter.getCodes();
+    out.writeInt(codes.length);
+    for (long code : codes) {
+      out.writeLong(code);
+    }
+  }
+
+  /**
+   * Read a variant written by {@link #write(DataOutputStream)}.
+   *
+   * @param buffer the buffer, positioned at the variant
+   * @return the variant
+   * @throws IOException if the channel count is impossible
+   */
+  static DayVariant read(ByteBuffer buffer) throws IOException {
+    boolean decode = buffer.get() != 0;
+    int count = buffer.getInt();
+    if (count == -1) {
+      return new DayVariant(null, decode);
+    }
+    if (count < 0 || count > buffer.remaining() / Long.BYTES) {
+      throw new IOException("Day file holds an impossible count " + count);
+    }
+    long[] codes = new long[count];
+    for (int i = 0; i < count; i++) {
+      codes[i] = buffer.getLong();
+    }
+    return new DayVariant(ChannelFilter.fromCodes(codes), decode);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    DayVariant variant = (DayVariant) o;
+    return decode == variant.decode && Objects.equals(filter, variant.filter);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(filter, decode);
+  }
+
+  @Override
+  public String toString() {
+    return (filter == null ? "every channel" : filter.size() + " channels")
+        + (decode ? "" : ", headers only");
+  }
+}
@@ -0,0 +1,292 @@
+package asl.seedscan.scanner;
+
+import asl.metadata.Station;
+import asl.seedscan.scanner.DayCache.DecodedDay;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of decoded station days on disk, so rescans and forced updates of days whose seed files
+ * have not changed skip reading, decoding and merging them. Days are written in the format of
+ * {@link DayFile}, one file per station day and variant.
+ * <p>
+ * A cached day is only used while the day's seed files have the same names, sizes and
+ * modification times as when it was decoded, otherwise it is decoded again and replaced. Damaged
+ * files fail their checksum and are deleted. Once the cache grows past its size the least recently
+ * used days are deleted first. {@link DiskCacheVerifier} checks every cached day against the
+ * digests of its seed files.
+ * <p>
+ * Files are written under a temporary name and renamed into place, so several SeedScan instances
+ * may share a cache directory.
+ */
+public class DiskCache {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.DiskCache.class);
+
+  static final String SUFFIX = ".day";
+
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final Path directory;
+
+  private final long maxBytes;
+
+  private long bytesHeld;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long stale = 0;
+
+  private long evictions = 0;
+
+  /**
+   * @param directory directory to cache days in, created if it does not exist
+   * @param maxBytes  bytes the cached days may use
+   * @throws IOException if the directory can not be created or read
+   */
+  public DiskCache(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    // Left behind by writes that did not finish. Recent ones may belong to another instance.
+    long abandoned = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+    for (Path path : list(directory, TEMPORARY_SUFFIX)) {
+      if (path.toFile().lastModified() < abandoned) {
+        Files.deleteIfExists(path);
+      }
+    }
+    this.bytesHeld = size(list(directory, SUFFIX));
+    logger.info("Disk cache [{}] holds [{} MB] of [{} MB]", directory, bytesHeld >> 20,
+        maxBytes >> 20);
+  }
+
+  /**
+   * List the files under a directory with a suffix.
+   *
+   * @param directory the directory
+   * @param suffix    file name suffix
+   * @return matching files
+   * @throws IOException if the directory can not be read
+   */
+  static List<Path> list(Path directory, String suffix) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths.filter(path -> path.getFileName().toString().endsWith(suffix))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static long size(List<Path> paths) {
+    long bytes = 0;
+    for (Path path : paths) {
+      bytes += path.toFile().length();
+    }
+    return bytes;
+  }
+
+  /**
+   * @param station the station
+   * @param date    the day
+   * @param variant variant of the day
+   * @return file the day is cached in. Variants whose ids collide share it, and replace each other.
+   */
+  Path path(Station station, LocalDate date, DayVariant variant) {
+    return directory.resolve(station.getNetwork() + "_" + station.getStation()).resolve(
+        String.format("%04d_%03d_%016x%s", date.getYear(), date.getDayOfYear(), variant.getId(),
+            SUFFIX));
+  }
+
+  /**
+   * Read a cached day.
+   *
+   * @param station the station
+   * @param date    the day
+   * @param variant variant of the day, which channels were decoded and whether samples were
+   * @param files   the day's current seed files
+   * @return the cached day, or null if it is not cached, was decoded from files that have since
+   * changed or for another variant, or can not be read
+   */
+  public DecodedDay read(Station station, LocalDate date, DayVariant variant, File[] files) {
+    Path path = path(station, date, variant);
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(path);
+    } catch (NoSuchFileException e) {
+      count(false);
+      return null;
+    } catch (IOException e) {
+      logger.warn("Unable to read cached day [{}]", path, e);
+      count(false);
+      return null;
+    }
+
+    try {
+      DayFile header = DayFile.read(bytes, false);
+      if (!header.getVariant().equals(variant) || !header.matches(sorted(files))) {
+        synchronized (this) {
+          stale++;
+        }
+        count(false);
+        return null;
+      }
+      DecodedDay day = DayFile.read(bytes, true).getDay();
+      // Kept in least recently used order by modification time
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+      count(true);
+      return day;
+    } catch (IOException e) {
+      logger.warn("Deleting unreadable cached day [{}]: {}", path, e.getMessage());
+      delete(path);
+      count(false);
+      return null;
+    }
+  }
+
+  /**
+   * Cache a decoded day. Nothing is written if the day's files changed while it was decoded, or
+   * the day is larger than the cache. Failures to write are logged, the day is simply not cached.
+   *
+   * @param station     the station
+   * @param date        the day
+   * @param variant     variant of the day
+   * @param fingerprint {@link DayCache#fingerprint(File[])} of the files taken before they were
+   *                    decoded
+   * @param files       the seed files the day was decoded from
+   * @param day         the decoded day
+   */
+  public void write(Station station, LocalDate date, DayVariant variant, long fingerprint,
+      File[] files, DecodedDay day) {
+    Path path = path(station, date, variant);
+    Path temporary = null;
+    try {
+      List<DayFile.Source> sources = new ArrayList<>(files.length);
+      for (File file : sorted(files)) {
+        sources.add(DayFile.Source.of(file));
+      }
+      if (DayCache.fingerprint(files) != fingerprint) {
+        logger.info("Not caching [{}]:[{}] on disk, its files changed while it was decoded",
+            station, date);
+        return;
+      }
+
+      Files.createDirectories(path.getParent());
+      temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(),
+          TEMPORARY_SUFFIX);
+      DayFile.write(temporary, variant, sources, day);
+      long size = Files.size(temporary);
+      if (size > maxBytes) {
+        return;
+      }
+      long replaced = Files.exists(path) ? Files.size(path) : 0;
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      temporary = null;
+      synchronized (this) {
+        bytesHeld += size - replaced;
+        if (bytesHeld > maxBytes) {
+          evict();
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to cache [{}]:[{}] on disk", station, date, e);
+    } finally {
+      if (temporary != null) {
+        delete(temporary);
+      }
+    }
+  }
+
+  /**
+   * Delete the least recently used days until the cache fits. The directory is listed again, since
+   * other instances may share it.
+   */
+  private void evict() throws IOException {
+    List<Path> paths = list(directory, SUFFIX);
+    long[] lastModified = new long[paths.size()];
+    Integer[] order = new Integer[paths.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+      lastModified[i] = paths.get(i).toFile().lastModified();
+    }
+    Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+
+    bytesHeld = size(paths);
+    for (int i = 0; i < order.length && bytesHeld > maxBytes; i++) {
+      Path path = paths.get(order[i]);
+      long size = path.toFile().length();
+      if (delete(path)) {
+        bytesHeld -= size;
+        evictions++;
+      }
+    }
+  }
+
+  private static boolean delete(Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Unable to delete [{}]", path, e);
+      return false;
+    }
+  }
+
+  private static File[] sorted(File[] files) {
+    File[] sorted = files.clone();
+    Arrays.sort(sorted, Comparator.comparing(File::getName));
+    return sorted;
+  }
+
+  private synchronized void count(boolean hit) {
+    if (hit) {
+      hits++;
+    } else {
+      misses++;
+    }
+  }
+
+  /**
+   * @return bytes of the cached days
+   */
+  public synchronized long getBytesHeld() {
+    return bytesHeld;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return days not cached, including those that were stale
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return days whose files changed since they were cached
+   */
+  public synchronized long getStale() {
+    return stale;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+}
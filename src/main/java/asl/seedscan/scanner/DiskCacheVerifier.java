@@ -0,0 +1,121 @@
+package asl.seedscan.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the days of a {@link DiskCache} directory. Every cached day is read in full, so its
+ * checksum and structure are checked, and the seed files it was decoded from are read again and
+ * compared by size, modification time and digest. A file rewritten with the same size within the
+ * same second is only caught here, SeedScan itself does not compute digests when reading a cached
+ * day.
+ * <p>
+ * Usage: DiskCacheVerifier &lt;cache directory&gt; [--delete]
+ * <p>
+ * With --delete, cached days that are corrupt or stale are deleted. Exits with status 1 if any
+ * were found.
+ */
+public class DiskCacheVerifier {
+
+  /**
+   * Number of cached days found in each state.
+   */
+  static final class Result {
+
+    int valid = 0;
+    int stale = 0;
+    int corrupt = 0;
+
+    boolean isValid() {
+      return stale == 0 && corrupt == 0;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2
+        || (args.length == 2 && !args[1].equals("--delete"))) {
+      System.err.println("Usage: DiskCacheVerifier <cache directory> [--delete]");
+      System.exit(2);
+    }
+    Result result = verify(Paths.get(args[0]), args.length == 2, System.out);
+    System.out.printf("%d valid, %d stale, %d corrupt%n", result.valid, result.stale,
+        result.corrupt);
+    System.exit(result.isValid() ? 0 : 1);
+  }
+
+  /**
+   * Check every day in a cache directory.
+   *
+   * @param directory the cache directory
+   * @param delete    true to delete days that are stale or corrupt
+   * @param out       a line is printed here for each day that is stale or corrupt
+   * @return number of days found in each state
+   * @throws IOException if the directory can not be listed
+   */
+  static Result verify(Path directory, boolean delete, PrintStream out) throws IOException {
+    Result result = new Result();
+    List<Path> paths = DiskCache.list(directory, DiskCache.SUFFIX);
+    Collections.sort(paths);
+    for (Path path : paths) {
+      String problem;
+      boolean corrupt = false;
+      try {
+        problem = check(DayFile.read(Files.readAllBytes(path), true));
+      } catch (IOException e) {
+        problem = e.getMessage();
+        corrupt = true;
+      }
+
+      if (problem == null) {
+        result.valid++;
+        continue;
+      }
+      if (corrupt) {
+        result.corrupt++;
+        out.println("CORRUPT " + path + ": " + problem);
+      } else {
+        result.stale++;
+        out.println("STALE " + path + ": " + problem);
+      }
+      if (delete) {
+        Files.deleteIfExists(path);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Compare a day's sources to the seed files as they are now.
+   *
+   * @param dayFile a cached day
+   * @return why the day is stale, or null if its sources are unchanged
+   */
+  private static String check(DayFile dayFile) {
+    for (DayFile.Source source : dayFile.getSources()) {
+      File file = new File(source.getPath());
+      if (!file.isFile()) {
+        return source.getPath() + " no longer exists";
+      }
+      if (file.length() != source.getSize()) {
+        return source.getPath() + " changed size";
+      }
+      if (file.lastModified() != source.getLastModified()) {
+        return source.getPath() + " was modified";
+      }
+      try {
+        if (DayFile.Source.digest(file) != source.getDigest()) {
+          return source.getPath() + " changed contents";
+        }
+      } catch (IOException e) {
+        return source.getPath() + " can not be read: " + e.getMessage();
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,169 @@
+package asl.seedscan.scanner;
+
+import asl.seedscan.scanner.scanworker.ScanWorker;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for memory hungry workers. A worker is only admitted if its estimated footprint
+ * fits in the remaining heap budget. Workers that do not fit are deferred and handed back, in
+ * priority order, once enough memory has been released.
+ * <p>
+ * A worker larger than the entire budget is admitted when nothing else is admitted, so it cannot be
+ * starved.
+ */
+public class HeapBudget {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.HeapBudget.class);
+
+  private final long budgetBytes;
+
+  private long admittedBytes = 0;
+
+  private long rejections = 0;
+
+  /**
+   * Workers currently holding part of the budget and their estimates.
+   */
+  private final Map<ScanWorker, Long> admitted = new HashMap<>();
+
+  /**
+   * Workers waiting for memory. Ordered the same way as the ScanManager's work queue.
+   */
+  private final PriorityQueue<ScanWorker> deferred = new PriorityQueue<>();
+
+  private final Map<ScanWorker, Long> deferredBytes = new HashMap<>();
+
+  /**
+   * @param budgetBytes total bytes that may be admitted at once
+   */
+  public HeapBudget(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+    logger.info("Heap budget for scans = [{} MB]", budgetBytes >> 20);
+  }
+
+  /**
+   * Try to admit a worker. A worker that is already admitted is always accepted again.
+   *
+   * @param worker the worker requesting memory
+   * @param bytes  estimated footprint of the worker
+   * @return true if the worker may run now, false if it has been deferred. Deferred workers are
+   * returned by {@link #release(ScanWorker)} once they fit, already admitted.
+   */
+  public synchronized boolean admit(ScanWorker worker, long bytes) {
+    if (admitted.containsKey(worker)) {
+      return true;
+    }
+    // Don't jump ahead of deferred workers with a higher priority
+    if (fits(bytes) && (deferred.isEmpty() || deferred.peek().compareTo(worker) >= 0)) {
+      reserve(worker, bytes);
+      return true;
+    }
+    if (!deferredBytes.containsKey(worker)) {
+      deferred.add(worker);
+      deferredBytes.put(worker, bytes);
+      rejections++;
+      logger.debug("Deferred worker needing [{} MB], [{} MB] of [{} MB] admitted", bytes >> 20,
+          admittedBytes >> 20, budgetBytes >> 20);
+    }
+    return false;
+  }
+
+  /**
+   * Release the memory held by a worker. Workers that were not admitted are ignored.
+   *
+   * @param worker the finished worker
+   * @return deferred workers that now fit. These are admitted and must be resubmitted.
+   */
+  public synchronized List<ScanWorker> release(ScanWorker worker) {
+    List<ScanWorker> readmitted = new ArrayList<>();
+    Long bytes = admitted.remove(worker);
+    if (bytes == null) {
+      return readmitted;
+    }
+    admittedBytes -= bytes;
+    readmit(readmitted);
+    return readmitted;
+  }
+
+  /**
+   * Reserve memory for data loaded ahead of the worker that will use it. Unlike
+   * {@link #admit(ScanWorker, long)} this never exceeds the budget and never takes memory deferred
+   * workers are waiting for.
+   *
+   * @param bytes estimated bytes of the data
+   * @return true if the memory was reserved, false if the data should not be loaded ahead
+   */
+  public synchronized boolean reserve(long bytes) {
+    if (!deferred.isEmpty() || admittedBytes + bytes > budgetBytes) {
+      return false;
+    }
+    admittedBytes += bytes;
+    return true;
+  }
+
+  /**
+   * Release memory reserved by {@link #reserve(long)}.
+   *
+   * @param bytes the bytes reserved
+   * @return deferred workers that now fit. These are admitted and must be resubmitted.
+   */
+  public synchronized List<ScanWorker> unreserve(long bytes) {
+    List<ScanWorker> readmitted = new ArrayList<>();
+    admittedBytes -= bytes;
+    readmit(readmitted);
+    return readmitted;
+  }
+
+  private void readmit(List<ScanWorker> readmitted) {
+    while (!deferred.isEmpty() && fits(deferredBytes.get(deferred.peek()))) {
+      ScanWorker next = deferred.poll();
+      reserve(next, deferredBytes.remove(next));
+      readmitted.add(next);
+    }
+  }
+
+  private boolean fits(long bytes) {
+    return admitted.isEmpty() || admittedBytes + bytes <= budgetBytes;
+  }
+
+  private void reserve(ScanWorker worker, long bytes) {
+    if (bytes > budgetBytes) {
+      logger.warn("Admitting worker needing [{} MB] which exceeds the heap budget of [{} MB]",
+          bytes >> 20, budgetBytes >> 20);
+    }
+    admitted.put(worker, bytes);
+    admittedBytes += bytes;
+  }
+
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  /**
+   * @return bytes currently admitted
+   */
+  public synchronized long getAdmittedBytes() {
+    return admittedBytes;
+  }
+
+  /**
+   * @return number of workers waiting for memory
+   */
+  public synchronized int getQueueDepth() {
+    return deferred.size();
+  }
+
+  /**
+   * @return number of workers that have been deferred since startup
+   */
+  public synchronized long getRejections() {
+    return rejections;
+  }
+}
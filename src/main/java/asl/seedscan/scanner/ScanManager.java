@@ -1,13 +1,16 @@
 package asl.seedscan.scanner;
 
 import asl.metadata.MetaGenerator;
+import asl.metadata.Station;
+import asl.seedscan.Global;
 import asl.seedscan.database.MetricDatabase;
 import asl.seedscan.scanner.scanworker.RetrieveScan;
 import asl.seedscan.scanner.scanworker.ScanWorker;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import asl.seedsplitter.SlabPool;
+import asl.timeseries.CrossPower;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,12 +27,37 @@ public class ScanManager {
   private Thread scanThread;
 
   /**
-   * Pool of threads for scanning. Must remain private to restrict how it is used. Because it is
-   * implemented with a PriorityBlockingQueue its tasks must also implement Comparable.
+   * Woken when the database reports new scans, so they are retrieved without waiting for the next
+   * poll.
    */
-  private final ThreadPoolExecutor threadPool;
+  private final Object scanSignal = new Object();
+  private boolean scansAvailable = false;
 
-  private final BlockingQueue<Runnable> workQueue;
+  /**
+   * Pool of threads for scanning. Must remain private to restrict how it is used. Keeps each
+   * station's workers on the same thread where possible while preserving their priority order.
+   */
+  private final StationAffinityExecutor threadPool;
+
+  /**
+   * Limits the station days held in memory at once.
+   */
+  private final HeapBudget heapBudget;
+
+  /**
+   * Loads upcoming station days while earlier days are computing.
+   */
+  private final DataPrefetcher prefetcher;
+
+  /**
+   * Decoded station days shared by every scan.
+   */
+  private final DayCache dayCache;
+
+  /**
+   * Decoded station days kept on disk between runs, null if not configured.
+   */
+  private final DiskCache diskCache;
 
   public ScanManager(MetricDatabase database, MetaGenerator metaGenerator) {
     this.database = database;
@@ -41,10 +69,44 @@ public class ScanManager {
     }
     logger.info("Number of Threads to Use = [{}]", threadCount);
 
-    workQueue = new PriorityBlockingQueue<>();
+    this.threadPool = new StationAffinityExecutor("ScanWorker", threadCount);
+
+    this.heapBudget = new HeapBudget(Global.getHeapBudget());
+
+    this.dayCache = new DayCache(Global.getDayCacheSize());
+    SlabPool.setMaxBytes(Global.getBlockPoolSize());
+
+    DiskCache diskCache = null;
+    if (Global.getDiskCacheDir() != null) {
+      try {
+        diskCache = new DiskCache(Paths.get(Global.getDiskCacheDir()), Global.getDiskCacheSize());
+      } catch (IOException e) {
+        logger.error("Unable to use disk cache [{}], days are decoded from their files",
+            Global.getDiskCacheDir(), e);
+      }
+    }
+    this.diskCache = diskCache;
+
+    int prefetchDays = Global.getPrefetchDays();
+    logger.info("Number of Days to Prefetch = [{}]", prefetchDays);
+    // Days loaded ahead are charged against the heap budget until their scan takes them
+    DataPrefetcher.Reservations reservations = new DataPrefetcher.Reservations() {
+      @Override
+      public long reserve(LocalDate date, Station station) {
+        long bytes = DataLoader.estimatePrefetchFootprint(date, station, ScanManager.this);
+        return heapBudget.reserve(bytes) ? bytes : -1;
+      }
 
-    this.threadPool = new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.MINUTES,
-        workQueue);
+      @Override
+      public void release(long bytes) {
+        for (ScanWorker readmitted : heapBudget.unreserve(bytes)) {
+          addTask(readmitted);
+        }
+      }
+    };
+    this.prefetcher = new DataPrefetcher(
+        (date, station) -> DataLoader.getMetricData(date, station, this), reservations,
+        threadCount, threadCount * prefetchDays);
   }
 
   /**
@@ -66,25 +128,42 @@ public class ScanManager {
       running = true;
     }
 
-    //Start full set of threads going.
-    for (int i = 0; i <= this.threadPool.getCorePoolSize(); i++) {
-      threadPool.execute(new RetrieveScan(this));
-    }
+    //One retriever claims enough scans for every idle thread.
+    threadPool.execute(new RetrieveScan(this));
 
     while (running) {
-      if (workQueue.isEmpty()) {
-        //Since queue is empty add a retrieving scan.
+      if (getQueueDepth() == 0 && getDeferredCount() == 0) {
+        //Since queue is empty and nothing waits for memory add a retrieving scan.
         threadPool.execute(new RetrieveScan(this));
       }
       try {
-        /*We want to wait a little bit so as to not overload the db with getScan requests.*/
-        Thread.sleep(queryWaitTime);
+        /*We want to wait a little bit so as to not overload the db with getScan requests.
+         * Polling remains as a fallback if notifications are missed.*/
+        boolean notified;
+        synchronized (scanSignal) {
+          if (!scansAvailable) {
+            scanSignal.wait(queryWaitTime);
+          }
+          notified = scansAvailable;
+          scansAvailable = false;
+        }
+        if (notified) {
+          threadPool.execute(new RetrieveScan(this));
+        }
+        logger.info("Queue depth = [{}], Waiting for memory = [{}], Admitted = [{} MB] of [{} MB],"
+                + " Rejections = [{}]", getQueueDepth(), getDeferredCount(),
+            heapBudget.getAdmittedBytes() >> 20, heapBudget.getBudgetBytes() >> 20,
+            heapBudget.getRejections());
+        // Notifications wake the loop once per batch of inserts, so the rest only when debugging
+        if (logger.isDebugEnabled()) {
+          logStatistics();
+        }
         /*Update incase available processors changes.
          * This is not a constant, but can vary with the OS according to Oracle Javadoc.
          */
-        if (Runtime.getRuntime().availableProcessors() > this.threadPool.getCorePoolSize()
+        if (Runtime.getRuntime().availableProcessors() > this.threadPool.getThreadCount()
             && Runtime.getRuntime().availableProcessors() > 0) {
-          this.threadPool.setCorePoolSize(Runtime.getRuntime().availableProcessors());
+          this.threadPool.setThreadCount(Runtime.getRuntime().availableProcessors());
         }
       } catch (InterruptedException e) {
         logger.info("Interrupt in ScanManager");
@@ -95,14 +174,116 @@ public class ScanManager {
     scanThread = null;
   }
 
+  /**
+   * Log the prefetcher, cache, sample pool and thread pool statistics.
+   */
+  private void logStatistics() {
+    logger.debug("Prefetched days waiting = [{}], Hits = [{}], Misses = [{}],"
+            + " Refused for heap = [{}]", prefetcher.getPendingCount(), prefetcher.getHits(),
+        prefetcher.getMisses(), prefetcher.getRefused());
+    logger.debug("Cached days = [{}], Held = [{} MB], Hit rate = [{}], Evictions = [{}]",
+        dayCache.size(), dayCache.getBytesHeld() >> 20,
+        String.format("%.2f", dayCache.getHitRate()), dayCache.getEvictions());
+    if (diskCache != null) {
+      logger.debug("Disk cache held = [{} MB], Hits = [{}], Misses = [{}], Stale = [{}],"
+              + " Evictions = [{}]", diskCache.getBytesHeld() >> 20, diskCache.getHits(),
+          diskCache.getMisses(), diskCache.getStale(), diskCache.getEvictions());
+    }
+    logger.debug("Sample blocks live = [{}], Pooled = [{}], Allocated = [{}], Reused = [{}],"
+            + " Dropped = [{}]", SlabPool.getLive(), SlabPool.getPooled(),
+        SlabPool.getAllocated(), SlabPool.getReused(), SlabPool.getDropped());
+    logger.debug("Cross power samples transformed = [{}], At full rate would be = [{}]",
+        CrossPower.getTransformedSamples(), CrossPower.getFullRateSamples());
+    logger.debug("Workers run on their station's thread = [{}], Stolen = [{}]",
+        threadPool.getLocalRuns(), threadPool.getSteals());
+  }
+
+  /**
+   * Signal that new scans have been added to the database. The scan loop retrieves them immediately
+   * instead of waiting for its next poll.
+   */
+  public void notifyScansAvailable() {
+    synchronized (scanSignal) {
+      scansAvailable = true;
+      scanSignal.notifyAll();
+    }
+  }
+
   public void addTask(ScanWorker task) {
-    /* We cannot use .submit() because of issues when wrapping the Runnable
-     * into a FutureTask. Our PriorityQueue requires our task to be
-     * Comparable while FutureTasks are not.
-     */
     threadPool.execute(task);
   }
 
+  /**
+   * Ask for a worker's estimated memory to be reserved before it loads data. If it does not fit it
+   * is deferred and will be added back to the queue once enough memory has been released.
+   *
+   * @param worker the worker that is about to load data
+   * @param bytes  estimated footprint in bytes
+   * @return true if the worker may continue, false if it must stop and wait to be re-run
+   */
+  public boolean admit(ScanWorker worker, long bytes) {
+    return heapBudget.admit(worker, bytes);
+  }
+
+  /**
+   * Release the memory reserved for a worker, re-queuing any deferred workers that now fit.
+   *
+   * @param worker the worker that has released its data
+   */
+  public void release(ScanWorker worker) {
+    for (ScanWorker readmitted : heapBudget.release(worker)) {
+      addTask(readmitted);
+    }
+  }
+
+  public HeapBudget getHeapBudget() {
+    return heapBudget;
+  }
+
+  public DataPrefetcher getPrefetcher() {
+    return prefetcher;
+  }
+
+  public DayCache getDayCache() {
+    return dayCache;
+  }
+
+  /**
+   * @return the disk cache of decoded days, null if there is none
+   */
+  public DiskCache getDiskCache() {
+    return diskCache;
+  }
+
+  /**
+   * @return number of threads scanning
+   */
+  public int getThreadCount() {
+    return threadPool.getThreadCount();
+  }
+
+  /**
+   * @return number of tasks waiting in the thread pool's queues
+   */
+  public int getQueueDepth() {
+    return threadPool.getQueueDepth();
+  }
+
+  /**
+   * @return number of threads with nothing to run, less the workers already waiting to run
+   */
+  public int getFreeCapacity() {
+    return threadPool.getThreadCount() - threadPool.getBusyCount() - getQueueDepth()
+        - getDeferredCount();
+  }
+
+  /**
+   * @return number of workers waiting for memory, see {@link HeapBudget}
+   */
+  public int getDeferredCount() {
+    return heapBudget.getQueueDepth();
+  }
+
   /**
    * Used for testing
    *
@@ -115,10 +296,14 @@ public class ScanManager {
   public void halt() {
     logger.info("ScanManager halting");
     this.running = false;
-    //Kill the Thread.sleep
+    //Wake the scan loop
+    synchronized (scanSignal) {
+      scanSignal.notifyAll();
+    }
     if (scanThread != null) {
       scanThread.interrupt();
     }
     threadPool.shutdownNow();
+    prefetcher.shutdown();
   }
 }
@@ -0,0 +1,335 @@
+package asl.seedscan.scanner;
+
+import asl.seedscan.scanner.scanworker.ScanWorker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs ScanWorkers on a fixed set of threads, keeping workers with the same affinity, such as the
+ * days and metrics of one station, on the same thread where possible.
+ * <p>
+ * Every thread has its own queue ordered the same way as ScanWorkers compare. Workers with an
+ * affinity are queued on the thread their affinity hashes to, others on a shared queue. A thread
+ * runs the best of its own and the shared queue, unless a busy thread's queue holds a worker of a
+ * more urgent base priority, which it steals. An idle thread steals the best worker waiting behind
+ * a busy thread, so affinity never leaves a thread idle while work is waiting.
+ */
+class StationAffinityExecutor {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.StationAffinityExecutor.class);
+
+  /**
+   * Guards every queue. Workers run for far longer than it takes to pick one, so a single lock is
+   * not contended.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition workAvailable = lock.newCondition();
+
+  /**
+   * A thread and the workers queued for it.
+   */
+  private static final class Lane {
+
+    private final PriorityQueue<ScanWorker> queue = new PriorityQueue<>();
+
+    private Thread thread;
+
+    /**
+     * Set while the thread is running a worker. Only a busy thread's queue is stolen from, an idle
+     * thread takes its own workers.
+     */
+    private boolean busy = false;
+  }
+
+  private final List<Lane> lanes = new ArrayList<>();
+
+  private final PriorityQueue<ScanWorker> sharedQueue = new PriorityQueue<>();
+
+  private final String name;
+
+  private boolean shutdown = false;
+
+  private int queued = 0;
+
+  private long localRuns = 0;
+
+  private long steals = 0;
+
+  /**
+   * @param name        prefix of the thread names
+   * @param threadCount number of threads to start
+   */
+  StationAffinityExecutor(String name, int threadCount) {
+    this.name = name;
+    setThreadCount(threadCount);
+  }
+
+  /**
+   * Queue a worker. It is queued on the thread matching its affinity, or the shared queue if it
+   * has none.
+   *
+   * @param worker the worker to run
+   * @throws IllegalStateException if the executor has been shut down
+   */
+  void execute(ScanWorker worker) {
+    lock.lock();
+    try {
+      if (shutdown) {
+        throw new IllegalStateException("Executor has been shut down");
+      }
+      queueFor(worker).add(worker);
+      queued++;
+      // Any idle thread may steal it, not only its home thread.
+      workAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private PriorityQueue<ScanWorker> queueFor(ScanWorker worker) {
+    Object affinity = worker.getAffinity();
+    if (affinity == null) {
+      return sharedQueue;
+    }
+    return lanes.get(Math.floorMod(affinity.hashCode(), lanes.size())).queue;
+  }
+
+  /**
+   * Pick the next worker for a thread. Must hold the lock.
+   *
+   * @param index the thread's index
+   * @return the next worker or null if nothing is waiting
+   */
+  private ScanWorker next(int index) {
+    PriorityQueue<ScanWorker> own = lanes.get(index).queue;
+    PriorityQueue<ScanWorker> chosen = better(own, sharedQueue);
+
+    // Look for a more urgent kind of worker waiting behind a busy thread.
+    PriorityQueue<ScanWorker> victim = null;
+    for (int i = 0; i < lanes.size(); i++) {
+      Lane other = lanes.get(i);
+      if (i != index && other.busy) {
+        victim = better(victim, other.queue);
+      }
+    }
+    if (victim != null && (chosen == null
+        || victim.peek().compareBasePriority(chosen.peek()) < 0)) {
+      steals++;
+      chosen = victim;
+    } else if (chosen == own) {
+      localRuns++;
+    }
+
+    if (chosen == null) {
+      return null;
+    }
+    queued--;
+    return chosen.poll();
+  }
+
+  /**
+   * @return whichever queue has the better head, ignoring null and empty queues
+   */
+  private static PriorityQueue<ScanWorker> better(PriorityQueue<ScanWorker> first,
+      PriorityQueue<ScanWorker> second) {
+    if (first == null || first.isEmpty()) {
+      return second == null || second.isEmpty() ? null : second;
+    }
+    if (second == null || second.isEmpty()) {
+      return first;
+    }
+    return first.peek().compareTo(second.peek()) <= 0 ? first : second;
+  }
+
+  private void work(int index) {
+    Lane lane;
+    lock.lock();
+    try {
+      lane = lanes.get(index);
+    } finally {
+      lock.unlock();
+    }
+
+    while (true) {
+      ScanWorker worker = null;
+      lock.lock();
+      try {
+        lane.busy = false;
+        while (!shutdown && (worker = next(index)) == null) {
+          workAvailable.await();
+        }
+        if (shutdown) {
+          return;
+        }
+        lane.busy = true;
+        if (!lane.queue.isEmpty()) {
+          // Its remaining workers may now be stolen.
+          workAvailable.signalAll();
+        }
+      } catch (InterruptedException e) {
+        if (shutdown) {
+          return;
+        }
+        continue;
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        worker.run();
+      } catch (Throwable e) {
+        // Nothing replaces a thread that ends, its workers would wait forever.
+        logger.error("Uncaught exception in {}:", Thread.currentThread().getName(), e);
+      }
+      // Workers may interrupt themselves, that must not end the thread.
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * Start threads until there are at least threadCount. Threads are never removed. Workers already
+   * queued stay where they are, new workers are spread over every thread.
+   *
+   * @param threadCount number of threads wanted
+   */
+  void setThreadCount(int threadCount) {
+    lock.lock();
+    try {
+      while (lanes.size() < threadCount && !shutdown) {
+        int index = lanes.size();
+        Lane lane = new Lane();
+        lane.thread = new Thread(() -> work(index), name + "-" + (index + 1));
+        lanes.add(lane);
+        lane.thread.start();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of threads running workers
+   */
+  int getThreadCount() {
+    lock.lock();
+    try {
+      return lanes.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of threads running a worker
+   */
+  int getBusyCount() {
+    lock.lock();
+    try {
+      int busy = 0;
+      for (Lane lane : lanes) {
+        if (lane.busy) {
+          busy++;
+        }
+      }
+      return busy;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of workers waiting in every queue
+   */
+  int getQueueDepth() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of workers a thread took from its own queue
+   */
+  long getLocalRuns() {
+    lock.lock();
+    try {
+      return localRuns;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of workers a thread took from another thread's queue
+   */
+  long getSteals() {
+    lock.lock();
+    try {
+      return steals;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drop every waiting worker and interrupt the running ones.
+   */
+  void shutdownNow() {
+    lock.lock();
+    try {
+      shutdown = true;
+      for (Lane lane : lanes) {
+        lane.queue.clear();
+        lane.thread.interrupt();
+      }
+      sharedQueue.clear();
+      queued = 0;
+      workAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait for every thread to end after {@link #shutdownNow()}.
+   *
+   * @param timeout how long to wait
+   * @param unit    unit of the timeout
+   * @return true if every thread ended
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    List<Thread> running;
+    lock.lock();
+    try {
+      running = new ArrayList<>();
+      for (Lane lane : lanes) {
+        running.add(lane.thread);
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (Thread thread : running) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remaining <= 0) {
+        return false;
+      }
+      thread.join(remaining);
+      if (thread.isAlive()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,81 @@
+package asl.seedscan.scanner.scanworker;
+
+import asl.seedscan.metrics.Metric;
+import asl.seedscan.metrics.MetricResult;
+import asl.seedscan.scanner.ScanManager;
+import asl.util.Logging;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a single metric for the day of a {@link StationScan}. Metric tasks for the same day run
+ * concurrently, except where a metric depends on another's results. The StationScan is notified as
+ * each task completes so it can release dependent metrics and finish the day.
+ */
+class MetricScan extends ScanWorker {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.scanworker.MetricScan.class);
+
+  private final StationScan stationScan;
+
+  final Metric metric;
+
+  /**
+   * Metrics that may only start once this one has finished. Guarded by the owning StationScan.
+   */
+  final List<MetricScan> dependents = new ArrayList<>();
+
+  /**
+   * Number of metrics that must finish before this one can start. Guarded by the owning
+   * StationScan.
+   */
+  int unfinishedDependencies = 0;
+
+  /**
+   * @param manager     The managing object
+   * @param stationScan The station day this metric is computed for
+   * @param metric      The metric with its data already set
+   */
+  MetricScan(ScanManager manager, StationScan stationScan, Metric metric) {
+    super(manager);
+    this.stationScan = stationScan;
+    this.metric = metric;
+  }
+
+  @Override
+  public void run() {
+    MetricResult results = null;
+    try {
+      metric.process();
+      results = metric.getMetricResult();
+    } catch (Exception e) {
+      String message = "Scan Date: " + stationScan.currentDate + " Metric: " + metric.getName()
+          + "\n" + Logging.prettyExceptionWithCause(e);
+      logger.error(message);
+      manager.database.insertScanMessage(stationScan.databaseScan.parentScanID,
+          stationScan.station.getNetwork(), stationScan.station.getStation(), null, null,
+          metric.getName(), message);
+    } finally {
+      stationScan.metricFinished(this, results);
+    }
+  }
+
+  @Override
+  public Integer getBasePriority() {
+    //Metrics run before any further station days are started.
+    return 35;
+  }
+
+  @Override
+  public Object getAffinity() {
+    return stationScan.getAffinity();
+  }
+
+  public Long getFinePriority() {
+    //Finish earlier days first so their data can be released.
+    return stationScan.currentDate.toEpochDay();
+  }
+}
@@ -1,12 +1,15 @@
 package asl.seedscan.scanner.scanworker;
 
 import asl.metadata.Station;
+import asl.seedscan.Global;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.scanner.ScanManager;
 import asl.util.Logging;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,24 +31,40 @@ public class RetrieveScan extends ScanWorker {
   @Override
   public void run() {
     //Runtime Exceptions thrown here are not caught anywhere else.
-    Object lock = manager.database.getLockObject();
     try {
-      synchronized (lock) {
-        DatabaseScan newScan = manager.database.takeNextScan();
+      // Claim a scan for each idle thread, this one is idle once the retriever returns.
+      int count = manager.getFreeCapacity() + 1;
+      if (count <= 0) {
+        logger.debug("Every thread has work waiting, not retrieving scans");
+        return;
+      }
+      List<DatabaseScan> newScans = manager.database.takeNextScans(count);
 
-        if (newScan != null) {
+      for (DatabaseScan newScan : newScans) {
+        try {
           parseScan(newScan);
-          // Add new Retriever to queue since we know more probably exist.
-          manager.addTask(new RetrieveScan(manager));
-        } else {
-          logger.info("Database has no Scans left!");
+        } catch (Exception e) {
+          String message = Logging.prettyExceptionWithCause(e);
+          logger.error(message);
+          manager.database.insertError(message);
+          manager.database.releaseScan(newScan.scanID);
         }
-        /*
-         * Don't bother adding a new Retrieving Task since DB is empty. A
-         * different process will handle this.
-         */
       }
 
+      if (!newScans.isEmpty() && manager.getDeferredCount() > 0) {
+        // Memory is full, leave the rest for other hosts until the deferred workers are admitted.
+        logger.debug("Workers are waiting for memory, not retrieving more scans");
+      } else if (!newScans.isEmpty()) {
+        // Add new Retriever to queue since we know more probably exist.
+        manager.addTask(new RetrieveScan(manager));
+      } else {
+        logger.info("Database has no Scans left!");
+      }
+      /*
+       * Don't bother adding a new Retrieving Task since DB is empty. A
+       * different process will handle this.
+       */
+
     } catch (Exception e) {
       String message = Logging.prettyExceptionWithCause(e);
       logger.error(message);
@@ -67,11 +86,20 @@ public class RetrieveScan extends ScanWorker {
     // Check if it is a Station Scan.
     if (networks != null && stations != null && stations.length == 1 && networks.length == 1
         && dayLength <= 30) {
-      manager.addTask(new StationScan(manager, newScan));
+      if (Global.getParallelDays()) {
+        AtomicInteger unfinishedDays = new AtomicInteger((int) dayLength + 1);
+        for (LocalDate date = newScan.startDate; !date.isAfter(newScan.endDate);
+            date = date.plusDays(1)) {
+          manager.addTask(StationScan.parallelDay(manager, newScan, date, unfinishedDays));
+        }
+      } else {
+        manager.addTask(new StationScan(manager, newScan));
+      }
     }
     // Split the non Station Scan into Station Scans
     else {
       List<Station> possibleStations = manager.metaGenerator.getStationList(networks, stations);
+      List<DatabaseScan> childScans = new ArrayList<>();
       LocalDate start = newScan.startDate;
       LocalDate end;
       do {
@@ -80,20 +108,23 @@ public class RetrieveScan extends ScanWorker {
           end = newScan.endDate;
         }
         for (Station station : possibleStations) {
-          manager.database.insertChildScan(
+          childScans.add(new DatabaseScan(
+              null,
               newScan.scanID,
+              newScan.metricName,
               station.getNetwork(),
               station.getStation(),
               newScan.location,
               newScan.channel,
-              newScan.metricName,
               start, end,
               newScan.priority,
-              newScan.deleteExisting);
+              newScan.deleteExisting));
         }
 
         start = end.plusDays(1);
       } while (!end.equals(newScan.endDate));
+
+      manager.database.insertChildScans(newScan, childScans);
     }
   }
 
@@ -31,6 +31,27 @@ public abstract class ScanWorker implements Comparable<ScanWorker>, Runnable {
    */
   protected abstract Long getFinePriority();
 
+  /**
+   * Identifies related workers that should run on the same thread where possible, so anything a
+   * thread keeps from one of them is still at hand for the next. Workers without an affinity run
+   * on whichever thread is free.
+   *
+   * @return the affinity key, null by default
+   */
+  public Object getAffinity() {
+    return null;
+  }
+
+  /**
+   * Compare only the base priority, ignoring the fine priority.
+   *
+   * @param other the worker to compare against
+   * @return negative if this worker is of a more urgent kind, 0 if both are of the same kind
+   */
+  public int compareBasePriority(ScanWorker other) {
+    return this.getBasePriority().compareTo(other.getBasePriority());
+  }
+
   /**
    * This compares first the base priority, then the fine priority.
    * <p>
@@ -14,6 +14,7 @@ import asl.seedscan.metrics.MetricWrapper;
 import asl.seedscan.metrics.PulseDetectionMetric;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData;
 import asl.seedscan.scanner.DataLoader;
+import asl.seedscan.scanner.DataPrefetcher;
 import asl.seedscan.scanner.ScanManager;
 import asl.timeseries.CrossPower;
 import asl.timeseries.CrossPowerKey;
@@ -21,9 +22,19 @@ import asl.util.Logging;
 import edu.sc.seis.seisFile.sac.SacTimeSeries;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +65,32 @@ public class StationScan extends ScanWorker {
   MetricData nextMetricData;
   MetricData previousMetricData;
 
+  /**
+   * Set once nextMetricData has been handed to the following day's scan.
+   */
+  private boolean nextDayScheduled = false;
+
+  /**
+   * Days of the database scan still running when its days are scanned in parallel, shared by every
+   * day. Null when days are scanned in sequence.
+   */
+  private final AtomicInteger unfinishedDays;
+
+  /**
+   * Set once this day has been counted in unfinishedDays.
+   */
+  private boolean dayCounted = false;
+
+  /**
+   * Results of the metrics finished so far. Inserted into the database once every metric is done.
+   */
+  private final List<MetricResult> metricResults = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Number of metric tasks still to complete for this day.
+   */
+  private int unfinishedMetrics = 0;
+
 
   /**
    * Start the first day of the scan
@@ -62,10 +99,7 @@ public class StationScan extends ScanWorker {
    * @param databaseScan The correct database for results.
    */
   StationScan(ScanManager manager, DatabaseScan databaseScan) {
-    super(manager);
-    this.station = new Station(databaseScan.network, databaseScan.station);
-    this.databaseScan = databaseScan;
-    this.currentDate = databaseScan.startDate;
+    this(manager, databaseScan, databaseScan.startDate, null, null);
   }
 
   /**
@@ -78,11 +112,35 @@ public class StationScan extends ScanWorker {
    */
   StationScan(ScanManager manager, DatabaseScan databaseScan, LocalDate date,
       MetricData metricData) {
+    this(manager, databaseScan, date, metricData, null);
+  }
+
+  private StationScan(ScanManager manager, DatabaseScan databaseScan, LocalDate date,
+      MetricData metricData, AtomicInteger unfinishedDays) {
     super(manager);
     this.station = new Station(databaseScan.network, databaseScan.station);
     this.databaseScan = databaseScan;
     this.currentDate = date;
     this.currentMetricData = metricData;
+    this.unfinishedDays = unfinishedDays;
+  }
+
+  /**
+   * Scan a single day of a database scan whose days are all scanned in parallel. The day does not
+   * add the following day. The database scan is finished by whichever day completes last.
+   * <p>
+   * Neighbouring days share their decoded data through the ScanManager's DayCache, so the day after
+   * this one is decoded once for both this day's cross midnight windows and its own scan.
+   *
+   * @param manager        The managing object
+   * @param databaseScan   The correct database for results.
+   * @param date           The day to scan
+   * @param unfinishedDays Count of days not yet finished, shared by every day of the scan
+   * @return the day's scan
+   */
+  static StationScan parallelDay(ScanManager manager, DatabaseScan databaseScan, LocalDate date,
+      AtomicInteger unfinishedDays) {
+    return new StationScan(manager, databaseScan, date, null, unfinishedDays);
   }
 
   /**
@@ -116,10 +174,21 @@ public class StationScan extends ScanWorker {
     }
 
     // May have been passed from previous day
+    DataPrefetcher prefetcher = manager.getPrefetcher();
     if (currentMetricData == null) {
-      currentMetricData = DataLoader.getMetricData(currentDate, station, manager);
+      currentMetricData = prefetcher.take(databaseScan.scanID, currentDate, station);
+    }
+    nextMetricData = prefetcher.take(databaseScan.scanID, currentDate.plusDays(1), station);
+
+    // Following days load while this one computes. The last day needs the day after the scan.
+    // Parallel days load their own data.
+    for (int i = 1; unfinishedDays == null && i <= Global.getPrefetchDays(); i++) {
+      LocalDate upcoming = currentDate.plusDays(1 + i);
+      if (upcoming.compareTo(databaseScan.endDate.plusDays(1)) > 0) {
+        break;
+      }
+      prefetcher.prefetch(databaseScan.scanID, upcoming, station);
     }
-    nextMetricData = DataLoader.getMetricData(currentDate.plusDays(1), station, manager);
 
     if (currentMetricData != null) {
       // This doesn't mean nextMetricData isn't null!
@@ -134,7 +203,19 @@ public class StationScan extends ScanWorker {
 
   @Override
   public void run() {
+    // Set once the metrics or finishDay() are responsible for cleaning up, or the worker is
+    // deferred and keeps its data for when it runs again.
+    boolean handedOff = false;
     try {
+      // Wait until there is room in the heap for this day's data
+      long footprint = DataLoader.estimateFootprint(currentDate, station, manager);
+      if (!manager.admit(this, footprint)) {
+        logger.debug("Deferred Station={} Day={} needing [{} MB]", station,
+            currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE), footprint >> 20);
+        handedOff = true;
+        return;
+      }
+
       logger.debug("Scan Station={} Day={} Thread id=[{}]", station,
           currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE), Thread.currentThread().getId());
 
@@ -145,91 +226,256 @@ public class StationScan extends ScanWorker {
         logger.info("== Scanner: No Metadata found for Station:{}_{} for Day:{} --> Skipping",
             station.getNetwork(), station.getStation(),
             currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+        handedOff = true;
+        finishDay();
       } else {
         currentMetadata.printStationInfo();
 
-        // Loop over Metrics to compute, for this station, for this day
-        Hashtable<CrossPowerKey, CrossPower> crossPowerMap = null;
-        Map<ChannelKey, PulseDetectionData> pulseDetectionMap = null;
-
-        /*
-         * TODO: The contents of this for loop should be extracted out into a task and run in the pool.
-         * Skipping adding tests for it now.
-         */
+        List<Metric> metrics = new ArrayList<>();
         for (MetricWrapper wrapper : Global.getMetrics()) {
-          Metric metric = wrapper.getNewInstance();
-          metric.setBaseOutputDir(Global.getPlotsDir());
+          metrics.add(wrapper.getNewInstance());
+        }
+        runMetrics(metrics);
+        handedOff = true;
+      }
+    } catch (Exception e) {
+      insertScanMessage(e);
+      // The following days will not be scanned
+      manager.getPrefetcher().discard(databaseScan.scanID);
+      if (unfinishedDays != null) {
+        // Other days continue, the error has been recorded
+        finishParallelDay();
+      } else {
+        // Nothing will finish the scan, return it to the queue rather than renew its lease
+        manager.database.releaseScan(databaseScan.scanID);
+      }
+    } finally {
+      // Errors pass through, but must not keep the day's data or heap admission
+      if (!handedOff) {
+        cleanup();
+      }
+    }
+  }
 
-          if (currentMetricData == null) {
-            metric.setData(new MetricData(manager.database, currentMetadata));
-          } else {
-            metric.setData(currentMetricData);
-          }
-          if (eventCMTs != null) {
-            metric.setEventTable(eventCMTs);
-            if (eventSynthetics != null) {
-              metric.setEventSynthetics(eventSynthetics);
-            }
-          }
+  /**
+   * Submit a task for each metric to the manager. Metrics share the crossPowerMap and
+   * pulseDetectionMap, so common products are computed only once for the day. A metric is not
+   * submitted until all metrics it depends on have finished. The day is finished by the last metric
+   * to complete.
+   *
+   * @param metrics New metric instances to be computed for this day
+   */
+  void runMetrics(List<Metric> metrics) {
+    ConcurrentHashMap<CrossPowerKey, CompletableFuture<CrossPower>> crossPowerMap =
+        new ConcurrentHashMap<>();
+    ConcurrentMap<ChannelKey, CompletableFuture<PulseDetectionData>> pulseDetectionMap =
+        new ConcurrentHashMap<>();
 
-          // Hand off the crossPowerMap from metric to metric,
-          // adding to it each time
-          if (crossPowerMap != null) {
-            metric.setCrossPowerMap(crossPowerMap);
-          }
-          // Do the same for pulseDetectionMap, if this is a pulse detection metric
-          if (metric instanceof PulseDetectionMetric && pulseDetectionMap != null) {
-            ((PulseDetectionMetric) metric).setPulseDetectionData(pulseDetectionMap);
-          }
+    if (currentMetricData == null) {
+      currentMetricData = new MetricData(manager.database, currentMetadata);
+    }
 
-          metric.process();
-          // Save the current crossPowerMap for the next metric:
-          crossPowerMap = metric.getCrossPowerMap();
-          // And similar for pulse detection as necessary
-          if (metric instanceof PulseDetectionMetric) {
-            pulseDetectionMap = ((PulseDetectionMetric) metric).getPulseDetectionData();
-          }
+    List<MetricScan> tasks = new ArrayList<>();
+    Map<String, List<MetricScan>> tasksByName = new HashMap<>();
+    for (Metric metric : metrics) {
+      metric.setBaseOutputDir(Global.getPlotsDir());
+      metric.setData(currentMetricData);
+      if (eventCMTs != null) {
+        metric.setEventTable(eventCMTs);
+        if (eventSynthetics != null) {
+          metric.setEventSynthetics(eventSynthetics);
+        }
+      }
+      metric.setCrossPowerMap(crossPowerMap);
+      if (metric instanceof PulseDetectionMetric) {
+        ((PulseDetectionMetric) metric).setPulseDetectionData(pulseDetectionMap);
+      }
+
+      MetricScan task = new MetricScan(manager, this, metric);
+      tasks.add(task);
+      tasksByName.computeIfAbsent(metric.getName(), k -> new ArrayList<>()).add(task);
+    }
 
-          MetricResult results = metric.getMetricResult();
-          if (results != null) {
-            if (manager.database.isConnected()) {
-              manager.database.insertMetricData(results);
+    List<MetricScan> ready = new ArrayList<>();
+    synchronized (this) {
+      for (MetricScan task : tasks) {
+        for (String dependency : task.metric.getDependencies()) {
+          for (MetricScan producer : tasksByName.getOrDefault(dependency, new ArrayList<>())) {
+            if (producer != task) {
+              producer.dependents.add(task);
+              task.unfinishedDependencies++;
             }
           }
-        } // end loop over metrics
+        }
+      }
+      breakDependencyCycles(tasks);
+      for (MetricScan task : tasks) {
+        if (task.unfinishedDependencies == 0) {
+          ready.add(task);
+        }
       }
-      // Insert Next Day task
-      if (currentDate.plusDays(1).compareTo(databaseScan.endDate) <= 0) {
+      unfinishedMetrics = tasks.size();
+    }
+
+    if (tasks.isEmpty()) {
+      finishDay();
+      return;
+    }
+    for (MetricScan task : ready) {
+      manager.addTask(task);
+    }
+  }
+
+  /**
+   * Metrics that can never become ready because of a dependency cycle are released to run
+   * without waiting on each other.
+   *
+   * @param tasks all metric tasks for the day
+   */
+  private void breakDependencyCycles(List<MetricScan> tasks) {
+    Map<MetricScan, Integer> remaining = new HashMap<>();
+    Deque<MetricScan> released = new ArrayDeque<>();
+    for (MetricScan task : tasks) {
+      remaining.put(task, task.unfinishedDependencies);
+      if (task.unfinishedDependencies == 0) {
+        released.add(task);
+      }
+    }
+    while (!released.isEmpty()) {
+      for (MetricScan dependent : released.poll().dependents) {
+        if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+          released.add(dependent);
+        }
+      }
+    }
+    for (MetricScan task : tasks) {
+      if (remaining.get(task) > 0) {
+        logger.warn("Metric {} is part of a dependency cycle and will not wait on its dependencies",
+            task.metric.getName());
+        for (MetricScan other : tasks) {
+          other.dependents.remove(task);
+        }
+        task.unfinishedDependencies = 0;
+      }
+    }
+  }
+
+  /**
+   * Called by each metric task as it completes. Results are kept until the whole day is done.
+   *
+   * @param task    the finished task
+   * @param results the metric's results, null if it failed
+   */
+  void metricFinished(MetricScan task, MetricResult results) {
+    if (results != null) {
+      metricResults.add(results);
+      if (currentMetricData != null) {
+        currentMetricData.addDayResult(results);
+      }
+    }
+
+    List<MetricScan> ready = new ArrayList<>();
+    boolean dayFinished;
+    synchronized (this) {
+      for (MetricScan dependent : task.dependents) {
+        if (--dependent.unfinishedDependencies == 0) {
+          ready.add(dependent);
+        }
+      }
+      dayFinished = --unfinishedMetrics == 0;
+    }
+
+    for (MetricScan dependent : ready) {
+      manager.addTask(dependent);
+    }
+    if (dayFinished) {
+      finishDay();
+    }
+  }
+
+  /**
+   * Insert the day's results and start the next day, or finish the scan if this was the last day.
+   */
+  private void finishDay() {
+    try {
+      if (manager.database.isConnected()) {
+        for (MetricResult results : metricResults) {
+          manager.database.insertMetricData(results);
+        }
+      }
+
+      // Parallel days are counted in finally, the last one finishes the scan
+      if (unfinishedDays == null
+          && currentDate.plusDays(1).compareTo(databaseScan.endDate) <= 0) {
         manager.addTask(
             new StationScan(this.manager, this.databaseScan, currentDate.plusDays(1),
                 this.nextMetricData));
-      } else {
+        nextDayScheduled = true;
+      } else if (unfinishedDays == null) {
         // We have finished this station
         manager.database.finishScan(databaseScan.scanID);
       }
-
     } catch (Exception e) {
-      String message =
-          "Scan Date: " + this.currentDate + "\n" + Logging.prettyExceptionWithCause(e);
-      logger.error(message);
-      manager.database
-          .insertScanMessage(databaseScan.parentScanID, station.getNetwork(), station.getStation(),
-              null, null, null, message);
+      insertScanMessage(e);
+      manager.getPrefetcher().discard(databaseScan.scanID);
+      if (unfinishedDays == null && !nextDayScheduled) {
+        manager.database.releaseScan(databaseScan.scanID);
+      }
     } finally {
-      // Cleanup
-
-      // Release the previous day since we are done with it.
-      if (currentMetricData != null) {
-        if (currentMetricData.getPreviousMetricData() != null) {
-          currentMetricData.getPreviousMetricData().setNextMetricDataToNull();
-        }
-        currentMetricData.setPreviousMetricDataToNull();
+      if (unfinishedDays != null) {
+        finishParallelDay();
       }
+      cleanup();
+    }
+  }
+
+  /**
+   * Count this day as done, finishing the database scan if it was the last day running. A day is
+   * only counted once, whether it finished or failed.
+   */
+  private synchronized void finishParallelDay() {
+    if (dayCounted) {
+      return;
+    }
+    dayCounted = true;
+    if (unfinishedDays.decrementAndGet() == 0) {
+      manager.database.finishScan(databaseScan.scanID);
+    }
+  }
 
-      currentMetricData = null;
-      nextMetricData = null;
-      previousMetricData = null;
+  private void insertScanMessage(Exception e) {
+    String message =
+        "Scan Date: " + this.currentDate + "\n" + Logging.prettyExceptionWithCause(e);
+    logger.error(message);
+    manager.database
+        .insertScanMessage(databaseScan.parentScanID, station.getNetwork(), station.getStation(),
+            null, null, null, message);
+  }
+
+  private void cleanup() {
+    // Release the previous day since we are done with it.
+    if (currentMetricData != null) {
+      if (currentMetricData.getPreviousMetricData() != null) {
+        currentMetricData.getPreviousMetricData().setNextMetricDataToNull();
+      }
+      currentMetricData.setPreviousMetricDataToNull();
+      currentMetricData.clearDayResults();
+      currentMetricData.release();
     }
+    // Decoded days are shared, let the cache know which ones we are done with.
+    if (previousMetricData != null) {
+      previousMetricData.release();
+    }
+    if (nextMetricData != null && !nextDayScheduled) {
+      nextMetricData.release();
+    }
+
+    currentMetricData = null;
+    nextMetricData = null;
+    previousMetricData = null;
+    metricResults.clear();
+
+    manager.release(this);
   }
 
   @Override
@@ -238,6 +484,12 @@ public class StationScan extends ScanWorker {
     return 45;
   }
 
+  @Override
+  public Object getAffinity() {
+    //Keep a station's days on the same thread
+    return station;
+  }
+
   public Long getFinePriority() {
     //We want to prioritize dates when comparing station scans
     return this.currentDate.toEpochDay();
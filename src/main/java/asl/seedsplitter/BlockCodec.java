@@ -0,0 +1,113 @@
+package asl.seedsplitter;
+
+import java.util.Arrays;
+
+/**
+ * Compresses the full blocks of a {@link Sequence}. The first data point of a block is kept as is
+ * and every other as the zig-zag encoded, variable length difference from the one before it, much
+ * as Steim frames store differences. Neighbouring seismic samples are close, so most differences
+ * take one or two bytes instead of four.
+ * <p>
+ * The bytes are packed four to an int, so a compressed block is still an int[] and is told apart
+ * from a raw block by being shorter. Blocks that would not shrink to three quarters of their size
+ * are left raw.
+ */
+final class BlockCodec {
+
+  /**
+   * Longest compressed block kept.
+   */
+  private static final int MAX_PACKED = Sequence.BLOCK_SIZE / 4 * 3;
+
+  private static final ThreadLocal<int[]> scratch = ThreadLocal
+      .withInitial(() -> new int[MAX_PACKED]);
+
+  private BlockCodec() {
+  }
+
+  /**
+   * @param block a block
+   * @return true if the block is compressed
+   */
+  static boolean isCompressed(int[] block) {
+    return block.length != Sequence.BLOCK_SIZE;
+  }
+
+  /**
+   * Compress a full block.
+   *
+   * @param block a raw block holding {@link Sequence#BLOCK_SIZE} data points
+   * @return the compressed block, or null if it would not be small enough to be worth keeping
+   */
+  static int[] compress(int[] block) {
+    int[] packed = scratch.get();
+    packed[0] = block[0];
+    int words = 1;
+    int word = 0;
+    int shift = 0;
+    int previous = block[0];
+    for (int i = 1; i < block.length; i++) {
+      int difference = block[i] - previous;
+      previous = block[i];
+      int zigzag = (difference << 1) ^ (difference >> 31);
+      do {
+        int b = zigzag & 0x7F;
+        zigzag >>>= 7;
+        if (zigzag != 0) {
+          b |= 0x80;
+        }
+        word |= b << shift;
+        shift += 8;
+        if (shift == 32) {
+          if (words == MAX_PACKED) {
+            return null;
+          }
+          packed[words++] = word;
+          word = 0;
+          shift = 0;
+        }
+      } while (zigzag != 0);
+    }
+    if (shift > 0) {
+      if (words == MAX_PACKED) {
+        return null;
+      }
+      packed[words++] = word;
+    }
+    return Arrays.copyOf(packed, words);
+  }
+
+  /**
+   * Decompress a block.
+   *
+   * @param packed a block returned by {@link #compress(int[])}
+   * @param block  receives the {@link Sequence#BLOCK_SIZE} data points
+   * @return block
+   */
+  static int[] decompress(int[] packed, int[] block) {
+    int previous = packed[0];
+    block[0] = previous;
+    int next = 1;
+    int word = 0;
+    int left = 0;
+    for (int i = 1; i < Sequence.BLOCK_SIZE; i++) {
+      int zigzag = 0;
+      int shift = 0;
+      int b;
+      do {
+        if (left == 0) {
+          word = packed[next++];
+          left = 4;
+        }
+        b = word & 0xFF;
+        word >>>= 8;
+        left--;
+        zigzag |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      previous += (zigzag >>> 1) ^ -(zigzag & 1);
+      block[i] = previous;
+    }
+    return block;
+  }
+}
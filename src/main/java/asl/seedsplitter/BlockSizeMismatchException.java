@@ -3,8 +3,8 @@ package asl.seedsplitter;
 /**
  * @author Joel D. Edwards
  * <p>
- * The BlockSizeMismatchException is thrown by BlockPool when an attempt is made to add a block of
- * data whose size does not match that determined during instantiation.
+ * The BlockSizeMismatchException is thrown by SlabPool when an attempt is made to return a block
+ * of data whose size does not match {@link Sequence#BLOCK_SIZE}.
  */
 class BlockSizeMismatchException extends Exception {
 
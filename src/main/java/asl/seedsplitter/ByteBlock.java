@@ -19,14 +19,20 @@
 
 package asl.seedsplitter;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author Joel Edwards
  * <p>
- * The ByteBlock class wraps blocks of data read from a stream.
+ * The ByteBlock class wraps blocks of data read from a stream. A block either owns a copy of its
+ * data or is a slice of a shared buffer, such as a memory mapped file, which is not copied.
  */
 public class ByteBlock {
 
   private byte[] m_data = null;
+  private ByteBuffer m_buffer = null;
+  private int m_offset = 0;
+  private int m_length = 0;
   private boolean m_fileEnd = false;
   private boolean m_lastBlock = false;
 
@@ -52,6 +58,20 @@ public class ByteBlock {
     init(data, length, fileEnd, isLast);
   }
 
+  /**
+   * Constructor for a slice of a shared buffer. The data is not copied, so the buffer must not
+   * change while the block is in use.
+   *
+   * @param buffer The buffer holding the data.
+   * @param offset Absolute offset of the data in the buffer.
+   * @param length Length of the data.
+   */
+  public ByteBlock(ByteBuffer buffer, int offset, int length) {
+    m_buffer = buffer;
+    m_offset = offset;
+    m_length = length;
+  }
+
   /**
    * Hidden initializer called by all constructors.
    *
@@ -66,19 +86,68 @@ public class ByteBlock {
       m_data = new byte[length];
       System.arraycopy(data, 0, m_data, 0, length);
     }
+    m_length = length;
     m_lastBlock = isLast;
     m_fileEnd = fileEnd;
   }
 
   /**
-   * Returns the data buffer.
+   * Returns the data buffer. A slice's data is copied into a new array.
    *
    * @return The data buffer.
    */
   public byte[] getData() {
+    if (m_buffer != null) {
+      return readInto(new byte[m_length]);
+    }
     return m_data;
   }
 
+  /**
+   * Copy the data into an existing array, so a caller can reuse one array for every block.
+   *
+   * @param destination array at least {@link #getLength()} long
+   * @return the destination array
+   */
+  public byte[] readInto(byte[] destination) {
+    if (m_buffer != null) {
+      // A view is read so the shared buffer's position is left alone.
+      ByteBuffer view = m_buffer.duplicate();
+      view.position(m_offset);
+      view.get(destination, 0, m_length);
+    } else if (m_data != null) {
+      System.arraycopy(m_data, 0, destination, 0, m_length);
+    }
+    return destination;
+  }
+
+  /**
+   * Read a single byte without copying the data.
+   *
+   * @param index position of the byte within the block
+   * @return the byte
+   */
+  public byte getByte(int index) {
+    if (m_buffer != null) {
+      return m_buffer.get(m_offset + index);
+    }
+    return m_data[index];
+  }
+
+  /**
+   * @return length of the data in bytes
+   */
+  public int getLength() {
+    return m_length;
+  }
+
+  /**
+   * @return true if this block is a slice of a shared buffer
+   */
+  public boolean isSlice() {
+    return m_buffer != null;
+  }
+
   /**
    * Indicates whether this is the last block in the sequence.
    *
@@ -0,0 +1,304 @@
+package asl.seedsplitter;
+
+import asl.seedscan.Global;
+import asl.util.Time;
+import edu.iris.dmc.seedcodec.SteimException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import seed.BlockSizeException;
+import seed.Blockette320;
+import seed.IllegalSeednameException;
+import seed.MiniSeedHeader;
+
+/**
+ * Decodes MiniSEED records into per channel lists of contiguous {@link DataSet}s for a
+ * {@link SeedSplitProcessor}. Records are indexed by channel as they arrive and each channel is
+ * assembled by its {@link ChannelIndex} when the decoder is finished. A decoder owns all of the
+ * state of the channels it is given, so records of different channels can be decoded by different
+ * decoders at the same time. Every record of a channel must be given to the same decoder, in the
+ * order it was read.
+ * <p>
+ * A decoder can keep record headers alone, see {@link ChannelIndex}, so no samples are decoded.
+ * <p>
+ * A decoder is used by one thread at a time.
+ */
+class ChannelDecoder {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedsplitter.ChannelDecoder.class);
+
+  private final Hashtable<ChannelId, ChannelIndex> m_indexes = new Hashtable<>();
+  private final boolean m_decode;
+  private final boolean m_compress;
+
+  // MTH: filled in by finish(), once records that fail to decode are known
+  private final Hashtable<String, ArrayList<Integer>> m_qualityTable = new Hashtable<>();
+  private final Hashtable<String, ArrayList<Blockette320>> m_calTable = new Hashtable<>();
+
+  /**
+   * Most channels whose ids are kept, files that interleave a few channels record by record reuse
+   * them without formatting a key per record.
+   */
+  private static final int RECENT_CHANNELS = 8;
+
+  // Codes of the recent records' channels, so each ChannelId is looked up once.
+  private final byte[][] m_recentCodes = new byte[RECENT_CHANNELS][12];
+  private final ChannelId[] m_recentChannels = new ChannelId[RECENT_CHANNELS];
+  private int m_nextRecent = 0;
+
+  // The day of the last record's start, records of a day share its epoch day.
+  private int m_lastYear = -1;
+  private int m_lastDayOfYear = -1;
+  private long m_lastEpochDay = 0;
+
+  // Slices of mapped files are copied into this, sized to the record length.
+  private byte[] m_sliceBytes = new byte[0];
+
+  // Reset onto each record, so headers are read without building a MiniSeed per record.
+  private final MiniSeedHeader m_header = new MiniSeedHeader();
+
+  private int m_kept = 0;
+  private int m_discarded = 0;
+
+  private int lastSequenceNumber = 0;
+
+  private long m_decodedBytes = 0;
+  private long m_decodeNanos = 0;
+
+  /**
+   * A decoder of samples.
+   */
+  ChannelDecoder() {
+    this(true);
+  }
+
+  /**
+   * @param decode false to read record headers alone, without decoding samples
+   */
+  ChannelDecoder(boolean decode) {
+    m_decode = decode;
+    m_compress = Global.getCompressedSamples();
+  }
+
+  /**
+   * @return timing qualities by the channels' string keys, once finished
+   */
+  Hashtable<String, ArrayList<Integer>> getQualityTable() {
+    return m_qualityTable;
+  }
+
+  /**
+   * @return calibration blockettes by the channels' string keys, once finished
+   */
+  Hashtable<String, ArrayList<Blockette320>> getCalTable() {
+    return m_calTable;
+  }
+
+  /**
+   * @return bytes of the records decoded
+   */
+  long getDecodedBytes() {
+    return m_decodedBytes;
+  }
+
+  /**
+   * @return time spent indexing and decoding records in nanoseconds
+   */
+  long getDecodeNanos() {
+    return m_decodeNanos;
+  }
+
+  /**
+   * Index a record by its channel, it is decoded when the channel is assembled.
+   *
+   * @param block the record, which is neither a file end nor the last block
+   */
+  void decode(ByteBlock block) {
+    long start = System.nanoTime();
+    byte[] recordBytes;
+    if (block.isSlice()) {
+      if (m_sliceBytes.length != block.getLength()) {
+        m_sliceBytes = new byte[block.getLength()];
+      }
+      recordBytes = block.readInto(m_sliceBytes);
+    } else {
+      recordBytes = block.getData();
+    }
+
+    try {
+      MiniSeedHeader header = m_header.reset(recordBytes);
+      if (header.isHeartBeat()) {
+        logger.debug("Found HEARTBEAT record!");
+      } else { // MTH
+        decodeRecord(block, header);
+      }
+    } catch (IllegalSeednameException e) {
+      logger.error("IllegalSeednameException: {}", e.getMessage());
+    }
+    m_decodedBytes += recordBytes.length;
+    m_decodeNanos += System.nanoTime() - start;
+  }
+
+  private void decodeRecord(ByteBlock block, MiniSeedHeader record) {
+    double sampleRate = record.getRate();
+    long interval;
+    try {
+      interval = DataSet.sampleRateToInterval(sampleRate);
+    } catch (IllegalSampleRateException e) {
+      logger.error("Illegal Sample Rate: sequence #{}, rate = {}", record.getSequence(),
+          sampleRate);
+      m_discarded++;
+      return;
+    }
+    m_kept++;
+    ChannelId key = channelId(record, sampleRate);
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("%s_%s %s-%s", key.getNetwork(),
+          key.getStation(), key.getLocation(), key.getChannel()));
+    }
+
+    long startTime = startTime(record);
+
+    // Records that can not be decoded are found now where they can be, without decoding.
+    int dataLength;
+    try {
+      dataLength = record.getDataLength();
+      SteimDecoder.checkFrames(record.getEncoding(), dataLength, record.getNsamp());
+    } catch (BlockSizeException e) {
+      logger.error("BlockSizeException: {}", e.getMessage());
+      dataLength = -1;
+    } catch (SteimException e) {
+      logger.error("SteimException: {}", e.getMessage());
+      dataLength = -1;
+    }
+
+    ChannelIndex index = m_indexes.get(key);
+    if (index == null) {
+      index = new ChannelIndex(key, m_decode, m_compress);
+      m_indexes.put(key, index);
+    }
+    long openEndTime = index.getOpenEndTime();
+    if (index.add(block, record, startTime, sampleRate, interval, dataLength)
+        == ChannelIndex.OVERLAP) {
+      logger
+          .error("Found data overlap <{}] - [{}> sequence #{}.!\n",
+              DataSet.timestampToString(openEndTime),
+              DataSet.timestampToString(startTime),
+              record.getSequence());
+      if (record.getSequence() <= lastSequenceNumber) {
+        logger
+            .error("Out of sequence last={} current={}",
+                lastSequenceNumber,
+                record.getSequence());
+      }
+    }
+    if (dataLength >= 0) {
+      lastSequenceNumber = record.getSequence();
+    }
+  }
+
+  /**
+   * Get the start of a record in microseconds since the epoch, as
+   * {@link Time#btimeToLocalDateTime(int, int, int, int, int, int)} gives it. The epoch day is
+   * kept, so no date objects are made while the records stay in one day.
+   */
+  private long startTime(MiniSeedHeader record) {
+    int year = record.getYear();
+    int doy = record.getDayOfYear();
+    int hour = record.getHour();
+    int minute = record.getMinute();
+    int second = record.getSecond();
+    int tenthMillis = record.getTenthMillis();
+
+    if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+        || tenthMillis < 0 || tenthMillis > 9999) {
+      // Leap seconds and invalid times are handled, or rejected, as they always were.
+      /*See SEED manual Chapter 3*/
+      LocalDateTime dateTime = Time.btimeToLocalDateTime(year, doy, hour, minute, second,
+          tenthMillis);
+      return Time.calculateEpochMicroSeconds(dateTime);
+    }
+    if (year != m_lastYear || doy != m_lastDayOfYear) {
+      m_lastEpochDay = LocalDate.ofYearDay(year, doy).toEpochDay();
+      m_lastYear = year;
+      m_lastDayOfYear = doy;
+    }
+    long seconds = m_lastEpochDay * 86400L + hour * 3600L + minute * 60L + second;
+    return seconds * 1000000L + tenthMillis * 100L;
+  }
+
+  /**
+   * Get the channel of a record. Records of a channel arrive in runs, or interleaved with a few
+   * others, so recent channels are kept and reused while the codes and rate stay the same.
+   */
+  private ChannelId channelId(MiniSeedHeader record, double sampleRate) {
+    for (int i = 0; i < RECENT_CHANNELS; i++) {
+      ChannelId recent = m_recentChannels[i];
+      if (recent != null && sampleRate == recent.getSampleRate()
+          && record.codesEqual(m_recentCodes[i])) {
+        return recent;
+      }
+    }
+    String seedstring = record.getSeedname();
+    String network = seedstring.substring(0, 2).trim();
+    String station = seedstring.substring(2, 7).trim();
+    String location = seedstring.substring(10, 12).trim();
+    String channel = seedstring.substring(7, 10).trim();
+
+    // Set the default location codes
+    if (location.equals("--") || location.equals("")) {
+      logger.debug("miniseed channel=[{}] location=[{}] was changed to [00]",
+          channel, location);
+      location = "00";
+    }
+    if (location.equals("HR")) {
+      logger.debug("miniseed channel=[{}] location=[{}] was changed to [10]",
+          channel, location);
+      location = "10";
+    }
+
+    ChannelId channelId = ChannelId.of(network, station, location, channel, sampleRate);
+    // Only reused for the exact rate, the interned id may hold another that prints the same
+    if (channelId.getSampleRate() == sampleRate) {
+      record.copyCodes(m_recentCodes[m_nextRecent]);
+      m_recentChannels[m_nextRecent] = channelId;
+      m_nextRecent = (m_nextRecent + 1) % RECENT_CHANNELS;
+    }
+    return channelId;
+  }
+
+  /**
+   * Assemble every channel's records into a list of contiguous DataSets.
+   *
+   * @param table table the channel lists are added to
+   */
+  void finish(Hashtable<String, ArrayList<DataSet>> table) {
+    long start = System.nanoTime();
+    SteimDecoder decoder = SteimDecoder.get();
+    for (ChannelId chanKey : m_indexes.keySet()) {
+      ChannelIndex index = m_indexes.get(chanKey);
+      logger.debug("Assembling " + index.size() + " records for '" + chanKey + "'");
+      table.put(chanKey.toString(), index.assemble(decoder));
+
+      ArrayList<Integer> qualities = index.getQualities();
+      if (qualities != null) {
+        m_qualityTable.put(chanKey.toString(), qualities);
+      }
+      ArrayList<Blockette320> calibrations = index.getCalibrations();
+      if (calibrations != null) {
+        m_calTable.put(chanKey.toString(), calibrations);
+      }
+    }
+    m_decodeNanos += System.nanoTime() - start;
+
+    logger.debug("Kept " + m_kept + " records");
+    logger.debug("Discarded " + m_discarded + " records");
+    for (ChannelId countKey : m_indexes.keySet()) {
+      logger.debug("  " + countKey + ": " + m_indexes.get(countKey).size() + " records");
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package asl.seedsplitter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The location and channel codes whose records a {@link SeedSplitter} decodes. Records of any
+ * other channel are rejected from the codes in their fixed header, before the record is parsed or
+ * its samples decompressed.
+ * <p>
+ * Location codes are renamed the same way they are when decoding, so "--" and blank match 00 and
+ * HR matches 10.
+ */
+public final class ChannelFilter {
+
+  /**
+   * Packed codes of the accepted channels, sorted.
+   */
+  private final long[] codes;
+
+  /**
+   * Constructor.
+   *
+   * @param channels accepted channels formatted as location-channel, such as 00-LHZ
+   */
+  public ChannelFilter(Collection<String> channels) {
+    long[] packed = new long[channels.size()];
+    int count = 0;
+    for (String channel : channels) {
+      // Channel codes never contain a dash, location codes may
+      int dash = channel.lastIndexOf('-');
+      if (dash < 0) {
+        continue;
+      }
+      long code = code(channel.substring(0, dash), channel.substring(dash + 1));
+      if (code >= 0) {
+        packed[count++] = code;
+      }
+    }
+    packed = Arrays.copyOf(packed, count);
+    Arrays.sort(packed);
+    codes = packed;
+  }
+
+  private ChannelFilter(long[] codes) {
+    this.codes = codes;
+  }
+
+  /**
+   * Recreate a filter from its codes, see {@link #getCodes()}.
+   *
+   * @param codes packed codes of the accepted channels
+   * @return the filter
+   */
+  public static ChannelFilter fromCodes(long[] codes) {
+    long[] sorted = codes.clone();
+    Arrays.sort(sorted);
+    return new ChannelFilter(sorted);
+  }
+
+  /**
+   * @return packed codes of the accepted channels, sorted. Equal filters have equal codes.
+   */
+  public long[] getCodes() {
+    return codes.clone();
+  }
+
+  /**
+   * @param block a record
+   * @return true if the record belongs to an accepted channel or is too short to tell
+   */
+  public boolean accepts(ByteBlock block) {
+    if (block.getLength() < 20) {
+      return true;
+    }
+    // Bytes 13 and 14 are the location code, 15 to 17 the channel code
+    long code = code(block.getByte(13), block.getByte(14), block.getByte(15), block.getByte(16),
+        block.getByte(17));
+    return Arrays.binarySearch(codes, code) >= 0;
+  }
+
+  /**
+   * @return number of accepted channels
+   */
+  public int size() {
+    return codes.length;
+  }
+
+  private static long code(String location, String channel) {
+    if (location.length() > 2 || channel.length() > 3) {
+      // Derived channels such as LHND are never in the data
+      return -1;
+    }
+    return code(charAt(location, 0), charAt(location, 1), charAt(channel, 0),
+        charAt(channel, 1), charAt(channel, 2));
+  }
+
+  private static int charAt(String code, int index) {
+    return index < code.length() ? code.charAt(index) : ' ';
+  }
+
+  private static long code(int location0, int location1, int channel0, int channel1,
+      int channel2) {
+    int location = pack(' ', location0 & 0xFF, location1 & 0xFF);
+    if (location == 0 || location == ('-' << 8 | '-')) {
+      location = '0' << 8 | '0';
+    } else if (location == ('H' << 8 | 'R')) {
+      location = '1' << 8 | '0';
+    }
+    return (long) location << 24 | pack(channel0 & 0xFF, channel1 & 0xFF, channel2 & 0xFF);
+  }
+
+  /**
+   * Pack up to three characters into an int, leaving out leading and trailing blanks the way
+   * String.trim() does.
+   */
+  private static int pack(int c0, int c1, int c2) {
+    int packed = 0;
+    int blanks = 0;
+    boolean started = false;
+    for (int i = 0; i < 3; i++) {
+      int c = i == 0 ? c0 : (i == 1 ? c1 : c2);
+      if (c <= ' ') {
+        // Only kept if something follows
+        if (started) {
+          blanks++;
+        }
+        continue;
+      }
+      for (; blanks > 0; blanks--) {
+        packed = packed << 8 | ' ';
+      }
+      packed = packed << 8 | c;
+      started = true;
+    }
+    return packed;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ChannelFilter && Arrays.equals(codes, ((ChannelFilter) o).codes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(codes);
+  }
+}
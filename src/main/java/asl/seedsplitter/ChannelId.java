@@ -0,0 +1,171 @@
+package asl.seedsplitter;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The identity of a channel's data: network, station, location, channel and sample rate. Ids are
+ * interned, so there is one instance per channel for the life of the process and instances can be
+ * compared with ==. Each has a dense integer id, numbered from 0 in the order the channels were
+ * first seen, for indexing arrays by channel.
+ * <p>
+ * {@link #toString()} is the string key the channel's data has always been stored under, such as
+ * "IU_ANMO 00-BHZ (20.0 Hz)". Channels are interned by that key, so rates that print the same
+ * share an id, just as they always shared a key.
+ */
+public final class ChannelId {
+
+  private static final ConcurrentHashMap<String, ChannelId> byKey = new ConcurrentHashMap<>();
+
+  /**
+   * Interned ids by their integer id. Only replaced, never modified, once published.
+   */
+  private static volatile ChannelId[] byId = new ChannelId[64];
+
+  private static int count = 0;
+
+  private final int id;
+  private final String network;
+  private final String station;
+  private final String location;
+  private final String channel;
+  private final double sampleRate;
+  private final String key;
+
+  private ChannelId(int id, String network, String station, String location, String channel,
+      double sampleRate, String key) {
+    this.id = id;
+    this.network = network;
+    this.station = station;
+    this.location = location;
+    this.channel = channel;
+    this.sampleRate = sampleRate;
+    this.key = key;
+  }
+
+  /**
+   * Get the interned id of a channel, creating it the first time.
+   *
+   * @param network    network code
+   * @param station    station code
+   * @param location   location code
+   * @param channel    channel code
+   * @param sampleRate sample rate in Hz
+   * @return the interned id
+   */
+  public static ChannelId of(String network, String station, String location, String channel,
+      double sampleRate) {
+    String key = String.format("%s_%s %s-%s (%.1f Hz)", network, station, location, channel,
+        sampleRate);
+    ChannelId channelId = byKey.get(key);
+    if (channelId != null) {
+      return channelId;
+    }
+    return intern(network, station, location, channel, sampleRate, key);
+  }
+
+  /**
+   * Get the interned id of a string key, as {@link #toString()} formats them.
+   *
+   * @param key a key such as "IU_ANMO 00-BHZ (20.0 Hz)"
+   * @return the interned id, or null if the key is not in that form
+   */
+  public static ChannelId parse(String key) {
+    ChannelId channelId = byKey.get(key);
+    if (channelId != null) {
+      return channelId;
+    }
+    int underscore = key.indexOf('_');
+    int space = key.indexOf(' ', underscore + 1);
+    int open = key.lastIndexOf(" (");
+    int dash = open < 0 ? -1 : key.lastIndexOf('-', open);
+    if (underscore < 0 || space < 0 || dash < space || !key.endsWith(" Hz)")) {
+      return null;
+    }
+    double sampleRate;
+    try {
+      // The rate is formatted in the default locale
+      sampleRate = Double
+          .parseDouble(key.substring(open + 2, key.length() - 4).replace(',', '.'));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return intern(key.substring(0, underscore), key.substring(underscore + 1, space),
+        key.substring(space + 1, dash), key.substring(dash + 1, open), sampleRate, key);
+  }
+
+  /**
+   * @param id an integer id
+   * @return the channel with that id, or null if there is none
+   */
+  public static ChannelId get(int id) {
+    ChannelId[] ids = byId;
+    return id >= 0 && id < ids.length ? ids[id] : null;
+  }
+
+  /**
+   * @return number of channels interned, one more than the highest integer id
+   */
+  public static synchronized int count() {
+    return count;
+  }
+
+  private static synchronized ChannelId intern(String network, String station, String location,
+      String channel, double sampleRate, String key) {
+    ChannelId channelId = byKey.get(key);
+    if (channelId == null) {
+      channelId = new ChannelId(count, network, station, location, channel, sampleRate, key);
+      ChannelId[] ids = byId;
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      }
+      ids[count++] = channelId;
+      byId = ids;
+      byKey.put(key, channelId);
+    }
+    return channelId;
+  }
+
+  /**
+   * @return the dense integer id
+   */
+  public int getId() {
+    return id;
+  }
+
+  public String getNetwork() {
+    return network;
+  }
+
+  public String getStation() {
+    return station;
+  }
+
+  public String getLocation() {
+    return location;
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * @return sample rate in Hz
+   */
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  @Override
+  public int hashCode() {
+    return id;
+  }
+
+  /**
+   * @return the string key, such as "IU_ANMO 00-BHZ (20.0 Hz)"
+   */
+  @Override
+  public String toString() {
+    return key;
+  }
+}
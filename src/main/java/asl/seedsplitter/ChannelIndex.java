@@ -0,0 +1,464 @@
+package asl.seedsplitter;
+
+import edu.iris.dmc.seedcodec.SteimException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import seed.Blockette320;
+import seed.MiniSeedHeader;
+
+/**
+ * The records of one channel, indexed by start time and sample count as they are read, and
+ * assembled into contiguous {@link DataSet}s once every record has arrived.
+ * <p>
+ * Assembly is done in two phases. The index is first split into DataSets and merged on paper,
+ * following the same rules as when each record was decoded into an open DataSet, the DataSets
+ * were ordered in a TreeSet and merged with {@link Sequence#mergeInto(Sequence)}, so gaps and
+ * overlaps come out exactly as they always have. Every record that is kept is then decoded once,
+ * in order, into a DataSet whose length is already known. No samples are moved while merging,
+ * however out of order the records arrived.
+ * <p>
+ * A record that fails to decode adds no samples, but still opens a DataSet if it does not follow
+ * the one before it, as it always has. Failures found while decoding change the plan, so the
+ * channel is planned again without the record's samples and decoded again.
+ * <p>
+ * An index can be kept of record headers alone, for metrics that only read the extent of the data
+ * and its timing quality. Its DataSets have the lengths the headers give and no samples, see
+ * {@link Sequence#isDecoded()}, and no record is decompressed. Records whose frames hold fewer
+ * samples than their header says are only found by decoding, so these are counted in full.
+ */
+final class ChannelIndex {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedsplitter.ChannelIndex.class);
+
+  /**
+   * The record is the first of the channel.
+   */
+  static final int FIRST = 0;
+
+  /**
+   * The record follows the open DataSet and is added to it.
+   */
+  static final int APPEND = 1;
+
+  /**
+   * The record starts too long after the open DataSet, which is closed.
+   */
+  static final int GAP = 2;
+
+  /**
+   * The record starts before the end of the open DataSet, which is closed.
+   */
+  static final int OVERLAP = 3;
+
+  private final ChannelId m_channel;
+  private final boolean m_decode;
+  private final boolean m_compress;
+
+  private int m_count = 0;
+  private ByteBlock[] m_records = new ByteBlock[64];
+  private long[] m_startTimes = new long[64];
+  private double[] m_sampleRates = new double[64];
+  private long[] m_intervals = new long[64];
+  // Zero once a record is known not to decode
+  private int[] m_samples = new int[64];
+  private int[] m_dataOffsets = new int[64];
+  private int[] m_dataLengths = new int[64];
+  private byte[] m_encodings = new byte[64];
+  private boolean[] m_swaps = new boolean[64];
+  private boolean[] m_failed = new boolean[64];
+  // Timing quality of each record, -1 without a blockette 1001
+  private short[] m_qualities = new short[64];
+
+  // Calibration blockettes and the records they were read from, rare enough to box
+  private final ArrayList<Blockette320> m_calibrations = new ArrayList<>();
+  private final ArrayList<Integer> m_calibrationRecords = new ArrayList<>();
+
+  // The DataSet left open by the records read so far
+  private long m_openStartTime = 0;
+  private long m_openInterval = 0;
+  private long m_openLength = -1;
+
+  // Slices of mapped files are copied into this, sized to the record length.
+  private byte[] m_sliceBytes = new byte[0];
+
+  /**
+   * @param channel  the channel of every record added
+   * @param decode   false to keep record headers alone, without decoding samples
+   * @param compress true to keep the DataSets' full blocks compressed, see
+   *                 {@link Sequence#setCompressed(boolean)}
+   */
+  ChannelIndex(ChannelId channel, boolean decode, boolean compress) {
+    m_channel = channel;
+    m_decode = decode;
+    m_compress = compress;
+  }
+
+  /**
+   * Decide where a record goes after a DataSet. Records within an interval of where the DataSet
+   * ends are added to it, timing jitter and all.
+   *
+   * @param endTime   end of the DataSet, as {@link Sequence#getEndTime()}
+   * @param startTime start of the record
+   * @param interval  the record's interval
+   * @return {@link #APPEND}, {@link #GAP} or {@link #OVERLAP}
+   */
+  static int follows(long endTime, long startTime, long interval) {
+    // Allow for a fudge factor of 1 millisecond if sample
+    // rate is less than 100 Hz.
+    //
+    // Is this a good idea, or would it be better to simply
+    // report a gap so the user is aware of the jump?
+    //
+    // long intervalAdjustment = (interval > 10000 ? 1000 :
+    // 0);
+    long intervalAdjustment = interval;
+    if ((startTime - endTime) > (interval + intervalAdjustment)) {
+      return GAP;
+    }
+    if ((startTime - endTime) < (interval - intervalAdjustment)) {
+      return OVERLAP;
+    }
+    return APPEND;
+  }
+
+  /**
+   * @return end of the DataSet left open by the records read so far, as
+   * {@link Sequence#getEndTime()}
+   */
+  long getOpenEndTime() {
+    return m_openStartTime + m_openInterval * m_openLength;
+  }
+
+  /**
+   * Index a record. The record's block is kept until the channel is assembled, it is not copied.
+   * Blocks are not kept by an index of headers alone.
+   *
+   * @param block      the record
+   * @param record     the record's header
+   * @param startTime  start of the record in microseconds since the epoch
+   * @param sampleRate the record's sample rate
+   * @param interval   the record's interval
+   * @param dataLength length of the record's frames, or -1 if the record can not be decoded
+   * @return where the record goes after the records before it, one of {@link #FIRST},
+   * {@link #APPEND}, {@link #GAP} or {@link #OVERLAP}
+   */
+  int add(ByteBlock block, MiniSeedHeader record, long startTime, double sampleRate,
+      long interval, int dataLength) {
+    if (m_count == m_records.length) {
+      grow();
+    }
+    int index = m_count++;
+    boolean failed = dataLength < 0;
+    m_records[index] = m_decode ? block : null;
+    m_startTimes[index] = startTime;
+    m_sampleRates[index] = sampleRate;
+    m_intervals[index] = interval;
+    m_samples[index] = failed ? 0 : record.getNsamp();
+    m_dataOffsets[index] = record.getDataOffset();
+    m_dataLengths[index] = dataLength;
+    m_encodings[index] = (byte) record.getEncoding();
+    m_swaps[index] = record.isSwapBytes();
+    m_failed[index] = failed;
+    m_qualities[index] = (short) (failed ? -1 : record.getTimingQuality());
+    if (!failed) {
+      byte[] blockette320 = record.getBlockette320();
+      if (blockette320 != null) {
+        m_calibrations.add(new Blockette320(blockette320));
+        m_calibrationRecords.add(index);
+      }
+    }
+
+    int place = m_openLength < 0 ? FIRST : follows(getOpenEndTime(), startTime, interval);
+    if (place != APPEND) {
+      m_openStartTime = startTime;
+      m_openInterval = interval;
+      m_openLength = 0;
+    }
+    m_openLength += m_samples[index];
+    return place;
+  }
+
+  private void grow() {
+    int length = m_records.length * 2;
+    m_records = Arrays.copyOf(m_records, length);
+    m_startTimes = Arrays.copyOf(m_startTimes, length);
+    m_sampleRates = Arrays.copyOf(m_sampleRates, length);
+    m_intervals = Arrays.copyOf(m_intervals, length);
+    m_samples = Arrays.copyOf(m_samples, length);
+    m_dataOffsets = Arrays.copyOf(m_dataOffsets, length);
+    m_dataLengths = Arrays.copyOf(m_dataLengths, length);
+    m_encodings = Arrays.copyOf(m_encodings, length);
+    m_swaps = Arrays.copyOf(m_swaps, length);
+    m_failed = Arrays.copyOf(m_failed, length);
+    m_qualities = Arrays.copyOf(m_qualities, length);
+  }
+
+  /**
+   * @return number of records indexed
+   */
+  int size() {
+    return m_count;
+  }
+
+  /**
+   * Assemble the channel's contiguous DataSets, in order of start time.
+   *
+   * @param decoder the calling thread's decoder
+   * @return the DataSets
+   * @throws RuntimeException if DataSets of different intervals meet, which should never happen
+   */
+  ArrayList<DataSet> assemble(SteimDecoder decoder) {
+    if (!m_decode) {
+      ArrayList<Run> runs = plan();
+      ArrayList<DataSet> dataSets = new ArrayList<>(runs.size());
+      for (Run run : runs) {
+        DataSet dataSet = newDataSet(run.first);
+        dataSet.extendUndecoded(run.length);
+        dataSets.add(dataSet);
+      }
+      return dataSets;
+    }
+    while (true) {
+      ArrayList<Run> runs = plan();
+      ArrayList<DataSet> dataSets = new ArrayList<>(runs.size());
+      boolean failed = false;
+      for (Run run : runs) {
+        DataSet dataSet = newDataSet(run.first);
+        dataSet.reserve(run.length);
+        for (Segment segment : run.segments) {
+          failed |= decode(decoder, segment, dataSet);
+        }
+        dataSets.add(dataSet);
+      }
+      if (!failed) {
+        return dataSets;
+      }
+      logger.debug("Planning '{}' again without the records that failed to decode", m_channel);
+    }
+  }
+
+  /**
+   * @return timing qualities of the records that decoded, or null if none did
+   */
+  ArrayList<Integer> getQualities() {
+    ArrayList<Integer> qualities = null;
+    for (int i = 0; i < m_count; i++) {
+      if (!m_failed[i]) {
+        if (qualities == null) {
+          qualities = new ArrayList<>();
+        }
+        if (m_qualities[i] >= 0) {
+          qualities.add((int) m_qualities[i]);
+        }
+      }
+    }
+    return qualities;
+  }
+
+  /**
+   * @return calibration blockettes of the records that decoded, or null if there are none
+   */
+  ArrayList<Blockette320> getCalibrations() {
+    ArrayList<Blockette320> calibrations = null;
+    for (int i = 0; i < m_calibrations.size(); i++) {
+      if (!m_failed[m_calibrationRecords.get(i)]) {
+        if (calibrations == null) {
+          calibrations = new ArrayList<>();
+        }
+        calibrations.add(m_calibrations.get(i));
+      }
+    }
+    return calibrations;
+  }
+
+  /**
+   * Split the records into the DataSets they open and merge those into runs, as the TreeSet and
+   * {@link Sequence#mergeInto(Sequence)} did.
+   */
+  private ArrayList<Run> plan() {
+    // Records in the order they were read, split where they do not follow the open DataSet
+    ArrayList<Segment> segments = new ArrayList<>();
+    Segment open = null;
+    for (int i = 0; i < m_count; i++) {
+      if (open == null
+          || follows(open.getEndTime(), m_startTimes[i], m_intervals[i]) != APPEND) {
+        open = new Segment(i, m_startTimes[i], m_intervals[i]);
+        segments.add(open);
+      }
+      open.end = i + 1;
+      open.length += m_samples[i];
+    }
+
+    // Sorted by start then end, a stable sort keeps the first of equal DataSets as a TreeSet did
+    segments.sort((a, b) -> a.startTime != b.startTime ? Long.compare(a.startTime, b.startTime)
+        : Long.compare(a.getEndTime(), b.getEndTime()));
+
+    ArrayList<Run> runs = new ArrayList<>();
+    Run run = null;
+    Segment last = null;
+    for (Segment segment : segments) {
+      if (last != null && segment.startTime == last.startTime
+          && segment.getEndTime() == last.getEndTime()) {
+        continue;
+      }
+      last = segment;
+      if (run == null) {
+        run = new Run(segment);
+        runs.add(run);
+        continue;
+      }
+      if (segment.interval != run.interval) {
+        throw new RuntimeException("Interval Mismatch. This should never happen!");
+      }
+      long interval = segment.interval;
+      /*
+       * Allow for a fudge factor of 1 millisecond if sample rate is less than
+       * 100 Hz.
+       *
+       * Is this a good idea, or would it be better to simply report a gap so
+       * the user is aware of the jump?
+       *
+       * I changed this to have a fudge of 10 millisecond
+       */
+      long intervalAdjustment = interval / 10;
+      long runEndTime = run.getEndTime();
+      if (segment.startTime > runEndTime
+          && (((segment.startTime - runEndTime) < (interval - intervalAdjustment))
+          || ((segment.startTime - runEndTime) > (interval + intervalAdjustment)))) {
+        logger.warn("Source is more than 1 data point after target. (difference = "
+            + (segment.startTime - runEndTime) + " ms OR "
+            + ((segment.startTime - runEndTime) / interval) + " data points)");
+        run = new Run(segment);
+        runs.add(run);
+      } else if (segment.getEndTime() <= runEndTime) {
+        // Runs start no later than the DataSets merged into them, so this one is inside the run.
+        logger.debug("Subsequence. Dropped.");
+      } else {
+        // The number of data points to skip in order to prevent a data overlap.
+        if (segment.startTime <= runEndTime) {
+          segment.skip = (int) ((runEndTime - segment.startTime) / interval + 1);
+        }
+        run.segments.add(segment);
+        run.length += segment.length - segment.skip;
+      }
+    }
+    return runs;
+  }
+
+  /**
+   * A new empty DataSet of the channel with the start time and rate of a record.
+   */
+  private DataSet newDataSet(int record) {
+    DataSet dataSet = new DataSet();
+    dataSet.setNetwork(m_channel.getNetwork());
+    dataSet.setStation(m_channel.getStation());
+    dataSet.setLocation(m_channel.getLocation());
+    dataSet.setChannel(m_channel.getChannel());
+    dataSet.setStartTime(m_startTimes[record]);
+    dataSet.setCompressed(m_compress);
+    try {
+      dataSet.setSampleRate(m_sampleRates[record]);
+    } catch (IllegalSampleRateException e) {
+      // The rate's interval was taken when the record was indexed
+      throw new RuntimeException(e);
+    }
+    return dataSet;
+  }
+
+  /**
+   * Decode the records of a segment into a DataSet, past the samples the segment skips.
+   *
+   * @return true if a record failed to decode
+   */
+  private boolean decode(SteimDecoder decoder, Segment segment, DataSet dataSet) {
+    boolean failed = false;
+    int skip = segment.skip;
+    for (int i = segment.first; i < segment.end; i++) {
+      if (m_failed[i]) {
+        continue;
+      }
+      int samples = m_samples[i];
+      byte[] recordBytes = bytes(m_records[i]);
+      try {
+        if (skip == 0) {
+          dataSet.extend(decoder, recordBytes, m_dataOffsets[i], m_dataLengths[i],
+              m_encodings[i], samples, m_swaps[i]);
+        } else {
+          int[] scratch = decoder.scratch(samples);
+          decoder.decode(recordBytes, m_dataOffsets[i], m_dataLengths[i], m_encodings[i],
+              samples, m_swaps[i], scratch, 0);
+          int skipped = Math.min(skip, samples);
+          dataSet.extend(scratch, skipped, samples - skipped);
+          skip -= skipped;
+        }
+      } catch (SteimException e) {
+        logger.error("SteimException: {}", e.getMessage());
+        m_failed[i] = true;
+        m_samples[i] = 0;
+        failed = true;
+      }
+    }
+    return failed;
+  }
+
+  private byte[] bytes(ByteBlock block) {
+    if (!block.isSlice()) {
+      return block.getData();
+    }
+    if (m_sliceBytes.length != block.getLength()) {
+      m_sliceBytes = new byte[block.getLength()];
+    }
+    return block.readInto(m_sliceBytes);
+  }
+
+  /**
+   * A run of records that opened one DataSet when they were read, index from first to end.
+   */
+  private static final class Segment {
+
+    private final int first;
+    private final long startTime;
+    private final long interval;
+    private int end;
+    private int length = 0;
+    // Samples at the start already in the run
+    private int skip = 0;
+
+    private Segment(int first, long startTime, long interval) {
+      this.first = first;
+      this.startTime = startTime;
+      this.interval = interval;
+    }
+
+    private long getEndTime() {
+      return startTime + interval * length;
+    }
+  }
+
+  /**
+   * Segments merged into one contiguous DataSet, which takes the start and rate of the first.
+   */
+  private static final class Run {
+
+    private final int first;
+    private final long startTime;
+    private final long interval;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private int length;
+
+    private Run(Segment segment) {
+      first = segment.first;
+      startTime = segment.startTime;
+      interval = segment.interval;
+      length = segment.length;
+      segments.add(segment);
+    }
+
+    private long getEndTime() {
+      return startTime + interval * length;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package asl.seedsplitter;
+
+import asl.seedscan.Global;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import seed.BlockSizeException;
+import seed.IllegalSeednameException;
+import seed.MiniSeed;
+
+/**
+ * Reads MiniSEED records from a memory mapped file and pushes them into a queue to be processed by
+ * a {@link SeedSplitProcessor}. Records are passed as slices of the mapped file rather than copied
+ * into new arrays.
+ * <p>
+ * Records are found the same way {@link SeedInputStream} finds them. The file is scanned in 256
+ * byte chunks, chunks with a quality indicator that is not allowed are skipped, and otherwise the
+ * record length is read from the header.
+ */
+public class MappedSeedReader implements Runnable {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedsplitter.MappedSeedReader.class);
+
+  private static final int BLOCK_SIZE = 256;
+
+  private final File m_file;
+  private final RecordRing m_queue;
+  private final boolean m_indicateLast;
+
+  /**
+   * Header of the record being read, reused for every record.
+   */
+  private final byte[] m_header = new byte[BLOCK_SIZE];
+
+  private final boolean m_allFlags;
+  private final boolean[] m_allowedFlags = new boolean[256];
+
+  /**
+   * Constructor.
+   *
+   * @param file         The file from which to read MiniSEED records.
+   * @param queue        The processing queue into which the MiniSEED records are placed.
+   * @param indicateLast An indicator of whether this is the last file, which closes the queue.
+   */
+  public MappedSeedReader(File file, RecordRing queue, boolean indicateLast) {
+    m_file = file;
+    m_queue = queue;
+    m_indicateLast = indicateLast;
+
+    //Restrict the data to the allowed quality flags. Typically 'D' 'M' 'Q' 'R'
+    List<String> qualityFlags = Arrays.asList(Global.getQualityflags().split(","));
+    m_allFlags = qualityFlags.contains("All");
+    for (String flag : qualityFlags) {
+      if (flag.length() == 1 && flag.charAt(0) < m_allowedFlags.length) {
+        m_allowedFlags[flag.charAt(0)] = true;
+      }
+    }
+  }
+
+  /**
+   * Map the file.
+   *
+   * @return the mapped file or null if it is too large to map
+   * @throws IOException if the file cannot be mapped
+   */
+  private MappedByteBuffer map() throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(m_file, "r");
+        FileChannel channel = file.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return null;
+      }
+      // The mapping remains valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * @return true if this file can be mapped, false if it must be read as a stream instead
+   */
+  public static boolean canMap(File file) {
+    return file.length() <= Integer.MAX_VALUE;
+  }
+
+  /**
+   * Maps the file, finds each full SEED record and pushes a slice of it into the queue for
+   * processing.
+   */
+  @Override
+  public void run() {
+    try {
+      MappedByteBuffer buffer = map();
+      if (buffer == null) {
+        logger.error("File '{}' is too large to map", m_file.getName());
+      } else {
+        readRecords(buffer);
+      }
+    } catch (IOException e) {
+      logger.error("IOException:", e);
+    } catch (InterruptedException e) {
+      // The split was cancelled
+      logger.debug("MappedSeedReader interrupted, stopping");
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    if (m_indicateLast) {
+      m_queue.close();
+      return;
+    }
+    try {
+      m_queue.put(new ByteBlock(null, 0, true, false));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void readRecords(ByteBuffer buffer) throws InterruptedException {
+    ByteBuffer view = buffer.duplicate();
+    int limit = buffer.limit();
+    int position = 0;
+    while (position + BLOCK_SIZE <= limit) {
+      int indicator = buffer.get(position + 6) & 0xFF;
+      if (!m_allFlags && !m_allowedFlags[indicator]) {
+        logger.error(String.format("Skipping bad indicator: 0x%x", indicator));
+        position += BLOCK_SIZE;
+        continue;
+      }
+
+      view.position(position);
+      view.get(m_header, 0, BLOCK_SIZE);
+      int recordLength;
+      try {
+        recordLength = MiniSeed.crackBlockSize(m_header);
+      } catch (IllegalSeednameException | BlockSizeException e) {
+        logger.debug("Invalid Format, Skipping Chunk.");
+        logger.error(e.getMessage());
+        position += BLOCK_SIZE;
+        continue;
+      }
+      if (recordLength <= 0 || position + recordLength > limit) {
+        logger.error("Truncated record at byte {} of '{}'", position, m_file.getName());
+        return;
+      }
+
+      m_queue.put(new ByteBlock(buffer, position, recordLength));
+      position += recordLength;
+    }
+  }
+}
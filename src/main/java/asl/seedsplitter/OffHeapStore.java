@@ -0,0 +1,213 @@
+package asl.seedsplitter;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the blocks of a Sequence outside the Java heap, in a direct buffer or a memory mapped
+ * scratch file, so the garbage collector neither scans nor copies them. Compressed blocks stay
+ * compressed.
+ * <p>
+ * The memory is freed by {@link #release()} rather than waiting for the buffer to be collected.
+ * Nothing may read the store once it is released, reading freed memory can crash the JVM.
+ */
+final class OffHeapStore implements SampleStore {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedsplitter.OffHeapStore.class);
+
+  /**
+   * Frees a direct or mapped buffer, where the JDK allows it. Null if it does not.
+   */
+  private static final Method invokeCleaner;
+  private static final Object unsafe;
+
+  static {
+    Method method = null;
+    Object instance = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      instance = field.get(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.debug("Off heap samples are freed by the garbage collector: {}", e.toString());
+      method = null;
+    }
+    invokeCleaner = method;
+    unsafe = instance;
+  }
+
+  private final ByteBuffer buffer;
+  private final IntBuffer words;
+
+  /**
+   * Word offset of each block, and of the end of the last.
+   */
+  private final int[] offsets;
+  private final boolean[] compressed;
+
+  private volatile boolean released = false;
+
+  private OffHeapStore(ByteBuffer buffer, int[] offsets, boolean[] compressed) {
+    this.buffer = buffer;
+    this.words = buffer.asIntBuffer();
+    this.offsets = offsets;
+    this.compressed = compressed;
+  }
+
+  /**
+   * Copy blocks into a direct buffer.
+   *
+   * @param blocks     the blocks
+   * @param lastLength data points in the last block, which is raw
+   * @return the store
+   */
+  static OffHeapStore direct(List<int[]> blocks, int lastLength) {
+    int[] offsets = offsets(blocks, lastLength);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes(offsets))
+        .order(ByteOrder.nativeOrder());
+    return fill(buffer, blocks, offsets);
+  }
+
+  /**
+   * Copy blocks into a memory mapped scratch file. The file is deleted once mapped, so it is
+   * removed even if the JVM exits without releasing it.
+   *
+   * @param blocks     the blocks
+   * @param lastLength data points in the last block, which is raw
+   * @param directory  directory to create the scratch file in
+   * @return the store
+   * @throws IOException if the file can not be created or mapped
+   */
+  static OffHeapStore mapped(List<int[]> blocks, int lastLength, Path directory)
+      throws IOException {
+    int[] offsets = offsets(blocks, lastLength);
+    Path file = Files.createTempFile(directory, "samples", ".tmp");
+    ByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(bytes(offsets));
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes(offsets))
+          .order(ByteOrder.nativeOrder());
+    } finally {
+      try {
+        Files.delete(file);
+      } catch (IOException e) {
+        // Windows does not delete mapped files
+        file.toFile().deleteOnExit();
+      }
+    }
+    return fill(buffer, blocks, offsets);
+  }
+
+  private static int[] offsets(List<int[]> blocks, int lastLength) {
+    int[] offsets = new int[blocks.size() + 1];
+    for (int i = 0; i < blocks.size(); i++) {
+      int length = i == blocks.size() - 1 ? lastLength : blocks.get(i).length;
+      offsets[i + 1] = offsets[i] + length;
+    }
+    return offsets;
+  }
+
+  private static int bytes(int[] offsets) {
+    long bytes = (long) offsets[offsets.length - 1] * Integer.BYTES;
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many data points for one buffer");
+    }
+    return (int) bytes;
+  }
+
+  private static OffHeapStore fill(ByteBuffer buffer, List<int[]> blocks, int[] offsets) {
+    boolean[] compressed = new boolean[blocks.size()];
+    IntBuffer words = buffer.asIntBuffer();
+    for (int i = 0; i < blocks.size(); i++) {
+      int[] block = blocks.get(i);
+      words.put(block, 0, offsets[i + 1] - offsets[i]);
+      compressed[i] = BlockCodec.isCompressed(block);
+    }
+    return new OffHeapStore(buffer, offsets, compressed);
+  }
+
+  @Override
+  public int[] block(int index, int[] scratch) {
+    if (released) {
+      throw new IllegalStateException("Data points were released");
+    }
+    if (scratch == null) {
+      scratch = new int[Sequence.BLOCK_SIZE];
+    }
+    IntBuffer view = words.duplicate();
+    view.position(offsets[index]);
+    view.get(scratch, 0, offsets[index + 1] - offsets[index]);
+    return scratch;
+  }
+
+  @Override
+  public boolean isCompressed(int index) {
+    return compressed[index];
+  }
+
+  /**
+   * @return number of blocks
+   */
+  int size() {
+    return compressed.length;
+  }
+
+  /**
+   * @return bytes the blocks take
+   */
+  long getBytes() {
+    return (long) offsets[offsets.length - 1] * Integer.BYTES;
+  }
+
+  /**
+   * Copy the blocks back onto the heap. Raw blocks are {@link Sequence#BLOCK_SIZE} long again,
+   * taken from the {@link SlabPool}.
+   *
+   * @return the blocks
+   */
+  ArrayList<int[]> toBlocks() {
+    ArrayList<int[]> blocks = new ArrayList<>(compressed.length);
+    for (int i = 0; i < compressed.length; i++) {
+      int length = offsets[i + 1] - offsets[i];
+      int[] block = compressed[i] ? new int[length] : SlabPool.acquire();
+      IntBuffer view = words.duplicate();
+      view.position(offsets[i]);
+      view.get(block, 0, length);
+      blocks.add(block);
+    }
+    return blocks;
+  }
+
+  /**
+   * Free the memory or mapping now. Where the JDK does not allow it, it is freed once the store is
+   * collected.
+   */
+  void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    if (invokeCleaner != null) {
+      try {
+        invokeCleaner.invoke(unsafe, buffer);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        logger.debug("Unable to free off heap samples: {}", e.toString());
+      }
+    }
+  }
+}
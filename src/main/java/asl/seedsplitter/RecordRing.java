@@ -0,0 +1,158 @@
+package asl.seedsplitter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer handing records from a single reader to a single {@link SeedSplitProcessor}.
+ * <p>
+ * Neither side takes a lock or allocates per record. The consumer drains every available record in
+ * one batch. A full ring blocks the reader and an empty ring blocks the consumer, each parking
+ * until the other side makes progress. A blocked reader is only woken once half the ring is free,
+ * so both sides hand over records in large batches. The reader ends the stream with
+ * {@link #close()}.
+ * <p>
+ * Only one thread may put and only one thread may drain at a time.
+ */
+public class RecordRing {
+
+  private final ByteBlock[] slots;
+  private final int mask;
+
+  /**
+   * Count of records put. Written only by the producer.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Count of records drained. Written only by the consumer.
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  private volatile boolean closed = false;
+
+  /**
+   * The blocked side, if any. Cleared by whichever side wakes it, so it is woken once.
+   * <p>
+   * A side publishes its count with a volatile write before checking for a waiter, and a waiter
+   * sets itself before checking the count again. So either the waiter sees the new count and does
+   * not park, or the other side sees the waiter and wakes it. No wakeup is lost.
+   */
+  private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+  private final AtomicReference<Thread> waitingProducer = new AtomicReference<>();
+
+  /**
+   * @param capacity most records held at once, rounded up to a power of two
+   */
+  public RecordRing(int capacity) {
+    int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    slots = new ByteBlock[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Add a record, waiting while the ring is full.
+   *
+   * @param block the record
+   * @throws InterruptedException  if interrupted while waiting
+   * @throws IllegalStateException if the ring has been closed
+   */
+  public void put(ByteBlock block) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("RecordRing is closed");
+    }
+    long position = tail.get();
+    while (position - head.get() == slots.length) {
+      waitingProducer.set(Thread.currentThread());
+      if (position - head.get() == slots.length) {
+        LockSupport.park(this);
+      }
+      waitingProducer.set(null);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    slots[(int) position & mask] = block;
+    tail.set(position + 1);
+    wake(waitingConsumer);
+  }
+
+  /**
+   * End the stream. Records already put can still be drained. Closing more than once has no
+   * effect.
+   */
+  public void close() {
+    closed = true;
+    wake(waitingConsumer);
+  }
+
+  /**
+   * Move every available record into the batch, up to its length, waiting for at least one.
+   *
+   * @param batch   array the records are moved into, starting at 0
+   * @param timeout longest time to wait for a record
+   * @param unit    unit of the timeout
+   * @return number of records moved, 0 if none arrived before the timeout, or -1 once the ring is
+   * closed and empty
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public int drain(ByteBlock[] batch, long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long position = head.get();
+    long available = tail.get() - position;
+    while (available == 0) {
+      if (closed) {
+        // A record put before close is visible once closed is.
+        available = tail.get() - position;
+        if (available == 0) {
+          return -1;
+        }
+        break;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return 0;
+      }
+      waitingConsumer.set(Thread.currentThread());
+      if (tail.get() == position && !closed) {
+        LockSupport.parkNanos(this, remaining);
+      }
+      waitingConsumer.set(null);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      available = tail.get() - position;
+    }
+
+    int count = (int) Math.min(available, batch.length);
+    for (int i = 0; i < count; i++) {
+      int slot = (int) (position + i) & mask;
+      batch[i] = slots[slot];
+      slots[slot] = null;
+    }
+    head.set(position + count);
+    if (tail.get() - (position + count) <= slots.length / 2) {
+      wake(waitingProducer);
+    }
+    return count;
+  }
+
+  private static void wake(AtomicReference<Thread> waiting) {
+    // Checked first so the common case, nobody waiting, does not write.
+    if (waiting.get() != null) {
+      Thread thread = waiting.getAndSet(null);
+      if (thread != null) {
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  /**
+   * @return number of records waiting to be drained
+   */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+}
@@ -0,0 +1,178 @@
+package asl.seedsplitter;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the data points of a {@link Sequence} in order without copying the whole series. Raw
+ * blocks on the heap are read in place. Blocks held off the heap are copied, and compressed blocks
+ * decoded, one at a time into blocks the cursor keeps as they are reached.
+ * <p>
+ * A cursor may be limited to a window of the Sequence, see {@link Sequence#cursor(long, long)}.
+ * Data points can be read into caller owned int or double arrays, so metrics need not copy the
+ * series before converting it.
+ * <p>
+ * The Sequence must not be extended or merged while a cursor reads it.
+ */
+public final class SampleCursor {
+
+  private final SampleStore store;
+  /**
+   * Index after the last data point the cursor reads.
+   */
+  private final int end;
+  private int position;
+
+  private int[] block = null;
+  private int blockIndex = -1;
+
+  /**
+   * Compressed blocks are decoded into this, allocated when first needed.
+   */
+  private int[] decoded = null;
+
+  /**
+   * Blocks held off the heap are copied into this, allocated by the store when first needed.
+   */
+  private int[] copied = null;
+
+  /**
+   * @param store where the Sequence's blocks are held
+   * @param index index of the first data point to read
+   * @param end   index after the last data point to read, at most the Sequence's length
+   */
+  SampleCursor(SampleStore store, int index, int end) {
+    if (index < 0 || index > end) {
+      throw new IndexOutOfBoundsException("Index " + index + " of " + end + " data points");
+    }
+    this.store = store;
+    this.end = end;
+    this.position = index;
+  }
+
+  /**
+   * @return index of the next data point
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  /**
+   * @return number of data points left to read
+   */
+  public int remaining() {
+    return end - position;
+  }
+
+  /**
+   * @return true if there are data points left to read
+   */
+  public boolean hasNext() {
+    return position < end;
+  }
+
+  /**
+   * @return the next data point
+   * @throws NoSuchElementException if every data point has been read
+   */
+  public int next() {
+    if (position >= end) {
+      throw new NoSuchElementException();
+    }
+    int sample = load()[position % Sequence.BLOCK_SIZE];
+    position++;
+    return sample;
+  }
+
+  /**
+   * Read the next data points into an array.
+   *
+   * @param buffer receives the data points
+   * @param offset index in buffer of the first data point
+   * @param count  most data points to read
+   * @return number of data points read, less than count only once every data point has been read
+   */
+  public int read(int[] buffer, int offset, int count) {
+    count = Math.min(count, end - position);
+    int read = 0;
+    while (read < count) {
+      int jump = position % Sequence.BLOCK_SIZE;
+      int copy = Math.min(count - read, Sequence.BLOCK_SIZE - jump);
+      System.arraycopy(load(), jump, buffer, offset + read, copy);
+      position += copy;
+      read += copy;
+    }
+    return read;
+  }
+
+  /**
+   * Read the next data points into an array of doubles, converting them as they are copied.
+   *
+   * @param buffer receives the data points
+   * @param offset index in buffer of the first data point
+   * @param count  most data points to read
+   * @return number of data points read, less than count only once every data point has been read
+   */
+  public int read(double[] buffer, int offset, int count) {
+    count = Math.min(count, end - position);
+    int read = 0;
+    while (read < count) {
+      int[] block = load();
+      int jump = position % Sequence.BLOCK_SIZE;
+      int copy = Math.min(count - read, Sequence.BLOCK_SIZE - jump);
+      int to = offset + read;
+      for (int i = 0; i < copy; i++) {
+        buffer[to + i] = block[jump + i];
+      }
+      position += copy;
+      read += copy;
+    }
+    return read;
+  }
+
+  /**
+   * Read the remaining data points into a new array of doubles.
+   *
+   * @return the data points
+   */
+  public double[] toDoubleArray() {
+    double[] series = new double[end - position];
+    read(series, 0, series.length);
+    return series;
+  }
+
+  /**
+   * Skip data points. Compressed blocks that are skipped entirely are not decoded.
+   *
+   * @param count data points to skip
+   * @return number of data points skipped
+   */
+  public int skip(int count) {
+    count = Math.max(0, Math.min(count, end - position));
+    position += count;
+    return count;
+  }
+
+  /**
+   * @return the block holding the data point at the position, decoded if it is compressed
+   */
+  private int[] load() {
+    int index = position / Sequence.BLOCK_SIZE;
+    if (index != blockIndex) {
+      int[] next = store.block(index, copied);
+      if (copied == null && next.length == Sequence.BLOCK_SIZE) {
+        // Either a raw block held on the heap, which the store never writes into, or the array it
+        // allocated to copy into; either serves as the scratch from here on.
+        copied = next;
+      }
+      if (store.isCompressed(index)) {
+        if (decoded == null) {
+          decoded = new int[Sequence.BLOCK_SIZE];
+        }
+        next = BlockCodec.decompress(next, decoded);
+      }
+      block = next;
+      blockIndex = index;
+    }
+    return block;
+  }
+}
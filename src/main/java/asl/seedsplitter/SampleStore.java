@@ -0,0 +1,24 @@
+package asl.seedsplitter;
+
+/**
+ * Where a {@link SampleCursor} reads a Sequence's blocks from. Blocks held in arrays on the heap
+ * are returned in place, others are copied out a block at a time.
+ */
+interface SampleStore {
+
+  /**
+   * Get a block's words.
+   *
+   * @param index   index of a block
+   * @param scratch receives the block's words if it is not held in an array,
+   *                {@link Sequence#BLOCK_SIZE} long, or null to have one allocated
+   * @return the block as it is held, or the array it was copied into
+   */
+  int[] block(int index, int[] scratch);
+
+  /**
+   * @param index index of a block
+   * @return true if the block is compressed, see {@link BlockCodec}
+   */
+  boolean isCompressed(int index);
+}
@@ -8,7 +8,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import seed.BlockSizeException;
@@ -31,7 +30,7 @@ public class SeedInputStream implements Runnable {
   private static final int BLOCK_SIZE = 256;
 
   private final DataInputStream m_inputStream;
-  private final LinkedBlockingQueue<ByteBlock> m_queue;
+  private final RecordRing m_queue;
   private final byte[] m_buffer;
   private int m_bufferBytes = 0;
   private final boolean m_indicateLast;
@@ -43,11 +42,11 @@ public class SeedInputStream implements Runnable {
    *
    * @param inStream      The stream from which to read MiniSEED records.
    * @param queue         The processing queue into which the MiniSEED records are placed.
-   * @param indicateLast  An indicator of whether this is the last record for this stream.
+   * @param indicateLast  An indicator of whether this is the last stream, which closes the queue.
    * @param disableDigest A flag to disable assembling a digest of this stream's contents.
    */
   public SeedInputStream(DataInputStream inStream,
-      LinkedBlockingQueue<ByteBlock> queue, boolean indicateLast,
+      RecordRing queue, boolean indicateLast,
       boolean disableDigest) {
     m_inputStream = inStream;
     m_queue = queue;
@@ -67,10 +66,10 @@ public class SeedInputStream implements Runnable {
    *
    * @param inStream     The stream from which to read MiniSEED records.
    * @param queue        The processing queue into which the MiniSEED records are placed.
-   * @param indicateLast An indicator of whether this is the last record for this stream.
+   * @param indicateLast An indicator of whether this is the last stream, which closes the queue.
    */
   public SeedInputStream(DataInputStream inStream,
-      LinkedBlockingQueue<ByteBlock> queue, boolean indicateLast) {
+      RecordRing queue, boolean indicateLast) {
     this(inStream, queue, indicateLast, false);
   }
 
@@ -88,7 +87,6 @@ public class SeedInputStream implements Runnable {
     int recordLength = -1;
     int bytesRead;
     int indicator;
-    ByteBlock last = new ByteBlock(null, 0, true, true);
     ByteBlock end = new ByteBlock(null, 0, true, false);
     while (m_running) {
       try {
@@ -98,7 +96,7 @@ public class SeedInputStream implements Runnable {
           if (bytesRead < 0) {
             logger.debug("SeedInputStream Thread> I think we're done here...");
             if (m_indicateLast) {
-              m_queue.put(last);
+              m_queue.close();
             } else {
               m_queue.put(end);
             }
@@ -151,7 +149,10 @@ public class SeedInputStream implements Runnable {
       } catch (IOException e) {
         logger.error("IOException:", e);
       } catch (InterruptedException e) {
-        logger.error("InterruptedException:", e);
+        // The split was cancelled
+        logger.debug("SeedInputStream interrupted, stopping");
+        Thread.currentThread().interrupt();
+        m_running = false;
       }
     }
   }
@@ -1,27 +1,22 @@
 package asl.seedsplitter;
 
-import asl.util.Time;
-import edu.iris.dmc.seedcodec.SteimException;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import seed.BlockSizeException;
 import seed.Blockette320;
-import seed.IllegalSeednameException;
-import seed.MiniSeed;
 
 /**
  * @author Joel D. Edwards
  * <p>
- * The SeedSplitProcessor receives MiniSEED records via a Queue, and splits them up by channel into
- * trees. All of the channel trees are stored in the hash table. Each tree is an ordered group of
+ * The SeedSplitProcessor receives MiniSEED records via a {@link RecordRing}, and splits them up by channel into
+ * lists. All of the channel lists are stored in the hash table. Each list is an ordered group of
  * DataSet objects, each containing a contiguous block of data outside of the time range of any
- * other DataSet in the same tree.
+ * other DataSet in the same list.
  */
 @SuppressWarnings("cast")
 public class SeedSplitProcessor implements Runnable {
@@ -29,9 +24,37 @@ public class SeedSplitProcessor implements Runnable {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedsplitter.SeedSplitProcessor.class);
 
-  private LinkedBlockingQueue<ByteBlock> m_queue;
+  /**
+   * Longest time to wait for the next record before giving up on the readers, once they have
+   * started.
+   */
+  private static final long STALL_SECONDS = 180;
+
+  /**
+   * Most records taken from the queue at once.
+   */
+  private static final int BATCH_SIZE = 64;
+
+  /**
+   * Most records waiting for each decoder shard.
+   */
+  private static final int SHARD_CAPACITY = 256;
+
+  private RecordRing m_queue;
+  private int m_shards;
+  private ChannelFilter m_filter;
+  private boolean m_decode;
+  private long m_skippedRecords = 0;
+  private long m_skippedBytes = 0;
+  private long m_decodedBytes = 0;
+  private long m_decodeNanos = 0;
   private boolean m_running;
-  private Hashtable<String, TreeSet<DataSet>> m_trees = null;
+  private boolean m_cancelled = false;
+  private boolean m_stalled = false;
+  /**
+   * When the readers started in {@link System#nanoTime()}, 0 while they wait for a thread.
+   */
+  private volatile long m_readStartNanos = 0;
   private Hashtable<String, ArrayList<DataSet>> m_table = null;
 
   // MTH:
@@ -43,8 +66,41 @@ public class SeedSplitProcessor implements Runnable {
    *
    * @param queue The queue from which MiniSEED records are received.
    */
-  public SeedSplitProcessor(LinkedBlockingQueue<ByteBlock> queue) {
-    _construct(queue, new Hashtable<>());
+  public SeedSplitProcessor(RecordRing queue) {
+    _construct(queue, new Hashtable<>(), 1, null, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param queue  The queue from which MiniSEED records are received.
+   * @param shards Number of decoders records are split between by channel.
+   */
+  public SeedSplitProcessor(RecordRing queue, int shards) {
+    _construct(queue, new Hashtable<>(), shards, null, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param queue  The queue from which MiniSEED records are received.
+   * @param shards Number of decoders records are split between by channel.
+   * @param filter Channels to decode, null decodes every channel.
+   */
+  public SeedSplitProcessor(RecordRing queue, int shards, ChannelFilter filter) {
+    _construct(queue, new Hashtable<>(), shards, filter, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param queue  The queue from which MiniSEED records are received.
+   * @param shards Number of decoders records are split between by channel.
+   * @param filter Channels to decode, null decodes every channel.
+   * @param decode False to read record headers alone, the DataSets then have no samples.
+   */
+  public SeedSplitProcessor(RecordRing queue, int shards, ChannelFilter filter, boolean decode) {
+    _construct(queue, new Hashtable<>(), shards, filter, decode);
   }
 
   /**
@@ -52,13 +108,19 @@ public class SeedSplitProcessor implements Runnable {
    *
    * @param queue The queue from which MiniSEED records are received.
    * @param table An initial hash table to which new data should be added.
+   * @param shards Number of decoders records are split between by channel.
+   * @param filter Channels to decode, null decodes every channel.
+   * @param decode False to read record headers alone.
    */
-  private void _construct(LinkedBlockingQueue<ByteBlock> queue,
-      Hashtable<String, ArrayList<DataSet>> table) {
+  private void _construct(RecordRing queue,
+      Hashtable<String, ArrayList<DataSet>> table, int shards, ChannelFilter filter,
+      boolean decode) {
     m_queue = queue;
+    m_shards = Math.max(1, shards);
+    m_filter = filter;
+    m_decode = decode;
     m_running = false;
     m_table = table;
-    m_trees = new Hashtable<>();
 
   }
 
@@ -79,350 +141,255 @@ public class SeedSplitProcessor implements Runnable {
     return m_calTable;
   }
 
-  private volatile int lastSequenceNumber = 0;
+  /**
+   * @return number of records rejected by the channel filter
+   */
+  public long getSkippedRecords() {
+    return m_skippedRecords;
+  }
 
   /**
-   * Pulls {@link ByteBlock}s from the queue and converts the contained SEED records into one or
-   * more {@link DataSet} object.
+   * @return bytes of the records rejected by the channel filter
    */
-  @Override
-  public void run() {
+  public long getSkippedBytes() {
+    return m_skippedBytes;
+  }
 
-    ByteBlock block;
-    MiniSeed record;
-    DataSet tempData;
+  /**
+   * @return bytes of the records decoded
+   */
+  public long getDecodedBytes() {
+    return m_decodedBytes;
+  }
 
-    String network;
-    String station;
-    String location;
-    String channel;
-    double sampleRate;
-    long interval;
+  /**
+   * @return time spent decoding records in nanoseconds, summed over every shard
+   */
+  public long getDecodeNanos() {
+    return m_decodeNanos;
+  }
 
-    long startTime;
+  /**
+   * @return true if processing stopped because the thread was interrupted
+   */
+  public boolean isCancelled() {
+    return m_cancelled;
+  }
 
-    byte[] recordBytes;
-    int[] samples;
+  /**
+   * Called by the readers as they start. Reads queued behind others on the
+   * {@link SplitterExecutor} are not stalled, so the stall clock starts here rather than when the
+   * processor does.
+   */
+  public void readStarted() {
+    m_readStartNanos = Math.max(System.nanoTime(), 1);
+  }
 
-    String seedstring;
-    // total number of bytes that have been received from the queue
-    String key = null;
-    TreeSet<DataSet> tree;
-    Hashtable<String, DataSet> temps = new Hashtable<>();
-    Hashtable<String, Integer> recordCounts = new Hashtable<>();
+  /**
+   * @return true if processing stopped because no record arrived for too long
+   */
+  public boolean isStalled() {
+    return m_stalled;
+  }
 
-    int kept = 0;
-    int discarded = 0;
+  /**
+   * Pulls {@link ByteBlock}s from the queue and converts the contained SEED records into one or
+   * more {@link DataSet} object.
+   * <p>
+   * With more than one shard, records are routed by channel to a {@link ChannelDecoder} per shard.
+   * The first shard is decoded on this thread while the others run on the
+   * {@link SplitterExecutor}. Each shard merges its own channels and the results are combined
+   * once every record has been decoded.
+   */
+  @Override
+  public void run() {
+
+    ByteBlock block;
+    ByteBlock[] batch = new ByteBlock[BATCH_SIZE];
+    int batchCount = 0;
+    int batchIndex = 0;
+
+    ChannelDecoder decoder = new ChannelDecoder(m_decode);
+    Shard[] shards = new Shard[m_shards];
+    List<Future<?>> shardTasks = new ArrayList<>();
+    for (int i = 1; i < m_shards; i++) {
+      shards[i] = new Shard(m_decode);
+      shardTasks.add(SplitterExecutor.getInstance().submitDecoder(shards[i]));
+    }
 
     m_running = true;
-    while (m_running) {
-      progress:
-      {
-        try {
-          block = m_queue.take();
-          recordBytes = block.getData();
-          if (block.isLast()) {
+    try {
+      while (m_running) {
+        if (batchIndex == batchCount) {
+          batchCount = m_queue.drain(batch, STALL_SECONDS, TimeUnit.SECONDS);
+          batchIndex = 0;
+          if (batchCount < 0) {
+            // Every file has been read
             m_running = false;
-          } else if (block.isEnd()) {
-            //This if is programmatically required because of legacy logic.
-            logger.debug("File done");
-          } else if (MiniSeed.crackIsHeartBeat(recordBytes)) {
-            logger.debug("Found HEARTBEAT record!");
-          } else { // MTH
-            seedstring = MiniSeed.crackSeedname(recordBytes);
-            network = seedstring.substring(0, 2).trim();
-            station = seedstring.substring(2, 7).trim();
-            location = seedstring.substring(10, 12).trim();
-            channel = seedstring.substring(7, 10).trim();
-
-            // Set the default location codes
-            if (location.equals("--") || location.equals("")) {
-              logger.debug("miniseed channel=[{}] location=[{}] was changed to [00]",
-                  channel, location);
-              location = "00";
-            }
-            if (location.equals("HR")) {
-              logger.debug("miniseed channel=[{}] location=[{}] was changed to [10]",
-                  channel, location);
-              location = "10";
-            }
-
-            sampleRate = MiniSeed.crackRate(recordBytes);
-            try {
-              interval = DataSet.sampleRateToInterval(sampleRate);
-            } catch (IllegalSampleRateException e) {
-              MiniSeed ms = new MiniSeed(recordBytes);
-              logger.error("Illegal Sample Rate: sequence #{}, rate = {}", ms.getSequence(),
-                  sampleRate);
-              discarded++;
-              break progress;
-            }
-            kept++;
-            logger.debug(String.format("%s_%s %s-%s", network,
-                station, location, channel));
-            key = String.format("%s_%s %s-%s (%.1f Hz)", network,
-                station, location, channel, sampleRate);
-
-            if (!recordCounts.containsKey(key)) {
-              recordCounts.put(key, 1);
-            } else {
-              recordCounts.put(key, recordCounts.get(key) + 1);
+            break;
+          }
+          if (batchCount == 0) {
+            long started = m_readStartNanos;
+            if (started == 0 || System.nanoTime() - started
+                < TimeUnit.SECONDS.toNanos(STALL_SECONDS)) {
+              logger.debug("No records yet, the read is queued or has just started");
+              continue;
             }
+            logger.error("No records received in {} seconds, stopping", STALL_SECONDS);
+            m_stalled = true;
+            m_running = false;
+            break;
+          }
+        }
+        block = batch[batchIndex];
+        batch[batchIndex++] = null;
+        if (block.isLast()) {
+          m_running = false;
+        } else if (block.isEnd()) {
+          //This if is programmatically required because of legacy logic.
+          logger.debug("File done");
+        } else if (m_filter != null && !m_filter.accepts(block)) {
+          m_skippedRecords++;
+          m_skippedBytes += block.getLength();
+        } else {
+          int shard = shardOf(block, m_shards);
+          if (shard == 0) {
+            decoder.decode(block);
+          } else {
+            shards[shard].queue.put(block);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      logger.debug("Interrupted, stopping");
+      m_cancelled = true;
+      m_running = false;
+      Thread.currentThread().interrupt();
+    } finally {
+      for (int i = 1; i < m_shards; i++) {
+        shards[i].queue.close();
+      }
+    }
 
-            int year = MiniSeed.crackYear(recordBytes);
-            int doy = MiniSeed.crackDOY(recordBytes);
-
-            /*See SEED manual Chapter 3*/
-            int[] btime = MiniSeed.crackTime(recordBytes);
-
-            LocalDateTime dateTime = Time
-                .btimeToLocalDateTime(year, doy, btime[0], btime[1], btime[2], btime[3]);
-
-            startTime = Time.calculateEpochMicroSeconds(dateTime);
-
-            tempData = temps.getOrDefault(key, null);
-
-            if (!m_trees.containsKey(key)) {
-              tree = new TreeSet<>();
-              m_trees.put(key, tree);
-            } else {
-              tree = m_trees.get(key);
-            }
+    if (m_cancelled || m_stalled) {
+      // The day is incomplete, nothing is kept.
+      for (Future<?> task : shardTasks) {
+        task.cancel(true);
+      }
+      return;
+    }
 
-            // Allow for a fudge factor of 1 millisecond if sample
-            // rate is less than 100 Hz.
-            //
-            // Is this a good idea, or would it be better to simply
-            // report a gap so the user is aware of the jump?
-            //
-            // long intervalAdjustment = (interval > 10000 ? 1000 :
-            // 0);
-            long intervalAdjustment = interval;
-
-            boolean replaceDataSet = false;
-            // Temporarily disabled fudge factor
-
-            if ((tempData == null)
-                || ((startTime - tempData.getEndTime()) > (interval + intervalAdjustment))) {
-              // if ((tempData == null) || ((startTime -
-              // tempData.getEndTime()) > interval)) {
-              // (VIM-HACK) }
-              replaceDataSet = true;
-            } else {
-              MiniSeed ms = new MiniSeed(recordBytes);
-              if ((startTime - tempData.getEndTime()) < (interval - intervalAdjustment)) {
-                // if ((startTime - tempData.getEndTime()) <
-                // interval) {
-                // (VIM-HACK) }
-                replaceDataSet = true;
-                logger
-                    .error("Found data overlap <{}] - [{}> sequence #{}.!\n",
-                        DataSet.timestampToString(tempData
-                            .getEndTime()),
-                        DataSet.timestampToString(startTime),
-                        ms.getSequence());
-                if (ms.getSequence() <= lastSequenceNumber) {
-                  logger
-                      .error("Out of sequence last={} current={}",
-                          lastSequenceNumber,
-                          ms.getSequence());
-                }
-              }
-            }
-            try {
-              if (replaceDataSet) {
-                if (tempData != null) {
-                  tree.add(tempData);
-                  logger.debug("Adding DataSet to TreeSet.");
-                  logger.debug("  Range: {} - {} ({} data points {CHECK: {}})",
-                      DataSet.timestampToString(tempData
-                          .getStartTime()),
-                      DataSet.timestampToString(tempData
-                          .getEndTime()),
-                      ((tempData.getEndTime() - tempData
-                          .getStartTime())
-                          / tempData
-                          .getInterval() + 1),
-                      tempData.getLength());
-                  tempData = null;
-                  temps.remove(key);
-                }
-                logger.debug("Creating new DataSet");
-                tempData = new DataSet();
-                tempData.setNetwork(network);
-                tempData.setStation(station);
-                tempData.setLocation(location);
-                tempData.setChannel(channel);
-                tempData.setStartTime(startTime);
-                try {
-                  tempData.setSampleRate(sampleRate);
-                } catch (RuntimeException e) {
-                  MiniSeed ms = new MiniSeed(recordBytes);
-                  logger.error(String.format(
-                      "Invalid Start Time: sequence #%d",
-                      ms.getSequence()), e.getMessage());
-                  break progress;
-                } catch (IllegalSampleRateException e) {
-                  MiniSeed ms = new MiniSeed(recordBytes);
-                  logger
-                      .error(String
-                          .format("Invalid Sample Rate: sequence #%d, rate = %f",
-                              ms.getSequence(),
-                              ms.getRate()), e.getMessage());
-                  break progress;
-                }
-                temps.put(key, tempData);
-              } // replaceDataSet
-            } catch (RuntimeException e) {
-              logger.error("RuntimeException: {}", e.getMessage());
-            }
+    decoder.finish(m_table);
+    m_qualityTable.putAll(decoder.getQualityTable());
+    m_calTable.putAll(decoder.getCalTable());
+    m_decodedBytes = decoder.getDecodedBytes();
+    m_decodeNanos = decoder.getDecodeNanos();
+    for (int i = 1; i < m_shards; i++) {
+      try {
+        shardTasks.get(i - 1).get();
+      } catch (InterruptedException e) {
+        logger.debug("Interrupted waiting for decoder shards, stopping");
+        m_cancelled = true;
+        Thread.currentThread().interrupt();
+        for (Future<?> task : shardTasks) {
+          task.cancel(true);
+        }
+        return;
+      } catch (ExecutionException e) {
+        // Fail the split the same way a failure on this thread would.
+        for (Future<?> task : shardTasks) {
+          task.cancel(true);
+        }
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+      // Every channel is decoded by exactly one shard, so no keys collide.
+      m_table.putAll(shards[i].table);
+      m_qualityTable.putAll(shards[i].decoder.getQualityTable());
+      m_calTable.putAll(shards[i].decoder.getCalTable());
+      m_decodedBytes += shards[i].decoder.getDecodedBytes();
+      m_decodeNanos += shards[i].decoder.getDecodeNanos();
+    }
 
-            record = new MiniSeed(recordBytes);
+    logger.debug("<SeedSplitProcessor Thread> Yeah, we're done.");
+  }
 
-            samples = record.decomp();
+  /**
+   * Pick the shard of a record from its network, station and channel codes. Location codes are
+   * left out since several are renamed when decoding, so a channel's records always reach the
+   * same shard. Spaces are skipped for the same reason, codes are trimmed when decoding.
+   *
+   * @param block  the record
+   * @param shards number of shards
+   * @return shard index
+   */
+  static int shardOf(ByteBlock block, int shards) {
+    if (shards == 1 || block.getLength() < 20) {
+      return 0;
+    }
+    int hash = 0;
+    for (int i = 8; i < 20; i++) {
+      // Bytes 13 and 14 are the location code
+      if (i == 13 || i == 14) {
+        continue;
+      }
+      byte b = block.getByte(i);
+      if (b != ' ') {
+        hash = 31 * hash + b;
+      }
+    }
+    return (hash & Integer.MAX_VALUE) % shards;
+  }
 
-            // blockettes = record.getBlockettes();
-            lastSequenceNumber = record.getSequence();
-            tempData.extend(samples, 0, samples.length);
+  /**
+   * A decoder with its own queue, run on the {@link SplitterExecutor}.
+   */
+  private static final class Shard implements Runnable {
 
-            // MTH: Get timing quality from the current miniseed
-            // block and store it for this key
-            int quality = record.getTimingQuality();
+    private final RecordRing queue = new RecordRing(SHARD_CAPACITY);
+    private final ChannelDecoder decoder;
+    private final Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
 
-            ArrayList<Integer> qualityArray;
-            if (m_qualityTable.get(key) == null) {
-              qualityArray = new ArrayList<>();
-              m_qualityTable.put(key, qualityArray);
-            } else {
-              qualityArray = m_qualityTable.get(key);
-            }
-            if (quality >= 0) { // getTimingQuality() return -1
-              // if no B1001 block found
-              qualityArray.add(quality);
-            }
+    private Shard(boolean decode) {
+      decoder = new ChannelDecoder(decode);
+    }
 
-            // MTH: Get calibration block from the current
-            // miniseed block and store it for this key
-            // byteBuf320 = 64-byte Blockette320 as per SEED
-            // Manual HOWEVER, D. Ketcham's
-            // MiniSeed.getBlockette320()
-            // only returns 32-bytes ?? --> modified to return
-            // 64-bytes
-            byte[] byteBuf320 = record.getBlockette320();
-            if (byteBuf320 != null) {
-              Blockette320 blockette320 = new Blockette320(
-                  byteBuf320);
-
-              ArrayList<Blockette320> calBlock;
-              if (m_calTable.get(key) == null) {
-                calBlock = new ArrayList<>();
-                m_calTable.put(key, calBlock);
-              } else {
-                calBlock = m_calTable.get(key);
+    @Override
+    public void run() {
+      ByteBlock[] batch = new ByteBlock[BATCH_SIZE];
+      Throwable failure = null;
+      try {
+        int count;
+        // The processor stops waiting on stalled readers and closes the queue.
+        while ((count = queue.drain(batch, STALL_SECONDS, TimeUnit.SECONDS)) >= 0) {
+          for (int i = 0; i < count; i++) {
+            // After a failure records are still drained, so the processor is never blocked.
+            if (failure == null) {
+              try {
+                decoder.decode(batch[i]);
+              } catch (RuntimeException | Error e) {
+                failure = e;
               }
-              calBlock.add(blockette320);
             }
+            batch[i] = null;
           }
-
-        } catch (SteimException e) {
-          logger.error("SteimException: {}", e.getMessage());
-        } catch (BlockSizeException e) {
-          logger.error("BlockSizeException: {}", e.getMessage());
-        } catch (InterruptedException e) {
-          logger.error("InterruptedException: {}", e.getMessage());
-        } catch (IllegalSeednameException e) {
-          logger.error("IllegalSeednameException: {}", e.getMessage());
         }
+      } catch (InterruptedException e) {
+        // The split was cancelled
+        return;
       }
-    }
-    for (String tempKey : temps.keySet()) {
-      tempData = null;
-      tree = null;
-      if (temps.containsKey(tempKey)) {
-        tempData = temps.get(tempKey);
-      }
-      if (m_trees.containsKey(tempKey)) {
-        tree = m_trees.get(tempKey);
-      }
-      if ((tempData != null) && (tree != null)) {
-        tree.add(tempData);
-
-        logger.debug("Adding DataSet to TreeSet.");
-        logger.debug(String.format(
-            "  Range: %s - %s (%d data points {CHECK: %d})",
-            DataSet.timestampToString(tempData.getStartTime()),
-            DataSet.timestampToString(tempData.getEndTime()),
-            ((tempData.getEndTime() - tempData.getStartTime())
-                / tempData.getInterval() + 1),
-            tempData.getLength()));
+      if (failure instanceof Error) {
+        throw (Error) failure;
       }
-    }
-
-    // The following block loops through the contents of the tree in order
-    // to allow the user to visually inspect gaps. The block is only to
-    // ensure the variables go out of scope.
-    // MTH: need to convert this block from java.util.logging --> to log4j
-    /*
-     *
-     * if (logger.getLevel() <= Level.FINE) { TreeSet<DataSet> temp_tree =
-     * null; logger.fine("===== TREE SET ELEMENTS ====="); Iterator iter =
-     * temp_tree.iterator(); DataSet data = null; DataSet last = null; while
-     * (iter.hasNext()) { data = (DataSet)iter.next(); if (last != null) {
-     * long gap = data.getStartTime() - last.getEndTime(); long points = gap
-     * / data.getInterval(); logger.fine("      gap: " + gap +
-     * " microseconds (" + points + " data point" + ((points == 1) ? "" :
-     * "s") + ")"); } logger.fine("    DataSet: " +
-     * DataSet.timestampToString(data.getStartTime()) + " to " +
-     * DataSet.timestampToString(data.getEndTime()) + " (" +
-     * data.getLength() + " data points)"); last = data; }
-     * logger.fine("============================="); } //
-     */
-
-    Iterator<DataSet> iter;
-    DataSet currDataSet;
-    DataSet lastDataSet;
-    for (String chanKey : m_trees.keySet()) {
-      tree = m_trees.get(chanKey);
-      ArrayList<DataSet> list = new ArrayList<>(tree.size());
-      if (!tree.isEmpty()) {
-        logger.debug("Processing " + tree.size()
-            + " tree elements for '" + chanKey + "'");
-        iter = tree.iterator();
-        lastDataSet = iter.next();
-
-        while (iter.hasNext()) {
-          currDataSet = iter.next();
-
-          try {
-            logger.debug("Merging DataSets...");
-            currDataSet.mergeInto(lastDataSet);
-            logger.debug("Done.");
-          } catch (SequenceIntervalMismatchException e) {
-            throw new RuntimeException(
-                "Interval Mismatch. This should never happen!");
-          } catch (SequenceMergeRangeException e) {
-            list.add(lastDataSet);
-            lastDataSet = currDataSet;
-          } catch (BlockSizeMismatchException e) {
-            logger
-                .error(
-                    "BlockSizeMismatchException: BlockPool.addBlock() Impossible situation!\n {}",
-                    e.getMessage());
-          }
-        }
-        list.add(lastDataSet);
-        m_table.put(chanKey, list);
-      } else {
-        logger.debug("Empty tree for '" + chanKey + "'");
+      if (failure != null) {
+        throw (RuntimeException) failure;
       }
-    }
-
-    logger.debug("<SeedSplitProcessor Thread> Yeah, we're done.");
-    logger.debug("Kept " + kept + " records");
-    logger.debug("Discarded " + discarded + " records");
-    for (String countKey : recordCounts.keySet()) {
-      logger.debug("  " + countKey + ": " + recordCounts.get(key)
-          + " records");
+      decoder.finish(table);
     }
   }
 
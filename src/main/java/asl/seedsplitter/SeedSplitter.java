@@ -1,13 +1,16 @@
 package asl.seedsplitter;
 
+import asl.seedscan.Global;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import seed.Blockette320;
@@ -26,8 +29,11 @@ public class SeedSplitter {
       .getLogger(asl.seedsplitter.SeedSplitter.class);
 
   private File[] m_files;
+  private ChannelFilter m_filter;
+  private boolean m_decode = true;
+  private SeedSplitProcessor m_processor;
   private Hashtable<String, ArrayList<DataSet>> m_table;
-  private LinkedBlockingQueue<ByteBlock> m_recordQueue;
+  private RecordRing m_recordQueue;
 
   // MTH
   private Hashtable<String, ArrayList<Integer>> m_qualityTable;
@@ -42,7 +48,7 @@ public class SeedSplitter {
     m_files = fileList;
     m_table = null;
 
-    m_recordQueue = new LinkedBlockingQueue<>(1024);
+    m_recordQueue = new RecordRing(1024);
   }
 
   /**
@@ -55,6 +61,32 @@ public class SeedSplitter {
     _construct(fileList);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param fileList List of files from which to read in the MiniSEED data.
+   * @param filter   Channels to decode, null decodes every channel.
+   */
+  public SeedSplitter(File[] fileList, ChannelFilter filter) {
+    super();
+    _construct(fileList);
+    m_filter = filter;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param fileList List of files from which to read in the MiniSEED data.
+   * @param filter   Channels to decode, null decodes every channel.
+   * @param decode   False to read record headers alone, see {@link DataSet#isDecoded()}.
+   */
+  public SeedSplitter(File[] fileList, ChannelFilter filter, boolean decode) {
+    super();
+    _construct(fileList);
+    m_filter = filter;
+    m_decode = decode;
+  }
+
   public Hashtable<String, ArrayList<Integer>> getQualityTable() {
     return m_qualityTable;
   }
@@ -64,56 +96,101 @@ public class SeedSplitter {
   }
 
   /**
-   * Overrides the doInBackground method of SwingWorker, launching and monitoring two threads which
-   * read the files and process MiniSEED Data.
+   * @return number of records of channels left out by the filter
+   */
+  public long getSkippedRecords() {
+    return m_processor == null ? 0 : m_processor.getSkippedRecords();
+  }
+
+  /**
+   * @return bytes of records of channels left out by the filter
+   */
+  public long getSkippedBytes() {
+    return m_processor == null ? 0 : m_processor.getSkippedBytes();
+  }
+
+  /**
+   * Estimate the decoding time the filter saved, from the time taken per byte by the records that
+   * were decoded.
+   *
+   * @return estimated nanoseconds saved
+   */
+  public long getEstimatedSavedNanos() {
+    if (m_processor == null || m_processor.getDecodedBytes() == 0) {
+      return 0;
+    }
+    return (long) ((double) m_processor.getDecodeNanos() * m_processor.getSkippedBytes()
+        / m_processor.getDecodedBytes());
+  }
+
+  /**
+   * Reads the files and processes their MiniSEED data. The files are read on the shared
+   * {@link SplitterExecutor} while records are processed on the calling thread, along with any
+   * decoder shards.
+   * <p>
+   * Interrupting the calling thread cancels the split, stopping the reads as well.
    *
    * @return A hash table containing all of the data acquired from the file list.
+   * @throws InterruptedException if the calling thread was interrupted
+   * @throws TimeoutException     if the reads stopped producing records once started
    */
-  public Hashtable<String, ArrayList<DataSet>> doInBackground() {
-    boolean finalFile = false;
-
-    SeedSplitProcessor processor = new SeedSplitProcessor(m_recordQueue);
-    Thread processorThread = new Thread(processor);
-    processorThread.start();
-    for (int i = 0; i < m_files.length; i++) {
-      if (i == (m_files.length - 1)) {
-        finalFile = true;
-      }
-      File file = m_files[i];
-      DataInputStream inputStream;
-      Thread inputThread = null;
-      try {
-        inputStream = new DataInputStream(new BufferedInputStream(
-            new FileInputStream(file)));
-        SeedInputStream stream = new SeedInputStream(inputStream,
-            m_recordQueue, finalFile);
-        inputThread = new Thread(stream);
-        logger.debug("Processing file " + file.getName() + "...");
-        inputThread.start();
-      } catch (FileNotFoundException e) {
-        String message = "FileNotFoundException: File '"
-            + file.getName() + "' not found\n";
-        logger.error(message, e);
-        // Should we do something more? Throw an exception?
-      }
-      m_table = processor.getTable();
-      m_qualityTable = processor.getQualityTable();
-      m_calTable = processor.getCalTable();
-      if (inputThread != null) {
-        try {
-          inputThread.join();
-        } catch (InterruptedException e) {
-          logger.error("InterruptedException:", e);
+  public Hashtable<String, ArrayList<DataSet>> doInBackground()
+      throws InterruptedException, TimeoutException {
+    SeedSplitProcessor processor = new SeedSplitProcessor(m_recordQueue,
+        Global.getDecoderShards(), m_filter, m_decode);
+    m_processor = processor;
+    Future<?> reader = SplitterExecutor.getInstance().submit(() -> {
+      processor.readStarted();
+      readFiles();
+    });
+    try {
+      processor.run();
+    } finally {
+      // Stops a read that is blocked on a full queue once processing has ended.
+      reader.cancel(true);
+    }
+
+    if (processor.isCancelled()) {
+      throw new InterruptedException("Split cancelled");
+    }
+    if (processor.isStalled()) {
+      throw new TimeoutException("No records read from " + m_files.length + " files");
+    }
+    m_table = processor.getTable();
+    m_qualityTable = processor.getQualityTable();
+    m_calTable = processor.getCalTable();
+    return m_table;
+  }
+
+  /**
+   * Read every file in turn into the record queue, closing it once every file has been read or
+   * reading is cancelled.
+   */
+  private void readFiles() {
+    boolean mapped = Global.getMappedReads();
+    try {
+      for (int i = 0; i < m_files.length && !Thread.currentThread().isInterrupted(); i++) {
+        boolean finalFile = i == (m_files.length - 1);
+        File file = m_files[i];
+        if (mapped && MappedSeedReader.canMap(file)) {
+          logger.debug("Mapping file " + file.getName() + "...");
+          new MappedSeedReader(file, m_recordQueue, finalFile).run();
+          continue;
         }
-      }
-      if (finalFile) {
-        try {
-          processorThread.join();
-        } catch (InterruptedException e) {
-          logger.error("InterruptedException:", e);
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file)))) {
+          logger.debug("Processing file " + file.getName() + "...");
+          new SeedInputStream(inputStream, m_recordQueue, finalFile).run();
+        } catch (FileNotFoundException e) {
+          String message = "FileNotFoundException: File '"
+              + file.getName() + "' not found\n";
+          logger.error(message, e);
+        } catch (IOException e) {
+          logger.error("IOException closing '{}':", file.getName(), e);
         }
       }
+    } finally {
+      m_recordQueue.close();
     }
-    return m_table;
   }
 }
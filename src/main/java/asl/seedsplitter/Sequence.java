@@ -1,9 +1,13 @@
 package asl.seedsplitter;
 
 import asl.security.MemberDigest;
+import edu.iris.dmc.seedcodec.SteimException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -35,7 +39,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
   /**
    * The Constant BLOCK_SIZE.
    */
-  private static final int BLOCK_SIZE = 4096;
+  static final int BLOCK_SIZE = 4096;
 
   /**
    * The m_tz.
@@ -43,12 +47,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
   private static final TimeZone m_tz = TimeZone.getTimeZone("GMT");
 
   /**
-   * The m_pool.
-   */
-  private final BlockPool m_pool;
-
-  /**
-   * The m_blocks.
+   * The m_blocks. Blocks shorter than BLOCK_SIZE are compressed, see {@link BlockCodec}.
    */
   private ArrayList<int[]> m_blocks = null;
 
@@ -57,6 +56,27 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
    */
   private transient int[] m_block = null;
 
+  /**
+   * Compress blocks as they fill, see {@link #setCompressed(boolean)}.
+   */
+  private transient boolean m_compress = false;
+
+  /**
+   * The data points while they are held off the heap, see {@link #moveOffHeap(Path)}. m_blocks is
+   * empty meanwhile.
+   */
+  private transient OffHeapStore m_offHeap = null;
+
+  /**
+   * Reads m_blocks for cursors, created when first needed.
+   */
+  private transient SampleStore m_heapStore = null;
+
+  /**
+   * Set once the data points are released, see {@link #release()}.
+   */
+  private transient boolean m_released = false;
+
   /**
    * The m_length.
    */
@@ -88,7 +108,6 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
   public Sequence() {
     super();
     TimeZone.setDefault(TimeZone.getTimeZone("GMT"));
-    m_pool = new BlockPool(BLOCK_SIZE);
     _reset();
   }
 
@@ -105,7 +124,18 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
    * Creates a new empty data block and adds it to the block list.
    */
   private void _addBlock() {
-    m_block = m_pool.getNewBlock();
+    int last = m_blocks.size() - 1;
+    if (m_compress && last >= 0 && m_blocks.get(last) == m_block) {
+      int[] packed = BlockCodec.compress(m_block);
+      if (packed != null) {
+        // The full block is stored compressed and its array reused for the next data points.
+        m_blocks.set(last, packed);
+        m_blocks.add(m_block);
+        m_remainder = BLOCK_SIZE;
+        return;
+      }
+    }
+    m_block = SlabPool.acquire();
     m_blocks.add(m_block);
     m_remainder = BLOCK_SIZE;
   }
@@ -118,12 +148,14 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
   protected void addDigestMembers() {
     addToDigest(m_startTime);
     addToDigest(m_sampleRate);
-    int remaining = m_blocks.size();
-    for (int[] block : m_blocks) {
-      int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
-      for (int i = 0; i < numSamples; i++) {
-        addToDigest(block[i]);
-      }
+    if (!isDecoded()) {
+      // Only the extent of undecoded data is known
+      addToDigest(m_length);
+      return;
+    }
+    SampleCursor cursor = cursor();
+    while (cursor.hasNext()) {
+      addToDigest(cursor.next());
     }
   }
 
@@ -147,6 +179,227 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     m_sampleRate = sampleRate;
   }
 
+  /**
+   * Sets whether full blocks of data points are kept compressed, which typically takes a third to
+   * a half of the memory of raw blocks for seismic data. Compressed blocks are decoded again each
+   * time they are read. Enabling this compresses the blocks that are already full, the block being
+   * filled stays raw.
+   *
+   * @param compressed true to compress full blocks
+   */
+  public void setCompressed(boolean compressed) {
+    onHeap();
+    m_compress = compressed;
+    if (!compressed) {
+      return;
+    }
+    for (int i = 0; i < m_blocks.size() - 1; i++) {
+      int[] block = m_blocks.get(i);
+      if (!BlockCodec.isCompressed(block)) {
+        int[] packed = BlockCodec.compress(block);
+        if (packed != null) {
+          m_blocks.set(i, packed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the bytes of memory the data points are held in: four bytes a raw data point plus the
+   * size of the compressed blocks.
+   *
+   * @return bytes held by the data points
+   */
+  public long getStorageBytes() {
+    if (m_offHeap != null) {
+      return m_offHeap.getBytes();
+    }
+    long words = 0;
+    int finalBlock = m_blocks.size() - 1;
+    for (int i = 0; i <= finalBlock; i++) {
+      int[] block = m_blocks.get(i);
+      if (BlockCodec.isCompressed(block)) {
+        words += block.length;
+      } else {
+        words += (i < finalBlock) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
+      }
+    }
+    return words * Integer.BYTES;
+  }
+
+  /**
+   * Returns a cursor reading the data points from the first. Unlike {@link #getSeries()} the data
+   * points are not copied into a new array.
+   *
+   * @return a cursor at the first data point
+   * @throws IllegalStateException if the data points were not decoded
+   */
+  public SampleCursor cursor() {
+    return cursor(0);
+  }
+
+  /**
+   * Returns a cursor reading the data points from an index.
+   *
+   * @param index index of the first data point to read
+   * @return a cursor at the data point
+   * @throws IndexOutOfBoundsException if the index is outside the Sequence
+   * @throws IllegalStateException     if the data points were not decoded
+   */
+  public SampleCursor cursor(int index) {
+    checkReadable();
+    return new SampleCursor(store(), index, m_length);
+  }
+
+  /**
+   * Returns a cursor reading the data points within a time window, the same data points
+   * {@link #getSeries(long, long)} returns, without copying them.
+   *
+   * @param startTime The first value should be at or after this point in time.
+   * @param endTime   The last value should be at or before this point in time.
+   * @return a cursor at the first data point of the window
+   * @throws SequenceRangeException If the requested window is not contained within this Sequence.
+   * @throws IllegalStateException  if the data points were not decoded
+   */
+  public SampleCursor cursor(long startTime, long endTime) throws SequenceRangeException {
+    if (endTime > this.getEndTime() || startTime < m_startTime) {
+      throw new SequenceRangeException();
+    }
+    int count = (int) ((endTime - startTime) / m_interval);
+    int index = (int) (((startTime - m_startTime) + (m_interval / 2)) / m_interval);
+    if (index + count > m_length) {
+      throw new SequenceRangeException();
+    }
+    checkReadable();
+    return new SampleCursor(store(), index, index + count);
+  }
+
+  /**
+   * @throws IllegalStateException if the data points were released or not decoded
+   */
+  private void checkReadable() {
+    if (m_released) {
+      throw new IllegalStateException("Data points were released");
+    }
+    if (!isDecoded() && m_length > 0) {
+      throw new IllegalStateException("Data points were not decoded, only record headers read");
+    }
+  }
+
+  /**
+   * @return where cursors read the blocks from
+   */
+  private SampleStore store() {
+    if (m_offHeap != null) {
+      return m_offHeap;
+    }
+    if (m_heapStore == null) {
+      m_heapStore = new HeapStore();
+    }
+    return m_heapStore;
+  }
+
+  /**
+   * Moves the data points off the heap, into a direct buffer or, given a directory, a memory mapped
+   * scratch file there, so the garbage collector no longer scans or copies them. Compressed blocks
+   * stay compressed. Extending or merging the Sequence brings the data points back onto the heap.
+   *
+   * @param directory directory for the scratch file, or null for a direct buffer
+   * @throws IOException if the scratch file can not be created or mapped
+   */
+  public synchronized void moveOffHeap(Path directory) throws IOException {
+    if (m_offHeap != null || !isDecoded() || m_length == 0) {
+      return;
+    }
+    int lastLength = BLOCK_SIZE - m_remainder;
+    m_offHeap = (directory == null) ? OffHeapStore.direct(m_blocks, lastLength)
+        : OffHeapStore.mapped(m_blocks, lastLength, directory);
+    SlabPool.releaseRaw(m_blocks);
+    m_blocks = new ArrayList<>(0);
+    m_block = null;
+  }
+
+  /**
+   * Reports whether the data points are held off the heap, see {@link #moveOffHeap(Path)}.
+   *
+   * @return true if the data points are off the heap
+   */
+  public boolean isOffHeap() {
+    return m_offHeap != null;
+  }
+
+  /**
+   * Frees the data points, at once if they are off the heap rather than when this Sequence is
+   * collected, and returns blocks on the heap to the {@link SlabPool}. The start time, rate and
+   * length are kept but the data points can no longer be read or extended. Nothing may be reading
+   * the data points when they are released.
+   */
+  public synchronized void release() {
+    if (m_offHeap != null) {
+      m_offHeap.release();
+      m_offHeap = null;
+    }
+    if (!m_released) {
+      SlabPool.releaseRaw(m_blocks);
+    }
+    m_blocks = new ArrayList<>(0);
+    m_block = null;
+    m_remainder = 0;
+    m_released = true;
+  }
+
+  /**
+   * Brings data points held off the heap back into m_blocks, before they are modified.
+   */
+  private void onHeap() {
+    if (m_released) {
+      throw new IllegalStateException("Data points were released");
+    }
+    if (m_offHeap != null) {
+      m_blocks = m_offHeap.toBlocks();
+      m_block = m_blocks.get(m_blocks.size() - 1);
+      m_offHeap.release();
+      m_offHeap = null;
+    }
+  }
+
+  /**
+   * Data points held off the heap are written as blocks, as though they had never been moved.
+   */
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    if (m_offHeap != null) {
+      onHeap();
+    }
+    out.defaultWriteObject();
+  }
+
+  /**
+   * Hands cursors the blocks in m_blocks as they are.
+   */
+  private final class HeapStore implements SampleStore {
+
+    @Override
+    public int[] block(int index, int[] scratch) {
+      return m_blocks.get(index);
+    }
+
+    @Override
+    public boolean isCompressed(int index) {
+      return BlockCodec.isCompressed(m_blocks.get(index));
+    }
+  }
+
+  /**
+   * Makes room in the block list for a known number of data points, so the list is not grown as
+   * they are added.
+   *
+   * @param length number of data points that will be added
+   */
+  void reserve(int length) {
+    onHeap();
+    m_blocks.ensureCapacity((m_length + length) / BLOCK_SIZE + 1);
+  }
+
   /**
    * Extends the time-series by adding the specified data to the internal buffer.
    *
@@ -160,6 +413,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
    * @throws NullPointerException      - if offset is null.
    */
   public void extend(int[] buffer, int offset, int length) {
+    onHeap();
     int copySize;
     while (length > 0) {
       copySize = Math.min(m_remainder, length);
@@ -175,6 +429,67 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     }
   }
 
+  /**
+   * Extends the time-series with the Steim compressed samples of a record. Samples that fit in the
+   * current block are decoded straight into it, others are decoded into the decoder's scratch
+   * array and copied in. Nothing is added if decoding fails.
+   *
+   * @param decoder    the calling thread's decoder
+   * @param record     the record
+   * @param dataOffset offset of the first frame in the record
+   * @param dataLength length of the frames in bytes
+   * @param encoding   {@link SteimDecoder#STEIM1} or {@link SteimDecoder#STEIM2}
+   * @param samples    number of samples in the record
+   * @param swap       true if the frames are little endian
+   * @throws SteimException if the record can not be decoded
+   */
+  void extend(SteimDecoder decoder, byte[] record, int dataOffset, int dataLength, int encoding,
+      int samples, boolean swap) throws SteimException {
+    onHeap();
+    if (samples > m_remainder) {
+      int[] scratch = decoder.scratch(samples);
+      decoder.decode(record, dataOffset, dataLength, encoding, samples, swap, scratch, 0);
+      extend(scratch, 0, samples);
+      return;
+    }
+    decoder.decode(record, dataOffset, dataLength, encoding, samples, swap, m_block,
+        BLOCK_SIZE - m_remainder);
+    if (m_remainder == samples) {
+      this._addBlock();
+    } else {
+      m_remainder -= samples;
+    }
+    m_length += samples;
+  }
+
+  /**
+   * Extends the time-series by a number of data points that are not decoded, for days loaded from
+   * record headers alone. Once extended this way the Sequence has a length but no data points, see
+   * {@link #isDecoded()}.
+   *
+   * @param length number of data points
+   */
+  public void extendUndecoded(int length) {
+    onHeap();
+    if (!m_blocks.isEmpty()) {
+      SlabPool.releaseRaw(m_blocks);
+      m_blocks.clear();
+      m_block = null;
+      m_remainder = 0;
+    }
+    m_length += length;
+  }
+
+  /**
+   * Reports whether the data points of this Sequence were decoded. A Sequence loaded from record
+   * headers alone has a start time, rate and length, but no data points to return.
+   *
+   * @return true if the data points can be read
+   */
+  public boolean isDecoded() {
+    return m_offHeap != null || !m_blocks.isEmpty();
+  }
+
   /**
    * Swaps the data contained within two Sequences such that they now contain each other's data.
    * This is not a thread safe operation, and requires that all of the data components be
@@ -228,6 +543,8 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     if (m_interval != seq.m_interval) {
       throw new SequenceIntervalMismatchException();
     }
+    onHeap();
+    seq.onHeap();
 
     /*
      * Allow for a fudge factor of 1 millisecond if sample rate is less than
@@ -296,6 +613,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
        * Sequence.timestampToString(seq.getStartTime()),
        * Sequence.timestampToString(seq.getEndTime()));
        */
+      SlabPool.releaseRaw(m_blocks);
       this._reset();
       return;
     }
@@ -335,7 +653,10 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     // below, which takes into account the remaining skipCount value.
     while (skipCount >= BLOCK_SIZE) {
       skipCount -= BLOCK_SIZE;
-      blocks.remove(0);
+      block = blocks.remove(0);
+      if (!BlockCodec.isCompressed(block)) {
+        SlabPool.release(block);
+      }
     }
 
     int blockCount = blocks.size();
@@ -344,6 +665,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     int copyLength;
     for (int i = 0; i < blockCount; i++) {
       block = blocks.remove(0);
+      if (BlockCodec.isCompressed(block)) {
+        block = BlockCodec.decompress(block, SlabPool.acquire());
+      }
       // If we end up on the last block, we need to update the block
       // length to
       // compensate for the skipped data points, and force the copyLength
@@ -366,9 +690,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
       if (copyLength > 0) {
         seq.extend(block, blockOffset, copyLength);
       }
-      // Add the block to the target Sequence's BlockPool after its
-      // contents have been copied.
-      seq.m_pool.addBlock(block);
+      // Return the block to the SlabPool after its contents have been
+      // copied.
+      SlabPool.release(block);
     }
   }
 
@@ -437,34 +761,12 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
     if (m_length == 0) {
       return null;
     }
-
-    int[] series = new int[count];
-    int[] block;
-    int numBlocks = m_blocks.size();
-    int finalBlock = numBlocks - 1;
-    int seriesLength = 0;
-
-    int blockLength = BLOCK_SIZE;
-    int burn = index / blockLength; // "burn off" this many blocks before
-    // copying the first block
-    int jump = index % blockLength; // start at this index within the first
-    // block copied
-
-    for (int i = burn; (i < numBlocks) && (count > 0); i++) {
-      block = m_blocks.get(i);
-      blockLength = BLOCK_SIZE - jump;
-      if (i == finalBlock) {
-        blockLength = blockLength - m_remainder;
-      }
-      if (blockLength > count) {
-        blockLength = count;
-      }
-      System.arraycopy(block, jump, series, seriesLength, blockLength);
-      seriesLength += blockLength;
-      count -= blockLength;
-      jump = 0;
+    if (!isDecoded()) {
+      throw new IllegalStateException("Data points were not decoded, only record headers read");
     }
 
+    int[] series = new int[count];
+    cursor(index).read(series, 0, count);
     return series;
   }
 
@@ -0,0 +1,167 @@
+package asl.seedsplitter;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide pool of the {@link Sequence#BLOCK_SIZE} int blocks data points are stored in, so
+ * the blocks of a station day that is released are reused by the next day decoded rather than
+ * allocated again.
+ * <p>
+ * Each thread keeps a few blocks of its own, so most blocks are taken and returned without
+ * locking. Beyond those blocks are returned to a shared pool, which is bounded, see
+ * {@link #setMaxBytes(long)}. Blocks returned once the shared pool is full are left to the garbage
+ * collector.
+ * <p>
+ * The counters are approximate. Blocks of Sequences that are collected without being released
+ * stay counted as live, and blocks kept by a thread that ends are still counted as pooled.
+ */
+public final class SlabPool {
+
+  /**
+   * Blocks each thread keeps before returning them to the shared pool.
+   */
+  static final int THREAD_BLOCKS = 16;
+
+  private static final ThreadLocal<ArrayDeque<int[]>> local =
+      ThreadLocal.withInitial(() -> new ArrayDeque<>(THREAD_BLOCKS));
+
+  /**
+   * Guarded by itself.
+   */
+  private static final ArrayDeque<int[]> shared = new ArrayDeque<>();
+
+  private static volatile long maxSharedBlocks =
+      Runtime.getRuntime().maxMemory() / 32 / (Sequence.BLOCK_SIZE * Integer.BYTES);
+
+  private static final AtomicLong live = new AtomicLong();
+  private static final AtomicLong pooled = new AtomicLong();
+  private static final LongAdder allocated = new LongAdder();
+  private static final LongAdder reused = new LongAdder();
+  private static final LongAdder dropped = new LongAdder();
+
+  private SlabPool() {
+  }
+
+  /**
+   * Take a block from the pool, allocating one if the pool is empty. The block holds whatever was
+   * last written to it.
+   *
+   * @return a block {@link Sequence#BLOCK_SIZE} long
+   */
+  static int[] acquire() {
+    int[] block = local.get().pollLast();
+    if (block == null) {
+      synchronized (shared) {
+        block = shared.pollLast();
+      }
+    }
+    if (block != null) {
+      pooled.decrementAndGet();
+      reused.increment();
+    } else {
+      block = new int[Sequence.BLOCK_SIZE];
+      allocated.increment();
+    }
+    live.incrementAndGet();
+    return block;
+  }
+
+  /**
+   * Return a block to the pool. Nothing may use the block afterwards.
+   *
+   * @param block a block from {@link #acquire()}
+   * @throws BlockSizeMismatchException if the block is not {@link Sequence#BLOCK_SIZE} long
+   */
+  static void release(int[] block) throws BlockSizeMismatchException {
+    if (block.length != Sequence.BLOCK_SIZE) {
+      throw new BlockSizeMismatchException(
+          "BlockSizeMismatchException: block.length != Sequence.BLOCK_SIZE");
+    }
+    live.decrementAndGet();
+    ArrayDeque<int[]> cache = local.get();
+    if (cache.size() < THREAD_BLOCKS) {
+      cache.addLast(block);
+      pooled.incrementAndGet();
+      return;
+    }
+    synchronized (shared) {
+      if (shared.size() < maxSharedBlocks) {
+        shared.addLast(block);
+        pooled.incrementAndGet();
+        return;
+      }
+    }
+    dropped.increment();
+  }
+
+  /**
+   * Return the raw blocks of a Sequence to the pool. Compressed blocks are shorter and left to the
+   * garbage collector.
+   *
+   * @param blocks the blocks, nothing may use them afterwards
+   */
+  static void releaseRaw(List<int[]> blocks) {
+    for (int[] block : blocks) {
+      if (block.length == Sequence.BLOCK_SIZE) {
+        try {
+          release(block);
+        } catch (BlockSizeMismatchException e) {
+          // Not possible, the length was checked
+        }
+      }
+    }
+  }
+
+  /**
+   * Set the most bytes of blocks the shared pool keeps. Defaults to a 32nd of the maximum heap.
+   *
+   * @param bytes bytes of blocks, 0 keeps only the blocks of each thread
+   */
+  public static void setMaxBytes(long bytes) {
+    maxSharedBlocks = bytes / (Sequence.BLOCK_SIZE * Integer.BYTES);
+    synchronized (shared) {
+      while (shared.size() > maxSharedBlocks) {
+        shared.pollLast();
+        pooled.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return blocks taken from the pool and not returned
+   */
+  public static long getLive() {
+    return live.get();
+  }
+
+  /**
+   * @return blocks waiting in the pool to be reused
+   */
+  public static long getPooled() {
+    return pooled.get();
+  }
+
+  /**
+   * @return blocks allocated because the pool was empty
+   */
+  public static long getAllocated() {
+    return allocated.sum();
+  }
+
+  /**
+   * @return blocks taken from the pool instead of being allocated
+   */
+  public static long getReused() {
+    return reused.sum();
+  }
+
+  /**
+   * @return blocks returned while the pool was full, left to the garbage collector
+   */
+  public static long getDropped() {
+    return dropped.sum();
+  }
+}
@@ -0,0 +1,135 @@
+package asl.seedsplitter;
+
+import asl.seedscan.Global;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide executor that reads MiniSEED files for every {@link SeedSplitter}, so splitting a
+ * station day does not start threads of its own.
+ * <p>
+ * At most {@link Global#getReaderThreads()} files are read at once. With virtual threads enabled
+ * on a JDK that supports them each read runs on its own virtual thread, still bounded by the same
+ * limit. Otherwise a fixed pool of daemon threads is used.
+ * <p>
+ * Decoder shards of a {@link SeedSplitProcessor} run on a separate pool that grows as needed. A
+ * shard only ends once its split has been read, so sharing the bounded reader pool could leave
+ * every reader waiting on a shard that cannot start.
+ */
+public final class SplitterExecutor {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedsplitter.SplitterExecutor.class);
+
+  private static SplitterExecutor instance;
+
+  private final ExecutorService executor;
+
+  private final ExecutorService decoders;
+
+  /**
+   * Limits concurrent reads when running on virtual threads, null for the fixed pool.
+   */
+  private final Semaphore permits;
+
+  private SplitterExecutor(int threads, boolean virtualThreads) {
+    ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+    if (virtual != null) {
+      logger.info("Reading seed files on virtual threads, at most [{}] at once", threads);
+      executor = virtual;
+      permits = new Semaphore(threads);
+    } else {
+      logger.info("Number of seed file reader threads = [{}]", threads);
+      AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+          new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "SeedReader-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      // Idle readers are stopped so a quiet server holds no threads.
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+      permits = null;
+    }
+
+    AtomicInteger decoderCount = new AtomicInteger();
+    decoders = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "SeedDecoder-" + decoderCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Get the shared executor, creating it from the configuration on first use.
+   *
+   * @return the shared executor
+   */
+  public static synchronized SplitterExecutor getInstance() {
+    if (instance == null) {
+      instance = new SplitterExecutor(Global.getReaderThreads(), Global.getVirtualThreads());
+    }
+    return instance;
+  }
+
+  /**
+   * Create a virtual thread per task executor if this JDK has them. Looked up reflectively so the
+   * code still builds and runs on Java 8.
+   *
+   * @return the executor or null if virtual threads are not available
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = java.util.concurrent.Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.warn("Virtual threads are not available on this JDK, using platform threads");
+      return null;
+    }
+  }
+
+  /**
+   * Run a read. Cancelling the returned future with interruption stops the read.
+   *
+   * @param read the read to run
+   * @return the read's future
+   */
+  public Future<?> submit(Runnable read) {
+    if (permits == null) {
+      return executor.submit(read);
+    }
+    return executor.submit(() -> {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        read.run();
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  /**
+   * Run a decoder shard. Cancelling the returned future with interruption stops the shard.
+   *
+   * @param shard the shard to run
+   * @return the shard's future
+   */
+  Future<?> submitDecoder(Runnable shard) {
+    return decoders.submit(shard);
+  }
+}
@@ -0,0 +1,250 @@
+package asl.seedsplitter;
+
+import edu.iris.dmc.seedcodec.SteimException;
+
+/**
+ * Decodes Steim1 and Steim2 compressed MiniSEED data into a caller supplied array, without
+ * allocating. Samples decode to the same values as the seedcodec Steim1 and Steim2 decoders used
+ * by {@link seed.MiniSeed#decomp()}, which return a new array for every record.
+ * <p>
+ * A decoder holds scratch space and is used by one thread at a time, {@link #get()} returns the
+ * calling thread's decoder.
+ */
+public final class SteimDecoder {
+
+  /**
+   * Blockette 1000 encoding of Steim1 compressed data.
+   */
+  public static final int STEIM1 = 10;
+
+  /**
+   * Blockette 1000 encoding of Steim2 compressed data.
+   */
+  public static final int STEIM2 = 11;
+
+  private static final int FRAME_SIZE = 64;
+
+  private static final ThreadLocal<SteimDecoder> decoders = ThreadLocal.withInitial(
+      SteimDecoder::new);
+
+  /**
+   * Differences of one frame. A frame holds at most 7 differences in each of 15 words, plus the
+   * control word which the first frame keeps.
+   */
+  private final int[] differences = new int[106];
+
+  /**
+   * Samples of records that do not fit where they are going.
+   */
+  private int[] scratch = new int[0];
+
+  private SteimDecoder() {
+  }
+
+  /**
+   * @return the calling thread's decoder
+   */
+  public static SteimDecoder get() {
+    return decoders.get();
+  }
+
+  /**
+   * Get an array of at least the given length, reused between calls.
+   *
+   * @param length least length needed
+   * @return the scratch array, whose contents are undefined
+   */
+  int[] scratch(int length) {
+    if (scratch.length < length) {
+      scratch = new int[Math.max(length, scratch.length * 2)];
+    }
+    return scratch;
+  }
+
+  /**
+   * Check what can be checked of a record without decoding it.
+   *
+   * @param encoding   the record's encoding
+   * @param dataLength length of the frames in bytes
+   * @param samples    number of samples in the record
+   * @throws SteimException if {@link #decode} would reject the record before reading its frames
+   */
+  static void checkFrames(int encoding, int dataLength, int samples) throws SteimException {
+    if (encoding != STEIM1 && encoding != STEIM2) {
+      throw new SteimException("Unsupported encoding " + encoding);
+    }
+    if (dataLength % FRAME_SIZE != 0) {
+      throw new SteimException(
+          "encoded data length is not multiple of 64 bytes (" + dataLength + ")");
+    }
+    if (samples < 0) {
+      throw new SteimException("Negative number of samples " + samples);
+    }
+  }
+
+  /**
+   * Decode the compressed frames of a record.
+   *
+   * @param record     the record
+   * @param dataOffset offset of the first frame in the record
+   * @param dataLength length of the frames in bytes, a multiple of 64
+   * @param encoding   {@link #STEIM1} or {@link #STEIM2}
+   * @param samples    number of samples in the record
+   * @param swap       true if the frames are little endian
+   * @param out        array the samples are written to
+   * @param outOffset  index of the first sample in the array
+   * @return number of samples written, always samples
+   * @throws SteimException if the encoding is not Steim, or the frames are malformed or do not
+   *                        hold the given number of samples
+   */
+  public int decode(byte[] record, int dataOffset, int dataLength, int encoding, int samples,
+      boolean swap, int[] out, int outOffset) throws SteimException {
+    checkFrames(encoding, dataLength, samples);
+
+    int frames = dataLength / FRAME_SIZE;
+    int current = 0;
+    int last = 0;
+    // Frames past the last sample are still read, so malformed ones are rejected as before
+    for (int frame = 0; frame < frames; frame++) {
+      int frameOffset = dataOffset + frame * FRAME_SIZE;
+      int count = encoding == STEIM1
+          ? steim1Differences(record, frameOffset, frame == 0, swap)
+          : steim2Differences(record, frameOffset, frame == 0, swap);
+      int first = 0;
+      if (frame == 0) {
+        // The control word, then the first and last sample, then the first difference
+        if (count < 4) {
+          throw new SteimException("First frame holds no samples");
+        }
+        last = differences[1] - differences[3];
+        first = 3;
+      }
+      for (int i = first; i < count && current < samples; i++) {
+        last += differences[i];
+        out[outOffset + current++] = last;
+      }
+    }
+    if (current != samples) {
+      throw new SteimException("Number of samples decompressed doesn't match number in header: "
+          + current + " != " + samples);
+    }
+    return samples;
+  }
+
+  /**
+   * Read the differences of a Steim1 frame into {@link #differences}.
+   *
+   * @return number of values read
+   */
+  private int steim1Differences(byte[] record, int offset, boolean firstFrame, boolean swap) {
+    int nibbles = readInt(record, offset, swap);
+    int count = 0;
+    for (int i = 0; i < 16; i++) {
+      int word = offset + i * 4;
+      switch ((nibbles >> (30 - i * 2)) & 0x03) {
+        case 0:
+          // Only the first frame's header words are kept
+          if (firstFrame) {
+            differences[count++] = readInt(record, word, swap);
+          }
+          break;
+        case 1:
+          for (int n = 0; n < 4; n++) {
+            differences[count++] = record[word + n];
+          }
+          break;
+        case 2:
+          for (int n = 0; n < 4; n += 2) {
+            differences[count++] = readShort(record, word + n, swap);
+          }
+          break;
+        default:
+          differences[count++] = readInt(record, word, swap);
+          break;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Read the differences of a Steim2 frame into {@link #differences}.
+   *
+   * @return number of values read
+   */
+  private int steim2Differences(byte[] record, int offset, boolean firstFrame, boolean swap)
+      throws SteimException {
+    int nibbles = readInt(record, offset, swap);
+    int count = 0;
+    for (int i = 0; i < 16; i++) {
+      int word = offset + i * 4;
+      int nibble = (nibbles >> (30 - i * 2)) & 0x03;
+      if (nibble == 0) {
+        // Only the first frame's header words are kept
+        if (firstFrame) {
+          differences[count++] = readInt(record, word, swap);
+        }
+        continue;
+      }
+      if (nibble == 1) {
+        for (int n = 0; n < 4; n++) {
+          differences[count++] = record[word + n];
+        }
+        continue;
+      }
+
+      int value = readInt(record, word, swap);
+      int dnib = (value >> 30) & 0x03;
+      int headerBits;
+      int differenceCount;
+      int bits;
+      if (nibble == 2 && dnib == 1) {
+        headerBits = 2;
+        differenceCount = 1;
+        bits = 30;
+      } else if (nibble == 2 && dnib == 2) {
+        headerBits = 2;
+        differenceCount = 2;
+        bits = 15;
+      } else if (nibble == 2 && dnib == 3) {
+        headerBits = 2;
+        differenceCount = 3;
+        bits = 10;
+      } else if (nibble == 3 && dnib == 0) {
+        headerBits = 2;
+        differenceCount = 5;
+        bits = 6;
+      } else if (nibble == 3 && dnib == 1) {
+        headerBits = 2;
+        differenceCount = 6;
+        bits = 5;
+      } else if (nibble == 3 && dnib == 2) {
+        headerBits = 4;
+        differenceCount = 7;
+        bits = 4;
+      } else {
+        throw new SteimException("Unknown case currNibble=" + nibble + " dnib=" + dnib);
+      }
+      // Shift each difference to the top of the int, then sign extend it back down
+      for (int d = 0; d < differenceCount; d++) {
+        differences[count++] = (value << (headerBits + d * bits)) >> (32 - bits);
+      }
+    }
+    return count;
+  }
+
+  private static int readInt(byte[] bytes, int offset, boolean swap) {
+    if (swap) {
+      return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+          | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+    return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+        | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+  }
+
+  private static short readShort(byte[] bytes, int offset, boolean swap) {
+    if (swap) {
+      return (short) ((bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8);
+    }
+    return (short) ((bytes[offset] & 0xff) << 8 | (bytes[offset + 1] & 0xff));
+  }
+}
@@ -9,10 +9,21 @@ import asl.seedscan.metrics.MetricData;
 import asl.seedscan.metrics.MetricPSDException;
 import asl.utils.FFTResult;
 import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.math3.complex.Complex;
 
 public class CrossPower {
 
+  /**
+   * Data points transformed by every CrossPower computed from channel data.
+   */
+  private static final LongAdder transformedSamples = new LongAdder();
+
+  /**
+   * Data points those CrossPowers would have transformed at their channels' full rate.
+   */
+  private static final LongAdder fullRateSamples = new LongAdder();
+
   private final double[] powerSpectrum;
   private double[] frequencyArray;
   private final double spectrumDeltaF;
@@ -35,8 +46,26 @@ public class CrossPower {
   public CrossPower(Channel channelX, Channel channelY, MetricData metricData)
       throws MetricPSDException, ChannelMetaException {
 
-    this(channelX, channelY, metricData, metricData.getDetrendedPaddedDayData(channelX),
-        metricData.getDetrendedPaddedDayData(channelY));
+    this(channelX, channelY, metricData, 0);
+  }
+
+  /**
+   * Use Peterson's algorithm on the channels' day data decimated to a lower rate, which resolves
+   * periods down to a few times the decimated sample interval.
+   *
+   * @param channelX   - X-channel used for power-spectral-density computation
+   * @param channelY   - Y-channel used for power-spectral-density computation
+   * @param metricData - data to use as source of CrossPower computation
+   * @param rate       - rate from {@link MetricData#getDecimatedRate(Channel, Channel, double)},
+   *                   0 for the full rate
+   * @throws ChannelMetaException the channel metadata exception
+   * @throws MetricPSDException   the metric psd exception
+   */
+  public CrossPower(Channel channelX, Channel channelY, MetricData metricData, double rate)
+      throws MetricPSDException, ChannelMetaException {
+
+    this(channelX, channelY, metricData, metricData.getDetrendedPaddedDayData(channelX, rate),
+        metricData.getDetrendedPaddedDayData(channelY, rate), rate);
   }
 
   /**
@@ -56,6 +85,25 @@ public class CrossPower {
       double[] yData)
       throws MetricPSDException, ChannelMetaException {
 
+    this(channelX, channelY, metricData, xData, yData, 0);
+  }
+
+  /**
+   * Perform the crosspower for data taken from the channels' copies at a decimated rate.
+   *
+   * @param channelX   - X-channel used for power-spectral-density computation
+   * @param channelY   - Y-channel used for power-spectral-density computation
+   * @param metricData - data to use as source of CrossPower computation
+   * @param xData      - data taken from channelX in metricData at the rate
+   * @param yData      - data taken from channelY in metricData at the rate
+   * @param rate       - rate of the data, 0 for the channels' full rate
+   * @throws ChannelMetaException the channel metadata exception
+   * @throws MetricPSDException   the metric psd exception
+   */
+  public CrossPower(Channel channelX, Channel channelY, MetricData metricData, double[] xData,
+      double[] yData, double rate)
+      throws MetricPSDException, ChannelMetaException {
+
     if (xData == null && yData == null && !channelX.equals(channelY)) {
       throw new MetricPSDException("Data for both channels (" + channelX.toString() +
           ", " + channelY.toString() + ") is null");
@@ -67,17 +115,22 @@ public class CrossPower {
           channelY.toString() + ") was null for some reason");
     }
 
-    double sampleRate = metricData.getChannelData(channelX).get(0).getSampleRate();
+    double sampleRate = metricData.getChannelData(channelX, rate).get(0).getSampleRate();
 
-    if (sampleRate != metricData.getChannelData(channelY).get(0).getSampleRate()) {
+    if (sampleRate != metricData.getChannelData(channelY, rate).get(0).getSampleRate()) {
       throw new MetricPSDException("computePSD(): srateX (=" + sampleRate + ") != srateY (="
-          + metricData.getChannelData(channelY).get(0).getSampleRate() + ")\n");
+          + metricData.getChannelData(channelY, rate).get(0).getSampleRate() + ")\n");
     }
 
     if (sampleRate == 0) {
       throw new MetricPSDException("Got srate=0");
     }
 
+    long samples = channelX.equals(channelY) ? xData.length : xData.length + yData.length;
+    transformedSamples.add(samples);
+    fullRateSamples.add(Math.round(
+        samples * metricData.getChannelData(channelX).get(0).getSampleRate() / sampleRate));
+
     FFTResult psdRaw = FFTResult.spectralCalc(xData, yData,
         (long) (ONE_HZ_INTERVAL / sampleRate));
     Complex[] spectrumRaw = psdRaw.getFFT();
@@ -111,6 +164,20 @@ public class CrossPower {
     }
   }
 
+  /**
+   * @return data points transformed by CrossPowers computed from channel data so far
+   */
+  public static long getTransformedSamples() {
+    return transformedSamples.sum();
+  }
+
+  /**
+   * @return data points the same CrossPowers would have transformed at their channels' full rate
+   */
+  public static long getFullRateSamples() {
+    return fullRateSamples.sum();
+  }
+
   public double[] getSpectrum() {
     return Arrays.copyOf(powerSpectrum, powerSpectrum.length);
   }
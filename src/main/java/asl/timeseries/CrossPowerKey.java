@@ -23,8 +23,18 @@ import asl.metadata.Channel;
 public class CrossPowerKey {
 
   private final String key;
+  private final double rate;
 
   public CrossPowerKey(Channel a, Channel b) {
+    this(a, b, 0);
+  }
+
+  /**
+   * @param a    first channel
+   * @param b    second channel
+   * @param rate decimated rate the cross power is computed at, 0 for the full rate
+   */
+  public CrossPowerKey(Channel a, Channel b, double rate) {
     String aKey = a.toString();
     String bKey = b.toString();
     if (aKey.compareTo(bKey) < 0) {
@@ -32,15 +42,20 @@ public class CrossPowerKey {
     } else {
       key = bKey + aKey;
     }
+    this.rate = rate;
   }
 
   public String getKey() {
     return key;
   }
 
+  public double getRate() {
+    return rate;
+  }
+
   @Override
   public String toString() {
-    return key;
+    return rate == 0 ? key : key + "@" + rate;
   }
 
   /* (non-Javadoc)
@@ -51,6 +66,7 @@ public class CrossPowerKey {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((key == null) ? 0 : key.hashCode());
+    result = prime * result + Double.hashCode(rate);
     return result;
   }
 
@@ -69,6 +85,9 @@ public class CrossPowerKey {
       return false;
     }
     CrossPowerKey other = (CrossPowerKey) obj;
+    if (Double.compare(rate, other.rate) != 0) {
+      return false;
+    }
     if (key == null) {
       return other.key == null;
     } else {
@@ -0,0 +1,44 @@
+package asl.timeseries;
+
+import asl.seedsplitter.DataSet;
+
+/**
+ * A DataSet made by {@link Decimator}. Filtered values are not whole counts, so each data point is
+ * stored multiplied by a scale and rounded, keeping rounding well below the signal in the narrow
+ * band the copy is used for.
+ */
+public class DecimatedDataSet extends DataSet {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int scale;
+
+  /**
+   * Constructor.
+   *
+   * @param scale the power of two data points are multiplied by
+   */
+  DecimatedDataSet(int scale) {
+    super();
+    this.scale = scale;
+  }
+
+  /**
+   * Get the scale data points are stored at, the value in counts is the data point divided by it.
+   *
+   * @return a power of two, at least 1
+   */
+  public int getScale() {
+    return scale;
+  }
+
+  /**
+   * Get the scale of a DataSet's data points.
+   *
+   * @param dataSet the DataSet
+   * @return its scale if it is decimated, else 1
+   */
+  public static int getScale(DataSet dataSet) {
+    return (dataSet instanceof DecimatedDataSet) ? ((DecimatedDataSet) dataSet).getScale() : 1;
+  }
+}
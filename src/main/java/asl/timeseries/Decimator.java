@@ -0,0 +1,283 @@
+package asl.timeseries;
+
+import asl.seedsplitter.DataSet;
+import asl.seedsplitter.IllegalSampleRateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Produces anti-aliased copies of DataSets at lower sample rates, so metrics that only look at long
+ * periods need not transform the full rate series.
+ * <p>
+ * A factor is decimated in stages of at most 10. Each stage low pass filters with a zero phase,
+ * Blackman windowed sinc filter cut off at 80% of the new Nyquist frequency, and keeps every
+ * factor'th data point. The response is flat to within 0.01 dB up to 60% of the new Nyquist
+ * frequency. Frequencies above the new Nyquist frequency are attenuated by at least 70 dB, and
+ * those aliasing into the flat band by at least 90 dB. The series is extended by its first and last
+ * data points at either end, so the filter rings near gaps.
+ * <p>
+ * Copies are {@link DecimatedDataSet}s, whose data points are scaled so rounding them to counts
+ * does not add noise to the flat band.
+ */
+public class Decimator {
+
+  private static final Logger logger = LoggerFactory.getLogger(Decimator.class);
+
+  /**
+   * Largest factor decimated in a single stage.
+   */
+  private static final int MAX_STAGE_FACTOR = 10;
+
+  /**
+   * Half length of a stage's filter, per unit of its factor.
+   */
+  private static final int HALF_TAPS_PER_FACTOR = 16;
+
+  /**
+   * Cut off of the filters, as a fraction of the new Nyquist frequency.
+   */
+  private static final double CUTOFF = 0.8;
+
+  /**
+   * Largest scale a copy is stored at, rounding is then far below any digitizer's resolution.
+   */
+  private static final int MAX_SCALE = 1 << 16;
+
+  /**
+   * Largest scaled data point, leaving headroom below {@link Integer#MAX_VALUE}.
+   */
+  private static final double MAX_SCALED = 1 << 30;
+
+  /**
+   * Half of each stage factor's filter, from the centre tap out.
+   */
+  private static final Map<Integer, double[]> filters = new ConcurrentHashMap<>();
+
+  /**
+   * Find the integer factor a sample rate is decimated by to reach a lower rate.
+   *
+   * @param sampleRate the sample rate
+   * @param rate       the lower rate
+   * @return the factor, or 0 if it is not an integer greater than 1
+   */
+  public static int getFactor(double sampleRate, double rate) {
+    if (rate <= 0 || sampleRate <= rate) {
+      return 0;
+    }
+    double factor = sampleRate / rate;
+    long rounded = Math.round(factor);
+    if (rounded > Integer.MAX_VALUE || Math.abs(factor - rounded) > 1e-6 * factor) {
+      return 0;
+    }
+    return (int) rounded;
+  }
+
+  /**
+   * Decimate the channels of a station day to each of several rates. Each copy is taken from the
+   * lowest rate copy already made that it is an integer factor of, else from the channel itself.
+   * Channels that are not decoded, or whose sample rate is not an integer multiple of a rate, have
+   * no copy at that rate.
+   *
+   * @param table the day's DataSets by channel
+   * @param rates the rates in Hz
+   * @return the copies by rate, then by the same keys as table
+   */
+  public static Map<Double, Hashtable<String, ArrayList<DataSet>>> decimate(
+      Hashtable<String, ArrayList<DataSet>> table, double[] rates) {
+    double[] sorted = rates.clone();
+    Arrays.sort(sorted);
+    Map<Double, Hashtable<String, ArrayList<DataSet>>> decimated = new TreeMap<>();
+    for (Map.Entry<String, ArrayList<DataSet>> entry : table.entrySet()) {
+      // Copies of this channel, lowest rate first
+      List<ArrayList<DataSet>> copies = new ArrayList<>();
+      for (int i = sorted.length - 1; i >= 0; i--) {
+        double rate = sorted[i];
+        ArrayList<DataSet> copy = null;
+        for (ArrayList<DataSet> source : copies) {
+          copy = decimate(source, rate);
+          if (copy != null) {
+            break;
+          }
+        }
+        if (copy == null) {
+          copy = decimate(entry.getValue(), rate);
+        }
+        if (copy != null) {
+          copies.add(0, copy);
+          decimated.computeIfAbsent(rate, r -> new Hashtable<>()).put(entry.getKey(), copy);
+        }
+      }
+    }
+    return decimated;
+  }
+
+  /**
+   * @return the decimated DataSets, or null if any can not be decimated to the rate
+   */
+  private static ArrayList<DataSet> decimate(List<DataSet> dataSets, double rate) {
+    ArrayList<DataSet> copies = new ArrayList<>(dataSets.size());
+    for (DataSet dataSet : dataSets) {
+      DataSet copy = decimate(dataSet, rate);
+      if (copy == null) {
+        return null;
+      }
+      copies.add(copy);
+    }
+    return copies.isEmpty() ? null : copies;
+  }
+
+  /**
+   * Decimate a DataSet to a lower sample rate. The copy starts at the same time, each of its data
+   * points is the filtered value at every factor'th data point of the DataSet, multiplied by the
+   * copy's scale.
+   *
+   * @param dataSet the DataSet, which must be decoded
+   * @param rate    the lower rate in Hz
+   * @return the copy, or null if the DataSet is not decoded or the rate is not an integer factor
+   * below its sample rate
+   */
+  public static DecimatedDataSet decimate(DataSet dataSet, double rate) {
+    int factor = getFactor(dataSet.getSampleRate(), rate);
+    if (factor == 0 || !dataSet.isDecoded() || dataSet.getLength() == 0) {
+      return null;
+    }
+
+    double[] series = dataSet.cursor().toDoubleArray();
+    // A copy of a copy starts from the value in counts
+    int sourceScale = DecimatedDataSet.getScale(dataSet);
+    if (sourceScale != 1) {
+      for (int i = 0; i < series.length; i++) {
+        series[i] /= sourceScale;
+      }
+    }
+    for (int stage : getStages(factor)) {
+      series = decimate(series, stage);
+    }
+    int scale = getScale(series);
+    int[] samples = new int[series.length];
+    for (int i = 0; i < series.length; i++) {
+      samples[i] = (int) Math.round(series[i] * scale);
+    }
+
+    DecimatedDataSet copy = new DecimatedDataSet(scale);
+    copy.setNetwork(dataSet.getNetwork());
+    copy.setStation(dataSet.getStation());
+    copy.setLocation(dataSet.getLocation());
+    copy.setChannel(dataSet.getChannel());
+    copy.setStartTime(dataSet.getStartTime());
+    try {
+      copy.setSampleRate(rate);
+    } catch (IllegalSampleRateException e) {
+      logger.warn("Unable to decimate [{}] to [{}] Hz", dataSet.getChannel(), rate, e);
+      return null;
+    }
+    copy.extend(samples, 0, samples.length);
+    return copy;
+  }
+
+  /**
+   * Find the largest power of two a series can be multiplied by and still be stored as ints.
+   *
+   * @param series the series
+   * @return the scale, from 1 to {@link #MAX_SCALE}
+   */
+  static int getScale(double[] series) {
+    double max = 0;
+    for (double value : series) {
+      max = Math.max(max, Math.abs(value));
+    }
+    int scale = 1;
+    while (scale < MAX_SCALE && max * scale * 2 <= MAX_SCALED) {
+      scale *= 2;
+    }
+    return scale;
+  }
+
+  /**
+   * Split a factor into stages of at most {@link #MAX_STAGE_FACTOR}, largest first. A prime factor
+   * above it is left as one stage.
+   *
+   * @param factor the factor
+   * @return the factor of each stage
+   */
+  static List<Integer> getStages(int factor) {
+    List<Integer> stages = new ArrayList<>();
+    while (factor > 1) {
+      int stage = factor;
+      for (int divisor = Math.min(factor, MAX_STAGE_FACTOR); divisor > 1; divisor--) {
+        if (factor % divisor == 0) {
+          stage = divisor;
+          break;
+        }
+      }
+      stages.add(stage);
+      factor /= stage;
+    }
+    return stages;
+  }
+
+  /**
+   * Filter and decimate a series by one stage.
+   *
+   * @param series the series
+   * @param factor the stage's factor
+   * @return the decimated series, one data point for every factor data points begun
+   */
+  static double[] decimate(double[] series, int factor) {
+    double[] filter = getFilter(factor);
+    int half = filter.length - 1;
+    int n = series.length;
+    double[] decimated = new double[(n + factor - 1) / factor];
+    for (int j = 0; j < decimated.length; j++) {
+      int centre = j * factor;
+      double sum = filter[0] * series[centre];
+      if (centre >= half && centre + half < n) {
+        for (int k = 1; k <= half; k++) {
+          sum += filter[k] * (series[centre - k] + series[centre + k]);
+        }
+      } else {
+        for (int k = 1; k <= half; k++) {
+          sum += filter[k]
+              * (series[Math.max(centre - k, 0)] + series[Math.min(centre + k, n - 1)]);
+        }
+      }
+      decimated[j] = sum;
+    }
+    return decimated;
+  }
+
+  /**
+   * Get the low pass filter of a stage, normalised to unit gain at 0 Hz.
+   *
+   * @param factor the stage's factor
+   * @return the centre tap and those on one side, the filter is symmetric
+   */
+  static double[] getFilter(int factor) {
+    return filters.computeIfAbsent(factor, f -> {
+      int half = HALF_TAPS_PER_FACTOR * f;
+      // Cut off in cycles per data point
+      double cutoff = CUTOFF * 0.5 / f;
+      double[] filter = new double[half + 1];
+      double sum = 0;
+      for (int k = 0; k <= half; k++) {
+        double x = 2 * Math.PI * cutoff * k;
+        double sinc = (k == 0) ? 1 : Math.sin(x) / x;
+        double window = 0.42 + 0.5 * Math.cos(Math.PI * k / half)
+            + 0.08 * Math.cos(2 * Math.PI * k / half);
+        filter[k] = 2 * cutoff * sinc * window;
+        sum += (k == 0) ? filter[k] : 2 * filter[k];
+      }
+      for (int k = 0; k <= half; k++) {
+        filter[k] /= sum;
+      }
+      return filter;
+    });
+  }
+}
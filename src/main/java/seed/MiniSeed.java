@@ -856,7 +856,7 @@ public class MiniSeed {
    * @return true, if successful
    * @throws IllegalSeednameException the illegal seedname exception
    */
-  private static boolean swapNeeded(byte[] buf)
+  static boolean swapNeeded(byte[] buf)
       throws IllegalSeednameException {
     ByteBuffer bb = ByteBuffer.wrap(buf);
     return swapNeeded(buf, bb);
@@ -2223,23 +2223,31 @@ public class MiniSeed {
     int rev = 0;
     int[] samples = null;
 
-    if (getBlockSize() > dataOffset) {
-      int framelen = getBlockSize() - dataOffset;
-      byte[] frames = new byte[framelen];
-      System.arraycopy(buf, dataOffset, frames, 0, framelen);
+    int framelen = getDataLength();
+    byte[] frames = new byte[framelen];
+    System.arraycopy(buf, dataOffset, frames, 0, framelen);
 
-      if (getEncoding() == B1000Types.STEIM1) {
-        samples = Steim1.decode(frames, getNsamp(), swap, rev);
-      }
-      if (getEncoding() == B1000Types.STEIM2) {
-        samples = Steim2.decode(frames, getNsamp(), swap, rev);
-      }
+    if (getEncoding() == B1000Types.STEIM1) {
+      samples = Steim1.decode(frames, getNsamp(), swap, rev);
+    }
+    if (getEncoding() == B1000Types.STEIM2) {
+      samples = Steim2.decode(frames, getNsamp(), swap, rev);
+    }
+    return samples;
+  }
 
-    } else {
+  /**
+   * return the length of the data frames, from the data offset to the end of the record.
+   *
+   * @return the length of the data in bytes
+   * @throws BlockSizeException if the data offset is not inside the record
+   */
+  public int getDataLength() throws BlockSizeException {
+    if (getBlockSize() <= dataOffset) {
       throw new BlockSizeException(String
           .format("BlockSizeException: (blockSize:[{%s}]) > (dataOffset:[{%s}])",
               getBlockSize(), dataOffset));
     }
-    return samples;
+    return getBlockSize() - dataOffset;
   }
 }
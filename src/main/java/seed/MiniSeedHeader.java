@@ -0,0 +1,481 @@
+package seed;
+
+import asl.seedscan.Global;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reusable view of the header of a mini-seed record held in a ByteBuffer. Unlike
+ * {@link MiniSeed} nothing is copied or cracked up front, each field is read from the buffer when
+ * it is asked for, and the blockettes are only walked the first time one of them is needed. One
+ * view is {@link #reset(ByteBuffer, int, int)} onto each record in turn, so reading headers does
+ * not allocate.
+ * <p>
+ * Fields decode to the same values as the MiniSeed getters and crack methods. Blockettes are found
+ * by following the chain of next blockette offsets from the fixed header.
+ * <p>
+ * A view is not thread safe.
+ */
+public final class MiniSeedHeader {
+
+  private static final Logger logger = LoggerFactory.getLogger(seed.MiniSeedHeader.class);
+
+  /**
+   * Offsets into the fixed header, see SEED manual chapter 8.
+   */
+  private static final int YEAR = 20;
+  private static final int DAY = 22;
+  private static final int HOUR = 24;
+  private static final int MINUTE = 25;
+  private static final int SECOND = 26;
+  private static final int FRACTION = 28;
+  private static final int SAMPLES = 30;
+  private static final int RATE_FACTOR = 32;
+  private static final int RATE_MULTIPLIER = 34;
+  private static final int BLOCKETTE_COUNT = 39;
+  private static final int DATA_OFFSET = 44;
+  private static final int FIRST_BLOCKETTE = 46;
+
+  private ByteBuffer buffer;
+  private int offset;
+  private int length;
+
+  /**
+   * The array wrapped by {@link #buffer} when reset onto an array.
+   */
+  private byte[] wrapped;
+
+  private boolean swap;
+  private boolean heartBeat;
+
+  private boolean blockettesFound;
+  private int blockette1000;
+  private int blockette1001;
+  private int blockette320;
+
+  /**
+   * Quality flags configured when {@link #qualities} was last filled in.
+   */
+  private String qualityFlags;
+  private boolean allQualities;
+  private char[] qualities;
+
+  /**
+   * View the record at the start of an array.
+   *
+   * @param record the record
+   * @return this view
+   * @throws IllegalSeednameException if the record is clearly not mini-seed or its quality flag is
+   *                                  not configured
+   */
+  public MiniSeedHeader reset(byte[] record) throws IllegalSeednameException {
+    if (record != wrapped) {
+      wrapped = record;
+      buffer = ByteBuffer.wrap(record);
+    }
+    return reset(buffer, 0, record.length);
+  }
+
+  /**
+   * View a record held in a buffer. The buffer's position and byte order are ignored and left
+   * alone.
+   *
+   * @param buffer the buffer holding the record
+   * @param offset absolute offset of the record in the buffer
+   * @param length length of the record
+   * @return this view
+   * @throws IllegalSeednameException if the record is clearly not mini-seed or its quality flag is
+   *                                  not configured
+   */
+  public MiniSeedHeader reset(ByteBuffer buffer, int offset, int length)
+      throws IllegalSeednameException {
+    if (buffer != this.buffer) {
+      wrapped = null;
+    }
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    blockettesFound = false;
+    heartBeat = checkHeartBeat();
+    swap = !heartBeat && swapNeeded();
+    return this;
+  }
+
+  /**
+   * @return true if the sequence number is all zeros and the station and location are blank
+   */
+  public boolean isHeartBeat() {
+    return heartBeat;
+  }
+
+  /**
+   * @return true if the record is little endian
+   */
+  public boolean isSwapBytes() {
+    return swap;
+  }
+
+  /**
+   * @return the sequence number
+   * @throws NumberFormatException if the sequence number is not all digits
+   */
+  public int getSequence() {
+    int sequence = 0;
+    for (int i = 0; i < 6; i++) {
+      int digit = get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("For sequence number of record at " + offset);
+      }
+      sequence = sequence * 10 + digit;
+    }
+    return sequence;
+  }
+
+  /**
+   * @return the seed name in NSCL order, as {@link MiniSeed#crackSeedname(byte[])} returns it
+   */
+  public String getSeedname() {
+    char[] name = new char[12];
+    // Network, station, channel then location
+    copyChars(name, 0, 18, 2);
+    copyChars(name, 2, 8, 5);
+    copyChars(name, 7, 15, 3);
+    copyChars(name, 10, 13, 2);
+    return new String(name);
+  }
+
+  /**
+   * Copy the raw station, location, channel and network codes, the 12 bytes from offset 8.
+   *
+   * @param destination array at least 12 long
+   */
+  public void copyCodes(byte[] destination) {
+    for (int i = 0; i < 12; i++) {
+      destination[i] = get(8 + i);
+    }
+  }
+
+  /**
+   * @param codes codes copied by {@link #copyCodes(byte[])}
+   * @return true if this record has the same codes
+   */
+  public boolean codesEqual(byte[] codes) {
+    for (int i = 0; i < 12; i++) {
+      if (codes[i] != get(8 + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the year of the first sample
+   */
+  public int getYear() {
+    return getShort(YEAR);
+  }
+
+  /**
+   * @return the day of year of the first sample
+   */
+  public int getDayOfYear() {
+    return getShort(DAY);
+  }
+
+  /**
+   * @return the hour of the first sample
+   */
+  public int getHour() {
+    return get(HOUR) & 0xff;
+  }
+
+  /**
+   * @return the minute of the first sample
+   */
+  public int getMinute() {
+    return get(MINUTE) & 0xff;
+  }
+
+  /**
+   * @return the second of the first sample
+   */
+  public int getSecond() {
+    return get(SECOND) & 0xff;
+  }
+
+  /**
+   * @return the ten thousandths of a second of the first sample
+   */
+  public int getTenthMillis() {
+    return getShort(FRACTION) & 0xffff;
+  }
+
+  /**
+   * @return number of samples in the record
+   */
+  public int getNsamp() {
+    return getShort(SAMPLES);
+  }
+
+  /**
+   * @return the sample rate in Hz, 0 if the rate factor or multiplier is 0
+   */
+  public double getRate() {
+    short rateFactor = getShort(RATE_FACTOR);
+    short rateMultiplier = getShort(RATE_MULTIPLIER);
+    double rate = rateFactor;
+    // if rate > 0 its in hz, < 0 its period.
+    // if multiplier > 0 it multiplies, if < 0 it divides.
+    if (rateFactor == 0 || rateMultiplier == 0) {
+      return 0;
+    }
+    if (rate >= 0) {
+      if (rateMultiplier > 0) {
+        rate *= rateMultiplier;
+      } else {
+        rate /= -rateMultiplier;
+      }
+    } else {
+      if (rateMultiplier > 0) {
+        rate = -rateMultiplier / rate;
+      } else {
+        rate = -1. / (-rateMultiplier) / rate;
+      }
+    }
+    return rate;
+  }
+
+  /**
+   * @return offset of the data in the record
+   */
+  public int getDataOffset() {
+    return getShort(DATA_OFFSET);
+  }
+
+  /**
+   * @return length of the data frames, from the data offset to the end of the record
+   * @throws BlockSizeException if the data offset is not inside the record
+   */
+  public int getDataLength() throws BlockSizeException {
+    int blockSize = getBlockSize();
+    int dataOffset = getDataOffset();
+    if (blockSize <= dataOffset) {
+      throw new BlockSizeException(String
+          .format("BlockSizeException: (blockSize:[{%s}]) > (dataOffset:[{%s}])",
+              blockSize, dataOffset));
+    }
+    return blockSize - dataOffset;
+  }
+
+  /**
+   * @return the record length from blockette 1000, or the length viewed without one
+   */
+  public int getBlockSize() {
+    findBlockettes();
+    if (blockette1000 < 0) {
+      return length;
+    }
+    return 1 << get(blockette1000 + 6);
+  }
+
+  /**
+   * @return the data encoding from blockette 1000, or 0 without one
+   */
+  public int getEncoding() {
+    findBlockettes();
+    if (blockette1000 < 0) {
+      return 0;
+    }
+    return get(blockette1000 + 4);
+  }
+
+  /**
+   * @return the timing quality from blockette 1001, or -1 if there is none
+   */
+  public int getTimingQuality() {
+    findBlockettes();
+    if (blockette1001 < 0) {
+      return -1;
+    }
+    return get(blockette1001 + 4) & 0xff;
+  }
+
+  /**
+   * @return a copy of the 64 bytes of blockette 320, or null if there is none
+   */
+  public byte[] getBlockette320() {
+    findBlockettes();
+    if (blockette320 < 0) {
+      return null;
+    }
+    byte[] blockette = new byte[64];
+    for (int i = 0; i < blockette.length; i++) {
+      blockette[i] = get(blockette320 + i);
+    }
+    return blockette;
+  }
+
+  /**
+   * Walk the blockettes the way MiniSeed cracks them, remembering where the ones read are. The
+   * last of each type is kept.
+   */
+  private void findBlockettes() {
+    if (blockettesFound) {
+      return;
+    }
+    blockettesFound = true;
+    blockette1000 = -1;
+    blockette1001 = -1;
+    blockette320 = -1;
+    if (heartBeat) {
+      return;
+    }
+
+    int count = get(BLOCKETTE_COUNT);
+    int samples = getNsamp();
+    // Log records ending a rerequest count characters as samples but have none
+    if (get(15) == 'L' && get(16) == 'O' && get(17) == 'G' && samples == 0) {
+      count = 0;
+    }
+    int next = getShort(FIRST_BLOCKETTE);
+    for (int blk = 0; blk < count; blk++) {
+      if (next < 48 || next >= 400) {
+        if (samples > 0) {
+          logger.error("Bad position in blockettes next2=" + next);
+        }
+        break;
+      }
+      int type = getShort(next);
+      // Blockette 1001 was written unswapped for a short time 2009,128-133
+      if (type == -5885 && getYear() == 2009 && getDayOfYear() >= 128
+          && getDayOfYear() <= 133) {
+        type = 1001;
+      }
+      switch (type) {
+        case 320:
+          blockette320 = next;
+          break;
+        case 1000:
+          blockette1000 = next;
+          break;
+        case 1001:
+          blockette1001 = next;
+          break;
+        default:
+          break;
+      }
+      next = getShort(next + 2);
+    }
+  }
+
+  private boolean checkHeartBeat() {
+    for (int i = 0; i < 6; i++) {
+      if (get(i) != 48 || get(i + 6) != 32 || get(i + 12) != 32) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decide byte order the way MiniSeed does. Records whose blockette offsets and blockette 1000
+   * agree on the order are decided here. Anything else is handed to MiniSeed, which logs and throws
+   * as it always has.
+   */
+  private boolean swapNeeded() throws IllegalSeednameException {
+    if (!isDigit(0) || !isDigit(1) || !isDigit(2) || !isDigit(3) || get(7) != ' '
+        || !qualityAccepted(get(6))) {
+      return fallbackSwapNeeded();
+    }
+    int count = get(BLOCKETTE_COUNT);
+    if (count <= 0) {
+      // Without blockettes, decide from where the data starts
+      int dataOffset = getShort(DATA_OFFSET, false);
+      return dataOffset < 0 || dataOffset > 512;
+    }
+    // The first blockette follows the fixed header, so an offset out of place means swapped
+    boolean little = false;
+    int next = getShort(FIRST_BLOCKETTE, false);
+    if (next < 48 || next > 64) {
+      little = true;
+      next = getShort(FIRST_BLOCKETTE, true);
+    }
+    for (int blk = 0; blk < count; blk++) {
+      if (next < 48 || next > 64) {
+        return fallbackSwapNeeded();
+      }
+      int type = getShort(next, little);
+      int blocketteOffset = next;
+      next = getShort(next + 2, little);
+      if (type == 1000) {
+        if (get(blocketteOffset + 5) != 0) {
+          return false;
+        }
+        // A little endian word order contradicting the offsets is logged by MiniSeed
+        return little || fallbackSwapNeeded();
+      }
+    }
+    return little;
+  }
+
+  private boolean fallbackSwapNeeded() throws IllegalSeednameException {
+    byte[] record = new byte[length];
+    for (int i = 0; i < length; i++) {
+      record[i] = get(i);
+    }
+    return MiniSeed.swapNeeded(record);
+  }
+
+  private boolean qualityAccepted(byte quality) {
+    String flags = Global.getQualityflags();
+    if (!flags.equals(qualityFlags)) {
+      allQualities = false;
+      StringBuilder accepted = new StringBuilder();
+      for (String flag : flags.split(",")) {
+        if (flag.equals("All")) {
+          allQualities = true;
+        } else if (flag.length() == 1) {
+          accepted.append(flag);
+        }
+      }
+      qualities = accepted.toString().toCharArray();
+      qualityFlags = flags;
+    }
+    if (allQualities) {
+      return true;
+    }
+    for (char accepted : qualities) {
+      if (accepted == (char) quality) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isDigit(int index) {
+    byte b = get(index);
+    return b >= '0' && b <= '9';
+  }
+
+  private void copyChars(char[] destination, int start, int index, int count) {
+    for (int i = 0; i < count; i++) {
+      destination[start + i] = (char) (get(index + i) & 0xff);
+    }
+  }
+
+  private byte get(int index) {
+    return buffer.get(offset + index);
+  }
+
+  private short getShort(int index) {
+    return getShort(index, swap);
+  }
+
+  private short getShort(int index, boolean little) {
+    if (little) {
+      return (short) ((get(index) & 0xff) | (get(index + 1) & 0xff) << 8);
+    }
+    return (short) ((get(index) & 0xff) << 8 | (get(index + 1) & 0xff));
+  }
+}
@@ -28,6 +28,15 @@ pkscanid = scanid;
   AND
   taken = TRUE --Must have been processed
   AND
+  finished = FALSE
+  AND
+  pkscanid IN (
+  --Must have been split, a parent whose children are not yet inserted is still running
+      select distinct fkparentscan
+      from tblscan
+      where fkparentscan IS NOT NULL
+  )
+  AND
   pkscanid NOT IN (
   --List of all parents with unfinished children
       select distinct fkparentscan
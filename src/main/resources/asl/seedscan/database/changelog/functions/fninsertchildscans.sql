@@ -0,0 +1,42 @@
+-- Function: fninsertchildscans(uuid, text[], text[], date[], date[], text, text, text, integer, boolean)
+
+-- DROP FUNCTION fninsertchildscans(uuid, text[], text[], date[], date[], text, text, text, integer, boolean);
+
+CREATE OR REPLACE FUNCTION fninsertchildscans(parentid uuid, networks text[], stations text[],
+  startdates date[], enddates date[], location text, channel text, metric text,
+  scanpriority integer, deletedata boolean)
+  RETURNS integer AS
+$BODY$
+DECLARE
+    childCount integer;
+BEGIN
+--Insert every child of the parent in a single statement.
+  INSERT INTO tblscan(fkparentscan, networkfilter, stationfilter, locationfilter,
+                      channelfilter, metricfilter, startdate, enddate, priority,
+                      deleteexisting)
+  SELECT parentid, child.network, child.station, location, channel, metric,
+         child.startdate, child.enddate, scanpriority, deletedata
+    FROM unnest(networks, stations, startdates, enddates)
+      AS child(network, station, startdate, enddate);
+
+  GET DIAGNOSTICS childCount = ROW_COUNT;
+
+--The parent is complete once split, so it no longer needs a lease.
+  UPDATE tblscan
+    SET leaseowner = NULL, leaseexpiry = NULL
+  WHERE
+    pkscanid = parentid;
+
+--A parent that has no children has nothing left to do.
+  IF childCount = 0 THEN
+    UPDATE tblscan
+      SET finished = TRUE, lastupdate = current_timestamp
+    WHERE
+      pkscanid = parentid;
+  END IF;
+
+RETURN childCount;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
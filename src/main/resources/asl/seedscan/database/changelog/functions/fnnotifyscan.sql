@@ -0,0 +1,16 @@
+-- Function: fnnotifyscan()
+
+-- DROP FUNCTION fnnotifyscan();
+
+CREATE OR REPLACE FUNCTION fnnotifyscan()
+  RETURNS trigger AS
+$BODY$
+BEGIN
+--Wake any SeedScan instance listening for new scans.
+--Identical notifications within a transaction are only delivered once.
+  PERFORM pg_notify('tblscan_insert', '');
+  RETURN NULL;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
@@ -0,0 +1,26 @@
+-- Function: fnreleaseleases(character varying)
+
+-- DROP FUNCTION fnreleaseleases(character varying);
+
+CREATE OR REPLACE FUNCTION fnreleaseleases(worker character varying)
+  RETURNS integer AS
+$BODY$
+DECLARE
+    released integer;
+BEGIN
+--Return unfinished scans held by the worker so others can take them immediately.
+  UPDATE tblscan
+    SET taken = FALSE, leaseowner = NULL, leaseexpiry = NULL
+  WHERE
+    leaseowner = worker
+    AND
+    finished = FALSE
+    AND
+    leaseexpiry IS NOT NULL;
+
+  GET DIAGNOSTICS released = ROW_COUNT;
+RETURN released;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
@@ -0,0 +1,28 @@
+-- Function: fnreleasescan(uuid, character varying)
+
+-- DROP FUNCTION fnreleasescan(uuid, character varying);
+
+CREATE OR REPLACE FUNCTION fnreleasescan(scanid uuid, worker character varying)
+  RETURNS integer AS
+$BODY$
+DECLARE
+    released integer;
+BEGIN
+--Return a failed scan to the queue. It waits a day before being taken again,
+--so a scan that always fails is not retried in a loop.
+  UPDATE tblscan
+    SET taken = FALSE, leaseowner = NULL, leaseexpiry = NULL, scheduledrun = current_date,
+        lastupdate = current_timestamp
+  WHERE
+    pkscanid = scanid
+    AND
+    leaseowner = worker
+    AND
+    finished = FALSE;
+
+  GET DIAGNOSTICS released = ROW_COUNT;
+RETURN released;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
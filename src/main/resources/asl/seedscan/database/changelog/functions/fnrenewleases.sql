@@ -0,0 +1,30 @@
+-- Function: fnrenewleases(character varying, integer, uuid[])
+
+-- DROP FUNCTION fnrenewleases(character varying, integer, uuid[]);
+
+CREATE OR REPLACE FUNCTION fnrenewleases(worker character varying, leaseseconds integer,
+  scanids uuid[])
+  RETURNS integer AS
+$BODY$
+DECLARE
+    renewed integer;
+BEGIN
+--Extend the leases of the scans the worker is still running.
+--Leases of scans it has abandoned are left to expire.
+  UPDATE tblscan
+    SET leaseexpiry = current_timestamp + leaseseconds * interval '1 second'
+  WHERE
+    pkscanid = ANY(scanids)
+    AND
+    leaseowner = worker
+    AND
+    finished = FALSE
+    AND
+    leaseexpiry IS NOT NULL;
+
+  GET DIAGNOSTICS renewed = ROW_COUNT;
+RETURN renewed;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
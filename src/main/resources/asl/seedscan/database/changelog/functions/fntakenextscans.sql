@@ -0,0 +1,50 @@
+-- Function: fntakenextscans(integer, character varying, integer)
+
+-- DROP FUNCTION fntakenextscans(integer, character varying, integer);
+
+CREATE OR REPLACE FUNCTION fntakenextscans(scancount integer, worker character varying,
+  leaseseconds integer)
+  RETURNS SETOF tblscan AS
+$BODY$
+BEGIN
+--Rows locked by other connections are skipped rather than waited on,
+--so concurrent callers never take the same scan or block each other.
+--Scans whose lease has expired were abandoned by their worker and may be taken again.
+RETURN QUERY
+  WITH claimed AS (
+    SELECT pkscanid
+      FROM tblscan
+      WHERE
+          finished = FALSE
+          AND
+          (
+          scheduledrun < current_date
+          OR
+          scheduledrun IS NULL
+          )
+          AND
+          (
+          taken = FALSE
+          OR
+          leaseexpiry < current_timestamp
+          )
+      ORDER BY
+          priority desc,
+          enddate desc,
+          startdate desc
+      LIMIT scancount
+      FOR UPDATE SKIP LOCKED
+  )
+  UPDATE tblscan scan
+    SET taken=true, lastupdate = current_timestamp, leaseowner = worker,
+        leaseexpiry = current_timestamp + leaseseconds * interval '1 second'
+    FROM claimed
+  WHERE
+    scan.pkscanid = claimed.pkscanid
+  RETURNING scan.*;
+
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100
+  ROWS 1000;
@@ -1,5 +1,8 @@
 package asl.seedscan;
 
+import asl.seedscan.metrics.MetricWrapper;
+import java.util.List;
+
 /**
  * Allows custom setup of Global state.
  *
@@ -19,4 +22,68 @@ public class GlobalMock extends Global {
     eventsDir = directory;
   }
 
+  public static void setHeapBudget(Long bytes) {
+    heapBudget = bytes;
+  }
+
+  public static void setPrefetchDays(Integer days) {
+    prefetchDays = days;
+  }
+
+  public static void setDayCacheSize(Long bytes) {
+    dayCacheSize = bytes;
+  }
+
+  public static void setParallelDays(boolean parallel) {
+    parallelDays = parallel;
+  }
+
+  public static void setReaderThreads(Integer threads) {
+    readerThreads = threads;
+  }
+
+  public static void setMappedReads(boolean mapped) {
+    mappedReads = mapped;
+  }
+
+  public static void setDecoderShards(Integer shards) {
+    decoderShards = shards;
+  }
+
+  public static void setSelectiveDecoding(boolean selective) {
+    selectiveDecoding = selective;
+  }
+
+  public static void setCompressedSamples(boolean compressed) {
+    compressedSamples = compressed;
+  }
+
+  public static void setDiskCacheDir(String directory) {
+    diskCacheDir = directory;
+  }
+
+  public static void setDiskCacheSize(Long bytes) {
+    diskCacheSize = bytes;
+  }
+
+  public static void setOffHeapSamples(boolean offHeap) {
+    offHeapSamples = offHeap;
+  }
+
+  public static void setOffHeapDir(String directory) {
+    offHeapDir = directory;
+  }
+
+  public static void setBlockPoolSize(Long bytes) {
+    blockPoolSize = bytes;
+  }
+
+  public static void setDecimatedRates(double[] rates) {
+    decimatedRates = rates;
+  }
+
+  public static void setMetrics(List<MetricWrapper> wrappers) {
+    metrics = wrappers;
+  }
+
 }
@@ -0,0 +1,25 @@
+package asl.seedscan.database;
+
+/**
+ * A worker run in its own JVM by {@link MetricDatabaseLeaseTest}, as a second scan server would be.
+ * Not run as a test.
+ * <p>
+ * java asl.seedscan.database.LeaseWorker uri username password count leaseSeconds
+ * <p>
+ * Takes up to count scans under a worker ID made as a scan server's is, prints the ID and then the
+ * ID of each scan taken, one per line, and halts without releasing its leases, as a killed server
+ * would.
+ */
+public class LeaseWorker { // NO_UCD (test only)
+
+  public static void main(String[] args) throws Exception {
+    MetricDatabase database = new MetricDatabase(args[0], args[1], args[2],
+        MetricDatabase.createWorkerID(), Integer.parseInt(args[4]));
+    System.out.println(database.getWorkerID());
+    for (DatabaseScan scan : database.takeNextScans(Integer.parseInt(args[3]))) {
+      System.out.println(scan.scanID);
+    }
+    System.out.flush();
+    Runtime.getRuntime().halt(0);
+  }
+}
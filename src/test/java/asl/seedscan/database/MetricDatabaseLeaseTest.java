@@ -0,0 +1,333 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.testutils.Dependent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs two workers against a real database, as two scan servers would. Most tests run both in this
+ * JVM, the others fork a {@link LeaseWorker} so the second holds its own connections and worker ID
+ * in its own process. Requires a local PostgreSQL database with the SeedScan schema, see
+ * {@link Dependent#assumeTestDatabase()}.
+ */
+public class MetricDatabaseLeaseTest {
+
+  /**
+   * Marks the scans inserted by this test so they can be told apart and removed.
+   */
+  private static final String TEST_METRIC = "MetricDatabaseLeaseTest";
+
+  private static final int LEASE_SECONDS = 2;
+
+  private String uri;
+  private String username;
+  private String password;
+
+  private MetricDatabase first;
+  private MetricDatabase second;
+
+  @Before
+  public void setUp() throws Exception {
+    Dependent.assumeTestDatabase();
+    uri = System.getenv("SEEDSCAN_TEST_DB");
+    username = System.getenv("SEEDSCAN_TEST_DB_USER");
+    password = System.getenv("SEEDSCAN_TEST_DB_PASSWORD");
+
+    deleteTestScans();
+    first = new MetricDatabase(uri, username, password, "lease-test-first", LEASE_SECONDS);
+    second = new MetricDatabase(uri, username, password, "lease-test-second", LEASE_SECONDS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (first != null && first.isConnected()) {
+      first.close();
+    }
+    if (second != null && second.isConnected()) {
+      second.close();
+    }
+    if (uri != null) {
+      deleteTestScans();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_TwoWorkers_NeverTakeTheSameScan() throws Exception {
+    insertTestScans(10);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(5));
+    Set<UUID> takenBySecond = testScanIDs(second.takeNextScans(10));
+
+    assertEquals(5, taken.size());
+    assertEquals(5, takenBySecond.size());
+    taken.addAll(takenBySecond);
+    assertEquals(10, taken.size());
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_HeartbeatStopped_LeaseExpiresAndIsTakenAgain() throws Exception {
+    insertTestScans(3);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(3));
+    assertEquals(3, taken.size());
+
+    first.stopHeartbeat();
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    assertEquals(taken, testScanIDs(second.takeNextScans(3)));
+    assertEquals(3, countOwnedBy(second.getWorkerID()));
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_HeartbeatRunning_LeaseKept() throws Exception {
+    insertTestScans(3);
+    assertEquals(3, testScanIDs(first.takeNextScans(3)).size());
+
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    assertTrue(testScanIDs(second.takeNextScans(3)).isEmpty());
+    assertEquals(3, countOwnedBy(first.getWorkerID()));
+  }
+
+  @Test(timeout = 20000)
+  public void close_UnfinishedScansReleased() throws Exception {
+    insertTestScans(3);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(3));
+    first.close();
+
+    assertEquals(taken, testScanIDs(second.takeNextScans(3)));
+  }
+
+  @Test(timeout = 20000)
+  public void finishScan_FinishedScanNotTakenAgain() throws Exception {
+    insertTestScans(1);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(1));
+    assertEquals(1, taken.size());
+    first.finishScan(taken.iterator().next());
+    first.stopHeartbeat();
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    assertTrue(testScanIDs(second.takeNextScans(1)).isEmpty());
+  }
+
+  @Test(timeout = 20000)
+  public void releaseScan_LeaseClearedAndNotTakenAgainToday() throws Exception {
+    insertTestScans(1);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(1));
+    assertEquals(1, taken.size());
+    first.releaseScan(taken.iterator().next());
+
+    assertEquals(0, countOwnedBy(first.getWorkerID()));
+    assertTrue(testScanIDs(second.takeNextScans(1)).isEmpty());
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_LeasedScanNotRunning_NotRenewedAndTakenAgain() throws Exception {
+    insertTestScans(1);
+    // Leased to the first worker, as a scan it dropped without finishing or releasing would be
+    try (Connection connection = DriverManager.getConnection(uri, username, password);
+        PreparedStatement statement = connection.prepareStatement(
+            "UPDATE tblscan SET taken = TRUE, leaseowner = ?,"
+                + " leaseexpiry = current_timestamp + interval '1 second' WHERE metricfilter = ?")) {
+      statement.setString(1, first.getWorkerID());
+      statement.setString(2, TEST_METRIC);
+      statement.executeUpdate();
+    }
+
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    assertEquals(1, testScanIDs(second.takeNextScans(1)).size());
+    assertEquals(0, countOwnedBy(first.getWorkerID()));
+  }
+
+  @Test(timeout = 60000)
+  public void takeNextScans_OtherProcess_NeverTakeTheSameScan() throws Exception {
+    insertTestScans(10);
+    // Leased for long enough that the scans are still held when this process takes its share
+    List<String> output = runLeaseWorker(5, 60);
+    String owner = output.get(0);
+    Set<UUID> takenByOther = otherScanIDs(output);
+
+    Set<UUID> taken = testScanIDs(first.takeNextScans(10));
+
+    assertEquals(5, takenByOther.size());
+    assertEquals(5, taken.size());
+    // The full process and host prefixed ID is stored
+    assertEquals(5, countOwnedBy(owner));
+    taken.addAll(takenByOther);
+    assertEquals(10, taken.size());
+  }
+
+  @Test(timeout = 60000)
+  public void takeNextScans_OtherProcessKilled_LeaseExpiresAndIsTakenAgain() throws Exception {
+    insertTestScans(3);
+    Set<UUID> takenByOther = otherScanIDs(runLeaseWorker(3, LEASE_SECONDS));
+    assertEquals(3, takenByOther.size());
+
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    assertEquals(takenByOther, testScanIDs(first.takeNextScans(3)));
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_SessionAheadInTimeZone_LiveLeaseKept() throws Exception {
+    insertTestScans(3);
+    assertEquals(3, testScanIDs(first.takeNextScans(3)).size());
+
+    // Fourteen hours ahead of UTC, a local time comparison would see every lease as expired
+    assertTrue(takeInTimeZone("Etc/GMT-14", 3).isEmpty());
+    assertEquals(3, countOwnedBy(first.getWorkerID()));
+  }
+
+  @Test(timeout = 20000)
+  public void takeNextScans_SessionBehindInTimeZone_ExpiredLeaseTaken() throws Exception {
+    insertTestScans(3);
+    Set<UUID> taken = testScanIDs(first.takeNextScans(3));
+    first.stopHeartbeat();
+    Thread.sleep(LEASE_SECONDS * 1000 + 1000);
+
+    // Twelve hours behind UTC, a local time comparison would see the leases as live for hours
+    assertEquals(taken, takeInTimeZone("Etc/GMT+12", 3));
+  }
+
+  /**
+   * Take scans on a connection whose session is in another time zone, as a worker on a host in
+   * that zone would.
+   *
+   * @return the IDs of the scans taken that this test inserted
+   */
+  private Set<UUID> takeInTimeZone(String timeZone, int count) throws Exception {
+    Set<UUID> ids = new HashSet<>();
+    try (Connection connection = DriverManager.getConnection(uri, username, password)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("SET TIME ZONE '" + timeZone + "'");
+      }
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT pkscanid, metricfilter FROM fntakenextscans(?, ?, ?)")) {
+        statement.setInt(1, count);
+        statement.setString(2, "lease-test-" + timeZone);
+        statement.setInt(3, LEASE_SECONDS);
+        try (ResultSet rs = statement.executeQuery()) {
+          while (rs.next()) {
+            if (TEST_METRIC.equals(rs.getString("metricfilter"))) {
+              ids.add((UUID) rs.getObject("pkscanid"));
+            }
+          }
+        }
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Run a {@link LeaseWorker} in a new JVM on this JVM's class path.
+   *
+   * @return its worker ID, then the ID of each scan it took
+   */
+  private List<String> runLeaseWorker(int count, int leaseSeconds) throws Exception {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+    Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+        LeaseWorker.class.getName(), uri, username, password, Integer.toString(count),
+        Integer.toString(leaseSeconds))
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    List<String> output;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      output = reader.lines().collect(Collectors.toList());
+    }
+    assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+    assertEquals(0, process.exitValue());
+    assertTrue(!output.isEmpty());
+    return output;
+  }
+
+  /**
+   * @return the IDs of the scans a {@link LeaseWorker} took that this test inserted
+   */
+  private Set<UUID> otherScanIDs(List<String> output) throws Exception {
+    Set<UUID> ids = new HashSet<>();
+    try (Connection connection = DriverManager.getConnection(uri, username, password);
+        PreparedStatement statement = connection.prepareStatement(
+            "SELECT count(*) FROM tblscan WHERE metricfilter = ? AND pkscanid = ?")) {
+      for (String line : output.subList(1, output.size())) {
+        UUID id = UUID.fromString(line);
+        statement.setString(1, TEST_METRIC);
+        statement.setObject(2, id);
+        try (ResultSet rs = statement.executeQuery()) {
+          rs.next();
+          if (rs.getInt(1) > 0) {
+            ids.add(id);
+          }
+        }
+      }
+    }
+    return ids;
+  }
+
+  private static Set<UUID> testScanIDs(List<DatabaseScan> scans) {
+    return scans.stream()
+        .filter(scan -> TEST_METRIC.equals(scan.metricName))
+        .map(scan -> scan.scanID)
+        .collect(Collectors.toCollection(HashSet::new));
+  }
+
+  /**
+   * Insert station scans with a priority high enough to be taken before any others.
+   */
+  private void insertTestScans(int count) throws Exception {
+    try (Connection connection = DriverManager.getConnection(uri, username, password);
+        PreparedStatement statement = connection.prepareStatement(
+            "INSERT INTO tblscan(networkfilter, stationfilter, metricfilter, startdate, enddate,"
+                + " priority) VALUES ('IU', 'ANMO', ?, ?, ?, ?)")) {
+      for (int i = 0; i < count; i++) {
+        statement.setString(1, TEST_METRIC);
+        statement.setObject(2, LocalDate.of(2018, 1, 1));
+        statement.setObject(3, LocalDate.of(2018, 1, 2));
+        statement.setInt(4, Integer.MAX_VALUE);
+        statement.executeUpdate();
+      }
+    }
+  }
+
+  private int countOwnedBy(String workerID) throws Exception {
+    try (Connection connection = DriverManager.getConnection(uri, username, password);
+        PreparedStatement statement = connection.prepareStatement(
+            "SELECT count(*) FROM tblscan WHERE metricfilter = ? AND leaseowner = ?")) {
+      statement.setString(1, TEST_METRIC);
+      statement.setString(2, workerID);
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private void deleteTestScans() throws Exception {
+    try (Connection connection = DriverManager.getConnection(uri, username, password);
+        PreparedStatement statement = connection
+            .prepareStatement("DELETE FROM tblscan WHERE metricfilter = ?")) {
+      statement.setString(1, TEST_METRIC);
+      statement.executeUpdate();
+    }
+  }
+}
@@ -28,6 +28,8 @@ public class MetricDatabaseMock extends MetricDatabase {
   private int errorsInserted = 0;
   private int messagesInserted = 0;
   private int numberOfInsertedChildScans = 0;
+  private int numberOfFinishScanCalls = 0;
+  private int numberOfReleasedScans = 0;
 
   public MetricDatabaseMock() {
     super(); //Call required because of extension.
@@ -73,15 +75,15 @@ public class MetricDatabaseMock extends MetricDatabase {
 
 
   @Override
-  public synchronized DatabaseScan takeNextScan() {
+  public synchronized List<DatabaseScan> takeNextScans(int count) {
     scanRequests++;
-    if (newScans.isEmpty()) {
-      return null;
+    List<DatabaseScan> scans = new LinkedList<>();
+    while (scans.size() < count && !newScans.isEmpty()) {
+      DatabaseScan scan = newScans.poll();
+      takenScans.put(scan.scanID, scan);
+      scans.add(scan);
     }
-    DatabaseScan scan = newScans.poll();
-
-    takenScans.put(scan.scanID, scan);
-    return scan;
+    return scans;
   }
 
   public void offerNewScan(DatabaseScan scan) {
@@ -108,19 +110,10 @@ public class MetricDatabaseMock extends MetricDatabase {
     messagesInserted++;
   }
 
-  public void insertChildScan(UUID parentID, String network, String station, String location,
-      String channel,
-      String metric, LocalDate startDate, LocalDate endDate, int priority, boolean deleteExisting) {
-    numberOfInsertedChildScans++;
-
-    childScans.add(new DatabaseScan(
-        null,
-        parentID,
-        metric,
-        network, station, location, channel,
-        startDate, endDate,
-        priority,
-        deleteExisting));
+  @Override
+  public synchronized void insertChildScans(DatabaseScan parent, List<DatabaseScan> children) {
+    numberOfInsertedChildScans += children.size();
+    childScans.addAll(children);
   }
 
   public synchronized int getNumberScanMessages() {
@@ -128,13 +121,28 @@ public class MetricDatabaseMock extends MetricDatabase {
   }
 
   @Override
-  public void finishScan(UUID pkScanID) {
+  public synchronized void finishScan(UUID pkScanID) {
+    numberOfFinishScanCalls++;
     DatabaseScan scan = takenScans.get(pkScanID);
     takenScans.remove(pkScanID);
     finishedScans.put(scan.scanID, scan);
 
   }
 
+  @Override
+  public synchronized void releaseScan(UUID pkScanID) {
+    numberOfReleasedScans++;
+    takenScans.remove(pkScanID);
+  }
+
+  public synchronized int getNumberOfReleasedScans() {
+    return numberOfReleasedScans;
+  }
+
+  public synchronized int getNumberOfFinishScanCalls() {
+    return numberOfFinishScanCalls;
+  }
+
   public int getNumberOfInsertedChildScans() {
     return numberOfInsertedChildScans;
   }
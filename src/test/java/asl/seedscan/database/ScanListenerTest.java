@@ -0,0 +1,102 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Uses an in process stand in for the Postgresql notification channel.
+ */
+public class ScanListenerTest {
+
+  private MockScanListener listener;
+
+  /**
+   * Delivers queued notifications instead of reading them from a connection. Queued exceptions are
+   * thrown to simulate a lost connection.
+   */
+  private static class MockScanListener extends ScanListener {
+
+    private final BlockingQueue<Object> notifications = new LinkedBlockingQueue<>();
+    private final AtomicInteger connects = new AtomicInteger();
+
+    MockScanListener(Runnable onNotify) {
+      super("jdbc:postgresql://localhost/test", "username", "password", onNotify);
+    }
+
+    void send(Object notification) {
+      notifications.add(notification);
+    }
+
+    @Override
+    Connection connect() {
+      connects.incrementAndGet();
+      return null;
+    }
+
+    @Override
+    boolean awaitNotification(int timeoutMillis) throws SQLException {
+      Object notification;
+      try {
+        notification = notifications.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return false;
+      }
+      if (notification instanceof SQLException) {
+        throw (SQLException) notification;
+      }
+      return notification != null;
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (listener != null) {
+      listener.stop();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void run_NotificationReceived_CallbackRun() throws Exception {
+    CountDownLatch latch = new CountDownLatch(2);
+    listener = new MockScanListener(latch::countDown);
+    listener.start();
+    listener.send(ScanListener.CHANNEL);
+    listener.send(ScanListener.CHANNEL);
+    latch.await();
+    assertEquals(1, listener.connects.get());
+  }
+
+  @Test(timeout = 20000)
+  public void run_ConnectionLost_Reconnects() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    listener = new MockScanListener(latch::countDown);
+    listener.setReconnectTime(10);
+    listener.send(new SQLException("Connection lost"));
+    listener.send(ScanListener.CHANNEL);
+    listener.start();
+    latch.await();
+    assertEquals(2, listener.connects.get());
+  }
+
+  @Test
+  public void stop_IsRunning() throws Exception {
+    listener = new MockScanListener(() -> {
+    });
+    assertFalse(listener.isRunning());
+    listener.start();
+    assertTrue(listener.isRunning());
+    listener.stop();
+    assertFalse(listener.isRunning());
+  }
+}
@@ -14,6 +14,7 @@ import asl.seedscan.database.MetricDatabaseMock;
 import asl.seedscan.database.MetricValueIdentifier;
 import asl.seedsplitter.DataSet;
 import asl.testutils.ResourceManager;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
@@ -21,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import javax.xml.bind.DatatypeConverter;
 import org.apache.commons.codec.binary.Hex;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import seed.Blockette320;
@@ -208,6 +210,43 @@ public class MetricDataTest {
     assertEquals("LHZ", dataSet.getChannel());
   }
 
+  @Test
+  public final void testGetWindowedData_SameAsSeries() throws Exception {
+    Channel channel = new Channel("00", "LHZ");
+    DataSet dataSet = data.getChannelData(channel).get(0);
+    long start = dataSet.getStartTime() + 1000 * dataSet.getInterval();
+    long end = start + 3600 * dataSet.getInterval();
+    int[] expected = dataSet.getSeries(start, end);
+
+    double[] window = data.getWindowedDataMicroSeconds(channel, start, end);
+
+    assertEquals(expected.length, window.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], window[i], 0.0);
+    }
+  }
+
+  @Test
+  public final void testGetPaddedDayData_AllocatesOnlyTheDay() throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled());
+    Channel channel = new Channel("00", "LHZ");
+    long thread = Thread.currentThread().getId();
+
+    data.getPaddedDayData(channel);
+    long before = threads.getThreadAllocatedBytes(thread);
+    double[] day = data.getPaddedDayData(channel);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // The samples are converted straight into the day, without an int[] or segment copies
+    assertTrue(day.length >= 86400);
+    assertTrue(allocated + " bytes allocated for " + day.length + " data points",
+        allocated < day.length * 8L + 16384);
+  }
+
   /*
    * TODO: Need a day with a calibration, but won't worry about until
    * Calibration metric is working.
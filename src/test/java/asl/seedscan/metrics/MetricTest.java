@@ -0,0 +1,75 @@
+package asl.seedscan.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MetricTest {
+
+  @Test
+  public void computeShared_SameKey_ComputedOnce() throws Exception {
+    ConcurrentHashMap<String, CompletableFuture<Integer>> map = new ConcurrentHashMap<>();
+    AtomicInteger computations = new AtomicInteger();
+
+    CompletableFuture<Integer> first = Metric.computeShared(map, "a",
+        computations::incrementAndGet);
+    CompletableFuture<Integer> second = Metric.computeShared(map, "a",
+        computations::incrementAndGet);
+
+    assertSame(first, second);
+    assertEquals(1, (int) second.join());
+    assertEquals(1, computations.get());
+  }
+
+  @Test(timeout = 20000)
+  public void computeShared_OtherKeyComputing_NotBlocked() throws Exception {
+    ConcurrentHashMap<String, CompletableFuture<Integer>> map = new ConcurrentHashMap<>();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<CompletableFuture<Integer>> slow = executor.submit(
+          () -> Metric.computeShared(map, "slow", () -> {
+            started.countDown();
+            finish.await();
+            return 1;
+          }));
+      started.await();
+
+      // Computed while the slow key is still running, which computeIfAbsent could block
+      for (int i = 0; i < 1000; i++) {
+        int value = i;
+        assertEquals(value, (int) Metric.computeShared(map, "key" + i, () -> value).join());
+      }
+      assertFalse(map.get("slow").isDone());
+
+      finish.countDown();
+      assertEquals(1, (int) slow.get().join());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void computeShared_Failed_RemovedAndComputedAgain() throws Exception {
+    ConcurrentHashMap<String, CompletableFuture<Integer>> map = new ConcurrentHashMap<>();
+
+    CompletableFuture<Integer> failed = Metric.computeShared(map, "a", () -> {
+      throw new MetricException("failed");
+    });
+
+    assertTrue(failed.isCompletedExceptionally());
+    assertFalse(map.containsKey("a"));
+    assertEquals(2, (int) Metric.computeShared(map, "a", () -> 2).join());
+  }
+}
@@ -1,11 +1,14 @@
 package asl.seedscan.metrics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import asl.metadata.Channel;
 import asl.metadata.Station;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -48,6 +51,16 @@ public class PressureMetricTest {
     TestUtils.testMetric(metric, expect);
   }
 
+  @Test
+  public void getDataChannels_PressureChannelsOnly() {
+    metric = new PressureMetric();
+    List<Channel> channels = metric.getDataChannels(data.getMetaData());
+    assertTrue(channels.contains(new Channel("30", "LDO")));
+    for (Channel channel : channels) {
+      assertTrue(channel.toString(), channel.getChannel().startsWith("LD"));
+    }
+  }
+
   @Test
   public final void testGetVersion() {
     metric = new PressureMetric();
@@ -1,15 +1,32 @@
 package asl.seedscan.scanner;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import asl.metadata.MetaGenerator;
 import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.GlobalMock;
 import asl.seedscan.database.MetricDatabaseMock;
+import asl.seedscan.metrics.AvailabilityMetric;
+import asl.seedscan.metrics.CoherencePBM;
+import asl.seedscan.metrics.GapCountMetric;
+import asl.seedscan.metrics.InfrasoundMetric;
 import asl.seedscan.metrics.MetricData;
+import asl.seedscan.metrics.MetricWrapper;
+import asl.seedscan.metrics.MinimumTimingMetric;
+import asl.seedscan.metrics.PressureMetric;
+import asl.seedscan.metrics.TimingQualityMetric;
+import asl.seedsplitter.ChannelFilter;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -36,6 +53,62 @@ public class DataLoaderTest {
     manager = null;
   }
 
+  private static StationMeta anmoMetadata() {
+    return ResourceManager.getMetadata("/metadata/rdseed/IU-ANMO-ascii.txt",
+        LocalDate.of(2018, 5, 1), new Station("IU", "ANMO"));
+  }
+
+  @Test
+  public void getChannelFilter_ChannelsOfEveryMetric() throws Exception {
+    StationMeta stationMeta = anmoMetadata();
+    List<MetricWrapper> metrics = Arrays.asList(new MetricWrapper(PressureMetric.class),
+        new MetricWrapper(InfrasoundMetric.class));
+
+    ChannelFilter filter = DataLoader.getChannelFilter(stationMeta, metrics);
+    int expected = new PressureMetric().getDataChannels(stationMeta).size()
+        + new InfrasoundMetric().getDataChannels(stationMeta).size();
+    assertEquals(expected, filter.size());
+  }
+
+  @Test
+  public void getChannelFilter_MetricReadsAnyChannel_Null() throws Exception {
+    List<MetricWrapper> metrics = Arrays.asList(new MetricWrapper(PressureMetric.class),
+        new MetricWrapper(CoherencePBM.class));
+    assertNull(DataLoader.getChannelFilter(anmoMetadata(), metrics));
+  }
+
+  @Test
+  public void getChannelFilter_Disabled_Null() throws Exception {
+    List<MetricWrapper> metrics = Arrays.asList(new MetricWrapper(PressureMetric.class));
+    GlobalMock.setSelectiveDecoding(false);
+    try {
+      assertNull(DataLoader.getChannelFilter(anmoMetadata(), metrics));
+    } finally {
+      GlobalMock.setSelectiveDecoding(true);
+    }
+  }
+
+  @Test
+  public void readsHeadersOnly_HeaderMetrics_True() throws Exception {
+    List<MetricWrapper> metrics = Arrays.asList(new MetricWrapper(AvailabilityMetric.class),
+        new MetricWrapper(GapCountMetric.class), new MetricWrapper(TimingQualityMetric.class),
+        new MetricWrapper(MinimumTimingMetric.class));
+    assertTrue(DataLoader.readsHeadersOnly(metrics));
+  }
+
+  @Test
+  public void readsHeadersOnly_MetricReadsSamples_False() throws Exception {
+    List<MetricWrapper> metrics = Arrays.asList(new MetricWrapper(AvailabilityMetric.class),
+        new MetricWrapper(PressureMetric.class));
+    assertFalse(DataLoader.readsHeadersOnly(metrics));
+  }
+
+  @Test
+  public void readsHeadersOnly_NoMetrics_False() throws Exception {
+    assertFalse(DataLoader.readsHeadersOnly(Collections.emptyList()));
+    assertFalse(DataLoader.readsHeadersOnly(null));
+  }
+
   @Test
   public void getMetricData_NullMetaData() throws Exception {
     MetricData data = DataLoader
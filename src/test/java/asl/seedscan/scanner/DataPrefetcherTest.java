@@ -0,0 +1,194 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+
+import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.metrics.MetricData;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataPrefetcherTest {
+
+  private static final Station STATION = new Station("IU", "ANMO");
+  private static final UUID SCAN = new UUID(100, 100);
+  private static final LocalDate DAY = LocalDate.of(2018, 1, 1);
+
+  private AtomicInteger loads;
+  private Map<LocalDate, String> loadingThreads;
+  private CountDownLatch release;
+  private DataPrefetcher prefetcher;
+
+  @Before
+  public void setUp() throws Exception {
+    loads = new AtomicInteger();
+    loadingThreads = new ConcurrentHashMap<>();
+    release = new CountDownLatch(0);
+    prefetcher = new DataPrefetcher((date, station) -> {
+      loads.incrementAndGet();
+      loadingThreads.put(date, Thread.currentThread().getName());
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        return null;
+      }
+      return new MetricData(null, (StationMeta) null);
+    }, 2, 2);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    prefetcher.shutdown();
+  }
+
+  @Test(timeout = 20000)
+  public void take_Prefetched_LoadedInBackgroundOnce() throws Exception {
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    MetricData data = prefetcher.take(SCAN, DAY, STATION);
+
+    assertEquals(1, loads.get());
+    assertNotEquals(Thread.currentThread().getName(), loadingThreads.get(DAY));
+    assertEquals(1, prefetcher.getHits());
+    assertEquals(0, prefetcher.getMisses());
+    assertEquals(0, prefetcher.getPendingCount());
+
+    //Taken data is handed off, taking again loads a new copy
+    assertNotSame(data, prefetcher.take(SCAN, DAY, STATION));
+    assertEquals(1, prefetcher.getMisses());
+  }
+
+  @Test(timeout = 20000)
+  public void take_NotPrefetched_LoadedOnCallingThread() throws Exception {
+    prefetcher.take(SCAN, DAY, STATION);
+    assertEquals(1, loads.get());
+    assertEquals(Thread.currentThread().getName(), loadingThreads.get(DAY));
+    assertEquals(1, prefetcher.getMisses());
+  }
+
+  @Test(timeout = 20000)
+  public void prefetch_SameDayTwice_LoadedOnce() throws Exception {
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    assertEquals(1, prefetcher.getPendingCount());
+    prefetcher.take(SCAN, DAY, STATION);
+    assertEquals(1, loads.get());
+  }
+
+  @Test(timeout = 20000)
+  public void prefetch_LimitReached_Dropped() throws Exception {
+    release = new CountDownLatch(1);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    prefetcher.prefetch(SCAN, DAY.plusDays(1), STATION);
+    prefetcher.prefetch(new UUID(100, 101), DAY, STATION);
+    assertEquals(2, prefetcher.getPendingCount());
+    release.countDown();
+
+    prefetcher.take(new UUID(100, 101), DAY, STATION);
+    assertEquals(1, prefetcher.getMisses());
+  }
+
+  @Test(timeout = 20000)
+  public void discard_PendingDaysDropped() throws Exception {
+    release = new CountDownLatch(1);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    prefetcher.prefetch(SCAN, DAY.plusDays(1), STATION);
+    prefetcher.discard(SCAN);
+    assertEquals(0, prefetcher.getPendingCount());
+    release.countDown();
+
+    prefetcher.take(SCAN, DAY, STATION);
+    assertEquals(0, prefetcher.getHits());
+    assertEquals(1, prefetcher.getMisses());
+  }
+
+  /**
+   * Reserves a fixed size for each day while there is room.
+   */
+  private static final class CountingReservations implements DataPrefetcher.Reservations {
+
+    private final AtomicLong reserved = new AtomicLong();
+    private final long room;
+
+    private CountingReservations(long room) {
+      this.room = room;
+    }
+
+    @Override
+    public long reserve(LocalDate date, Station station) {
+      if (reserved.get() + 10 > room) {
+        return -1;
+      }
+      reserved.addAndGet(10);
+      return 10;
+    }
+
+    @Override
+    public void release(long bytes) {
+      reserved.addAndGet(-bytes);
+    }
+  }
+
+  private DataPrefetcher createPrefetcher(DataPrefetcher.Reservations reservations) {
+    prefetcher.shutdown();
+    return new DataPrefetcher((date, station) -> {
+      loads.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        return null;
+      }
+      return new MetricData(null, (StationMeta) null);
+    }, reservations, 2, 2);
+  }
+
+  @Test(timeout = 20000)
+  public void take_Prefetched_ReservationReleased() throws Exception {
+    CountingReservations reservations = new CountingReservations(100);
+    prefetcher = createPrefetcher(reservations);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    assertEquals(10, reservations.reserved.get());
+
+    prefetcher.take(SCAN, DAY, STATION);
+    assertEquals(0, reservations.reserved.get());
+  }
+
+  @Test(timeout = 20000)
+  public void prefetch_NoRoom_NotPrefetched() throws Exception {
+    CountingReservations reservations = new CountingReservations(10);
+    prefetcher = createPrefetcher(reservations);
+    release = new CountDownLatch(1);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    prefetcher.prefetch(SCAN, DAY.plusDays(1), STATION);
+    assertEquals(1, prefetcher.getPendingCount());
+    assertEquals(1, prefetcher.getRefused());
+    release.countDown();
+
+    prefetcher.take(SCAN, DAY.plusDays(1), STATION);
+    assertEquals(1, prefetcher.getMisses());
+  }
+
+  @Test(timeout = 20000)
+  public void discard_ReservationReleasedOnceLoaded() throws Exception {
+    CountingReservations reservations = new CountingReservations(100);
+    prefetcher = createPrefetcher(reservations);
+    release = new CountDownLatch(1);
+    prefetcher.prefetch(SCAN, DAY, STATION);
+    prefetcher.discard(SCAN);
+    assertEquals(10, reservations.reserved.get());
+
+    release.countDown();
+    while (reservations.reserved.get() != 0) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Station;
+import asl.seedscan.scanner.DayCache.DecodedDay;
+import asl.seedscan.scanner.DayCache.Key;
+import asl.seedsplitter.ChannelFilter;
+import asl.seedsplitter.DataSet;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class DayCacheTest {
+
+  private static final Station STATION = new Station("IU", "ANMO");
+  private static final LocalDate DAY = LocalDate.of(2018, 1, 1);
+
+  /**
+   * A decoded day holding one channel with the given number of samples.
+   */
+  private static DecodedDay createDay(int samples) {
+    DataSet dataSet = new DataSet();
+    dataSet.extend(new int[samples], 0, samples);
+    ArrayList<DataSet> dataSets = new ArrayList<>();
+    dataSets.add(dataSet);
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    table.put("00-BHZ", dataSets);
+    return new DecodedDay(table, new Hashtable<>(), new Hashtable<>());
+  }
+
+  private static Key key(int day) {
+    return new Key(STATION, DAY.plusDays(day), new DayVariant(null, true), 0);
+  }
+
+  @Test
+  public void key_ChannelsOrDecodeDiffer_NotEqual() throws Exception {
+    ChannelFilter vertical = new ChannelFilter(Collections.singletonList("00-LHZ"));
+    Key key = new Key(STATION, DAY, new DayVariant(vertical, true), 0);
+
+    assertEquals(key, new Key(STATION, DAY,
+        new DayVariant(new ChannelFilter(Collections.singletonList("00-LHZ")), true), 0));
+    assertNotEquals(key, new Key(STATION, DAY,
+        new DayVariant(new ChannelFilter(Collections.singletonList("10-LHZ")), true), 0));
+    assertNotEquals(key, new Key(STATION, DAY, new DayVariant(vertical, false), 0));
+    assertNotEquals(key, new Key(STATION, DAY, new DayVariant(null, true), 0));
+    assertNotEquals(key, new Key(STATION, DAY, new DayVariant(vertical, true), 1));
+  }
+
+  @Test
+  public void acquire_SameDay_DecodedOnce() throws Exception {
+    DayCache cache = new DayCache(0);
+    AtomicInteger decodes = new AtomicInteger();
+    DecodedDay first = cache.acquire(key(0), () -> {
+      decodes.incrementAndGet();
+      return createDay(100);
+    });
+    DecodedDay second = cache.acquire(key(0), () -> {
+      decodes.incrementAndGet();
+      return createDay(100);
+    });
+
+    assertSame(first, second);
+    assertEquals(1, decodes.get());
+    assertEquals(0.5, cache.getHitRate(), 1E-9);
+    assertEquals(400, cache.getBytesHeld());
+  }
+
+  @Test(timeout = 20000)
+  public void acquire_Concurrently_OneThreadDecodes() throws Exception {
+    DayCache cache = new DayCache(0);
+    AtomicInteger decodes = new AtomicInteger();
+    CountDownLatch decoding = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<DecodedDay> first = executor.submit(() -> cache.acquire(key(0), () -> {
+        decodes.incrementAndGet();
+        decoding.countDown();
+        try {
+          finish.await();
+        } catch (InterruptedException e) {
+          return null;
+        }
+        return createDay(10);
+      }));
+      decoding.await();
+      Future<DecodedDay> second = executor.submit(() -> cache.acquire(key(0), () -> {
+        decodes.incrementAndGet();
+        return createDay(10);
+      }));
+      finish.countDown();
+
+      assertSame(first.get(), second.get());
+      assertEquals(1, decodes.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void release_OverSize_LeastRecentlyUsedEvicted() throws Exception {
+    DayCache cache = new DayCache(800);
+    DecodedDay first = cache.acquire(key(0), () -> createDay(100));
+    DecodedDay second = cache.acquire(key(1), () -> createDay(100));
+    DecodedDay third = cache.acquire(key(2), () -> createDay(100));
+    //Everything is referenced, so nothing can be evicted.
+    assertEquals(1200, cache.getBytesHeld());
+
+    cache.release(second);
+    cache.release(first);
+    cache.release(third);
+    assertEquals(800, cache.getBytesHeld());
+    assertEquals(1, cache.getEvictions());
+
+    //The second day was used least recently
+    AtomicInteger decodes = new AtomicInteger();
+    cache.acquire(key(0), () -> {
+      decodes.incrementAndGet();
+      return createDay(100);
+    });
+    assertEquals(0, decodes.get());
+    cache.acquire(key(1), () -> {
+      decodes.incrementAndGet();
+      return createDay(100);
+    });
+    assertEquals(1, decodes.get());
+  }
+
+  @Test
+  public void release_StillReferenced_NotEvicted() throws Exception {
+    DayCache cache = new DayCache(0);
+    DecodedDay first = cache.acquire(key(0), () -> createDay(100));
+    DecodedDay second = cache.acquire(key(0), () -> createDay(100));
+    cache.release(first);
+    assertEquals(1, cache.size());
+    cache.release(second);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytesHeld());
+  }
+
+  @Test
+  public void release_Evicted_OffHeapSamplesReleased() throws Exception {
+    DayCache cache = new DayCache(0);
+    DecodedDay day = cache.acquire(key(0), () -> createDay(100));
+    day.moveOffHeap(null);
+    DataSet dataSet = day.getTable().get("00-BHZ").get(0);
+    assertTrue(dataSet.isOffHeap());
+    assertEquals(100, dataSet.getSeries().length);
+
+    cache.release(day);
+
+    assertEquals(0, cache.size());
+    assertFalse(dataSet.isOffHeap());
+    assertEquals(100, dataSet.getLength());
+  }
+
+  @Test
+  public void acquire_DecodeFailed_NotCached() throws Exception {
+    DayCache cache = new DayCache(1000);
+    assertNull(cache.acquire(key(0), () -> null));
+    assertEquals(0, cache.size());
+    assertNotNull(cache.acquire(key(0), () -> createDay(1)));
+  }
+
+  @Test
+  public void fingerprint_FileModified_Changes() throws Exception {
+    File directory = Files.createTempDirectory("daycache").toFile();
+    File first = new File(directory, "00_BHZ.512.seed");
+    File second = new File(directory, "10_BHZ.512.seed");
+    try {
+      Files.write(first.toPath(), new byte[512]);
+      Files.write(second.toPath(), new byte[512]);
+      long fingerprint = DayCache.fingerprint(new File[]{first, second});
+      assertEquals(fingerprint, DayCache.fingerprint(new File[]{second, first}));
+
+      Files.write(second.toPath(), new byte[1024]);
+      assertNotEquals(fingerprint, DayCache.fingerprint(new File[]{first, second}));
+    } finally {
+      first.delete();
+      second.delete();
+      directory.delete();
+    }
+  }
+}
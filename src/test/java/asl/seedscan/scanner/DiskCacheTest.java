@@ -0,0 +1,338 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Station;
+import asl.seedscan.scanner.DayCache.DecodedDay;
+import asl.seedsplitter.ChannelFilter;
+import asl.seedsplitter.DataSet;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import seed.Blockette320;
+
+public class DiskCacheTest {
+
+  private static final Station STATION = new Station("IU", "ANMO");
+  private static final LocalDate DAY = LocalDate.of(2018, 1, 1);
+  private static final DayVariant VARIANT =
+      new DayVariant(new ChannelFilter(Arrays.asList("00-BHZ", "10-BHZ")), true);
+
+  private Path directory;
+  private File[] files;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("diskcache");
+    Path seed = Files.createDirectory(directory.resolve("seed"));
+    files = new File[]{seed.resolve("10_BHZ.512.seed").toFile(),
+        seed.resolve("00_BHZ.512.seed").toFile()};
+    for (File file : files) {
+      Files.write(file.toPath(), new byte[512]);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private static DataSet dataSet(String channel, long startTime, int[] samples) throws Exception {
+    DataSet dataSet = new DataSet();
+    dataSet.setNetwork("IU");
+    dataSet.setStation("ANMO");
+    dataSet.setLocation("00");
+    dataSet.setChannel(channel);
+    dataSet.setStartTime(startTime);
+    dataSet.setSampleRate(20.0);
+    dataSet.extend(samples, 0, samples.length);
+    return dataSet;
+  }
+
+  /**
+   * A day with two segments of random samples, a segment that was not decoded, quality and a
+   * calibration.
+   */
+  private static DecodedDay createDay(int samples) throws Exception {
+    Random random = new Random(samples);
+    int[] first = new int[samples];
+    for (int i = 0; i < samples; i++) {
+      first[i] = random.nextInt(2000) - 1000;
+    }
+    first[0] = Integer.MIN_VALUE;
+    first[1] = Integer.MAX_VALUE;
+    int[] second = new int[samples / 2];
+    for (int i = 0; i < second.length; i++) {
+      second[i] = random.nextInt();
+    }
+
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    ArrayList<DataSet> bhz = new ArrayList<>();
+    bhz.add(dataSet("BHZ", 1514764800000000L, first));
+    bhz.add(dataSet("BHZ", 1514768400000000L, second));
+    table.put("IU_ANMO 00-BHZ (20.0 Hz)", bhz);
+
+    DataSet undecoded = dataSet("LHZ", 1514764800000000L, new int[0]);
+    undecoded.setSampleRate(1.0);
+    undecoded.extendUndecoded(86400);
+    ArrayList<DataSet> lhz = new ArrayList<>();
+    lhz.add(undecoded);
+    table.put("IU_ANMO 00-LHZ (1.0 Hz)", lhz);
+
+    Hashtable<String, ArrayList<Integer>> qualityTable = new Hashtable<>();
+    ArrayList<Integer> qualities = new ArrayList<>();
+    qualities.add(100);
+    qualities.add(90);
+    qualityTable.put("IU_ANMO 00-BHZ (20.0 Hz)", qualities);
+
+    Hashtable<String, ArrayList<Blockette320>> calibrationTable = new Hashtable<>();
+    ArrayList<Blockette320> calibrations = new ArrayList<>();
+    calibrations.add(new Blockette320(blockette320()));
+    calibrationTable.put("IU_ANMO 00-BHZ (20.0 Hz)", calibrations);
+
+    return new DecodedDay(table, qualityTable, calibrationTable);
+  }
+
+  private static byte[] blockette320() {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.putShort((short) 320).putShort((short) 0);
+    buffer.putShort((short) 2018).putShort((short) 1);
+    buffer.put((byte) 2).put((byte) 3).put((byte) 4).put((byte) 0).putShort((short) 5);
+    buffer.put((byte) 0).put((byte) 0x10);
+    buffer.putInt(36000000).putFloat(1.5f);
+    buffer.put("BC0".getBytes()).put((byte) 0).putInt(7);
+    buffer.put("Resistive   ".getBytes()).put("3dB@10Hz    ".getBytes())
+        .put("White   ".getBytes());
+    return buffer.array();
+  }
+
+  private static void assertSameDay(DecodedDay expected, DecodedDay actual) {
+    assertEquals(expected.getTable().keySet(), actual.getTable().keySet());
+    for (String key : expected.getTable().keySet()) {
+      ArrayList<DataSet> expectedSets = expected.getTable().get(key);
+      ArrayList<DataSet> actualSets = actual.getTable().get(key);
+      assertEquals(expectedSets.size(), actualSets.size());
+      for (int i = 0; i < expectedSets.size(); i++) {
+        DataSet expectedSet = expectedSets.get(i);
+        DataSet actualSet = actualSets.get(i);
+        assertEquals(expectedSet.getNetwork(), actualSet.getNetwork());
+        assertEquals(expectedSet.getStation(), actualSet.getStation());
+        assertEquals(expectedSet.getLocation(), actualSet.getLocation());
+        assertEquals(expectedSet.getChannel(), actualSet.getChannel());
+        assertEquals(expectedSet.getStartTime(), actualSet.getStartTime());
+        assertEquals(expectedSet.getSampleRate(), actualSet.getSampleRate(), 0.0);
+        assertEquals(expectedSet.getLength(), actualSet.getLength());
+        assertEquals(expectedSet.isDecoded(), actualSet.isDecoded());
+        if (expectedSet.isDecoded()) {
+          assertArrayEquals(expectedSet.getSeries(), actualSet.getSeries());
+        }
+        assertEquals(expectedSet.getDigestBytes(), actualSet.getDigestBytes());
+      }
+    }
+    assertEquals(expected.getQualityTable(), actual.getQualityTable());
+    assertEquals(expected.getCalibrationTable().keySet(), actual.getCalibrationTable().keySet());
+    for (String key : expected.getCalibrationTable().keySet()) {
+      assertEquals(expected.getCalibrationTable().get(key).size(),
+          actual.getCalibrationTable().get(key).size());
+      for (int i = 0; i < expected.getCalibrationTable().get(key).size(); i++) {
+        Blockette320 blockette = actual.getCalibrationTable().get(key).get(i);
+        assertArrayEquals(expected.getCalibrationTable().get(key).get(i).getBytes(),
+            blockette.getBytes());
+        assertEquals("BC0", blockette.getCalInputChannel());
+      }
+    }
+  }
+
+  @Test
+  public void read_Written_SameDay() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    DecodedDay day = createDay(10000);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, day);
+
+    DecodedDay read = cache.read(STATION, DAY, VARIANT, files);
+
+    assertNotNull(read);
+    assertSameDay(day, read);
+    assertEquals(1, cache.getHits());
+    assertEquals(Files.size(cache.path(STATION, DAY, VARIANT)), cache.getBytesHeld());
+    // Mostly small differences, so well under 4 bytes a sample
+    assertTrue(cache.getBytesHeld() < 10000 * 2 + 5000 * 5 + 1000);
+  }
+
+  @Test
+  public void read_NotWritten_Null() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(100));
+
+    assertNull(cache.read(STATION, DAY.plusDays(1), VARIANT, files));
+    assertNull(cache.read(STATION, DAY, new DayVariant(null, true), files));
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void read_OtherVariantInSameFile_Null() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(100));
+    DayVariant headersOnly = new DayVariant(VARIANT.getFilter(), false);
+    DayVariant fewerChannels =
+        new DayVariant(new ChannelFilter(Collections.singletonList("00-BHZ")), true);
+
+    // As though their ids collided with the written variant's
+    for (DayVariant other : new DayVariant[]{headersOnly, fewerChannels}) {
+      Files.createDirectories(cache.path(STATION, DAY, other).getParent());
+      Files.copy(cache.path(STATION, DAY, VARIANT), cache.path(STATION, DAY, other));
+      assertNull(cache.read(STATION, DAY, other, files));
+    }
+    assertEquals(2, cache.getStale());
+    assertNotNull(cache.read(STATION, DAY, VARIANT, files));
+  }
+
+  @Test
+  public void read_FileChanged_Null() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(100));
+
+    Files.write(files[1].toPath(), new byte[1024]);
+    assertNull(cache.read(STATION, DAY, VARIANT, files));
+    assertEquals(1, cache.getStale());
+
+    File[] fewer = new File[]{files[0]};
+    assertNull(cache.read(STATION, DAY, VARIANT, fewer));
+    assertEquals(2, cache.getStale());
+  }
+
+  @Test
+  public void write_FilesChangedWhileDecoding_NotWritten() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    long fingerprint = DayCache.fingerprint(files);
+    Files.write(files[0].toPath(), new byte[1024]);
+
+    cache.write(STATION, DAY, VARIANT, fingerprint, files, createDay(100));
+
+    assertFalse(Files.exists(cache.path(STATION, DAY, VARIANT)));
+    assertEquals(0, cache.getBytesHeld());
+  }
+
+  @Test
+  public void read_Corrupt_NullAndDeleted() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(1000));
+    Path path = cache.path(STATION, DAY, VARIANT);
+    byte[] bytes = Files.readAllBytes(path);
+    bytes[bytes.length / 2] ^= 0x01;
+    Files.write(path, bytes);
+
+    assertNull(cache.read(STATION, DAY, VARIANT, files));
+    assertFalse(Files.exists(path));
+  }
+
+  @Test
+  public void read_Truncated_Null() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(1000));
+    Path path = cache.path(STATION, DAY, VARIANT);
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length / 3));
+
+    assertNull(cache.read(STATION, DAY, VARIANT, files));
+  }
+
+  @Test
+  public void write_OverSize_LeastRecentlyUsedDeleted() throws Exception {
+    DiskCache probe = new DiskCache(directory.resolve("probe"), 1 << 30);
+    probe.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(1000));
+    long size = probe.getBytesHeld();
+
+    DiskCache cache = new DiskCache(directory.resolve("cache"), size * 2);
+    long fingerprint = DayCache.fingerprint(files);
+    cache.write(STATION, DAY, VARIANT, fingerprint, files, createDay(1000));
+    cache.write(STATION, DAY.plusDays(1), VARIANT, fingerprint, files, createDay(1000));
+    // Reading the first day makes the second the least recently used
+    Files.setLastModifiedTime(cache.path(STATION, DAY.plusDays(1), VARIANT),
+        FileTime.fromMillis(System.currentTimeMillis() - 60000));
+    assertNotNull(cache.read(STATION, DAY, VARIANT, files));
+    cache.write(STATION, DAY.plusDays(2), VARIANT, fingerprint, files, createDay(1000));
+
+    assertEquals(1, cache.getEvictions());
+    assertEquals(size * 2, cache.getBytesHeld());
+    assertTrue(Files.exists(cache.path(STATION, DAY, VARIANT)));
+    assertFalse(Files.exists(cache.path(STATION, DAY.plusDays(1), VARIANT)));
+    assertTrue(Files.exists(cache.path(STATION, DAY.plusDays(2), VARIANT)));
+  }
+
+  @Test
+  public void constructor_ExistingCache_Sized() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(100));
+
+    DiskCache reopened = new DiskCache(directory.resolve("cache"), 1 << 30);
+
+    assertEquals(cache.getBytesHeld(), reopened.getBytesHeld());
+    assertNotNull(reopened.read(STATION, DAY, VARIANT, files));
+  }
+
+  @Test
+  public void verify_ContentsChanged_StaleDeleted() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    long fingerprint = DayCache.fingerprint(files);
+    cache.write(STATION, DAY, VARIANT, fingerprint, files, createDay(100));
+    cache.write(STATION, DAY.plusDays(1), VARIANT, fingerprint, files, createDay(100));
+    assertTrue(verify(false).isValid());
+
+    // Same size and modification time, so only the digest tells
+    long lastModified = files[0].lastModified();
+    byte[] changed = new byte[512];
+    changed[100] = 1;
+    Files.write(files[0].toPath(), changed);
+    assertTrue(files[0].setLastModified(lastModified));
+    assertNotNull(cache.read(STATION, DAY, VARIANT, files));
+
+    DiskCacheVerifier.Result result = verify(true);
+    assertEquals(0, result.valid);
+    assertEquals(2, result.stale);
+    assertNull(cache.read(STATION, DAY, VARIANT, files));
+  }
+
+  @Test
+  public void verify_Corrupt_Reported() throws Exception {
+    DiskCache cache = new DiskCache(directory.resolve("cache"), 1 << 30);
+    cache.write(STATION, DAY, VARIANT, DayCache.fingerprint(files), files, createDay(100));
+    Path path = cache.path(STATION, DAY, VARIANT);
+    byte[] bytes = Files.readAllBytes(path);
+    bytes[bytes.length - 20] ^= 0x40;
+    Files.write(path, bytes);
+
+    DiskCacheVerifier.Result result = verify(false);
+
+    assertEquals(1, result.corrupt);
+    assertTrue(Files.exists(path));
+  }
+
+  private DiskCacheVerifier.Result verify(boolean delete) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    return DiskCacheVerifier.verify(directory.resolve("cache"), delete, new PrintStream(out));
+  }
+}
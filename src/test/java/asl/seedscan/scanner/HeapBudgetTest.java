@@ -0,0 +1,137 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.scanner.scanworker.ScanWorker;
+import java.util.List;
+import org.junit.Test;
+
+public class HeapBudgetTest {
+
+  /**
+   * Worker with a fixed priority that does nothing.
+   */
+  private static ScanWorker createWorker(long priority) {
+    return new ScanWorker(null) {
+      @Override
+      protected Integer getBasePriority() {
+        return 45;
+      }
+
+      @Override
+      protected Long getFinePriority() {
+        return priority;
+      }
+
+      @Override
+      public void run() {
+      }
+    };
+  }
+
+  @Test
+  public void admit_WithinBudget_Admitted() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    assertTrue(budget.admit(createWorker(1), 40));
+    assertTrue(budget.admit(createWorker(2), 60));
+    assertEquals(100, budget.getAdmittedBytes());
+    assertEquals(0, budget.getRejections());
+  }
+
+  @Test
+  public void admit_OverBudget_Deferred() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    ScanWorker deferred = createWorker(2);
+    assertTrue(budget.admit(createWorker(1), 60));
+    assertFalse(budget.admit(deferred, 60));
+    assertEquals(60, budget.getAdmittedBytes());
+    assertEquals(1, budget.getQueueDepth());
+    assertEquals(1, budget.getRejections());
+
+    //Trying again while still deferred is not another rejection
+    assertFalse(budget.admit(deferred, 60));
+    assertEquals(1, budget.getRejections());
+  }
+
+  @Test
+  public void admit_LargerThanBudget_AdmittedWhenAlone() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    ScanWorker large = createWorker(1);
+    assertTrue(budget.admit(large, 500));
+    assertFalse(budget.admit(createWorker(2), 1));
+  }
+
+  @Test
+  public void admit_HigherPriorityDeferred_NotPassed() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    assertTrue(budget.admit(createWorker(1), 60));
+    assertFalse(budget.admit(createWorker(2), 60));
+    //Would fit, but the deferred worker should go first
+    assertFalse(budget.admit(createWorker(3), 10));
+  }
+
+  @Test
+  public void release_DeferredWorkersReturnedInPriorityOrder() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    ScanWorker first = createWorker(1);
+    ScanWorker later = createWorker(5);
+    ScanWorker earlier = createWorker(3);
+    assertTrue(budget.admit(first, 100));
+    assertFalse(budget.admit(later, 50));
+    assertFalse(budget.admit(earlier, 50));
+
+    List<ScanWorker> readmitted = budget.release(first);
+    assertEquals(2, readmitted.size());
+    assertEquals(earlier, readmitted.get(0));
+    assertEquals(later, readmitted.get(1));
+    assertEquals(100, budget.getAdmittedBytes());
+    assertEquals(0, budget.getQueueDepth());
+
+    //Readmitted workers are already admitted when they run again
+    assertTrue(budget.admit(earlier, 50));
+    assertEquals(100, budget.getAdmittedBytes());
+  }
+
+  @Test
+  public void release_NotAdmitted_Ignored() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    assertTrue(budget.admit(createWorker(1), 60));
+    assertTrue(budget.release(createWorker(2)).isEmpty());
+    assertEquals(60, budget.getAdmittedBytes());
+  }
+
+  @Test
+  public void reserve_OverBudget_Refused() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    assertTrue(budget.admit(createWorker(1), 60));
+    assertTrue(budget.reserve(40));
+    assertFalse(budget.reserve(1));
+    assertEquals(100, budget.getAdmittedBytes());
+  }
+
+  @Test
+  public void reserve_WorkerDeferred_Refused() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    assertTrue(budget.admit(createWorker(1), 60));
+    assertFalse(budget.admit(createWorker(2), 60));
+
+    //Memory a deferred worker waits for is not taken by data loaded ahead
+    assertFalse(budget.reserve(10));
+  }
+
+  @Test
+  public void unreserve_DeferredWorkerFits_Readmitted() throws Exception {
+    HeapBudget budget = new HeapBudget(100);
+    ScanWorker deferred = createWorker(2);
+    assertTrue(budget.admit(createWorker(1), 50));
+    assertTrue(budget.reserve(50));
+    assertFalse(budget.admit(deferred, 50));
+
+    List<ScanWorker> readmitted = budget.unreserve(50);
+    assertEquals(1, readmitted.size());
+    assertEquals(deferred, readmitted.get(0));
+    assertEquals(100, budget.getAdmittedBytes());
+  }
+}
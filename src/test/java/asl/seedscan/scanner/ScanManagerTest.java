@@ -73,6 +73,21 @@ public class ScanManagerTest {
         count < checkAgainst);
   }
 
+  @Test(timeout = 20000)
+  public void notifyScansAvailable_QueriesDatabaseBeforeNextPoll() throws Exception {
+    Runnable scanner = () -> manager.scan();
+    manager.setQueryTime(600000);
+    new Thread(scanner).start();
+    //Sleep first to allow default starts to clear up.
+    Thread.sleep(500);
+    int count = database.getNumberOfScanRequests();
+    manager.notifyScansAvailable();
+    Thread.sleep(500);
+    int checkAgainst = database.getNumberOfScanRequests();
+    assertTrue("Old value for scans was " + count + " and new value was " + checkAgainst,
+        count < checkAgainst);
+  }
+
   /**
    * @throws Exception if a timeout occurs, meaning the task did not run.
    */
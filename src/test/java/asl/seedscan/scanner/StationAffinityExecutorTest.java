@@ -0,0 +1,179 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.scanner.scanworker.ScanWorker;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class StationAffinityExecutorTest {
+
+  private StationAffinityExecutor executor;
+
+  @After
+  public void tearDown() throws Exception {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Worker with a fixed priority and affinity that runs the given action.
+   */
+  private static ScanWorker createWorker(int basePriority, long finePriority, Object affinity,
+      Runnable action) {
+    return new ScanWorker(null) {
+      @Override
+      protected Integer getBasePriority() {
+        return basePriority;
+      }
+
+      @Override
+      protected Long getFinePriority() {
+        return finePriority;
+      }
+
+      @Override
+      public Object getAffinity() {
+        return affinity;
+      }
+
+      @Override
+      public void run() {
+        action.run();
+      }
+    };
+  }
+
+  @Test(timeout = 20000)
+  public void execute_SameAffinity_RunsOnSameThread() throws Exception {
+    executor = new StationAffinityExecutor("test", 4);
+    Set<String> threadNames = ConcurrentHashMap.newKeySet();
+    for (int day = 0; day < 20; day++) {
+      CountDownLatch ran = new CountDownLatch(1);
+      executor.execute(createWorker(45, day, "IU_ANMO", () -> {
+        threadNames.add(Thread.currentThread().getName());
+        ran.countDown();
+      }));
+      ran.await();
+      //A busy thread's workers may be stolen, so wait for it to go idle.
+      while (executor.getBusyCount() > 0) {
+        Thread.sleep(1);
+      }
+    }
+    assertEquals(1, threadNames.size());
+    assertEquals(20, executor.getLocalRuns());
+    assertEquals(0, executor.getSteals());
+  }
+
+  @Test(timeout = 20000)
+  public void execute_HomeThreadBusy_IdleThreadSteals() throws Exception {
+    executor = new StationAffinityExecutor("test", 2);
+    CountDownLatch blocking = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    executor.execute(createWorker(45, 0, "IU_ANMO", () -> {
+      blocking.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+    blocking.await();
+
+    //Queued behind the blocked worker on the same thread, the other thread must take it.
+    CountDownLatch ran = new CountDownLatch(1);
+    executor.execute(createWorker(45, 1, "IU_ANMO", ran::countDown));
+    ran.await();
+    unblock.countDown();
+    assertEquals(1, executor.getSteals());
+  }
+
+  @Test(timeout = 20000)
+  public void execute_MoreUrgentWorkerElsewhere_RunsFirst() throws Exception {
+    executor = new StationAffinityExecutor("test", 1);
+    List<String> order = new CopyOnWriteArrayList<>();
+    CountDownLatch blocking = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(4);
+    executor.execute(createWorker(45, 0, null, () -> {
+      blocking.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+    blocking.await();
+
+    //With one thread every queue is drained in the same order a single priority queue would be.
+    executor.execute(createWorker(Integer.MAX_VALUE, Long.MAX_VALUE, null, () -> {
+      order.add("retrieve");
+      done.countDown();
+    }));
+    executor.execute(createWorker(45, 2, "IU_ANMO", () -> {
+      order.add("station day 2");
+      done.countDown();
+    }));
+    executor.execute(createWorker(45, 1, "IU_KIP", () -> {
+      order.add("station day 1");
+      done.countDown();
+    }));
+    executor.execute(createWorker(35, 2, "IU_ANMO", () -> {
+      order.add("metric");
+      done.countDown();
+    }));
+    assertEquals(4, executor.getQueueDepth());
+    unblock.countDown();
+    done.await();
+
+    assertEquals("metric", order.get(0));
+    assertEquals("station day 1", order.get(1));
+    assertEquals("station day 2", order.get(2));
+    assertEquals("retrieve", order.get(3));
+    assertEquals(0, executor.getQueueDepth());
+  }
+
+  @Test(timeout = 20000)
+  public void execute_WorkerThrows_ThreadKeepsRunning() throws Exception {
+    executor = new StationAffinityExecutor("test", 1);
+    executor.execute(createWorker(45, 0, null, () -> {
+      throw new IllegalStateException("Expected by test");
+    }));
+    CountDownLatch ran = new CountDownLatch(1);
+    executor.execute(createWorker(45, 1, null, ran::countDown));
+    ran.await();
+  }
+
+  @Test(timeout = 20000)
+  public void execute_WorkerThrowsError_SameAffinityKeepsRunning() throws Exception {
+    executor = new StationAffinityExecutor("test", 2);
+    executor.execute(createWorker(45, 0, "IU_ANMO", () -> {
+      throw new StackOverflowError("Expected by test");
+    }));
+    CountDownLatch ran = new CountDownLatch(1);
+    executor.execute(createWorker(45, 1, "IU_ANMO", ran::countDown));
+    ran.await();
+    while (executor.getBusyCount() > 0) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, executor.getBusyCount());
+  }
+
+  @Test(timeout = 20000)
+  public void shutdownNow_ThreadsEnd() throws Exception {
+    executor = new StationAffinityExecutor("test", 3);
+    executor.setThreadCount(4);
+    assertEquals(4, executor.getThreadCount());
+    executor.shutdownNow();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+}
@@ -3,6 +3,7 @@ package asl.seedscan.scanner.scanworker;
 import static org.junit.Assert.assertEquals;
 
 import asl.metadata.MetaGenerator;
+import asl.seedscan.GlobalMock;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.database.MetricDatabaseMock;
 import asl.seedscan.scanner.ScanManagerMock;
@@ -64,6 +65,27 @@ public class RetrieveScanTest {
     assertEquals(0, database.getNumberErrors());
   }
 
+  @Test
+  public void parseScan_StationScan_ParallelDays() throws Exception {
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        null,
+        null,
+        "IC", "XAN", null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 30),
+        1, false);
+
+    GlobalMock.setParallelDays(true);
+    try {
+      scan.parseScan(dbScan);
+    } finally {
+      GlobalMock.setParallelDays(false);
+    }
+    //One task for every day
+    assertEquals(30, manager.getNumberTasksAdded());
+    assertEquals(0, database.getNumberOfInsertedChildScans());
+  }
+
   @Test
   public void parseScan_NoNetwork_NoStation() throws Exception {
     DatabaseScan dbScan = new DatabaseScan(
@@ -217,6 +239,68 @@ public class RetrieveScanTest {
     assertEquals(0, database.getNumberErrors());
   }
 
+  @Test
+  public void run_TakesMultipleScansInOneRequest() throws Exception {
+    database.offerNewScan(new DatabaseScan(
+        new UUID(100, 100),
+        null,
+        null,
+        "IC", "XAN", null, null,
+        LocalDate.of(2013, 1, 15), LocalDate.of(2013, 1, 20),
+        1, false));
+    database.offerNewScan(new DatabaseScan(
+        new UUID(100, 101),
+        null,
+        null,
+        "CU", "TGUH", null, null,
+        LocalDate.of(2013, 1, 15), LocalDate.of(2013, 1, 20),
+        1, false));
+
+    scan.run();
+    assertEquals(1, database.getNumberOfScanRequests());
+    //Two station scans and the next retriever
+    assertEquals(3, manager.getNumberTasksAdded());
+    assertEquals(0, database.getNumberErrors());
+  }
+
+  @Test
+  public void run_ClaimsOneScanPerIdleThread() throws Exception {
+    int threads = manager.getThreadCount();
+    for (int i = 0; i < threads + 5; i++) {
+      database.offerNewScan(new DatabaseScan(
+          new UUID(100, i),
+          null,
+          null,
+          "IC", "XAN", null, null,
+          LocalDate.of(2013, 1, 15), LocalDate.of(2013, 1, 20),
+          1, false));
+    }
+
+    scan.run();
+    //Every thread is idle, and this one once the retriever returns, then the next retriever
+    assertEquals(threads + 2, manager.getNumberTasksAdded());
+  }
+
+  @Test
+  public void run_AdmissionsDeferred_DoNotAddRetrieveScanToQueue() throws Exception {
+    database.offerNewScan(new DatabaseScan(
+        new UUID(100, 100),
+        null,
+        null,
+        "IC", "XAN", null, null,
+        LocalDate.of(2013, 1, 15), LocalDate.of(2013, 1, 20),
+        1, false));
+    // The second worker does not fit beside the first
+    long budget = manager.getHeapBudget().getBudgetBytes();
+    manager.getHeapBudget().admit(new RetrieveScan(manager), budget);
+    manager.getHeapBudget().admit(new RetrieveScan(manager), budget);
+
+    scan.run();
+    //The station scan alone
+    assertEquals(1, manager.getNumberTasksAdded());
+    assertEquals(0, database.getNumberErrors());
+  }
+
   @Test
   public void run_NullScanFromDatabase_DoNotAddRetrieveScanToQueue() throws Exception {
     //Database has no addedTasks, so it returns null
@@ -1,7 +1,9 @@
 package asl.seedscan.scanner.scanworker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import asl.metadata.Channel;
@@ -9,12 +11,19 @@ import asl.metadata.MetaGenerator;
 import asl.metadata.Station;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.database.MetricDatabaseMock;
+import asl.seedscan.metrics.Metric;
 import asl.seedscan.scanner.ScanManagerMock;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -50,13 +59,124 @@ public class StationScanTest {
     manager.halt();
   }
 
-  @Ignore
   @Test
   public void run_AreAllMetricsAttempted() throws Exception {
-    /**
-     * This test needs to be written when splitting the metrics into their own tasks.
-     */
+    StationScan scan = createLoadedScan();
+    List<TestMetric> metrics = Arrays.asList(
+        new TestMetric("AvailabilityMetric"),
+        new TestMetric("GapCountMetric"),
+        new TestMetric("TimingQualityMetric"));
+
+    scan.runMetrics(new ArrayList<>(metrics));
+    assertEquals("Metric tasks added: ", 3, manager.getNumberTasksAdded());
+
+    // Run the metric tasks, the last to finish should add the next day
+    for (int i = 0; i < 3; i++) {
+      manager.getWorkQueue().poll().run();
+    }
+    for (TestMetric metric : metrics) {
+      assertTrue(metric.getName() + " was not processed", metric.processed);
+    }
+    assertEquals("Tasks added including next day: ", 4, manager.getNumberTasksAdded());
+    assertTrue(manager.getWorkQueue().poll() instanceof StationScan);
+  }
+
+  @Test
+  public void runMetrics_DependentMetricWaitsForDependency() throws Exception {
+    StationScan scan = createLoadedScan();
+    TestMetric nlnm = new TestMetric("NLNMDeviationMetric:4-8");
+    TestMetric dead = new TestMetric("DeadChannelMetric:4-8", "NLNMDeviationMetric:4-8");
+
+    scan.runMetrics(new ArrayList<>(Arrays.asList(dead, nlnm)));
+
+    //Only the dependency can start
+    assertEquals(1, manager.getNumberTasksAdded());
+    MetricScan first = (MetricScan) manager.getWorkQueue().poll();
+    assertEquals(nlnm, first.metric);
+    first.run();
+
+    assertEquals(2, manager.getNumberTasksAdded());
+    MetricScan second = (MetricScan) manager.getWorkQueue().poll();
+    assertEquals(dead, second.metric);
+    assertTrue(nlnm.processed);
+    assertFalse(dead.processed);
+    second.run();
+
+    assertTrue(dead.processed);
+    assertTrue(manager.getWorkQueue().poll() instanceof StationScan);
+  }
+
+  @Test
+  public void runMetrics_MetricsShareCrossPowerMap() throws Exception {
+    StationScan scan = createLoadedScan();
+    TestMetric a = new TestMetric("A");
+    TestMetric b = new TestMetric("B");
+
+    scan.runMetrics(new ArrayList<>(Arrays.asList(a, b)));
+
+    assertNotNull(a.getCrossPowerMap());
+    assertSame(a.getCrossPowerMap(), b.getCrossPowerMap());
+  }
+
+  /**
+   * StationScan for a day with metadata available, ready for runMetrics.
+   */
+  private StationScan createLoadedScan() {
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "RSSD", null, null,
+        LocalDate.of(2019, 1, 20), LocalDate.of(2019, 1, 21),
+        1, false);
+    StationScan scan = new StationScan(manager, dbScan, LocalDate.of(2019, 1, 20), null);
+    scan.loadScanData();
+    return scan;
+  }
 
+  /**
+   * Metric that only records that it was processed.
+   */
+  private static class TestMetric extends Metric {
+
+    private final String name;
+    private final Set<String> dependencies;
+    private volatile boolean processed = false;
+
+    TestMetric(String name, String... dependencies) {
+      this.name = name;
+      this.dependencies = new HashSet<>(Arrays.asList(dependencies));
+    }
+
+    @Override
+    public long getVersion() {
+      return 1;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void process() {
+      processed = true;
+    }
+
+    @Override
+    public String getSimpleDescription() {
+      return name;
+    }
+
+    @Override
+    public String getLongDescription() {
+      return name;
+    }
+
+    @Override
+    public Set<String> getDependencies() {
+      return dependencies;
+    }
   }
 
   @Test(timeout = 20000)
@@ -123,6 +243,30 @@ public class StationScanTest {
     assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
   }
 
+  @Test(timeout = 20000)
+  public void run_ParallelDays_ScanFinishedAfterLastDay() throws Exception {
+    //Null metadata
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "KIP", null, null,
+        LocalDate.of(2010, 11, 15), LocalDate.of(2010, 11, 16),
+        1, false);
+    AtomicInteger unfinishedDays = new AtomicInteger(2);
+    StationScan second = StationScan
+        .parallelDay(manager, dbScan, LocalDate.of(2010, 11, 16), unfinishedDays);
+    StationScan first = StationScan
+        .parallelDay(manager, dbScan, LocalDate.of(2010, 11, 15), unfinishedDays);
+
+    //Days may finish in any order and never add the following day
+    second.run();
+    assertEquals(0, database.getNumberOfFinishScanCalls());
+    first.run();
+    assertEquals(1, database.getNumberOfFinishScanCalls());
+    assertEquals("Number of station Scans added: ", 0, manager.getNumberTasksAdded());
+  }
+
   @Test(timeout = 20000)
   public void run_DoesItStopWhenDaysFinish() throws Exception {
 //Null metadata
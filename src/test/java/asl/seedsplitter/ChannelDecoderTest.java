@@ -0,0 +1,521 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.GlobalMock;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelDecoderTest {
+
+  private static final String KEY = "XX_TEST 00-LHZ (1.0 Hz)";
+
+  /**
+   * Microseconds between samples at 1 Hz.
+   */
+  private static final long INTERVAL = 1000000L;
+
+  /**
+   * Samples in each record, the most a 512 byte Steim1 record of 32 bit differences holds is 103.
+   */
+  private static final int SAMPLES = 100;
+
+  private static final long DAY_START = LocalDateTime.of(2015, 7, 25, 0, 0)
+      .toEpochSecond(ZoneOffset.UTC) * 1000000L;
+
+  @Before
+  public void setUp() {
+    GlobalMock.setQualityFlags("All");
+  }
+
+  @Test
+  public void finish_ContiguousRecords_OneDataSet() {
+    List<TestRecord> records = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      records.add(record(i, (long) i * SAMPLES, SAMPLES));
+    }
+
+    ArrayList<DataSet> dataSets = decode(records).get(KEY);
+
+    assertEquals(1, dataSets.size());
+    assertEquals(DAY_START, dataSets.get(0).getStartTime());
+    assertEquals(50 * SAMPLES, dataSets.get(0).getLength());
+    assertArrayEquals(signal(0, 50 * SAMPLES), dataSets.get(0).getSeries());
+  }
+
+  @Test
+  public void finish_Gap_TwoDataSets() {
+    List<TestRecord> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(record(i, (long) i * SAMPLES + (i < 5 ? 0 : 1000), SAMPLES));
+    }
+
+    ArrayList<DataSet> dataSets = decode(records).get(KEY);
+
+    assertEquals(2, dataSets.size());
+    assertEquals(5 * SAMPLES, dataSets.get(0).getLength());
+    assertEquals(DAY_START + (5 * SAMPLES + 1000) * INTERVAL, dataSets.get(1).getStartTime());
+  }
+
+  @Test
+  public void finish_ReversedRecords_SameAsMergeInto() {
+    List<TestRecord> records = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      records.add(record(i, (long) i * SAMPLES, SAMPLES));
+    }
+    Collections.reverse(records);
+
+    // Merging DataSets that meet exactly drops the first sample of the later one, as it always
+    // has. The run then ends an interval before each following record, which is appended whole.
+    assertEquals(50 * SAMPLES - 1, decode(records).get(KEY).get(0).getLength());
+    assertSame(legacy(records), decode(records));
+  }
+
+  @Test
+  public void finish_RecordsReadTwice_SameAsOnce() {
+    List<TestRecord> records = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      records.add(record(i, (long) i * SAMPLES, SAMPLES));
+    }
+    Hashtable<String, ArrayList<DataSet>> once = decode(records);
+    records.addAll(new ArrayList<>(records));
+
+    assertSame(once, decode(records));
+    assertSame(legacy(records), decode(records));
+  }
+
+  @Test
+  public void finish_ShuffledOverlapsGapsAndJitter_SameAsMergeInto() {
+    Random random = new Random(18);
+    for (int trial = 0; trial < 200; trial++) {
+      List<TestRecord> records = new ArrayList<>();
+      long position = random.nextInt(1000);
+      for (int i = 0; i < 40; i++) {
+        int samples = 1 + random.nextInt(SAMPLES);
+        // Mostly contiguous, with overlaps, gaps and timing jitter to the tenth millisecond
+        long jitter = random.nextInt(4) == 0 ? random.nextInt(30000) * 100L : 0;
+        records.add(record(i, position, samples, jitter));
+        switch (random.nextInt(8)) {
+          case 0:
+            position += samples - random.nextInt(samples);
+            break;
+          case 1:
+            position += samples + 1 + random.nextInt(5);
+            break;
+          default:
+            position += samples;
+        }
+      }
+      // Some records read twice, as from overlapping files
+      for (int i = 0; i < 5; i++) {
+        records.add(records.get(random.nextInt(records.size())));
+      }
+      // Some records that do not decode
+      records.add(random.nextInt(records.size()), undecodable(99, random.nextInt(4000)));
+      records.add(random.nextInt(records.size()), corrupt(98, random.nextInt(4000)));
+      // Runs of records out of order
+      for (int i = 0; i < 3; i++) {
+        int from = random.nextInt(records.size());
+        int to = Math.min(records.size(), from + random.nextInt(10));
+        Collections.shuffle(records.subList(from, to), random);
+      }
+
+      assertSame(legacy(records), decode(records));
+    }
+  }
+
+  @Test
+  public void finish_UndecodableRecords_NoTimingQuality() {
+    List<TestRecord> records = new ArrayList<>();
+    records.add(undecodable(0, 0));
+    records.add(corrupt(1, SAMPLES));
+
+    ChannelDecoder decoder = new ChannelDecoder();
+    for (TestRecord record : records) {
+      decoder.decode(record.block());
+    }
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    decoder.finish(table);
+
+    assertEquals(0, table.get(KEY).get(0).getLength());
+    assertNull(decoder.getQualityTable().get(KEY));
+  }
+
+  @Test
+  public void finish_HeadersOnly_SameExtentWithoutSamples() {
+    Random random = new Random(19);
+    List<TestRecord> records = new ArrayList<>();
+    long position = 0;
+    for (int i = 0; i < 200; i++) {
+      int samples = 1 + random.nextInt(SAMPLES);
+      records.add(record(i, position, samples));
+      position += random.nextInt(10) == 0 ? samples / 2 : samples + random.nextInt(3);
+    }
+    records.add(undecodable(200, 500));
+    Collections.shuffle(records.subList(0, 50), random);
+
+    ArrayList<DataSet> decoded = decode(records).get(KEY);
+    ChannelDecoder decoder = new ChannelDecoder(false);
+    for (TestRecord record : records) {
+      decoder.decode(record.block());
+    }
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    decoder.finish(table);
+    ArrayList<DataSet> headers = table.get(KEY);
+
+    assertEquals(decoded.size(), headers.size());
+    for (int i = 0; i < decoded.size(); i++) {
+      assertEquals(decoded.get(i).getStartTime(), headers.get(i).getStartTime());
+      assertEquals(decoded.get(i).getLength(), headers.get(i).getLength());
+      assertEquals(decoded.get(i).getSampleRate(), headers.get(i).getSampleRate(), 0.0);
+      assertFalse(headers.get(i).isDecoded());
+    }
+    assertEquals(records.size() - 1, decoder.getQualityTable().get(KEY).size());
+  }
+
+  @Test
+  public void finish_CompressedSamples_SameAsRaw() {
+    Random random = new Random(21);
+    List<TestRecord> records = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      records.add(record(i, i * SAMPLES, SAMPLES));
+    }
+    Collections.shuffle(records.subList(100, 120), random);
+
+    Hashtable<String, ArrayList<DataSet>> raw = decode(records);
+    Hashtable<String, ArrayList<DataSet>> compressed;
+    GlobalMock.setCompressedSamples(true);
+    try {
+      compressed = decode(records);
+    } finally {
+      GlobalMock.setCompressedSamples(false);
+    }
+
+    assertSame(raw, compressed);
+    assertTrue(compressed.get(KEY).get(0).getStorageBytes()
+        < raw.get(KEY).get(0).getStorageBytes());
+  }
+
+  @Test(timeout = 20000)
+  public void processorRun_DecoderShards_SameAsSingleDecoder() throws Exception {
+    Random random = new Random(31);
+    List<TestRecord> records = new ArrayList<>();
+    int sequence = 0;
+    for (String station : new String[]{"TEST", "ANMO", "COLA"}) {
+      for (String channel : new String[]{"LHZ", "LH1", "LH2", "VHZ", "BHZ"}) {
+        long position = random.nextInt(1000);
+        for (int i = 0; i < 30; i++) {
+          int samples = 1 + random.nextInt(SAMPLES);
+          long jitter = random.nextInt(4) == 0 ? random.nextInt(30000) * 100L : 0;
+          records.add(record(station, channel, sequence++, position, samples, jitter));
+          // Mostly contiguous, with overlaps and gaps
+          position += samples + (random.nextInt(8) == 0 ? random.nextInt(11) - 5 : 0);
+        }
+      }
+    }
+    // Some records read twice, and every channel interleaved out of order
+    for (int i = 0; i < 20; i++) {
+      records.add(records.get(random.nextInt(records.size())));
+    }
+    records.add(random.nextInt(records.size()), undecodable(sequence++, random.nextInt(4000)));
+    records.add(random.nextInt(records.size()), corrupt(sequence, random.nextInt(4000)));
+    Collections.shuffle(records, random);
+
+    SeedSplitProcessor single = process(records, 1);
+    SeedSplitProcessor sharded = process(records, 4);
+
+    assertEquals(15, single.getTable().size());
+    assertSame(single.getTable(), sharded.getTable());
+    assertEquals(single.getQualityTable(), sharded.getQualityTable());
+    assertEquals(single.getCalTable().keySet(), sharded.getCalTable().keySet());
+    assertFalse(single.isStalled() || sharded.isStalled());
+  }
+
+  @Test(timeout = 60000)
+  public void processorRun_SyntheticDay_AllocatesLittleBeyondSamples() throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled());
+
+    // A day of three 1 Hz channels, interleaved as they are in a day's files
+    List<TestRecord> records = new ArrayList<>();
+    int sequence = 0;
+    for (long first = 0; first < 86400; first += SAMPLES) {
+      for (String channel : new String[]{"LHZ", "LH1", "LH2"}) {
+        records.add(record("TEST", channel, sequence++, first, SAMPLES, 0));
+      }
+    }
+    long samples = (long) records.size() * SAMPLES;
+    long thread = Thread.currentThread().getId();
+
+    // Warm up so the processor and decoders are compiled
+    process(records, 1);
+    // The records are read before the processor runs, as the readers do on their own threads
+    RecordRing queue = queue(records);
+    long before = threads.getThreadAllocatedBytes(thread);
+    SeedSplitProcessor processor = new SeedSplitProcessor(queue, 1);
+    processor.run();
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    assertEquals(3, processor.getTable().size());
+    // The samples are stored 4 bytes each, the rest is mostly the channels' growing indexes and
+    // DataSet blocks, a few hundred bytes a record. Copying each record, as decoding through
+    // MiniSeed did, would alone be 512, and formatting a channel key per record over a thousand.
+    long perRecord = (allocated - 4 * samples) / records.size();
+    assertTrue(perRecord + " bytes allocated per record beyond the samples", perRecord < 384);
+  }
+
+  private static Hashtable<String, ArrayList<DataSet>> decode(List<TestRecord> records) {
+    ChannelDecoder decoder = new ChannelDecoder();
+    for (TestRecord record : records) {
+      decoder.decode(record.block());
+    }
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    decoder.finish(table);
+    return table;
+  }
+
+  /**
+   * The records decoded by a {@link SeedSplitProcessor} with a number of decoder shards.
+   */
+  private static SeedSplitProcessor process(List<TestRecord> records, int shards)
+      throws InterruptedException {
+    SeedSplitProcessor processor = new SeedSplitProcessor(queue(records), shards);
+    processor.run();
+    return processor;
+  }
+
+  /**
+   * A closed queue holding the records, as the readers leave it once every file is read.
+   */
+  private static RecordRing queue(List<TestRecord> records) throws InterruptedException {
+    RecordRing queue = new RecordRing(records.size() + 1);
+    for (TestRecord record : records) {
+      queue.put(record.block());
+    }
+    queue.close();
+    return queue;
+  }
+
+  /**
+   * The records assembled as they were before records were indexed, into an open DataSet and a
+   * TreeSet merged with {@link Sequence#mergeInto(Sequence)}.
+   */
+  private static Hashtable<String, ArrayList<DataSet>> legacy(List<TestRecord> records) {
+    TreeSet<DataSet> tree = new TreeSet<>();
+    DataSet tempData = null;
+    for (TestRecord record : records) {
+      if (tempData == null || record.startTime - tempData.getEndTime() > 2 * INTERVAL
+          || record.startTime - tempData.getEndTime() < 0) {
+        if (tempData != null) {
+          tree.add(tempData);
+        }
+        tempData = new DataSet();
+        tempData.setStartTime(record.startTime);
+        try {
+          tempData.setSampleRate(1.0);
+        } catch (IllegalSampleRateException e) {
+          throw new AssertionError(e);
+        }
+      }
+      if (record.decodable) {
+        tempData.extend(record.samples, 0, record.samples.length);
+      }
+    }
+    tree.add(tempData);
+
+    ArrayList<DataSet> list = new ArrayList<>();
+    Iterator<DataSet> iter = tree.iterator();
+    DataSet lastDataSet = iter.next();
+    while (iter.hasNext()) {
+      DataSet currDataSet = iter.next();
+      try {
+        currDataSet.mergeInto(lastDataSet);
+      } catch (SequenceMergeRangeException e) {
+        list.add(lastDataSet);
+        lastDataSet = currDataSet;
+      } catch (SequenceIntervalMismatchException | BlockSizeMismatchException e) {
+        throw new AssertionError(e);
+      }
+    }
+    list.add(lastDataSet);
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    table.put(KEY, list);
+    return table;
+  }
+
+  private static void assertSame(Hashtable<String, ArrayList<DataSet>> expected,
+      Hashtable<String, ArrayList<DataSet>> actual) {
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String key : expected.keySet()) {
+      ArrayList<DataSet> expectedList = expected.get(key);
+      ArrayList<DataSet> actualList = actual.get(key);
+      assertEquals(key, expectedList.size(), actualList.size());
+      for (int i = 0; i < expectedList.size(); i++) {
+        DataSet expectedSet = expectedList.get(i);
+        DataSet actualSet = actualList.get(i);
+        String name = key + " " + i;
+        assertEquals("start of " + name, expectedSet.getStartTime(), actualSet.getStartTime());
+        assertEquals("length of " + name, expectedSet.getLength(), actualSet.getLength());
+        assertEquals(expectedSet.getSampleRate(), actualSet.getSampleRate(), 0.0);
+        if (expectedSet.getLength() > 0) {
+          assertArrayEquals("samples of " + name, expectedSet.getSeries(),
+              actualSet.getSeries());
+        }
+      }
+    }
+  }
+
+  /**
+   * Samples of a signal that is the same wherever it is read from.
+   */
+  private static int[] signal(long first, int count) {
+    int[] samples = new int[count];
+    for (int i = 0; i < count; i++) {
+      long index = first + i;
+      samples[i] = (int) (index * 7919 % 100003) - 50000;
+    }
+    return samples;
+  }
+
+  private static TestRecord record(int sequence, long first, int samples) {
+    return record(sequence, first, samples, 0);
+  }
+
+  /**
+   * A Steim1 record of the signal from sample first on, started late by jitter microseconds.
+   */
+  private static TestRecord record(int sequence, long first, int samples, long jitter) {
+    return record("TEST", "LHZ", sequence, first, samples, jitter);
+  }
+
+  /**
+   * A Steim1 record of XX station 00 channel, see {@link #record(int, long, int, long)}.
+   */
+  private static TestRecord record(String station, String channel, int sequence, long first,
+      int samples, long jitter) {
+    int[] values = signal(first, samples);
+    return new TestRecord(build(station, channel, sequence, DAY_START + first * INTERVAL + jitter,
+        values, samples, 10), DAY_START + first * INTERVAL + jitter, values, true);
+  }
+
+  /**
+   * A record in an encoding that is not decoded.
+   */
+  private static TestRecord undecodable(int sequence, long first) {
+    int[] values = signal(first, SAMPLES);
+    return new TestRecord(build(sequence, DAY_START + first * INTERVAL, values, SAMPLES, 3),
+        DAY_START + first * INTERVAL, values, false);
+  }
+
+  /**
+   * A record with more samples in its header than in its frames, only found by decoding it.
+   */
+  private static TestRecord corrupt(int sequence, long first) {
+    int[] values = signal(first, SAMPLES);
+    return new TestRecord(build(sequence, DAY_START + first * INTERVAL, values, 200, 10),
+        DAY_START + first * INTERVAL, values, false);
+  }
+
+  /**
+   * A 512 byte record of XX TEST 00 LHZ at 1 Hz, with blockettes 1000 and 1001 and the samples
+   * in Steim1 frames of 32 bit differences.
+   */
+  private static byte[] build(int sequence, long startTime, int[] samples, int nsamp,
+      int encoding) {
+    return build("TEST", "LHZ", sequence, startTime, samples, nsamp, encoding);
+  }
+
+  /**
+   * A 512 byte record of XX station 00 channel, see {@link #build(int, long, int[], int, int)}.
+   */
+  private static byte[] build(String station, String channel, int sequence, long startTime,
+      int[] samples, int nsamp, int encoding) {
+    ByteBuffer buffer = ByteBuffer.allocate(512);
+    buffer.put(String.format("%06dD %-5s00%3sXX", sequence, station, channel).getBytes());
+    LocalDateTime time = LocalDateTime
+        .ofEpochSecond(startTime / 1000000L, (int) (startTime % 1000000L) * 1000,
+            ZoneOffset.UTC);
+    buffer.putShort((short) time.getYear()).putShort((short) time.getDayOfYear());
+    buffer.put((byte) time.getHour()).put((byte) time.getMinute())
+        .put((byte) time.getSecond()).put((byte) 0);
+    buffer.putShort((short) (startTime % 1000000L / 100));
+    buffer.putShort((short) nsamp);
+    buffer.putShort((short) 1).putShort((short) 1);
+    buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+    buffer.put((byte) 2);
+    buffer.putInt(0);
+    buffer.putShort((short) 64).putShort((short) 48);
+
+    buffer.putShort(48, (short) 1000).putShort(50, (short) 56);
+    buffer.put(52, (byte) encoding).put(53, (byte) 1).put(54, (byte) 9);
+    buffer.putShort(56, (short) 1001).putShort(58, (short) 0);
+    buffer.put(60, (byte) 100);
+
+    // The first frame holds 13 differences after the first and last sample, the others 15
+    int difference = 0;
+    for (int frame = 0; frame < 7; frame++) {
+      int frameOffset = 64 + frame * 64;
+      int control = 0;
+      for (int word = frame == 0 ? 3 : 1; word < 16; word++) {
+        control |= 3 << (30 - 2 * word);
+        int value = 0;
+        if (difference < samples.length) {
+          value = samples[difference] - (difference == 0 ? 0 : samples[difference - 1]);
+          difference++;
+        }
+        buffer.putInt(frameOffset + word * 4, value);
+      }
+      buffer.putInt(frameOffset, control);
+    }
+    buffer.putInt(68, samples[0]);
+    buffer.putInt(72, samples[samples.length - 1]);
+    return buffer.array();
+  }
+
+  private static final class TestRecord {
+
+    private final byte[] bytes;
+    private final long startTime;
+    private final int[] samples;
+    private final boolean decodable;
+    private final boolean slice;
+
+    private TestRecord(byte[] bytes, long startTime, int[] samples, boolean decodable) {
+      this.bytes = bytes;
+      this.startTime = startTime;
+      this.samples = samples;
+      this.decodable = decodable;
+      // Half are read as slices of a mapped file would be
+      this.slice = (startTime / INTERVAL) % 2 == 0;
+    }
+
+    private ByteBlock block() {
+      if (slice) {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 512);
+        buffer.position(512);
+        buffer.put(bytes);
+        return new ByteBlock(buffer, 512, bytes.length);
+      }
+      return new ByteBlock(bytes, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class ChannelFilterTest {
+
+  private static ByteBlock record(String location, String channel) {
+    byte[] bytes = new byte[256];
+    Arrays.fill(bytes, 8, 20, (byte) ' ');
+    byte[] codes = (location + channel).getBytes();
+    System.arraycopy(codes, 0, bytes, 13, codes.length);
+    return new ByteBlock(bytes, bytes.length);
+  }
+
+  @Test
+  public void accepts_SelectedChannels() {
+    ChannelFilter filter = new ChannelFilter(Arrays.asList("00-LHZ", "10-BH1"));
+    assertTrue(filter.accepts(record("00", "LHZ")));
+    assertTrue(filter.accepts(record("10", "BH1")));
+    assertFalse(filter.accepts(record("10", "LHZ")));
+    assertFalse(filter.accepts(record("00", "LOG")));
+    assertFalse(filter.accepts(record("00", "VMZ")));
+  }
+
+  @Test
+  public void accepts_RenamedLocations() {
+    ChannelFilter filter = new ChannelFilter(Arrays.asList("00-LHZ", "10-LHZ"));
+    assertTrue(filter.accepts(record("  ", "LHZ")));
+    assertTrue(filter.accepts(record("--", "LHZ")));
+    assertTrue(filter.accepts(record("HR", "LHZ")));
+  }
+
+  @Test
+  public void accepts_ShortRecord_Accepted() {
+    ChannelFilter filter = new ChannelFilter(Collections.singletonList("00-LHZ"));
+    assertTrue(filter.accepts(new ByteBlock(new byte[8], 8)));
+  }
+
+  @Test
+  public void constructor_DerivedChannelsIgnored() {
+    ChannelFilter filter = new ChannelFilter(Arrays.asList("00-LHZ", "00-LHND", "00-LHED"));
+    assertEquals(1, filter.size());
+  }
+
+  @Test
+  public void equals_SameChannelsInAnyOrder() {
+    ChannelFilter filter = new ChannelFilter(Arrays.asList("00-LHZ", "10-BH1"));
+    ChannelFilter same = new ChannelFilter(Arrays.asList("10-BH1", "00-LHZ"));
+    assertEquals(filter, same);
+    assertEquals(filter.hashCode(), same.hashCode());
+  }
+}
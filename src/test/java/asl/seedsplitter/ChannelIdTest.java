@@ -0,0 +1,61 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChannelIdTest {
+
+  @Test
+  public void of_SameChannel_SameInstance() {
+    ChannelId channelId = ChannelId.of("IU", "ANMO", "00", "BHZ", 20.0);
+    assertSame(channelId, ChannelId.of("IU", "ANMO", "00", "BHZ", 20.0));
+    assertNotSame(channelId, ChannelId.of("IU", "ANMO", "10", "BHZ", 20.0));
+    assertNotSame(channelId, ChannelId.of("IU", "ANMO", "00", "BHZ", 40.0));
+  }
+
+  @Test
+  public void of_NewChannels_DenseIds() {
+    ChannelId first = ChannelId.of("XX", "DENSE", "00", "LH1", 1.0);
+    ChannelId second = ChannelId.of("XX", "DENSE", "00", "LH2", 1.0);
+    assertEquals(first.getId() + 1, second.getId());
+    assertSame(first, ChannelId.get(first.getId()));
+    assertSame(second, ChannelId.get(second.getId()));
+    assertTrue(ChannelId.count() > second.getId());
+    assertNull(ChannelId.get(-1));
+  }
+
+  @Test
+  public void toString_StringKey() {
+    assertEquals("IU_ANMO 00-BHZ (20.0 Hz)",
+        ChannelId.of("IU", "ANMO", "00", "BHZ", 20.0).toString());
+  }
+
+  @Test
+  public void parse_Key_SameInstance() {
+    ChannelId channelId = ChannelId.of("IU", "ANMO", "00", "LHZ", 1.0);
+    assertSame(channelId, ChannelId.parse("IU_ANMO 00-LHZ (1.0 Hz)"));
+  }
+
+  @Test
+  public void parse_NewKey_Fields() {
+    ChannelId channelId = ChannelId.parse("IU_PARSE 10-LHND (1.0 Hz)");
+    assertEquals("IU", channelId.getNetwork());
+    assertEquals("PARSE", channelId.getStation());
+    assertEquals("10", channelId.getLocation());
+    assertEquals("LHND", channelId.getChannel());
+    assertEquals(1.0, channelId.getSampleRate(), 0.0);
+    assertSame(channelId, ChannelId.of("IU", "PARSE", "10", "LHND", 1.0));
+  }
+
+  @Test
+  public void parse_NotAKey_Null() {
+    assertNull(ChannelId.parse("IU_ANMO 00-LHZ"));
+    assertNull(ChannelId.parse("ANMO 00-LHZ (1.0 Hz)"));
+    assertNull(ChannelId.parse("IU_ANMO 00-LHZ (one Hz)"));
+  }
+}
@@ -0,0 +1,147 @@
+package asl.seedsplitter;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the memory compressed Sequence blocks save on each channel of a day, and what they
+ * cost to build and read back. Not run as a test, run it directly with the test classpath,
+ * optionally passing a directory of seed files and a number of passes:
+ * <p>
+ * java asl.seedsplitter.CompressedSequenceBenchmark [directory] [passes]
+ * <p>
+ * Reading is timed through a {@link SampleCursor}, as metrics read the samples.
+ */
+public class CompressedSequenceBenchmark { // NO_UCD (test only)
+
+  public static void main(String[] args) throws Exception {
+    GlobalMock.setQualityFlags("All");
+    String directory = args.length > 0 ? args[0]
+        : ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206");
+    int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".seed"));
+    if (files == null || files.length == 0) {
+      System.err.println("No seed files in " + directory);
+      return;
+    }
+
+    List<ByteBlock> records = new ArrayList<>();
+    for (File file : files) {
+      RecordRing queue = new RecordRing(1024);
+      Thread reader = new Thread(new MappedSeedReader(file, queue, true));
+      reader.start();
+      ByteBlock[] batch = new ByteBlock[64];
+      int count;
+      while ((count = queue.drain(batch, 10, TimeUnit.SECONDS)) > 0) {
+        for (int i = 0; i < count; i++) {
+          if (!batch[i].isEnd() && !batch[i].isLast()) {
+            records.add(batch[i]);
+          }
+        }
+      }
+      reader.join();
+    }
+
+    // Warm up both before measuring either.
+    assemble(records, false, passes);
+    assemble(records, true, passes);
+    long rawAssembly = assemble(records, false, passes);
+    long compressedAssembly = assemble(records, true, passes);
+
+    Hashtable<String, ArrayList<DataSet>> raw = split(records, false);
+    Hashtable<String, ArrayList<DataSet>> compressed = split(records, true);
+    read(raw, passes);
+    read(compressed, passes);
+    long rawRead = read(raw, passes);
+    long compressedRead = read(compressed, passes);
+
+    System.out.println(String.format("%-32s %10s %12s %12s %6s", "channel", "samples",
+        "raw bytes", "compressed", "ratio"));
+    long rawTotal = 0;
+    long compressedTotal = 0;
+    long samples = 0;
+    for (String key : new TreeSet<>(raw.keySet())) {
+      long channelSamples = 0;
+      long rawBytes = 0;
+      long compressedBytes = 0;
+      for (DataSet dataSet : raw.get(key)) {
+        channelSamples += dataSet.getLength();
+        rawBytes += dataSet.getStorageBytes();
+      }
+      for (DataSet dataSet : compressed.get(key)) {
+        compressedBytes += dataSet.getStorageBytes();
+      }
+      System.out.println(String.format("%-32s %10d %12d %12d %6.2f", key, channelSamples,
+          rawBytes, compressedBytes, rawBytes == 0 ? 0 : (double) compressedBytes / rawBytes));
+      samples += channelSamples;
+      rawTotal += rawBytes;
+      compressedTotal += compressedBytes;
+    }
+    System.out.println(String.format("total: %d samples, %.1f MB raw, %.1f MB compressed (%.2f)",
+        samples, rawTotal / 1e6, compressedTotal / 1e6, (double) compressedTotal / rawTotal));
+    System.out.println(String.format("assembly: raw %.1f ns/sample, compressed %.1f ns/sample",
+        (double) rawAssembly / passes / samples, (double) compressedAssembly / passes / samples));
+    System.out.println(String.format("read: raw %.2f ns/sample, compressed %.2f ns/sample",
+        (double) rawRead / passes / samples, (double) compressedRead / passes / samples));
+  }
+
+  private static Hashtable<String, ArrayList<DataSet>> split(List<ByteBlock> records,
+      boolean compressed) {
+    GlobalMock.setCompressedSamples(compressed);
+    try {
+      ChannelDecoder decoder = new ChannelDecoder();
+      for (ByteBlock record : records) {
+        decoder.decode(record);
+      }
+      Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+      decoder.finish(table);
+      return table;
+    } finally {
+      GlobalMock.setCompressedSamples(false);
+    }
+  }
+
+  /**
+   * @return elapsed nanoseconds
+   */
+  private static long assemble(List<ByteBlock> records, boolean compressed, int passes) {
+    long start = System.nanoTime();
+    for (int pass = 0; pass < passes; pass++) {
+      split(records, compressed);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @return elapsed nanoseconds
+   */
+  private static long read(Hashtable<String, ArrayList<DataSet>> table, int passes) {
+    int[] buffer = new int[1024];
+    long sum = 0;
+    long start = System.nanoTime();
+    for (int pass = 0; pass < passes; pass++) {
+      for (ArrayList<DataSet> dataSets : table.values()) {
+        for (DataSet dataSet : dataSets) {
+          SampleCursor cursor = dataSet.cursor();
+          int count;
+          while ((count = cursor.read(buffer, 0, buffer.length)) > 0) {
+            for (int i = 0; i < count; i++) {
+              sum += buffer[i];
+            }
+          }
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    if (sum == 42) {
+      System.out.println();
+    }
+    return elapsed;
+  }
+}
@@ -0,0 +1,88 @@
+package asl.seedsplitter;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a day with its samples decoded and from record headers alone, as is done when
+ * every configured metric only reads headers. Not run as a test, run it directly with the test
+ * classpath, optionally passing a directory of seed files and a number of passes:
+ * <p>
+ * java asl.seedsplitter.HeaderOnlyBenchmark [directory] [passes]
+ * <p>
+ * Records are mapped before timing starts, so only indexing, decoding and assembly are timed.
+ */
+public class HeaderOnlyBenchmark { // NO_UCD (test only)
+
+  public static void main(String[] args) throws Exception {
+    GlobalMock.setQualityFlags("All");
+    String directory = args.length > 0 ? args[0]
+        : ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206");
+    int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".seed"));
+    if (files == null || files.length == 0) {
+      System.err.println("No seed files in " + directory);
+      return;
+    }
+
+    List<ByteBlock> records = new ArrayList<>();
+    long bytes = 0;
+    for (File file : files) {
+      RecordRing queue = new RecordRing(1024);
+      Thread reader = new Thread(new MappedSeedReader(file, queue, true));
+      reader.start();
+      ByteBlock[] batch = new ByteBlock[64];
+      int count;
+      while ((count = queue.drain(batch, 10, TimeUnit.SECONDS)) > 0) {
+        for (int i = 0; i < count; i++) {
+          if (!batch[i].isEnd() && !batch[i].isLast()) {
+            records.add(batch[i]);
+          }
+        }
+      }
+      reader.join();
+      bytes += file.length();
+    }
+
+    // Warm up both before measuring either.
+    run(records, true, passes);
+    run(records, false, passes);
+
+    long decoded = run(records, true, passes);
+    long headers = run(records, false, passes);
+    System.out.println(String.format("decoded: %.1f MB/s", bytes * passes / (decoded / 1e3)));
+    System.out.println(String.format("headers: %.1f MB/s", bytes * passes / (headers / 1e3)));
+    System.out.println(String.format("%d records, headers alone %.1f times as fast",
+        records.size(), (double) decoded / headers));
+  }
+
+  /**
+   * @return elapsed nanoseconds
+   */
+  private static long run(List<ByteBlock> records, boolean decode, int passes) {
+    long start = System.nanoTime();
+    long samples = 0;
+    for (int pass = 0; pass < passes; pass++) {
+      ChannelDecoder decoder = new ChannelDecoder(decode);
+      for (ByteBlock record : records) {
+        decoder.decode(record);
+      }
+      Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+      decoder.finish(table);
+      for (ArrayList<DataSet> dataSets : table.values()) {
+        for (DataSet dataSet : dataSets) {
+          samples += dataSet.getLength();
+        }
+      }
+    }
+    if (samples == 0) {
+      System.err.println("No samples in the records");
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,98 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedSeedReaderTest {
+
+  private File[] files;
+
+  @Before
+  public void setUp() throws Exception {
+    GlobalMock.setQualityFlags("All");
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    GlobalMock.setMappedReads(false);
+  }
+
+  /**
+   * Run a reader that closes the queue on its own thread and collect the records it queues.
+   */
+  private static List<ByteBlock> readRecords(Runnable reader, RecordRing queue)
+      throws Exception {
+    Thread thread = new Thread(reader);
+    thread.start();
+    List<ByteBlock> records = new ArrayList<>();
+    ByteBlock[] batch = new ByteBlock[64];
+    int count;
+    while ((count = queue.drain(batch, 10, TimeUnit.SECONDS)) > 0) {
+      records.addAll(Arrays.asList(batch).subList(0, count));
+    }
+    thread.join();
+    return records;
+  }
+
+  @Test(timeout = 60000)
+  public void run_SameRecordsAsStreamReader() throws Exception {
+    for (File file : files) {
+      RecordRing streamQueue = new RecordRing(1024);
+      List<ByteBlock> streamed = readRecords(new SeedInputStream(new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file))), streamQueue, true), streamQueue);
+
+      RecordRing mappedQueue = new RecordRing(1024);
+      List<ByteBlock> mapped = readRecords(new MappedSeedReader(file, mappedQueue, true),
+          mappedQueue);
+
+      assertEquals(file.getName(), streamed.size(), mapped.size());
+      for (int i = 0; i < streamed.size(); i++) {
+        assertArrayEquals(file.getName() + " record " + i, streamed.get(i).getData(),
+            mapped.get(i).getData());
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void run_RecordsAreSlices() throws Exception {
+    RecordRing queue = new RecordRing(1024);
+    List<ByteBlock> records = readRecords(new MappedSeedReader(files[0], queue, true), queue);
+    assertTrue(records.get(0).isSlice());
+  }
+
+  @Test(timeout = 60000)
+  public void doInBackground_MappedReads_SameDataSets() throws Exception {
+    Hashtable<String, ArrayList<DataSet>> streamed = new SeedSplitter(files).doInBackground();
+    GlobalMock.setMappedReads(true);
+    Hashtable<String, ArrayList<DataSet>> mapped = new SeedSplitter(files).doInBackground();
+
+    assertEquals(streamed.keySet(), mapped.keySet());
+    for (String key : streamed.keySet()) {
+      assertEquals(key, streamed.get(key).size(), mapped.get(key).size());
+      for (int i = 0; i < streamed.get(key).size(); i++) {
+        DataSet expected = streamed.get(key).get(i);
+        DataSet actual = mapped.get(key).get(i);
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertArrayEquals(expected.getSeries(), actual.getSeries());
+      }
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class OffHeapStoreTest {
+
+  private static int[] walk(int length, long seed) {
+    Random random = new Random(seed);
+    int[] samples = new int[length];
+    int sample = 0;
+    for (int i = 0; i < length; i++) {
+      sample += random.nextInt(201) - 100;
+      samples[i] = sample;
+    }
+    return samples;
+  }
+
+  private static Sequence sequence(int[] samples, boolean compressed) {
+    Sequence sequence = new Sequence();
+    sequence.setCompressed(compressed);
+    sequence.extend(samples, 0, samples.length);
+    return sequence;
+  }
+
+  @Test
+  public void moveOffHeap_Direct_SameSeries() throws Exception {
+    int[] samples = walk(3 * Sequence.BLOCK_SIZE + 100, 1);
+    Sequence sequence = sequence(samples, false);
+    ByteBuffer digest = sequence.getDigestBytes();
+
+    sequence.moveOffHeap(null);
+
+    assertTrue(sequence.isOffHeap());
+    assertTrue(sequence.isDecoded());
+    assertArrayEquals(samples, sequence.getSeries());
+    assertEquals(digest, sequence.getDigestBytes());
+    assertEquals(samples.length * 4L, sequence.getStorageBytes());
+  }
+
+  @Test
+  public void moveOffHeap_Compressed_StaysCompressed() throws Exception {
+    int[] samples = walk(4 * Sequence.BLOCK_SIZE + 7, 2);
+    Sequence sequence = sequence(samples, true);
+    long bytes = sequence.getStorageBytes();
+
+    sequence.moveOffHeap(null);
+
+    assertEquals(bytes, sequence.getStorageBytes());
+    assertArrayEquals(samples, sequence.getSeries());
+    SampleCursor cursor = sequence.cursor(Sequence.BLOCK_SIZE + 5);
+    assertEquals(samples[Sequence.BLOCK_SIZE + 5], cursor.next());
+  }
+
+  @Test
+  public void moveOffHeap_Mapped_SameSeriesAndFileDeleted() throws Exception {
+    Path directory = Files.createTempDirectory("offheap");
+    try {
+      int[] samples = walk(2 * Sequence.BLOCK_SIZE + 1, 3);
+      Sequence sequence = sequence(samples, true);
+
+      sequence.moveOffHeap(directory);
+
+      assertArrayEquals(samples, sequence.getSeries());
+      // The scratch file is deleted once mapped
+      assertEquals(0, new File(directory.toString()).list().length);
+      sequence.release();
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void extend_OffHeap_BroughtBackOnHeap() throws Exception {
+    int[] samples = walk(Sequence.BLOCK_SIZE + 10, 4);
+    Sequence sequence = sequence(samples, false);
+    sequence.moveOffHeap(null);
+
+    sequence.extend(samples, 0, 20);
+
+    assertFalse(sequence.isOffHeap());
+    int[] expected = Arrays.copyOf(samples, samples.length + 20);
+    System.arraycopy(samples, 0, expected, samples.length, 20);
+    assertArrayEquals(expected, sequence.getSeries());
+  }
+
+  @Test
+  public void mergeInto_OffHeap_Contiguous() throws Exception {
+    int[] samples = walk(2 * Sequence.BLOCK_SIZE, 5);
+    int half = Sequence.BLOCK_SIZE;
+    Sequence first = sequence(Arrays.copyOf(samples, half), false);
+    Sequence second = sequence(Arrays.copyOfRange(samples, half, samples.length), true);
+    first.setSampleRate(1.0);
+    second.setSampleRate(1.0);
+    second.setStartTime(first.getEndTime());
+    first.moveOffHeap(null);
+    second.moveOffHeap(null);
+
+    second.mergeInto(first);
+
+    // Exactly contiguous data loses its first data point when merged
+    int[] expected = new int[samples.length - 1];
+    System.arraycopy(samples, 0, expected, 0, half);
+    System.arraycopy(samples, half + 1, expected, half, samples.length - half - 1);
+    assertArrayEquals(expected, first.getSeries());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cursor_Released_ThrowsIllegalStateException() throws Exception {
+    Sequence sequence = sequence(walk(100, 6), false);
+    sequence.moveOffHeap(null);
+    sequence.release();
+
+    assertEquals(100, sequence.getLength());
+    sequence.cursor();
+  }
+
+  @Test
+  public void serialize_OffHeap_SameSeries() throws Exception {
+    int[] samples = walk(Sequence.BLOCK_SIZE + 3, 7);
+    DataSet dataSet = new DataSet();
+    dataSet.setCompressed(true);
+    dataSet.extend(samples, 0, samples.length);
+    dataSet.moveOffHeap(null);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(dataSet);
+    }
+    DataSet copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (DataSet) in.readObject();
+    }
+
+    assertArrayEquals(samples, copy.getSeries());
+  }
+}
@@ -0,0 +1,98 @@
+package asl.seedsplitter;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares handing records from one reader thread to one consumer through a {@link RecordRing}
+ * and through the LinkedBlockingQueue it replaced. Not run as a test, run it directly with the
+ * test classpath, optionally passing the number of records per run:
+ * <p>
+ * java asl.seedsplitter.RecordRingBenchmark [records]
+ * <p>
+ * The same ByteBlock is handed over repeatedly, so only the cost of the handoff is measured.
+ */
+public class RecordRingBenchmark { // NO_UCD (test only)
+
+  private static final int CAPACITY = 1024;
+
+  private static final int RUNS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    ByteBlock block = new ByteBlock(new byte[512], 512);
+
+    // The first runs warm up both.
+    for (int run = 0; run < RUNS; run++) {
+      long queue = runQueue(block, records);
+      long ring = runRing(block, records);
+      System.out.println(String.format("run %d: queue %.1f M records/s, ring %.1f M records/s",
+          run + 1, records / (queue / 1e9) / 1e6, records / (ring / 1e9) / 1e6));
+    }
+  }
+
+  /**
+   * @return elapsed nanoseconds
+   */
+  private static long runQueue(ByteBlock block, int records) throws Exception {
+    LinkedBlockingQueue<ByteBlock> queue = new LinkedBlockingQueue<>(CAPACITY);
+    ByteBlock last = new ByteBlock(null, 0, true, true);
+    Thread producer = new Thread(() -> {
+      try {
+        for (int i = 0; i < records; i++) {
+          queue.put(block);
+        }
+        queue.put(last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    long start = System.nanoTime();
+    producer.start();
+    int received = 0;
+    while (!queue.take().isLast()) {
+      received++;
+    }
+    long elapsed = System.nanoTime() - start;
+    producer.join();
+    check(received, records);
+    return elapsed;
+  }
+
+  /**
+   * @return elapsed nanoseconds
+   */
+  private static long runRing(ByteBlock block, int records) throws Exception {
+    RecordRing ring = new RecordRing(CAPACITY);
+    Thread producer = new Thread(() -> {
+      try {
+        for (int i = 0; i < records; i++) {
+          ring.put(block);
+        }
+        ring.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    long start = System.nanoTime();
+    producer.start();
+    ByteBlock[] batch = new ByteBlock[64];
+    int received = 0;
+    int count;
+    while ((count = ring.drain(batch, 10, TimeUnit.SECONDS)) > 0) {
+      received += count;
+    }
+    long elapsed = System.nanoTime() - start;
+    producer.join();
+    check(received, records);
+    return elapsed;
+  }
+
+  private static void check(int received, int records) {
+    if (received != records) {
+      throw new IllegalStateException("Received " + received + " of " + records + " records");
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class RecordRingTest {
+
+  private static ByteBlock record(int value) {
+    return new ByteBlock(new byte[]{(byte) value}, 1);
+  }
+
+  @Test
+  public void drain_ReturnsRecordsInOrderAsOneBatch() throws Exception {
+    RecordRing ring = new RecordRing(8);
+    List<ByteBlock> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      records.add(record(i));
+      ring.put(records.get(i));
+    }
+
+    ByteBlock[] batch = new ByteBlock[8];
+    assertEquals(5, ring.drain(batch, 1, TimeUnit.SECONDS));
+    for (int i = 0; i < 5; i++) {
+      assertSame(records.get(i), batch[i]);
+    }
+    assertEquals(0, ring.size());
+  }
+
+  @Test
+  public void drain_BatchSmallerThanAvailable_RestLeftInRing() throws Exception {
+    RecordRing ring = new RecordRing(8);
+    for (int i = 0; i < 6; i++) {
+      ring.put(record(i));
+    }
+    ByteBlock[] batch = new ByteBlock[4];
+    assertEquals(4, ring.drain(batch, 1, TimeUnit.SECONDS));
+    assertEquals(2, ring.drain(batch, 1, TimeUnit.SECONDS));
+    assertEquals(4, batch[0].getData()[0]);
+  }
+
+  @Test
+  public void drain_Closed_RemainingRecordsThenEnd() throws Exception {
+    RecordRing ring = new RecordRing(4);
+    ring.put(record(1));
+    ring.close();
+    ring.close();
+
+    ByteBlock[] batch = new ByteBlock[4];
+    assertEquals(1, ring.drain(batch, 1, TimeUnit.SECONDS));
+    assertEquals(-1, ring.drain(batch, 1, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 20000)
+  public void drain_NothingPut_TimesOut() throws Exception {
+    RecordRing ring = new RecordRing(4);
+    assertEquals(0, ring.drain(new ByteBlock[4], 50, TimeUnit.MILLISECONDS));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void put_Closed_Rejected() throws Exception {
+    RecordRing ring = new RecordRing(4);
+    ring.close();
+    ring.put(record(1));
+  }
+
+  @Test(timeout = 20000)
+  public void put_Full_WaitsForConsumer() throws Exception {
+    RecordRing ring = new RecordRing(4);
+    CountDownLatch filled = new CountDownLatch(1);
+    Thread producer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 100; i++) {
+          ring.put(record(i));
+          if (i == 3) {
+            filled.countDown();
+          }
+        }
+        ring.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    producer.start();
+    filled.await();
+    Thread.sleep(50);
+    //The producer cannot get ahead of the capacity
+    assertEquals(4, ring.size());
+
+    ByteBlock[] batch = new ByteBlock[3];
+    int expected = 0;
+    int count;
+    while ((count = ring.drain(batch, 5, TimeUnit.SECONDS)) > 0) {
+      for (int i = 0; i < count; i++) {
+        assertEquals((byte) expected++, batch[i].getData()[0]);
+      }
+    }
+    assertEquals(100, expected);
+    producer.join();
+  }
+
+  @Test(timeout = 20000)
+  public void put_FullAndInterrupted_Throws() throws Exception {
+    RecordRing ring = new RecordRing(2);
+    AtomicReference<Exception> thrown = new AtomicReference<>();
+    Thread producer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 3; i++) {
+          ring.put(record(i));
+        }
+      } catch (InterruptedException e) {
+        thrown.set(e);
+      }
+    });
+    producer.start();
+    while (ring.size() < 2) {
+      Thread.sleep(1);
+    }
+    producer.interrupt();
+    producer.join();
+    assertTrue(thrown.get() instanceof InterruptedException);
+  }
+
+  @Test(timeout = 20000)
+  public void put_Full_WokenOnlyOnceHalfFree() throws Exception {
+    RecordRing ring = new RecordRing(8);
+    for (int i = 0; i < 8; i++) {
+      ring.put(record(i));
+    }
+    Thread producer = new Thread(() -> {
+      try {
+        ring.put(record(8));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    producer.start();
+    while (producer.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+
+    //One free slot does not wake the producer, and it does not wake itself to check
+    ByteBlock[] one = new ByteBlock[1];
+    assertEquals(1, ring.drain(one, 1, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    assertEquals(Thread.State.WAITING, producer.getState());
+    assertEquals(7, ring.size());
+
+    ByteBlock[] three = new ByteBlock[3];
+    assertEquals(3, ring.drain(three, 1, TimeUnit.SECONDS));
+    producer.join();
+    assertEquals(5, ring.size());
+  }
+}
@@ -0,0 +1,238 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class SampleCursorTest {
+
+  /**
+   * A random walk of small steps, like seismic samples, with a few large jumps.
+   */
+  private static int[] walk(int length, long seed) {
+    Random random = new Random(seed);
+    int[] samples = new int[length];
+    int sample = 0;
+    for (int i = 0; i < length; i++) {
+      sample += random.nextInt(201) - 100;
+      if (i % 1000 == 999) {
+        sample = random.nextInt();
+      }
+      samples[i] = sample;
+    }
+    return samples;
+  }
+
+  private static Sequence sequence(int[] samples, boolean compressed) {
+    Sequence sequence = new Sequence();
+    sequence.setCompressed(compressed);
+    // Extended in uneven pieces so blocks fill part way through
+    for (int offset = 0; offset < samples.length; offset += 1000) {
+      sequence.extend(samples, offset, Math.min(1000, samples.length - offset));
+    }
+    return sequence;
+  }
+
+  @Test
+  public void compress_Walk_RoundTrip() throws Exception {
+    int[] block = walk(Sequence.BLOCK_SIZE, 1);
+    block[10] = Integer.MAX_VALUE;
+    block[11] = Integer.MIN_VALUE;
+
+    int[] packed = BlockCodec.compress(block);
+
+    assertTrue(BlockCodec.isCompressed(packed));
+    assertTrue(packed.length < Sequence.BLOCK_SIZE / 2);
+    assertArrayEquals(block, BlockCodec.decompress(packed, new int[Sequence.BLOCK_SIZE]));
+  }
+
+  @Test
+  public void compress_Noise_KeptRaw() throws Exception {
+    Random random = new Random(2);
+    int[] block = new int[Sequence.BLOCK_SIZE];
+    for (int i = 0; i < block.length; i++) {
+      block[i] = random.nextInt();
+    }
+
+    assertNull(BlockCodec.compress(block));
+  }
+
+  @Test
+  public void getSeries_Compressed_SameAsRaw() throws Exception {
+    int[] samples = walk(5 * Sequence.BLOCK_SIZE + 123, 3);
+    Sequence raw = sequence(samples, false);
+    Sequence compressed = sequence(samples, true);
+
+    assertArrayEquals(samples, raw.getSeries());
+    assertArrayEquals(samples, compressed.getSeries());
+    assertEquals(raw.getDigestBytes(), compressed.getDigestBytes());
+    assertEquals(samples.length * 4L, raw.getStorageBytes());
+    assertTrue(compressed.getStorageBytes() < raw.getStorageBytes() / 2);
+  }
+
+  @Test
+  public void setCompressed_AfterExtending_SameSeries() throws Exception {
+    int[] samples = walk(3 * Sequence.BLOCK_SIZE + 5, 4);
+    Sequence sequence = sequence(samples, false);
+    long rawBytes = sequence.getStorageBytes();
+
+    sequence.setCompressed(true);
+    sequence.extend(samples, 0, Sequence.BLOCK_SIZE);
+
+    int[] expected = Arrays.copyOf(samples, samples.length + Sequence.BLOCK_SIZE);
+    System.arraycopy(samples, 0, expected, samples.length, Sequence.BLOCK_SIZE);
+    assertArrayEquals(expected, sequence.getSeries());
+    assertTrue(sequence.getStorageBytes() < rawBytes);
+  }
+
+  @Test
+  public void read_AcrossBlocks_SameAsSeries() throws Exception {
+    int[] samples = walk(4 * Sequence.BLOCK_SIZE + 77, 5);
+    Sequence sequence = sequence(samples, true);
+
+    SampleCursor cursor = sequence.cursor(1000);
+    int[] buffer = new int[5000];
+    assertEquals(5000, cursor.read(buffer, 0, 5000));
+    assertArrayEquals(Arrays.copyOfRange(samples, 1000, 6000), buffer);
+    assertEquals(6000, cursor.getPosition());
+
+    assertEquals(Sequence.BLOCK_SIZE, cursor.skip(Sequence.BLOCK_SIZE));
+    assertEquals(samples[6000 + Sequence.BLOCK_SIZE], cursor.next());
+
+    int remaining = cursor.remaining();
+    int[] rest = new int[remaining + 10];
+    assertEquals(remaining, cursor.read(rest, 10, remaining + 10));
+    assertArrayEquals(Arrays.copyOfRange(samples, samples.length - remaining, samples.length),
+        Arrays.copyOfRange(rest, 10, 10 + remaining));
+    assertFalse(cursor.hasNext());
+  }
+
+  @Test
+  public void next_EverySample_SameAsSeries() throws Exception {
+    int[] samples = walk(2 * Sequence.BLOCK_SIZE + 1, 6);
+    SampleCursor cursor = sequence(samples, true).cursor();
+
+    for (int sample : samples) {
+      assertEquals(sample, cursor.next());
+    }
+    assertEquals(0, cursor.remaining());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void next_PastEnd_ThrowsNoSuchElementException() throws Exception {
+    SampleCursor cursor = sequence(new int[]{1, 2}, true).cursor(2);
+    cursor.next();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cursor_Undecoded_ThrowsIllegalStateException() throws Exception {
+    Sequence sequence = new Sequence();
+    sequence.extendUndecoded(100);
+    sequence.cursor();
+  }
+
+  @Test
+  public void getSeries_Window_SameAsRaw() throws Exception {
+    int[] samples = walk(3 * Sequence.BLOCK_SIZE, 7);
+    Sequence raw = sequence(samples, false);
+    Sequence compressed = sequence(samples, true);
+    raw.setSampleRate(20.0);
+    compressed.setSampleRate(20.0);
+    long start = raw.getStartTime() + 5000 * raw.getInterval();
+    long end = start + 3000 * raw.getInterval();
+
+    assertArrayEquals(raw.getSeries(start, end), compressed.getSeries(start, end));
+  }
+
+  @Test
+  public void mergeInto_Compressed_Contiguous() throws Exception {
+    int[] samples = walk(4 * Sequence.BLOCK_SIZE, 8);
+    int half = 2 * Sequence.BLOCK_SIZE;
+    Sequence first = sequence(Arrays.copyOf(samples, half), true);
+    Sequence second = sequence(Arrays.copyOfRange(samples, half, samples.length), true);
+    first.setSampleRate(1.0);
+    second.setSampleRate(1.0);
+    second.setStartTime(first.getEndTime());
+
+    second.mergeInto(first);
+
+    // Exactly contiguous data loses its first data point when merged
+    int[] expected = new int[samples.length - 1];
+    System.arraycopy(samples, 0, expected, 0, half);
+    System.arraycopy(samples, half + 1, expected, half, samples.length - half - 1);
+    assertArrayEquals(expected, first.getSeries());
+  }
+
+  @Test
+  public void cursor_Window_SameAsSeries() throws Exception {
+    int[] samples = walk(3 * Sequence.BLOCK_SIZE + 9, 9);
+    Sequence sequence = sequence(samples, true);
+    sequence.setSampleRate(40.0);
+    long start = sequence.getStartTime() + 4000 * sequence.getInterval() + 7;
+    long end = start + 5000 * sequence.getInterval();
+    int[] expected = sequence.getSeries(start, end);
+
+    SampleCursor cursor = sequence.cursor(start, end);
+    double[] window = new double[expected.length + 2];
+    assertEquals(expected.length, cursor.read(window, 2, expected.length + 2));
+
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], window[i + 2], 0.0);
+    }
+    assertFalse(cursor.hasNext());
+  }
+
+  @Test(expected = SequenceRangeException.class)
+  public void cursor_WindowPastEnd_ThrowsSequenceRangeException() throws Exception {
+    Sequence sequence = sequence(walk(100, 10), false);
+    sequence.setSampleRate(1.0);
+    sequence.cursor(sequence.getStartTime(), sequence.getEndTime() + sequence.getInterval());
+  }
+
+  @Test
+  public void read_IntoDoubleBuffer_NoSeriesAllocated() throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled());
+
+    int[] samples = walk(64 * Sequence.BLOCK_SIZE, 11);
+    Sequence raw = sequence(samples, false);
+    Sequence compressed = sequence(samples, true);
+    double[] buffer = new double[samples.length];
+    long thread = Thread.currentThread().getId();
+
+    // Warm up so the reads are compiled
+    for (int i = 0; i < 20; i++) {
+      raw.cursor().read(buffer, 0, buffer.length);
+      compressed.cursor().read(buffer, 0, buffer.length);
+    }
+    long before = threads.getThreadAllocatedBytes(thread);
+    raw.cursor().read(buffer, 0, buffer.length);
+    long rawAllocated = threads.getThreadAllocatedBytes(thread) - before;
+    before = threads.getThreadAllocatedBytes(thread);
+    compressed.cursor().read(buffer, 0, buffer.length);
+    long compressedAllocated = threads.getThreadAllocatedBytes(thread) - before;
+    before = threads.getThreadAllocatedBytes(thread);
+    int[] series = raw.getSeries();
+    long seriesAllocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    assertEquals((double) samples[samples.length - 1], buffer[buffer.length - 1], 0.0);
+    assertEquals(samples.length, series.length);
+    // Only the cursor, and for compressed blocks the block it decodes into
+    assertTrue(rawAllocated + " bytes allocated reading raw blocks", rawAllocated < 1024);
+    assertTrue(compressedAllocated + " bytes allocated reading compressed blocks",
+        compressedAllocated < Sequence.BLOCK_SIZE * 4 + 1024);
+    assertTrue(seriesAllocated >= samples.length * 4L);
+  }
+}
@@ -0,0 +1,116 @@
+package asl.seedsplitter;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the stream and memory mapped record readers. Not run as a test, run it directly with
+ * the test classpath, optionally passing a directory of seed files and a number of passes:
+ * <p>
+ * java asl.seedsplitter.SeedReaderBenchmark [directory] [passes]
+ * <p>
+ * Reports throughput and the bytes allocated by the reading and consuming threads. The consumer
+ * takes each record the way {@link SeedSplitProcessor} does, without decoding it.
+ */
+public class SeedReaderBenchmark { // NO_UCD (test only)
+
+  private interface ReaderFactory {
+
+    Runnable create(File file, RecordRing queue) throws FileNotFoundException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    GlobalMock.setQualityFlags("All");
+    String directory = args.length > 0 ? args[0]
+        : ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206");
+    int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".seed"));
+    if (files == null || files.length == 0) {
+      System.err.println("No seed files in " + directory);
+      return;
+    }
+
+    ReaderFactory stream = (file, queue) -> new SeedInputStream(
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file))), queue, true);
+    ReaderFactory mapped = (file, queue) -> new MappedSeedReader(file, queue, true);
+
+    // Warm up both before measuring either.
+    run(files, stream, passes);
+    run(files, mapped, passes);
+
+    report("stream", files, passes, stream);
+    report("mapped", files, passes, mapped);
+  }
+
+  private static void report(String name, File[] files, int passes, ReaderFactory factory)
+      throws Exception {
+    long bytes = 0;
+    for (File file : files) {
+      bytes += file.length();
+    }
+    bytes *= passes;
+
+    long[] result = run(files, factory, passes);
+    double seconds = result[0] / 1e9;
+    System.out.println(String.format("%s: %.1f MB/s, %d records, %.1f allocated bytes per record"
+            + " (%d MB allocated)", name, bytes / seconds / 1e6, result[1],
+        (double) result[2] / result[1], result[2] >> 20));
+  }
+
+  /**
+   * @return elapsed nanoseconds, records read and bytes allocated
+   */
+  private static long[] run(File[] files, ReaderFactory factory, int passes) throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long consumer = Thread.currentThread().getId();
+
+    long records = 0;
+    long allocated = 0;
+    long start = System.nanoTime();
+    for (int pass = 0; pass < passes; pass++) {
+      for (File file : files) {
+        RecordRing queue = new RecordRing(1024);
+        Runnable read = factory.create(file, queue);
+        AtomicLong readerAllocated = new AtomicLong();
+        Thread reader = new Thread(() -> {
+          read.run();
+          readerAllocated.set(threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+        });
+        long consumerBefore = threads.getThreadAllocatedBytes(consumer);
+        reader.start();
+
+        byte[] sliceBytes = new byte[0];
+        ByteBlock[] batch = new ByteBlock[64];
+        int count;
+        while ((count = queue.drain(batch, 10, TimeUnit.SECONDS)) > 0) {
+          for (int i = 0; i < count; i++) {
+            ByteBlock block = batch[i];
+            if (block.isSlice()) {
+              if (sliceBytes.length != block.getLength()) {
+                sliceBytes = new byte[block.getLength()];
+              }
+              block.readInto(sliceBytes);
+            } else {
+              block.getData();
+            }
+            records++;
+          }
+        }
+
+        reader.join();
+        allocated += readerAllocated.get() + threads.getThreadAllocatedBytes(consumer)
+            - consumerBefore;
+      }
+    }
+    return new long[]{System.nanoTime() - start, records, allocated};
+  }
+}
@@ -0,0 +1,135 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeedSplitterTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    GlobalMock.setQualityFlags("All");
+    directory = Files.createTempDirectory("seedsplitter").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    //Clear any interrupt left by the test
+    Thread.interrupted();
+    GlobalMock.setDecoderShards(null);
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Test(timeout = 20000)
+  public void doInBackground_FinalFileMissing_Finishes() throws Exception {
+    File empty = new File(directory, "00_LHZ.512.seed");
+    Files.write(empty.toPath(), new byte[0]);
+    File missing = new File(directory, "10_LHZ.512.seed");
+
+    SeedSplitter splitter = new SeedSplitter(new File[]{empty, missing});
+    assertTrue(splitter.doInBackground().isEmpty());
+  }
+
+  @Test(expected = InterruptedException.class, timeout = 20000)
+  public void doInBackground_Interrupted_Cancelled() throws Exception {
+    File empty = new File(directory, "00_LHZ.512.seed");
+    Files.write(empty.toPath(), new byte[0]);
+
+    SeedSplitter splitter = new SeedSplitter(new File[]{empty});
+    Thread.currentThread().interrupt();
+    splitter.doInBackground();
+  }
+
+  @Test(timeout = 60000)
+  public void doInBackground_DecoderShards_SameAsSingleDecoder() throws Exception {
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+
+    SeedSplitter single = new SeedSplitter(files);
+    Hashtable<String, ArrayList<DataSet>> expectedTable = single.doInBackground();
+    GlobalMock.setDecoderShards(4);
+    SeedSplitter sharded = new SeedSplitter(files);
+    Hashtable<String, ArrayList<DataSet>> actualTable = sharded.doInBackground();
+
+    assertTrue(expectedTable.size() > 1);
+    assertEquals(expectedTable.keySet(), actualTable.keySet());
+    for (String key : expectedTable.keySet()) {
+      assertEquals(key, expectedTable.get(key).size(), actualTable.get(key).size());
+      for (int i = 0; i < expectedTable.get(key).size(); i++) {
+        DataSet expected = expectedTable.get(key).get(i);
+        DataSet actual = actualTable.get(key).get(i);
+        assertEquals(key, expected.getNetwork(), actual.getNetwork());
+        assertEquals(key, expected.getStation(), actual.getStation());
+        assertEquals(key, expected.getLocation(), actual.getLocation());
+        assertEquals(key, expected.getChannel(), actual.getChannel());
+        assertEquals(key, expected.getStartTime(), actual.getStartTime());
+        assertEquals(key, expected.getEndTime(), actual.getEndTime());
+        assertEquals(key, expected.getInterval(), actual.getInterval());
+        assertArrayEquals(key, expected.getSeries(), actual.getSeries());
+      }
+    }
+    assertEquals(single.getQualityTable(), sharded.getQualityTable());
+    assertEquals(single.getCalTable().keySet(), sharded.getCalTable().keySet());
+    for (String key : single.getCalTable().keySet()) {
+      assertEquals(key, single.getCalTable().get(key).size(),
+          sharded.getCalTable().get(key).size());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void doInBackground_ChannelFilter_OnlySelectedChannelsDecoded() throws Exception {
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+
+    Hashtable<String, ArrayList<DataSet>> expectedTable = new SeedSplitter(files).doInBackground();
+    SeedSplitter filtered = new SeedSplitter(files,
+        new ChannelFilter(Collections.singletonList("00-LHZ")));
+    Hashtable<String, ArrayList<DataSet>> actualTable = filtered.doInBackground();
+
+    assertEquals(1, actualTable.size());
+    String key = actualTable.keySet().iterator().next();
+    assertTrue(key, key.contains("00-LHZ"));
+    assertEquals(expectedTable.get(key).size(), actualTable.get(key).size());
+    for (int i = 0; i < expectedTable.get(key).size(); i++) {
+      assertArrayEquals(expectedTable.get(key).get(i).getSeries(),
+          actualTable.get(key).get(i).getSeries());
+    }
+    assertTrue(filtered.getSkippedRecords() > 0);
+    assertTrue(filtered.getSkippedBytes() >= 256 * filtered.getSkippedRecords());
+  }
+
+  @Test
+  public void shardOf_RenamedLocations_SameShard() throws Exception {
+    int shard = SeedSplitProcessor.shardOf(header("ANMO ", "  ", "LHZ", "IU"), 7);
+    assertEquals(shard, SeedSplitProcessor.shardOf(header("ANMO ", "--", "LHZ", "IU"), 7));
+    assertEquals(shard, SeedSplitProcessor.shardOf(header("ANMO ", "00", "LHZ", "IU"), 7));
+    assertEquals(0, SeedSplitProcessor.shardOf(header("ANMO ", "00", "LHZ", "IU"), 1));
+  }
+
+  private static ByteBlock header(String station, String location, String channel,
+      String network) {
+    byte[] bytes = new byte[256];
+    byte[] codes = (station + location + channel + network).getBytes();
+    System.arraycopy(codes, 0, bytes, 8, codes.length);
+    return new ByteBlock(bytes, bytes.length);
+  }
+}
@@ -0,0 +1,105 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+public class SlabPoolTest {
+
+  @After
+  public void tearDown() {
+    SlabPool.setMaxBytes(Runtime.getRuntime().maxMemory() / 32);
+  }
+
+  @Test
+  public void acquire_AfterRelease_SameBlockReused() throws Exception {
+    int[] block = SlabPool.acquire();
+    long allocated = SlabPool.getAllocated();
+    long reused = SlabPool.getReused();
+    long live = SlabPool.getLive();
+
+    SlabPool.release(block);
+    assertEquals(live - 1, SlabPool.getLive());
+    assertSame(block, SlabPool.acquire());
+
+    assertEquals(allocated, SlabPool.getAllocated());
+    assertEquals(reused + 1, SlabPool.getReused());
+    assertEquals(live, SlabPool.getLive());
+    SlabPool.release(block);
+  }
+
+  @Test(expected = BlockSizeMismatchException.class)
+  public void release_WrongSize_ThrowsBlockSizeMismatchException() throws Exception {
+    SlabPool.release(new int[Sequence.BLOCK_SIZE / 2]);
+  }
+
+  @Test
+  public void acquire_OtherThread_TakesFromSharedPool() throws Exception {
+    // More than a thread keeps, so some reach the shared pool
+    List<int[]> blocks = new ArrayList<>();
+    for (int i = 0; i < 2 * SlabPool.THREAD_BLOCKS; i++) {
+      blocks.add(SlabPool.acquire());
+    }
+    for (int[] block : blocks) {
+      SlabPool.release(block);
+    }
+    long allocated = SlabPool.getAllocated();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      int[] block = executor.submit(SlabPool::acquire).get();
+      assertEquals(Sequence.BLOCK_SIZE, block.length);
+      assertEquals(allocated, SlabPool.getAllocated());
+      executor.submit(() -> {
+        SlabPool.release(block);
+        return null;
+      }).get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void release_SharedPoolFull_Dropped() throws Exception {
+    SlabPool.setMaxBytes(0);
+    List<int[]> blocks = new ArrayList<>();
+    for (int i = 0; i < 2 * SlabPool.THREAD_BLOCKS; i++) {
+      blocks.add(SlabPool.acquire());
+    }
+    long dropped = SlabPool.getDropped();
+
+    for (int[] block : blocks) {
+      SlabPool.release(block);
+    }
+
+    // Only the thread's own blocks are kept
+    assertEquals(dropped + SlabPool.THREAD_BLOCKS, SlabPool.getDropped());
+  }
+
+  @Test
+  public void release_Sequence_RawBlocksReturned() throws Exception {
+    Sequence sequence = new Sequence();
+    sequence.setCompressed(true);
+    // Two compressed blocks, two blocks of noise that stay raw, then the block being filled
+    int[] samples = new int[4 * Sequence.BLOCK_SIZE + 10];
+    Random random = new Random(1);
+    for (int i = 2 * Sequence.BLOCK_SIZE; i < 4 * Sequence.BLOCK_SIZE; i++) {
+      samples[i] = random.nextInt();
+    }
+    sequence.extend(samples, 0, samples.length);
+    long live = SlabPool.getLive();
+    long returned = SlabPool.getPooled() + SlabPool.getDropped();
+
+    sequence.release();
+
+    assertEquals(live - 3, SlabPool.getLive());
+    assertEquals(returned + 3, SlabPool.getPooled() + SlabPool.getDropped());
+  }
+}
@@ -0,0 +1,287 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import edu.iris.dmc.seedcodec.SteimException;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assume;
+import org.junit.Test;
+import seed.MiniSeed;
+
+public class SteimDecoderTest {
+
+  /**
+   * Offset of the frames in the built records, after a 64 byte header.
+   */
+  private static final int DATA_OFFSET = 64;
+
+  private static final int[] STEIM1_DIFFERENCES = {
+      5, -3, 127, -128,
+      300, -32768,
+      70000, -70000, 1 << 20, -(1 << 20), 123456, -654321, 7, -7, 32768, -32769, 0,
+      // Second frame
+      1, 2, 3, 4,
+      -1000, 1000,
+      -2000000000};
+
+  private static final int[] STEIM2_DIFFERENCES = {
+      3, -2, 100, -128,
+      100000,
+      -16000, 16000,
+      511, -512, 7,
+      31, -32, 0, 1, -1,
+      15, -16, 2, 3, 4, 5,
+      7, -8, 1, 2, 3, -1, 0};
+
+  @Test
+  public void decode_Steim1BigEndian_Samples() throws Exception {
+    assertSteim1(ByteOrder.BIG_ENDIAN);
+  }
+
+  @Test
+  public void decode_Steim1LittleEndian_Samples() throws Exception {
+    assertSteim1(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Test
+  public void decode_Steim2BigEndian_Samples() throws Exception {
+    assertSteim2(ByteOrder.BIG_ENDIAN);
+  }
+
+  @Test
+  public void decode_Steim2LittleEndian_Samples() throws Exception {
+    assertSteim2(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Test
+  public void decode_OutputOffset_OnlySamplesWritten() throws Exception {
+    byte[] record = steim2Record(ByteOrder.BIG_ENDIAN);
+    int[] expected = samples(STEIM2_DIFFERENCES);
+    int[] out = new int[expected.length + 20];
+    Arrays.fill(out, 42);
+
+    SteimDecoder.get().decode(record, DATA_OFFSET, 64, SteimDecoder.STEIM2, expected.length,
+        false, out, 10);
+
+    for (int i = 0; i < out.length; i++) {
+      int value = i < 10 || i >= 10 + expected.length ? 42 : expected[i - 10];
+      assertEquals("index " + i, value, out[i]);
+    }
+  }
+
+  @Test(expected = SteimException.class)
+  public void decode_MoreSamplesThanFrames_ThrowsSteimException() throws Exception {
+    byte[] record = steim2Record(ByteOrder.BIG_ENDIAN);
+    int count = STEIM2_DIFFERENCES.length + 20;
+    SteimDecoder.get().decode(record, DATA_OFFSET, 64, SteimDecoder.STEIM2, count, false,
+        new int[count], 0);
+  }
+
+  @Test(expected = SteimException.class)
+  public void decode_UnsupportedEncoding_ThrowsSteimException() throws Exception {
+    byte[] record = steim2Record(ByteOrder.BIG_ENDIAN);
+    SteimDecoder.get().decode(record, DATA_OFFSET, 64, 3, 4, false, new int[4], 0);
+  }
+
+  @Test
+  public void decode_Records_SameAsDecomp() throws Exception {
+    GlobalMock.setQualityFlags("All");
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".512.seed"));
+    assertTrue(files != null && files.length > 0);
+
+    SteimDecoder decoder = SteimDecoder.get();
+    int compared = 0;
+    for (File file : files) {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      for (int offset = 0; offset + 512 <= bytes.length; offset += 512) {
+        byte[] recordBytes = Arrays.copyOfRange(bytes, offset, offset + 512);
+        MiniSeed record = new MiniSeed(recordBytes);
+        int encoding = record.getEncoding();
+        if (encoding != SteimDecoder.STEIM1 && encoding != SteimDecoder.STEIM2) {
+          continue;
+        }
+        int[] expected = record.decomp();
+        int[] actual = new int[expected.length];
+        decoder.decode(recordBytes, record.getDataOffset(),
+            record.getBlockSize() - record.getDataOffset(), encoding, record.getNsamp(),
+            record.isSwapBytes(), actual, 0);
+        assertArrayEquals(file.getName() + " at " + offset, expected, actual);
+        compared++;
+      }
+    }
+    assertTrue(compared > 0);
+  }
+
+  @Test
+  public void extend_RecordsAcrossBlocks_SameAsExtend() throws Exception {
+    byte[] record = steim2Record(ByteOrder.BIG_ENDIAN);
+    int[] samples = samples(STEIM2_DIFFERENCES);
+    Sequence expected = new Sequence();
+    Sequence actual = new Sequence();
+    SteimDecoder decoder = SteimDecoder.get();
+    // Enough records to fill several blocks, with records split between blocks
+    for (int i = 0; i < 1000; i++) {
+      expected.extend(samples, 0, samples.length);
+      actual.extend(decoder, record, DATA_OFFSET, 64, SteimDecoder.STEIM2, samples.length,
+          false);
+    }
+
+    assertEquals(expected.getLength(), actual.getLength());
+    assertArrayEquals(expected.getSeries(), actual.getSeries());
+  }
+
+  @Test
+  public void decode_Records_AllocatesNothing() throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled());
+
+    byte[] steim1 = steim1Record(ByteOrder.BIG_ENDIAN);
+    byte[] steim2 = steim2Record(ByteOrder.LITTLE_ENDIAN);
+    int[] out = new int[4096];
+    SteimDecoder decoder = SteimDecoder.get();
+    long thread = Thread.currentThread().getId();
+    int records = 100000;
+
+    // Warm up so the decoder is compiled and its scratch is in place
+    decodeRecords(decoder, steim1, steim2, out, records);
+    long before = threads.getThreadAllocatedBytes(thread);
+    decodeRecords(decoder, steim1, steim2, out, records);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // Allow for the measurement itself, far less than one byte per record
+    assertTrue(allocated + " bytes allocated decoding " + records + " records",
+        allocated < 1024);
+  }
+
+  private static void decodeRecords(SteimDecoder decoder, byte[] steim1, byte[] steim2,
+      int[] out, int records) throws SteimException {
+    int offset = 0;
+    for (int i = 0; i < records; i += 2) {
+      decoder.decode(steim1, DATA_OFFSET, 128, SteimDecoder.STEIM1, STEIM1_DIFFERENCES.length,
+          false, out, offset);
+      decoder.decode(steim2, DATA_OFFSET, 64, SteimDecoder.STEIM2, STEIM2_DIFFERENCES.length,
+          true, out, offset + STEIM1_DIFFERENCES.length);
+      offset = (offset + 64) & 2047;
+    }
+  }
+
+  private static void assertSteim1(ByteOrder order) throws SteimException {
+    byte[] record = steim1Record(order);
+    int[] expected = samples(STEIM1_DIFFERENCES);
+    int[] actual = new int[expected.length];
+
+    int count = SteimDecoder.get().decode(record, DATA_OFFSET, 128, SteimDecoder.STEIM1,
+        expected.length, order == ByteOrder.LITTLE_ENDIAN, actual, 0);
+
+    assertEquals(expected.length, count);
+    assertArrayEquals(expected, actual);
+  }
+
+  private static void assertSteim2(ByteOrder order) throws SteimException {
+    byte[] record = steim2Record(order);
+    int[] expected = samples(STEIM2_DIFFERENCES);
+    int[] actual = new int[expected.length];
+
+    int count = SteimDecoder.get().decode(record, DATA_OFFSET, 64, SteimDecoder.STEIM2,
+        expected.length, order == ByteOrder.LITTLE_ENDIAN, actual, 0);
+
+    assertEquals(expected.length, count);
+    assertArrayEquals(expected, actual);
+  }
+
+  /**
+   * Samples starting at 1000, each following the one before by its difference. The first
+   * difference is from the sample before the record.
+   */
+  private static int[] samples(int[] differences) {
+    int[] samples = new int[differences.length];
+    samples[0] = 1000;
+    for (int i = 1; i < differences.length; i++) {
+      samples[i] = samples[i - 1] + differences[i];
+    }
+    return samples;
+  }
+
+  /**
+   * A header followed by two Steim1 frames of {@link #STEIM1_DIFFERENCES}.
+   */
+  private static byte[] steim1Record(ByteOrder order) {
+    int[] samples = samples(STEIM1_DIFFERENCES);
+    ByteBuffer buffer = ByteBuffer.allocate(DATA_OFFSET + 128).order(order);
+
+    // The first frame is filled, with the differences that need a whole word at the end
+    int frame = DATA_OFFSET;
+    buffer.putInt(frame, 0x01 << 24 | 0x02 << 22 | 0x3FFFFF);
+    buffer.putInt(frame + 4, samples[0]);
+    buffer.putInt(frame + 8, samples[samples.length - 1]);
+    putBytes(buffer, frame + 12, STEIM1_DIFFERENCES, 0);
+    buffer.putShort(frame + 16, (short) STEIM1_DIFFERENCES[4]);
+    buffer.putShort(frame + 18, (short) STEIM1_DIFFERENCES[5]);
+    for (int word = 5; word < 16; word++) {
+      buffer.putInt(frame + word * 4, STEIM1_DIFFERENCES[word + 1]);
+    }
+
+    frame += 64;
+    buffer.putInt(frame, 0x01 << 28 | 0x02 << 26 | 0x03 << 24);
+    putBytes(buffer, frame + 4, STEIM1_DIFFERENCES, 17);
+    buffer.putShort(frame + 8, (short) STEIM1_DIFFERENCES[21]);
+    buffer.putShort(frame + 10, (short) STEIM1_DIFFERENCES[22]);
+    buffer.putInt(frame + 12, STEIM1_DIFFERENCES[23]);
+    return buffer.array();
+  }
+
+  /**
+   * A header followed by one Steim2 frame of {@link #STEIM2_DIFFERENCES}, using every size of
+   * difference.
+   */
+  private static byte[] steim2Record(ByteOrder order) {
+    int[] samples = samples(STEIM2_DIFFERENCES);
+    ByteBuffer buffer = ByteBuffer.allocate(DATA_OFFSET + 64).order(order);
+
+    int frame = DATA_OFFSET;
+    buffer.putInt(frame, 0x01 << 24 | 0x02 << 22 | 0x02 << 20 | 0x02 << 18 | 0x03 << 16
+        | 0x03 << 14 | 0x03 << 12);
+    buffer.putInt(frame + 4, samples[0]);
+    buffer.putInt(frame + 8, samples[samples.length - 1]);
+    putBytes(buffer, frame + 12, STEIM2_DIFFERENCES, 0);
+    buffer.putInt(frame + 16, word(1, 2, 30, STEIM2_DIFFERENCES, 4, 1));
+    buffer.putInt(frame + 20, word(2, 2, 15, STEIM2_DIFFERENCES, 5, 2));
+    buffer.putInt(frame + 24, word(3, 2, 10, STEIM2_DIFFERENCES, 7, 3));
+    buffer.putInt(frame + 28, word(0, 2, 6, STEIM2_DIFFERENCES, 10, 5));
+    buffer.putInt(frame + 32, word(1, 2, 5, STEIM2_DIFFERENCES, 15, 6));
+    buffer.putInt(frame + 36, word(2, 4, 4, STEIM2_DIFFERENCES, 21, 7));
+    return buffer.array();
+  }
+
+  private static void putBytes(ByteBuffer buffer, int index, int[] differences, int first) {
+    for (int i = 0; i < 4; i++) {
+      buffer.put(index + i, (byte) differences[first + i]);
+    }
+  }
+
+  /**
+   * Pack differences into a Steim2 data word after its dnib and header bits.
+   */
+  private static int word(int dnib, int headerBits, int bits, int[] differences, int first,
+      int count) {
+    int word = dnib << 30;
+    int mask = (1 << bits) - 1;
+    for (int i = 0; i < count; i++) {
+      word |= (differences[first + i] & mask) << (32 - headerBits - (i + 1) * bits);
+    }
+    return word;
+  }
+}
@@ -40,5 +40,14 @@ public class Dependent {
     GlobalMock.setEventsDir(ResourceManager.getDirectoryPath("/event_synthetics"));
   }
 
+  /**
+   * Skip the test unless a test database is configured through the SEEDSCAN_TEST_DB,
+   * SEEDSCAN_TEST_DB_USER and SEEDSCAN_TEST_DB_PASSWORD environment variables.
+   */
+  public static void assumeTestDatabase() {
+    Assume.assumeNotNull(System.getenv("SEEDSCAN_TEST_DB"), System.getenv("SEEDSCAN_TEST_DB_USER"),
+        System.getenv("SEEDSCAN_TEST_DB_PASSWORD"));
+  }
+
 
 }
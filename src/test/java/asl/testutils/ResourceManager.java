@@ -18,12 +18,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -168,45 +162,20 @@ public abstract class ResourceManager { // NO_UCD (test only)
     Hashtable<String, ArrayList<Integer>> qualityTable;
     Hashtable<String, ArrayList<Blockette320>> calibrationTable;
 
-    int timeout = 900;
-    SplitterObject splitObj = null;
     try {
-      splitObj = executeSplitter(files, timeout, date);
-      SeedSplitter splitter = splitObj.splitter;
-      dataTable = splitObj.table;
+      SeedSplitter splitter = new SeedSplitter(files);
+      dataTable = splitter.doInBackground();
       qualityTable = splitter.getQualityTable();
       calibrationTable = splitter.getCalTable();
 
       return new MetricData(mockDB, dataTable, qualityTable, stationMeta, calibrationTable);
-    } catch (TimeoutException | ExecutionException | InterruptedException e) {
+    } catch (TimeoutException | InterruptedException e) {
       e.printStackTrace();
       return null;
     }
 
   }
 
-  /**
-   * SeedSplitter function: processing times greater than 3 min. will move to the next day
-   */
-  private static SplitterObject executeSplitter(File[] files, int timeout, LocalDate timestamp)
-      throws TimeoutException, ExecutionException, InterruptedException {
-    Hashtable<String, ArrayList<DataSet>> table = null;
-    SeedSplitter splitter = new SeedSplitter(files);
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Hashtable<String, ArrayList<DataSet>>> future = executor.submit(new Task(splitter));
-
-    try {
-      table = future.get(timeout, TimeUnit.SECONDS);
-    } catch (TimeoutException | ExecutionException | InterruptedException e) {
-      future.cancel(true);
-      throw e;
-    }
-    executor.shutdown();
-    executor.awaitTermination(300, TimeUnit.SECONDS);
-
-    return new SplitterObject(splitter, table);
-  }
-
   public static MetricData loadANMOMainTestCase() {
     final String metadataLocation = "/metadata/rdseed/IU-ANMO-ascii.txt";
     final String seedDataLocation = "/seed_data/IU_ANMO/2015/206";
@@ -232,31 +201,4 @@ public abstract class ResourceManager { // NO_UCD (test only)
     final Station station = new Station("IU","NWAO");
     return getMetricData(seedLocation, metadataLocation, dataDate, station);
   }
-
-  // Class to assign seedplitter object and seedsplitter table
-  private static class SplitterObject {
-
-    private SeedSplitter splitter;
-    private Hashtable<String, ArrayList<DataSet>> table;
-
-    private SplitterObject(SeedSplitter splitter, Hashtable<String, ArrayList<DataSet>> table) {
-      this.splitter = splitter;
-      this.table = table;
-    }
-  }
-
-  // Class to run Future task (seedplitter.doInBackground())
-  private static class Task implements Callable<Hashtable<String, ArrayList<DataSet>>> {
-
-    private SeedSplitter splitter;
-
-    private Task(SeedSplitter splitter) {
-      this.splitter = splitter;
-    }
-
-    public Hashtable<String, ArrayList<DataSet>> call() throws Exception {
-      Hashtable<String, ArrayList<DataSet>> table = splitter.doInBackground();
-      return table;
-    }
-  }
 }
@@ -0,0 +1,197 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedsplitter.DataSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class DecimatorTest {
+
+  private static DataSet sine(String channel, double sampleRate, int length, double frequency,
+      double amplitude) throws Exception {
+    int[] samples = new int[length];
+    for (int i = 0; i < length; i++) {
+      samples[i] = (int) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+    }
+    return dataSet(channel, sampleRate, samples);
+  }
+
+  private static DataSet dataSet(String channel, double sampleRate, int[] samples)
+      throws Exception {
+    DataSet dataSet = new DataSet();
+    dataSet.setNetwork("IU");
+    dataSet.setStation("ANMO");
+    dataSet.setLocation("00");
+    dataSet.setChannel(channel);
+    dataSet.setStartTime(1_000_000_000L);
+    dataSet.setSampleRate(sampleRate);
+    dataSet.extend(samples, 0, samples.length);
+    return dataSet;
+  }
+
+  private static double[] counts(DecimatedDataSet dataSet) {
+    double[] series = dataSet.cursor().toDoubleArray();
+    for (int i = 0; i < series.length; i++) {
+      series[i] /= dataSet.getScale();
+    }
+    return series;
+  }
+
+  /**
+   * Gain in dB of a stage's filter at a frequency in cycles per data point.
+   */
+  private static double gain(int factor, double frequency) {
+    double[] filter = Decimator.getFilter(factor);
+    double response = filter[0];
+    for (int k = 1; k < filter.length; k++) {
+      response += 2 * filter[k] * Math.cos(2 * Math.PI * frequency * k);
+    }
+    return 20 * Math.log10(Math.abs(response));
+  }
+
+  @Test
+  public void getStages_LargestFirst() {
+    assertEquals(Arrays.asList(10, 4), Decimator.getStages(40));
+    assertEquals(Arrays.asList(10, 10, 2), Decimator.getStages(200));
+    assertEquals(Collections.singletonList(13), Decimator.getStages(13));
+  }
+
+  @Test
+  public void decimate_NotIntegerFactor_Null() throws Exception {
+    DataSet dataSet = sine("BHZ", 40, 1000, 0.01, 1000);
+
+    assertNull(Decimator.decimate(dataSet, 0.3));
+    assertNull(Decimator.decimate(dataSet, 40));
+    assertNull(Decimator.decimate(dataSet, 80));
+  }
+
+  @Test
+  public void decimate_SameStartAndRate() throws Exception {
+    DataSet dataSet = sine("BHZ", 40, 1001, 0.01, 1000);
+
+    DataSet decimated = Decimator.decimate(dataSet, 1);
+
+    assertEquals(dataSet.getStartTime(), decimated.getStartTime());
+    assertEquals(1.0, decimated.getSampleRate(), 0);
+    assertEquals(1_000_000L, decimated.getInterval());
+    assertEquals(26, decimated.getLength());
+    assertEquals("BHZ", decimated.getChannel());
+    assertEquals("00", decimated.getLocation());
+  }
+
+  @Test
+  public void decimate_PassbandSine_Kept() throws Exception {
+    double amplitude = 100000;
+    DataSet dataSet = sine("BHZ", 40, 40 * 3600, 0.05, amplitude);
+
+    double[] decimated = counts(Decimator.decimate(dataSet, 1));
+
+    // Away from the ends, where the filter sees past the series
+    for (int i = 600; i < decimated.length - 600; i++) {
+      double expected = amplitude * Math.sin(2 * Math.PI * 0.05 * i);
+      assertEquals(expected, decimated[i], 1e-3 * amplitude);
+    }
+  }
+
+  @Test
+  public void decimate_AboveNyquist_Suppressed() throws Exception {
+    double amplitude = 100000;
+    // Would alias to 0.2 Hz at 1 Hz
+    DataSet dataSet = sine("BHZ", 40, 40 * 3600, 0.8, amplitude);
+
+    double[] decimated = counts(Decimator.decimate(dataSet, 1));
+
+    // 90 dB down
+    for (int i = 600; i < decimated.length - 600; i++) {
+      assertEquals(0, decimated[i], 3.2e-5 * amplitude);
+    }
+  }
+
+  @Test
+  public void getFilter_FlatBandAndAliasAttenuation() {
+    for (int factor : new int[]{2, 4, 10, 13}) {
+      // In cycles per data point, the new Nyquist frequency is 0.5 / factor
+      for (double f = 0; f <= 0.3 / factor; f += 0.001 / factor) {
+        assertEquals("factor " + factor + " at " + f, 0, gain(factor, f), 0.01);
+      }
+      for (double f = 0.5 / factor; f <= 0.5; f += 0.001 / factor) {
+        double expected = (f >= 0.7 / factor) ? -90 : -70;
+        assertTrue("factor " + factor + " at " + f, gain(factor, f) < expected);
+      }
+    }
+  }
+
+  @Test
+  public void decimate_SmallSignal_NotRoundedToCounts() throws Exception {
+    // A tenth of a count peak to peak in the flat band, dithered so filtering recovers it
+    Random random = new Random(1);
+    int[] samples = new int[40 * 3600];
+    for (int i = 0; i < samples.length; i++) {
+      double value = 1000 + 0.05 * Math.sin(2 * Math.PI * 0.05 * i / 40);
+      samples[i] = (int) Math.floor(value + random.nextDouble());
+    }
+
+    DecimatedDataSet decimated = Decimator.decimate(dataSet("BHZ", 40, samples), 1);
+    double[] values = counts(decimated);
+
+    assertTrue(decimated.getScale() > 1);
+    double sum = 0;
+    for (int i = 600; i < values.length - 600; i++) {
+      sum += (values[i] - 1000) * Math.sin(2 * Math.PI * 0.05 * i);
+    }
+    // Correlation with the sine recovers its amplitude, which rounding to counts would lose
+    assertEquals(0.05, 2 * sum / (values.length - 1200), 0.01);
+  }
+
+  @Test
+  public void getScale_LargestPowerOfTwoInRange() {
+    assertEquals(1 << 16, Decimator.getScale(new double[]{0, 1, -1}));
+    assertEquals(1 << 10, Decimator.getScale(new double[]{-(1 << 20)}));
+    assertEquals(1, Decimator.getScale(new double[]{1.5 * (1 << 30)}));
+  }
+
+  @Test
+  public void decimate_CopyOfCopy_SameCounts() throws Exception {
+    double amplitude = 100000;
+    DataSet dataSet = sine("BHZ", 40, 40 * 3600, 0.01, amplitude);
+
+    DecimatedDataSet direct = Decimator.decimate(dataSet, 0.1);
+    DecimatedDataSet cascaded = Decimator.decimate(Decimator.decimate(dataSet, 1), 0.1);
+    double[] expected = counts(direct);
+    double[] values = counts(cascaded);
+
+    // The stages differ, so the filters do slightly
+    assertEquals(expected.length, values.length);
+    for (int i = 60; i < values.length - 60; i++) {
+      assertEquals(expected[i], values[i], 1e-4 * amplitude);
+    }
+  }
+
+  @Test
+  public void decimate_Table_CascadedAndLowerRatesOnly() throws Exception {
+    Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+    table.put("IU_ANMO 00-BHZ",
+        new ArrayList<>(Collections.singletonList(sine("BHZ", 40, 40 * 600, 0.01, 1000))));
+    table.put("IU_ANMO 00-LHZ",
+        new ArrayList<>(Collections.singletonList(sine("LHZ", 1, 600, 0.01, 1000))));
+
+    Map<Double, Hashtable<String, ArrayList<DataSet>>> decimated =
+        Decimator.decimate(table, new double[]{0.1, 1});
+
+    assertEquals(2, decimated.size());
+    assertTrue(decimated.get(1.0).containsKey("IU_ANMO 00-BHZ"));
+    // LHZ is already at 1 Hz
+    assertFalse(decimated.get(1.0).containsKey("IU_ANMO 00-LHZ"));
+    assertEquals(60, decimated.get(0.1).get("IU_ANMO 00-BHZ").get(0).getLength());
+    assertEquals(60, decimated.get(0.1).get("IU_ANMO 00-LHZ").get(0).getLength());
+  }
+}
@@ -0,0 +1,181 @@
+package seed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MiniSeedHeaderTest {
+
+  @Before
+  public void setUp() {
+    GlobalMock.setQualityFlags("All");
+  }
+
+  @After
+  public void tearDown() {
+    GlobalMock.setQualityFlags("All");
+  }
+
+  @Test
+  public void reset_BigEndianRecord_Fields() throws Exception {
+    assertFields(new MiniSeedHeader().reset(record(ByteOrder.BIG_ENDIAN, false)), false);
+  }
+
+  @Test
+  public void reset_LittleEndianRecord_Fields() throws Exception {
+    assertFields(new MiniSeedHeader().reset(record(ByteOrder.LITTLE_ENDIAN, false)), true);
+  }
+
+  @Test
+  public void reset_RecordInSharedBuffer_Fields() throws Exception {
+    byte[] record = record(ByteOrder.BIG_ENDIAN, false);
+    ByteBuffer buffer = ByteBuffer.allocate(record.length * 2);
+    buffer.position(record.length);
+    buffer.put(record);
+    buffer.position(3);
+
+    MiniSeedHeader header = new MiniSeedHeader().reset(buffer, record.length, record.length);
+
+    assertFields(header, false);
+    assertEquals(3, buffer.position());
+  }
+
+  @Test
+  public void getBlockette320_CalibrationRecord_Copy() throws Exception {
+    byte[] record = record(ByteOrder.BIG_ENDIAN, true);
+    MiniSeedHeader header = new MiniSeedHeader().reset(record);
+
+    assertArrayEquals(Arrays.copyOfRange(record, 64, 128), header.getBlockette320());
+    assertEquals(128, header.getDataOffset());
+    assertNull(new MiniSeedHeader().reset(record(ByteOrder.BIG_ENDIAN, false))
+        .getBlockette320());
+  }
+
+  @Test
+  public void reset_ViewReused_FieldsOfLastRecord() throws Exception {
+    MiniSeedHeader header = new MiniSeedHeader();
+    header.reset(record(ByteOrder.BIG_ENDIAN, true));
+    assertEquals(128, header.getDataOffset());
+
+    byte[] record = record(ByteOrder.LITTLE_ENDIAN, false);
+    assertFields(header.reset(record), true);
+    assertNull(header.getBlockette320());
+  }
+
+  @Test
+  public void reset_HeartBeat_IsHeartBeat() throws Exception {
+    byte[] record = new byte[512];
+    Arrays.fill(record, 0, 6, (byte) '0');
+    Arrays.fill(record, 6, 20, (byte) ' ');
+
+    assertTrue(new MiniSeedHeader().reset(record).isHeartBeat());
+    assertFalse(new MiniSeedHeader().reset(record(ByteOrder.BIG_ENDIAN, false)).isHeartBeat());
+  }
+
+  @Test(expected = IllegalSeednameException.class)
+  public void reset_QualityNotConfigured_ThrowsIllegalSeednameException() throws Exception {
+    GlobalMock.setQualityFlags("Q,R");
+    new MiniSeedHeader().reset(record(ByteOrder.BIG_ENDIAN, false));
+  }
+
+  @Test
+  public void reset_Records_SameAsMiniSeed() throws Exception {
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".512.seed"));
+    assertTrue(files != null && files.length > 0);
+
+    MiniSeedHeader header = new MiniSeedHeader();
+    for (File file : files) {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      for (int offset = 0; offset + 512 <= bytes.length; offset += 512) {
+        byte[] recordBytes = Arrays.copyOfRange(bytes, offset, offset + 512);
+        String message = file.getName() + " at " + offset;
+        header.reset(ByteBuffer.wrap(bytes), offset, 512);
+        assertEquals(message, MiniSeed.crackIsHeartBeat(recordBytes), header.isHeartBeat());
+        if (header.isHeartBeat()) {
+          continue;
+        }
+        MiniSeed record = new MiniSeed(recordBytes);
+        assertEquals(message, MiniSeed.crackSeedname(recordBytes), header.getSeedname());
+        assertEquals(message, record.getSequence(), header.getSequence());
+        assertEquals(message, record.isSwapBytes(), header.isSwapBytes());
+        assertEquals(message, MiniSeed.crackYear(recordBytes), header.getYear());
+        assertEquals(message, MiniSeed.crackDOY(recordBytes), header.getDayOfYear());
+        assertArrayEquals(message, MiniSeed.crackTime(recordBytes), new int[]{header.getHour(),
+            header.getMinute(), header.getSecond(), header.getTenthMillis()});
+        assertEquals(message, record.getNsamp(), header.getNsamp());
+        assertEquals(message, MiniSeed.crackRate(recordBytes), header.getRate(), 0.0);
+        assertEquals(message, record.getDataOffset(), header.getDataOffset());
+        assertEquals(message, record.getBlockSize(), header.getBlockSize());
+        assertEquals(message, record.getEncoding(), header.getEncoding());
+        assertEquals(message, record.getTimingQuality(), header.getTimingQuality());
+        assertArrayEquals(message, record.getBlockette320(), header.getBlockette320());
+      }
+    }
+  }
+
+  private static void assertFields(MiniSeedHeader header, boolean swap) throws Exception {
+    assertFalse(header.isHeartBeat());
+    assertEquals(swap, header.isSwapBytes());
+    assertEquals(123, header.getSequence());
+    assertEquals("IUANMO LHZ00", header.getSeedname());
+    assertEquals(2015, header.getYear());
+    assertEquals(206, header.getDayOfYear());
+    assertEquals(1, header.getHour());
+    assertEquals(2, header.getMinute());
+    assertEquals(3, header.getSecond());
+    assertEquals(4567, header.getTenthMillis());
+    assertEquals(400, header.getNsamp());
+    assertEquals(0.1, header.getRate(), 0.0);
+    assertEquals(64, header.getDataOffset());
+    assertEquals(512, header.getBlockSize());
+    assertEquals(448, header.getDataLength());
+    assertEquals(11, header.getEncoding());
+    assertEquals(90, header.getTimingQuality());
+  }
+
+  /**
+   * A 512 byte Steim2 record of IU ANMO 00 LHZ with blockettes 1000 and 1001, optionally followed
+   * by a blockette 320.
+   */
+  private static byte[] record(ByteOrder order, boolean calibration) {
+    ByteBuffer buffer = ByteBuffer.allocate(512).order(order);
+    buffer.put("000123D ANMO 00LHZIU".getBytes());
+    buffer.putShort((short) 2015).putShort((short) 206);
+    buffer.put((byte) 1).put((byte) 2).put((byte) 3).put((byte) 0);
+    buffer.putShort((short) 4567);
+    buffer.putShort((short) 400);
+    // 0.1 Hz as a period of 10 seconds
+    buffer.putShort((short) -10).putShort((short) 1);
+    buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+    buffer.put((byte) (calibration ? 3 : 2));
+    buffer.putInt(0);
+    buffer.putShort((short) (calibration ? 128 : 64)).putShort((short) 48);
+
+    buffer.putShort(48, (short) 1000).putShort(50, (short) 56);
+    buffer.put(52, (byte) 11).put(53, (byte) (order == ByteOrder.BIG_ENDIAN ? 1 : 0))
+        .put(54, (byte) 9);
+    buffer.putShort(56, (short) 1001).putShort(58, (short) (calibration ? 64 : 0));
+    buffer.put(60, (byte) 90);
+    if (calibration) {
+      buffer.putShort(64, (short) 320).putShort(66, (short) 0);
+      for (int i = 68; i < 128; i++) {
+        buffer.put(i, (byte) i);
+      }
+    }
+    return buffer.array();
+  }
+}